@@ -0,0 +1,248 @@
+package vb.obama.benchmarks;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.antlr.runtime.ANTLRStringStream;
+import org.antlr.runtime.CommonToken;
+import org.antlr.runtime.CommonTokenStream;
+import org.antlr.runtime.RecognitionException;
+import org.antlr.runtime.Token;
+import org.antlr.runtime.TokenSource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import vb.obama.antlr.FastLexer;
+import vb.obama.antlr.ObamaLexer;
+import vb.obama.antlr.ObamaParser;
+import vb.obama.antlr.tree.TypedNode;
+import vb.obama.antlr.tree.TypedNodeAdapter;
+import vb.obama.compiler.CheckerVisitor;
+import vb.obama.compiler.CodegenVisitor;
+import vb.obama.compiler.CompilationResult;
+import vb.obama.compiler.Diagnostic;
+import vb.obama.compiler.ObamaCompiler;
+import vb.obama.compiler.ParallelParser;
+import vb.obama.compiler.SymbolTable;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * Measures every compiler phase on its own. The input of a phase is prepared
+ * once per trial by running the phases before it, so a benchmark only covers
+ * its own phase. The checker annotates the trees it visits, so the checker
+ * benchmarks get fresh copies of the parsed trees for every invocation. The
+ * compiler benchmark covers the complete pipeline.
+ *
+ * @version 1.7
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PhaseBenchmark {
+	/**
+	 * Input to compile
+	 * @see vb.obama.benchmarks.Sources
+	 */
+	@Param({"resources", "synthetic-100", "synthetic-1000", "nested-100", "nested-200"})
+	public String input;
+
+	private List<Sources.Source> sources;
+
+	/**
+	 * Lexed sources, input of the parser
+	 */
+	private List<List<Token>> tokens;
+
+	/**
+	 * Parsed trees, input of the checker
+	 */
+	private List<TypedNode> parsed;
+
+	/**
+	 * Checked trees, input of the codegen
+	 */
+	private List<TypedNode> checked;
+
+	private ObamaCompiler compiler;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException, RecognitionException {
+		this.sources = Sources.load(this.input);
+		this.tokens = Lists.newArrayList();
+		this.parsed = Lists.newArrayList();
+		this.checked = Lists.newArrayList();
+		this.compiler = new ObamaCompiler();
+
+		for (Sources.Source source : this.sources) {
+			this.tokens.add(ImmutableList.<Token>copyOf(PhaseBenchmark.lex(source).getTokens()));
+			this.parsed.add(PhaseBenchmark.parse(PhaseBenchmark.lex(source)));
+
+			TypedNode tree = PhaseBenchmark.parse(PhaseBenchmark.lex(source));
+			PhaseBenchmark.check(tree, source);
+			this.checked.add(tree);
+		}
+	}
+
+	@Benchmark
+	public void lexer(Blackhole blackhole) {
+		for (Sources.Source source : this.sources) {
+			blackhole.consume(PhaseBenchmark.lex(source));
+		}
+	}
+
+	@Benchmark
+	public void fastLexer(Blackhole blackhole) {
+		for (Sources.Source source : this.sources) {
+			CommonTokenStream tokens = new CommonTokenStream(new FastLexer(source.getContent()));
+			tokens.fill();
+			blackhole.consume(tokens);
+		}
+	}
+
+	@Benchmark
+	public void parser(Blackhole blackhole) throws RecognitionException {
+		for (List<Token> tokens : this.tokens) {
+			blackhole.consume(PhaseBenchmark.parse(new CommonTokenStream(new ReplayTokenSource(tokens))));
+		}
+	}
+
+	@Benchmark
+	public void parallelParser(Blackhole blackhole) throws RecognitionException {
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+		ParallelParser parser = new ParallelParser(pool, pool.getParallelism());
+
+		for (List<Token> tokens : this.tokens) {
+			CommonTokenStream stream = new CommonTokenStream(new ReplayTokenSource(tokens));
+			stream.fill();
+
+			TypedNode tree = parser.parse(stream.getTokens(), Lists.<Diagnostic>newArrayList());
+			blackhole.consume(tree != null ? tree : PhaseBenchmark.parse(stream));
+		}
+	}
+
+	@Benchmark
+	public void checker(Unchecked unchecked, Blackhole blackhole) throws RecognitionException {
+		for (int i = 0; i < unchecked.trees.size(); i++) {
+			blackhole.consume(PhaseBenchmark.check(unchecked.trees.get(i), this.sources.get(i)));
+		}
+	}
+
+	@Benchmark
+	public void parallelChecker(Unchecked unchecked, Blackhole blackhole) throws RecognitionException {
+		ForkJoinPool pool = ForkJoinPool.commonPool();
+
+		for (int i = 0; i < unchecked.trees.size(); i++) {
+			SymbolTable table = new SymbolTable();
+			CheckerVisitor checker = new CheckerVisitor(table, this.sources.get(i).getFileName(), pool, pool.getParallelism());
+			checker.program(unchecked.trees.get(i));
+			blackhole.consume(table);
+		}
+	}
+
+	@Benchmark
+	public void codegen(Blackhole blackhole) throws RecognitionException {
+		for (TypedNode tree : this.checked) {
+			CodegenVisitor codegen = new CodegenVisitor();
+			codegen.program(tree);
+
+			Map<String, byte[]> classes = codegen.getHelper().toByteArrays();
+			blackhole.consume(classes);
+		}
+	}
+
+	@Benchmark
+	public void compiler(Blackhole blackhole) {
+		for (Sources.Source source : this.sources) {
+			CompilationResult result = this.compiler.compile(source.getContent(), source.getFileName());
+
+			if (!result.isSuccess()) {
+				throw new IllegalStateException(result.getDiagnostics().toString());
+			}
+
+			blackhole.consume(result.getClasses());
+		}
+	}
+
+	private static CommonTokenStream lex(Sources.Source source) {
+		CommonTokenStream tokens = new CommonTokenStream(new ObamaLexer(new ANTLRStringStream(source.getContent())));
+		tokens.fill();
+		return tokens;
+	}
+
+	private static TypedNode parse(CommonTokenStream tokens) throws RecognitionException {
+		ObamaParser parser = new ObamaParser(tokens);
+		parser.setTreeAdaptor(new TypedNodeAdapter());
+		return (TypedNode) parser.program().getTree();
+	}
+
+	private static SymbolTable check(TypedNode tree, Sources.Source source) throws RecognitionException {
+		SymbolTable table = new SymbolTable();
+		CheckerVisitor checker = new CheckerVisitor(table, source.getFileName());
+		checker.program(tree);
+		return table;
+	}
+
+	/**
+	 * Copies of the parsed trees, made before every invocation, so the
+	 * checker never sees a tree that it annotated before. An invocation
+	 * checks all sources, which takes long enough for this level.
+	 */
+	@State(Scope.Thread)
+	public static class Unchecked {
+		private List<TypedNode> trees;
+
+		@Setup(Level.Invocation)
+		public void setup(PhaseBenchmark benchmark) {
+			TypedNodeAdapter adaptor = new TypedNodeAdapter();
+			this.trees = Lists.newArrayList();
+
+			for (TypedNode tree : benchmark.parsed) {
+				this.trees.add((TypedNode) adaptor.dupTree(tree));
+			}
+		}
+	}
+
+	/**
+	 * Replays lexed tokens. The parser rewrites the text of literal tokens, so
+	 * every replay hands out copies.
+	 */
+	private static class ReplayTokenSource implements TokenSource {
+		private final List<Token> tokens;
+
+		private int index = 0;
+
+		private ReplayTokenSource(List<Token> tokens) {
+			this.tokens = tokens;
+		}
+
+		@Override
+		public Token nextToken() {
+			Token token = this.tokens.get(Math.min(this.index++, this.tokens.size() - 1));
+			return new CommonToken(token);
+		}
+
+		@Override
+		public String getSourceName() {
+			return "replay";
+		}
+	}
+}
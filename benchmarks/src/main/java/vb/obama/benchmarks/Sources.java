@@ -0,0 +1,172 @@
+package vb.obama.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Stream;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+
+import vb.obama.util.ProgramGenerator;
+
+/**
+ * Inputs of the benchmarks. An input is either 'resources', the sources of the
+ * compiler test suites, 'synthetic-N', a single generated program with N
+ * global methods and default settings otherwise, or 'nested-N', a program with
+ * expressions of N operands and N levels of parentheses.
+ *
+ * @version 1.2
+ * @see vb.obama.util.ProgramGenerator
+ */
+public final class Sources {
+	/**
+	 * Name of the input with all test suite sources
+	 */
+	public static final String RESOURCES = "resources";
+
+	/**
+	 * Prefix of generated inputs
+	 */
+	public static final String SYNTHETIC = "synthetic-";
+
+	/**
+	 * Prefix of inputs with long and deeply nested expressions
+	 */
+	public static final String NESTED = "nested-";
+
+	/**
+	 * Resource folder of the test suite sources
+	 */
+	private static final String FOLDER = "vb/obama/";
+
+	private Sources() {
+		// Utility class
+	}
+
+	/**
+	 * Load the sources of an input
+	 *
+	 * @param input Input name
+	 * @return List of sources
+	 * @throws IOException If the test suite sources cannot be read
+	 */
+	public static List<Source> load(String input) throws IOException {
+		if (input.equals(RESOURCES)) {
+			return Sources.resources();
+		} else if (input.startsWith(SYNTHETIC)) {
+			int methods = Integer.parseInt(input.substring(SYNTHETIC.length()));
+			String content = new ProgramGenerator().setMethods(methods).generate();
+
+			return Lists.newArrayList(new Source("Synthetic.obama", content));
+		} else if (input.startsWith(NESTED)) {
+			int size = Integer.parseInt(input.substring(NESTED.length()));
+			return Lists.newArrayList(new Source("Nested.obama", Sources.nested(size)));
+		}
+
+		throw new IllegalArgumentException(String.format("Unknown input '%s'", input));
+	}
+
+	/**
+	 * Generate a program with one long expression, and one expression with
+	 * nested parentheses and inline ifs. Parse time should grow linearly with
+	 * the size.
+	 *
+	 * @param size Number of operands and levels of nesting
+	 * @return Source code
+	 */
+	public static String nested(int size) {
+		StringBuilder flat = new StringBuilder("a");
+		StringBuilder nested = new StringBuilder("a");
+
+		for (int i = 1; i < size; i++) {
+			flat.append(i % 2 == 0 ? " + " : " * ").append(i % 10);
+			nested.insert(0, i % 2 == 0 ? "(" : "(a > " + i + " ? ").append(i % 2 == 0 ? " - 1)" : " : 0)");
+		}
+
+		return String.format(
+			"(void)main:(String[])args%n{%n    int a = 1;%n    int b = %s;%n    int c = %s;%n    [System.out println:b + c];%n}%n",
+			flat,
+			nested
+		);
+	}
+
+	/**
+	 * Load all test suite sources from the class path, either from a
+	 * directory or from the benchmark jar.
+	 *
+	 * @return List of sources, sorted by name
+	 * @throws IOException If a source cannot be read
+	 */
+	private static List<Source> resources() throws IOException {
+		List<Source> result = Lists.newArrayList();
+		File location;
+
+		try {
+			location = new File(Sources.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+		} catch (URISyntaxException exception) {
+			throw new IOException(exception);
+		}
+
+		if (location.isDirectory()) {
+			try (Stream<Path> paths = Files.walk(new File(location, FOLDER).toPath())) {
+				for (Path path : (Iterable<Path>) paths.sorted()::iterator) {
+					if (path.toString().endsWith(".obama")) {
+						result.add(new Source(path.getFileName().toString(), new String(Files.readAllBytes(path), StandardCharsets.UTF_8)));
+					}
+				}
+			}
+		} else {
+			try (JarFile jar = new JarFile(location)) {
+				Enumeration<JarEntry> entries = jar.entries();
+
+				while (entries.hasMoreElements()) {
+					JarEntry entry = entries.nextElement();
+
+					if (entry.getName().startsWith(FOLDER) && entry.getName().endsWith(".obama")) {
+						try (InputStream stream = jar.getInputStream(entry)) {
+							String name = entry.getName().substring(entry.getName().lastIndexOf('/') + 1);
+							result.add(new Source(name, new String(ByteStreams.toByteArray(stream), StandardCharsets.UTF_8)));
+						}
+					}
+				}
+			}
+		}
+
+		if (result.isEmpty()) {
+			throw new IOException(String.format("No sources found in '%s'", location));
+		}
+
+		return result;
+	}
+
+	/**
+	 * Source code with the file name it is compiled as
+	 */
+	public static class Source {
+		private final String fileName;
+
+		private final String content;
+
+		public Source(String fileName, String content) {
+			this.fileName = fileName;
+			this.content = content;
+		}
+
+		public String getFileName() {
+			return this.fileName;
+		}
+
+		public String getContent() {
+			return this.content;
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package vb.obama.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import vb.obama.compiler.IdEntry;
+import vb.obama.compiler.SymbolTable;
+import vb.obama.exceptions.SymbolTableException;
+
+/**
+ * Measures one block scope of a method body: opening it, declaring and
+ * looking up a few locals, and closing it again. The table already holds a
+ * number of globals and an open method scope, so the cost per block should
+ * not depend on the number of globals. With a snapshot, the globals are
+ * frozen and the method scope is in a table of its own, like a method body
+ * that is checked on another thread.
+ *
+ * @version 1.1
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SymbolTableBenchmark {
+	/**
+	 * Number of global identifiers
+	 */
+	@Param({"100", "1000", "10000"})
+	public int globals;
+
+	/**
+	 * Nesting depth of the blocks
+	 */
+	@Param({"1", "8"})
+	public int depth;
+
+	/**
+	 * Whether the globals are in a snapshot
+	 */
+	@Param({"false", "true"})
+	public boolean snapshot;
+
+	private SymbolTable table;
+
+	private String[] locals;
+
+	@Setup(Level.Trial)
+	public void setup() throws SymbolTableException {
+		this.table = new SymbolTable();
+		this.table.openScope();
+
+		for (int i = 0; i < this.globals; i++) {
+			this.table.enter("global" + i, new IdEntry());
+		}
+
+		if (this.snapshot) {
+			this.table = new SymbolTable(this.table.snapshot());
+		}
+
+		// Method scope, with locals that hide globals
+		this.table.openScope();
+		this.locals = new String[] { "a", "b", "global0", "i", "global1" };
+	}
+
+	@Benchmark
+	public void scope(Blackhole blackhole) throws SymbolTableException {
+		for (int level = 0; level < this.depth; level++) {
+			this.table.openScope();
+
+			for (String local : this.locals) {
+				this.table.enter(local, new IdEntry());
+			}
+
+			for (String local : this.locals) {
+				blackhole.consume(this.table.retrieve(local));
+			}
+		}
+
+		for (int level = 0; level < this.depth; level++) {
+			this.table.closeScope();
+		}
+	}
+}
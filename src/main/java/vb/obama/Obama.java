@@ -1,15 +1,12 @@
 package vb.obama;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.List;
 
-import org.antlr.runtime.ANTLRInputStream;
-import org.antlr.runtime.CommonTokenStream;
-import org.antlr.runtime.RecognitionException;
 import org.antlr.runtime.tree.CommonTree;
-import org.antlr.runtime.tree.CommonTreeNodeStream;
 import org.antlr.runtime.tree.DOTTreeGenerator;
 import org.antlr.stringtemplate.StringTemplate;
 import org.apache.commons.cli.CommandLine;
@@ -24,20 +21,30 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.apache.logging.log4j.core.config.Configurator;
 
-import vb.obama.antlr.ObamaChecker;
-import vb.obama.antlr.ObamaCodegen;
-import vb.obama.antlr.ObamaLexer;
-import vb.obama.antlr.ObamaParser;
+import com.google.common.collect.Lists;
+
 import vb.obama.antlr.tree.TypedNode;
-import vb.obama.antlr.tree.TypedNodeAdapter;
-import vb.obama.compiler.SymbolTable;
+import vb.obama.compiler.ClassIndex;
+import vb.obama.compiler.CompilationResult;
+import vb.obama.compiler.CompilationStats;
+import vb.obama.compiler.Diagnostic;
+import vb.obama.compiler.ObamaCompiler;
+import vb.obama.compiler.TreeCache;
+import vb.obama.compiler.TypeCache;
+import vb.obama.driver.BatchCompiler;
+import vb.obama.driver.BuildState;
+import vb.obama.driver.CompileTask;
+import vb.obama.driver.CompilerClient;
+import vb.obama.driver.CompilerDaemon;
+import vb.obama.driver.SourceWatcher;
 import vb.obama.util.ExitCodes;
 import vb.obama.util.LoggerSetup;
+import vb.obama.util.ProgramGenerator;
 
 /**
  * Main class. Parses the options and executes them.
  * 
- * @version 1.2
+ * @version 1.22
  */
 public class Obama {
 	/**
@@ -111,6 +118,126 @@ public class Obama {
 		
 		// Input file
 		result.addOption("f", "file", true, "input file");
+		result.addOption("o", "output", true, "output directory (default: working directory)");
+		result.addOption(
+			OptionBuilder
+				.withLongOpt("jar")
+				.hasArg()
+				.withArgName("file")
+				.withDescription("write all classes into a runnable JAR file instead of the output directory")
+				.create()
+		);
+		result.addOption(
+			OptionBuilder
+				.withLongOpt("stored")
+				.withDescription("store the classes in the JAR file uncompressed")
+				.create()
+		);
+		result.addOption(
+			OptionBuilder
+				.withLongOpt("parallel-parse")
+				.withDescription("parse the top level declarations of every input file in parallel")
+				.create()
+		);
+		result.addOption(
+			OptionBuilder
+				.withLongOpt("parallel-check")
+				.withDescription("check the method bodies of every input file in parallel")
+				.create()
+		);
+		result.addOption(
+			OptionBuilder
+				.withLongOpt("compact-tree")
+				.withDescription("check and generate code from a flattened tree, to save memory")
+				.create()
+		);
+		result.addOption(
+			OptionBuilder
+				.withLongOpt("cache")
+				.hasArg()
+				.withArgName("directory")
+				.withDescription("keep checked trees in a directory, so unchanged input files only run codegen")
+				.create()
+		);
+		result.addOption(
+			OptionBuilder
+				.withLongOpt("class-index")
+				.hasArg()
+				.withArgName("file")
+				.withDescription("keep an index of the classes of the JDK and class path in a file, to resolve wildcard imports faster")
+				.create()
+		);
+		
+		// Batch compilation
+		result.addOption(
+			OptionBuilder
+				.withLongOpt("batch")
+				.withDescription("compile all files, directories and glob patterns given as arguments")
+				.create()
+		);
+		result.addOption("j", "jobs", true, "number of parallel jobs in batch mode (default: number of cores)");
+		result.addOption(
+			OptionBuilder
+				.withLongOpt("watch")
+				.hasArg()
+				.withArgName("directory")
+				.withDescription("compile all files in a directory, then recompile files when they change")
+				.create()
+		);
+		result.addOption(
+			OptionBuilder
+				.withLongOpt("incremental")
+				.withDescription("only compile files that changed since the last build")
+				.create()
+		);
+		
+		// Compiler daemon
+		result.addOption(
+			OptionBuilder
+				.withLongOpt("daemon")
+				.withDescription("keep the compiler running and accept compile requests on a loopback port")
+				.create()
+		);
+		result.addOption(
+			OptionBuilder
+				.withLongOpt("connect")
+				.withDescription("send the input files to a running compiler daemon")
+				.create()
+		);
+		result.addOption(
+			OptionBuilder
+				.withLongOpt("shutdown")
+				.withDescription("stop a running compiler daemon")
+				.create()
+		);
+		result.addOption(
+			OptionBuilder
+				.withLongOpt("port")
+				.hasArg()
+				.withArgName("port")
+				.withDescription("loopback port of the compiler daemon (default: " + CompilerDaemon.DEFAULT_PORT + ")")
+				.create()
+		);
+		
+		// Statistics
+		result.addOption(
+			OptionBuilder
+				.withLongOpt("stats")
+				.hasOptionalArg()
+				.withArgName("format")
+				.withDescription("print time and memory spent per phase, as 'text' (default) or 'json'")
+				.create()
+		);
+		
+		// Synthetic programs
+		result.addOption(
+			OptionBuilder
+				.withLongOpt("generate")
+				.hasArg()
+				.withArgName("settings")
+				.withDescription("print a synthetic program, e.g. 'methods=100,classes=5,statements=10,depth=2,cases=3,expression=3,imports=0,seed=0'")
+				.create()
+		);
 		
 		// Visualization
 		result.addOption(
@@ -179,10 +306,41 @@ public class Obama {
 	 * @see Obama.executeBasicOptions
 	 */
 	private static int executeAdvancedOptions(CommandLine options) {
+		// Generating a program does not compile anything
+		if (options.hasOption("generate")) {
+			return Obama.executeGenerate(options);
+		}
+		
+		// A JAR file holds the classes of a single source
+		if (options.hasOption("jar") && (options.hasOption("batch") || options.hasOption("watch") || options.hasOption("connect"))) {
+			System.err.println("Error: Option --jar can only be used to compile a single file.");
+			return ExitCodes.NO_CHOICE;
+		}
+		
+		// Batch and watch mode have their own pipeline
+		if (options.hasOption("batch")) {
+			return Obama.executeBatch(options);
+		} else if (options.hasOption("watch")) {
+			return Obama.executeWatch(options);
+		}
+		
+		// The daemon compiles the files sent by its client
+		if ((options.hasOption("connect") || options.hasOption("shutdown")) && Obama.hasCompilerOptions(options)) {
+			System.err.println("Error: Options --cache, --class-index, --parallel-parse, --compact-tree and --parallel-check configure the compiler, pass them to --daemon instead.");
+			return ExitCodes.NO_CHOICE;
+		}
+		
+		// Daemon and its client
+		if (options.hasOption("daemon")) {
+			return Obama.executeDaemon(options);
+		} else if (options.hasOption("connect") || options.hasOption("shutdown")) {
+			return Obama.executeClient(options);
+		}
+		
 		boolean silent = false;
 		File file = null;
 		List<File> files = null;
-		ANTLRInputStream inputStream = null;
+		CompilationResult result = null;
 		
 		// Load file
 		if (options.hasOption("file")) {
@@ -190,14 +348,6 @@ public class Obama {
 			
 			if (file.exists()) {
 				logger.debug(String.format("Using file '%s' for input", file));
-				
-				try {
-					inputStream = new ANTLRInputStream(new FileInputStream(file));
-					logger.debug(String.format("File '%s' opened for input, %d bytes in size", file, inputStream.size()));
-				} catch (IOException exception) {
-					System.err.println(String.format("Error: Unable to open file '%s' for input.", file));
-					return ExitCodes.FILE_EXCEPTION;
-				}
 			} else {
 				System.err.println(String.format("Error: Input file '%s' not found.", file));
 				return ExitCodes.NO_INPUT_FILE;
@@ -207,54 +357,75 @@ public class Obama {
 			return ExitCodes.NO_INPUT_FILE;
 		}
 		
-		// Now the actual work
-		TypedNode tree = null;
+		if (!Obama.checkStatsFormat(options)) {
+			return ExitCodes.NO_CHOICE;
+		}
+		
+		// Skip the file if nothing changed since the last build to the same
+		// JAR file or output directory
+		BuildState state = null;
+		String hash = null;
+		ByteBuffer content;
+		File target = options.hasOption("jar") ? new File(options.getOptionValue("jar")) : Obama.getOutputDirectory(options);
 		
 		try {
-			// Lexer
-			ObamaLexer lexer = new ObamaLexer(inputStream);
-	        CommonTokenStream tokens = new CommonTokenStream(lexer);
-	        
-	        // Parser
-	        ObamaParser parser = Obama.antlrWorks ? new ObamaParser(tokens) : new ObamaParser(tokens);
-	        parser.setTreeAdaptor(new TypedNodeAdapter());
-	        ObamaParser.program_return parserResult = parser.program();
-			tree = (TypedNode) parserResult.getTree();
-		} catch (RecognitionException e) {
-			System.err.println("Parser failed: " + e);
-			System.exit(ExitCodes.PARSER_FAILED);
+			content = ObamaCompiler.read(file);
+			logger.debug(String.format("File '%s' opened for input, %d bytes in size", file, content.remaining()));
+		} catch (IOException exception) {
+			System.err.println(String.format("Error: Unable to open file '%s' for input.", file));
+			return ExitCodes.FILE_EXCEPTION;
 		}
 		
-		try {
-			// Checker
-			CommonTreeNodeStream checkerNodes = new CommonTreeNodeStream(tree);
-			ObamaChecker checker = Obama.antlrWorks ? new ObamaChecker(checkerNodes) : new ObamaChecker(checkerNodes);
-			checker.setTreeAdaptor(new TypedNodeAdapter());
-			checker.setSymbolTable(new SymbolTable());
-			checker.setInputFile(file.getAbsolutePath());
-			checker.program();
-		} catch (RecognitionException e) {
-			System.err.println("Checker failed: " + e);
-			System.exit(ExitCodes.CHECKER_FAILED);
+		if (options.hasOption("incremental")) {
+			state = Obama.loadBuildState(options);
+			hash = BuildState.hash(content);
+			
+			if (state == null) {
+				return ExitCodes.FILE_EXCEPTION;
+			}
+			
+			if (state.isUpToDate(file, hash, target) && !options.hasOption("ast-tree") && !options.hasOption("dot-tree")) {
+				System.out.println(CompileTask.Result.UP_TO_DATE);
+				return ExitCodes.SUCCESS;
+			}
+		}
+		
+		// Now the actual work
+		result = new ObamaCompiler(Obama.getCompilerOptions(options)).compile(content, file.getAbsolutePath());
+		
+		if (!result.isSuccess()) {
+			for (Diagnostic diagnostic : result.getDiagnostics()) {
+				System.err.println(String.format("%s: %s", file.getName(), diagnostic));
+			}
+			
+			Obama.printStats(options, result.getStats());
+			return result.getExitCode();
 		}
 		
 		try {
-			// Codegen
-			CommonTreeNodeStream codegenNodes = new CommonTreeNodeStream(tree);
-			ObamaCodegen codegen = Obama.antlrWorks ? new ObamaCodegen(codegenNodes) : new ObamaCodegen(codegenNodes);
-			codegen.setTreeAdaptor(new TypedNodeAdapter());
-			codegen.program();
-
 			// Now write it to file
-			files = codegen.getHelper().toClasses(System.getProperty("user.dir"));
+			if (options.hasOption("jar")) {
+				result.toJar(target, options.hasOption("stored"));
+				files = Lists.newArrayList(target);
+			} else {
+				if (!target.isDirectory()) {
+					target.mkdirs();
+				}
+				
+				files = result.toClasses(target.getAbsolutePath());
+			}
+			
+			if (state != null) {
+				state.update(file, hash, result, target, files);
+				state.save();
+			}
 		} catch (IOException e) {
 			System.err.println("Unable to write to disk");
-			System.exit(ExitCodes.CODEGEN_FAILED);
-		} catch (RecognitionException e) {
-			System.err.println("Codegen failed: " + e);
-			System.exit(ExitCodes.CODEGEN_FAILED);
+			return ExitCodes.CODEGEN_FAILED;
 		}
 		
+		TypedNode tree = result.getTree();
+		
 		if (options.hasOption("ast-tree")) { 
 			// Output AST tree to console
 			Obama.printAST(tree);
@@ -280,9 +451,355 @@ public class Obama {
 			System.out.println("Compiling successful");
 		}
 		
+		Obama.printStats(options, result.getStats());
+		return ExitCodes.SUCCESS;
+	}
+	
+	/**
+	 * Execute batch compilation. All files, directories and glob patterns are
+	 * compiled in parallel and the status of each file is reported. Returns an
+	 * exit code.
+	 * 
+	 * @see Obama.executeBasicOptions
+	 */
+	private static int executeBatch(CommandLine options) {
+		List<String> patterns = Lists.newArrayList(options.getArgList());
+		Integer jobs = Obama.getJobs(options);
+		
+		if (options.hasOption("file")) {
+			patterns.addAll(Arrays.asList(options.getOptionValues("file")));
+		}
+		
+		if (patterns.isEmpty()) {
+			System.err.println("Error: No input files.");
+			return ExitCodes.NO_INPUT_FILE;
+		}
+		
+		if (jobs == null || !Obama.checkStatsFormat(options)) {
+			return ExitCodes.NO_CHOICE;
+		}
+		
+		BuildState state = null;
+		
+		if (options.hasOption("incremental")) {
+			state = Obama.loadBuildState(options);
+			
+			if (state == null) {
+				return ExitCodes.FILE_EXCEPTION;
+			}
+		}
+		
+		List<File> files;
+		
+		try {
+			files = BatchCompiler.expand(patterns);
+		} catch (IOException exception) {
+			System.err.println(String.format("Error: Unable to list input files: %s", exception.getMessage()));
+			return ExitCodes.FILE_EXCEPTION;
+		}
+		
+		BatchCompiler compiler = new BatchCompiler(Obama.getOutputDirectory(options), jobs, state, new ObamaCompiler(Obama.getCompilerOptions(options)));
+		List<CompileTask.Result> results = compiler.compile(files);
+		int exitCode = BatchCompiler.report(results, System.out);
+		
+		if (options.hasOption("stats")) {
+			List<CompilationStats> stats = Lists.newArrayList();
+			
+			for (CompileTask.Result result : results) {
+				if (result.getStats() != null) {
+					stats.add(result.getStats());
+				}
+			}
+			
+			Obama.printStats(options, CompilationStats.sum(stats));
+		}
+		
+		if (state != null) {
+			try {
+				state.save();
+			} catch (IOException exception) {
+				System.err.println(String.format("Error: Unable to write build state '%s': %s", state.getFile(), exception.getMessage()));
+				return ExitCodes.FILE_EXCEPTION;
+			}
+		}
+		
+		return exitCode;
+	}
+	
+	/**
+	 * Print a synthetic program to stdout. Returns an exit code.
+	 * 
+	 * @see Obama.executeBasicOptions
+	 */
+	private static int executeGenerate(CommandLine options) {
+		ProgramGenerator generator;
+		
+		try {
+			generator = ProgramGenerator.parse(options.getOptionValue("generate"));
+		} catch (IllegalArgumentException exception) {
+			System.err.println(String.format("Error: Invalid generator settings: %s", exception.getMessage()));
+			return ExitCodes.NO_CHOICE;
+		}
+		
+		System.out.print(generator.generate());
 		return ExitCodes.SUCCESS;
 	}
 	
+	/**
+	 * Compile all files in a directory, then recompile files when they change
+	 * until the process is stopped. Returns an exit code.
+	 * 
+	 * @see Obama.executeBasicOptions
+	 */
+	private static int executeWatch(CommandLine options) {
+		File directory = new File(options.getOptionValue("watch"));
+		Integer jobs = Obama.getJobs(options);
+		BuildState state = null;
+		
+		if (!directory.isDirectory()) {
+			System.err.println(String.format("Error: Directory '%s' does not exist.", directory));
+			return ExitCodes.NO_INPUT_FILE;
+		}
+		
+		if (jobs == null) {
+			return ExitCodes.NO_CHOICE;
+		}
+		
+		if (options.hasOption("incremental")) {
+			state = Obama.loadBuildState(options);
+			
+			if (state == null) {
+				return ExitCodes.FILE_EXCEPTION;
+			}
+		}
+		
+		BatchCompiler compiler = new BatchCompiler(Obama.getOutputDirectory(options), jobs, state, new ObamaCompiler(Obama.getCompilerOptions(options)));
+		
+		try {
+			new SourceWatcher(directory, compiler, state, SourceWatcher.DEFAULT_DEBOUNCE).run(System.out);
+		} catch (IOException exception) {
+			System.err.println(String.format("Error: Unable to watch directory '%s': %s", directory, exception.getMessage()));
+			return ExitCodes.FILE_EXCEPTION;
+		}
+		
+		return ExitCodes.SUCCESS;
+	}
+	
+	/**
+	 * Start the compiler daemon and serve requests until it is shut down.
+	 * Returns an exit code.
+	 * 
+	 * @see Obama.executeBasicOptions
+	 */
+	private static int executeDaemon(CommandLine options) {
+		Integer port = Obama.getPort(options);
+		
+		if (port == null) {
+			return ExitCodes.NO_CHOICE;
+		}
+		
+		try {
+			new CompilerDaemon(port, Runtime.getRuntime().availableProcessors(), CompilerDaemon.getTokenFile(port), new ObamaCompiler(Obama.getCompilerOptions(options))).run();
+		} catch (IOException exception) {
+			System.err.println(String.format("Error: Unable to start daemon on port %d: %s", port, exception.getMessage()));
+			return ExitCodes.DAEMON_FAILED;
+		}
+		
+		return ExitCodes.SUCCESS;
+	}
+	
+	/**
+	 * Send the input files to a running compiler daemon, or stop it. Prints the
+	 * latency of every request. Returns an exit code.
+	 * 
+	 * @see Obama.executeBasicOptions
+	 */
+	private static int executeClient(CommandLine options) {
+		Integer port = Obama.getPort(options);
+		List<String> paths = Lists.newArrayList(options.getArgList());
+		int exitCode = ExitCodes.SUCCESS;
+		
+		if (port == null) {
+			return ExitCodes.NO_CHOICE;
+		}
+		
+		if (options.hasOption("file")) {
+			paths.addAll(Arrays.asList(options.getOptionValues("file")));
+		}
+		
+		if (paths.isEmpty() && !options.hasOption("shutdown")) {
+			System.err.println("Error: No input file.");
+			return ExitCodes.NO_INPUT_FILE;
+		}
+		
+		try (CompilerClient client = new CompilerClient(port, CompilerDaemon.getTokenFile(port))) {
+			for (String path : paths) {
+				CompilerClient.Response response = client.compile(new File(path), Obama.getOutputDirectory(options));
+				
+				for (File out : response.getFiles()) {
+					System.out.println(String.format("Generated file '%s'", out.getName()));
+				}
+				
+				System.out.println(String.format(
+					"%s: %s (compile %.3f ms, round trip %.3f ms)",
+					path,
+					response.getMessage(),
+					response.getServerMicros() / 1000.0,
+					response.getRoundTripMicros() / 1000.0
+				));
+				
+				if (response.getExitCode() != ExitCodes.SUCCESS) {
+					exitCode = response.getExitCode();
+				}
+			}
+			
+			if (options.hasOption("shutdown")) {
+				System.out.println(client.shutdown().getMessage());
+			}
+		} catch (IOException exception) {
+			System.err.println(String.format("Error: Unable to reach daemon on port %d: %s", port, exception.getMessage()));
+			return ExitCodes.DAEMON_FAILED;
+		}
+		
+		return exitCode;
+	}
+	
+	/**
+	 * Return the number of parallel jobs, or null if the option is invalid
+	 * @param options Command line options
+	 * @return Number of jobs, by default the number of cores
+	 */
+	private static Integer getJobs(CommandLine options) {
+		String value = options.getOptionValue("jobs", String.valueOf(Runtime.getRuntime().availableProcessors()));
+		
+		try {
+			int jobs = Integer.parseInt(value);
+			
+			if (jobs > 0) {
+				return jobs;
+			}
+		} catch (NumberFormatException exception) {
+			// Handled below
+		}
+		
+		System.err.println(String.format("Error: Invalid number of jobs '%s'.", value));
+		return null;
+	}
+	
+	/**
+	 * Return the port of the compiler daemon, or null if the option is invalid
+	 * @param options Command line options
+	 * @return Port number
+	 */
+	private static Integer getPort(CommandLine options) {
+		String value = options.getOptionValue("port", String.valueOf(CompilerDaemon.DEFAULT_PORT));
+		
+		try {
+			int port = Integer.parseInt(value);
+			
+			if (port >= 0 && port <= 65535) {
+				return port;
+			}
+		} catch (NumberFormatException exception) {
+			// Handled below
+		}
+		
+		System.err.println(String.format("Error: Invalid port '%s'.", value));
+		return null;
+	}
+	
+	/**
+	 * Check the format of the stats option
+	 * @param options Command line options
+	 * @return True if the format is valid, or the option is not given
+	 */
+	private static boolean checkStatsFormat(CommandLine options) {
+		String format = options.getOptionValue("stats", "text");
+		
+		if (!format.equals("text") && !format.equals("json")) {
+			System.err.println(String.format("Error: Invalid stats format '%s'.", format));
+			return false;
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * Print statistics to stdout, if requested
+	 * @param options Command line options
+	 * @param stats Statistics to print
+	 */
+	private static void printStats(CommandLine options, CompilationStats stats) {
+		if (options.hasOption("stats")) {
+			if (options.getOptionValue("stats", "text").equals("json")) {
+				System.out.println(stats.toJson());
+			} else {
+				System.out.println(stats);
+			}
+		}
+	}
+	
+	/**
+	 * Load the state of incremental builds from the output directory, or
+	 * return null if it cannot be read
+	 * @param options Command line options
+	 * @return Build state
+	 */
+	private static BuildState loadBuildState(CommandLine options) {
+		File file = new File(Obama.getOutputDirectory(options), BuildState.FILE_NAME);
+		
+		try {
+			return BuildState.load(file);
+		} catch (IOException exception) {
+			System.err.println(String.format("Error: Unable to read build state '%s': %s", file, exception.getMessage()));
+			return null;
+		}
+	}
+	
+	/**
+	 * Return the output directory for generated classes
+	 * @param options Command line options
+	 * @return Output directory
+	 */
+	private static File getOutputDirectory(CommandLine options) {
+		return new File(options.getOptionValue("output", System.getProperty("user.dir")));
+	}
+	
+	/**
+	 * Return the options of the compiler, which are the same in every mode.
+	 * Types are resolved through the class index if one is given and it can
+	 * be built, or through the shared type cache otherwise.
+	 * @param options Command line options
+	 * @return Compiler options
+	 */
+	private static ObamaCompiler.Options getCompilerOptions(CommandLine options) {
+		TypeCache types = TypeCache.getShared();
+		
+		if (options.hasOption("class-index")) {
+			try {
+				types = new TypeCache(TypeCache.DEFAULT_SIZE, ClassIndex.open(new File(options.getOptionValue("class-index"))));
+			} catch (IOException exception) {
+				logger.warn(String.format("Unable to build class index: %s", exception.getMessage()));
+			}
+		}
+		
+		return new ObamaCompiler.Options()
+			.setParallelParsing(options.hasOption("parallel-parse"))
+			.setCompactTrees(options.hasOption("compact-tree"))
+			.setCache(options.hasOption("cache") ? new TreeCache(new File(options.getOptionValue("cache"))) : null)
+			.setParallelChecking(options.hasOption("parallel-check"))
+			.setTypes(types);
+	}
+	
+	/**
+	 * Return true if any option of the compiler is given
+	 * @param options Command line options
+	 * @return True if the compiler is configured
+	 */
+	private static boolean hasCompilerOptions(CommandLine options) {
+		return options.hasOption("cache") || options.hasOption("parallel-parse") || options.hasOption("compact-tree") || options.hasOption("parallel-check") || options.hasOption("class-index");
+	}
+	
 	/**
 	 * Print help to stdout
 	 */
@@ -0,0 +1,583 @@
+package vb.obama.antlr;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+
+import org.antlr.runtime.ANTLRStringStream;
+import org.antlr.runtime.CommonToken;
+import org.antlr.runtime.Token;
+import org.antlr.runtime.TokenSource;
+
+import vb.obama.compiler.Diagnostic;
+import vb.obama.compiler.SymbolPool;
+
+/**
+ * Hand-written lexer that produces the same tokens as ObamaLexer, in a
+ * fraction of the time. It scans a character array in plain loops, without
+ * prediction tables, marks or exceptions, and recognizes keywords with a
+ * perfect hash on their first and last character and their length.
+ *
+ * Only well-formed tokens are scanned here. At a token that the generated
+ * lexer would reject or that needs more lookahead, like an unterminated
+ * string literal or a stray character, this lexer lets ObamaLexer scan that
+ * one token from the same position. Tokens and diagnostics are therefore
+ * exactly those of ObamaLexer, also for invalid input.
+ *
+ * Identifiers are looked up in a table of their own before the symbol pool,
+ * so a repeated identifier costs no string. Like with the generated lexer,
+ * other tokens only get a text of their own when it is pooled, and take it
+ * from the input otherwise.
+ *
+ * @version 1.0
+ * @see vb.obama.antlr.ObamaLexer
+ */
+public class FastLexer implements TokenSource {
+	/**
+	 * Keywords, indexed by their hash
+	 */
+	private static final String[] KEYWORDS = new String[64];
+
+	/**
+	 * Token types of the keywords, indexed by their hash
+	 */
+	private static final int[] KEYWORD_TYPES = new int[64];
+
+	/**
+	 * Texts of the tokens with a fixed text, indexed by token type
+	 */
+	private static final String[] TEXTS = new String[ObamaParser.tokenNames.length];
+
+	/**
+	 * Token types of single characters, zero if the character does not start
+	 * an operator or punctuation token
+	 */
+	private static final int[] SINGLE_TYPES = new int[128];
+
+	static {
+		FastLexer.addKeyword("class", ObamaLexer.CLASS);
+		FastLexer.addKeyword("self", ObamaLexer.THIS);
+		FastLexer.addKeyword("global", ObamaLexer.GLOBAL);
+		FastLexer.addKeyword("builtin", ObamaLexer.BUILTIN);
+		FastLexer.addKeyword("new", ObamaLexer.NEW);
+		FastLexer.addKeyword("break", ObamaLexer.BREAK);
+		FastLexer.addKeyword("default", ObamaLexer.DEFAULT);
+		FastLexer.addKeyword("return", ObamaLexer.RETURN);
+		FastLexer.addKeyword("if", ObamaLexer.IF);
+		FastLexer.addKeyword("else", ObamaLexer.ELSE);
+		FastLexer.addKeyword("for", ObamaLexer.FOR);
+		FastLexer.addKeyword("foreach", ObamaLexer.FOREACH);
+		FastLexer.addKeyword("while", ObamaLexer.WHILE);
+		FastLexer.addKeyword("switch", ObamaLexer.SWITCH);
+		FastLexer.addKeyword("case", ObamaLexer.CASE);
+		FastLexer.addKeyword("const", ObamaLexer.CONST);
+		FastLexer.addKeyword("void", ObamaLexer.VOID);
+		FastLexer.addKeyword("int", ObamaLexer.INT);
+		FastLexer.addKeyword("bool", ObamaLexer.BOOL);
+		FastLexer.addKeyword("char", ObamaLexer.CHAR);
+		FastLexer.addKeyword("YES", ObamaLexer.YES);
+		FastLexer.addKeyword("NO", ObamaLexer.NO);
+
+		FastLexer.addSingle(';', ObamaLexer.SEMICOLON);
+		FastLexer.addSingle(':', ObamaLexer.COLON);
+		FastLexer.addSingle('{', ObamaLexer.LBRACKET);
+		FastLexer.addSingle('}', ObamaLexer.RBRACKET);
+		FastLexer.addSingle('(', ObamaLexer.LPAREN);
+		FastLexer.addSingle(')', ObamaLexer.RPAREN);
+		FastLexer.addSingle('[', ObamaLexer.LBLOCK);
+		FastLexer.addSingle(']', ObamaLexer.RBLOCK);
+		FastLexer.addSingle(',', ObamaLexer.COMMA);
+		FastLexer.addSingle('.', ObamaLexer.PERIOD);
+		FastLexer.addSingle('"', ObamaLexer.DQUOT);
+		FastLexer.addSingle('\\', ObamaLexer.ESC);
+		FastLexer.addSingle('~', ObamaLexer.TILDE);
+		FastLexer.addSingle('+', ObamaLexer.PLUS);
+		FastLexer.addSingle('-', ObamaLexer.MIN);
+		FastLexer.addSingle('*', ObamaLexer.MULT);
+		FastLexer.addSingle('%', ObamaLexer.MOD);
+		FastLexer.addSingle('?', ObamaLexer.QUESTION);
+
+		// Start of longer tokens, scanned on their own
+		FastLexer.addSingle('/', ObamaLexer.DIV);
+		FastLexer.addSingle('@', ObamaLexer.AT);
+		FastLexer.addSingle('\'', ObamaLexer.SQUOT);
+		FastLexer.addSingle('&', ObamaLexer.B_AND);
+		FastLexer.addSingle('|', ObamaLexer.B_OR);
+		FastLexer.addSingle('=', ObamaLexer.ASSIGN);
+		FastLexer.addSingle('!', ObamaLexer.NOT);
+		FastLexer.addSingle('>', ObamaLexer.GT);
+		FastLexer.addSingle('<', ObamaLexer.LT);
+
+		TEXTS[ObamaLexer.L_AND] = "&&";
+		TEXTS[ObamaLexer.L_OR] = "||";
+		TEXTS[ObamaLexer.EQ] = "==";
+		TEXTS[ObamaLexer.NEQ] = "!=";
+		TEXTS[ObamaLexer.GTEQ] = ">=";
+		TEXTS[ObamaLexer.LTEQ] = "<=";
+		TEXTS[ObamaLexer.IMPORT] = "#import";
+	}
+
+	/**
+	 * Source characters
+	 */
+	private final char[] data;
+
+	/**
+	 * Number of source characters
+	 */
+	private final int n;
+
+	/**
+	 * Name of the source, may be null
+	 */
+	private final String name;
+
+	/**
+	 * Index of the next character
+	 */
+	private int p = 0;
+
+	/**
+	 * Line of the next character, starting at 1
+	 */
+	private int line = 1;
+
+	/**
+	 * Index of the first character of the current line
+	 */
+	private int lineStart = 0;
+
+	/**
+	 * Collects errors of the generated lexer, if set
+	 */
+	private List<Diagnostic> diagnostics = null;
+
+	/**
+	 * Pool to intern token texts in, if set
+	 */
+	private SymbolPool symbols = null;
+
+	/**
+	 * Stream over the source characters. Tokens without a text take it from
+	 * here on demand, like those of the generated lexer.
+	 */
+	private final ANTLRStringStream input;
+
+	/**
+	 * Generated lexer for the tokens this lexer does not scan, created on
+	 * first use
+	 */
+	private ObamaLexer fallback = null;
+
+	/**
+	 * Identifiers seen so far, in an open addressing table
+	 */
+	private String[] identifiers = new String[256];
+
+	/**
+	 * Number of identifiers in the table
+	 */
+	private int identifierCount = 0;
+
+	/**
+	 * Construct a lexer over a string
+	 *
+	 * @param source Source code
+	 * @requires source != null
+	 */
+	public FastLexer(String source) {
+		this(source.toCharArray(), source.length(), null);
+	}
+
+	/**
+	 * Construct a lexer over characters. The array is not copied, so it must
+	 * not change while lexing.
+	 *
+	 * @param data Source characters
+	 * @param n Number of characters to use
+	 * @param name Name of the source, may be null
+	 * @requires data != null && n >= 0 && n <= data.length
+	 */
+	public FastLexer(char[] data, int n, String name) {
+		checkNotNull(data);
+		checkArgument(n >= 0 && n <= data.length, "Invalid length %s", n);
+
+		this.data = data;
+		this.n = n;
+		this.name = name;
+		this.input = new ANTLRStringStream(data, n);
+		this.input.name = name;
+	}
+
+	private static void addKeyword(String keyword, int type) {
+		int hash = FastLexer.hash(keyword.charAt(0), keyword.charAt(keyword.length() - 1), keyword.length());
+
+		// The hash is perfect for these keywords, see hash
+		checkArgument(KEYWORDS[hash] == null, "Keyword '%s' collides with '%s'", keyword, KEYWORDS[hash]);
+
+		KEYWORDS[hash] = keyword;
+		KEYWORD_TYPES[hash] = type;
+		TEXTS[type] = keyword;
+	}
+
+	private static void addSingle(char c, int type) {
+		SINGLE_TYPES[c] = type;
+		TEXTS[type] = String.valueOf(c);
+	}
+
+	/**
+	 * Hash of a keyword. It has no collisions between keywords, so a word is a
+	 * keyword if and only if it equals the keyword with its hash.
+	 */
+	private static int hash(int first, int last, int length) {
+		return (first + (last << 4) + (length << 1)) & 63;
+	}
+
+	public void setDiagnostics(List<Diagnostic> diagnostics) {
+		this.diagnostics = diagnostics;
+
+		if (this.fallback != null) {
+			this.fallback.setDiagnostics(diagnostics);
+		}
+	}
+
+	public void setSymbolPool(SymbolPool symbols) {
+		this.symbols = symbols;
+
+		if (this.fallback != null) {
+			this.fallback.setSymbolPool(symbols);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getSourceName() {
+		return this.name;
+	}
+
+	/**
+	 * Return the next token. At the end of the input, an EOF token is returned
+	 * on every call.
+	 */
+	@Override
+	public Token nextToken() {
+		char[] data = this.data;
+		int n = this.n;
+		int start = this.p;
+
+		if (start >= n) {
+			return this.createToken(Token.EOF, null, start, start);
+		}
+
+		char c = data[start];
+		int i = start + 1;
+
+		if (FastLexer.isLetter(c)) {
+			int hash = c;
+
+			while (i < n && FastLexer.isAlphanumeric(data[i])) {
+				hash = 31 * hash + data[i++];
+			}
+
+			return this.identifier(start, i, hash);
+		} else if (c >= '0' && c <= '9') {
+			while (i < n && data[i] >= '0' && data[i] <= '9') {
+				i++;
+			}
+
+			return this.emit(ObamaLexer.INT_LITERAL, start, i, this.intern(start, i));
+		} else if (c == ' ' || c == '\t' || c == '\f' || c == '\r' || c == '\n') {
+			return this.whitespace(start);
+		} else if (c == '#' && this.matches(start, TEXTS[ObamaLexer.IMPORT])) {
+			return this.emit(ObamaLexer.IMPORT, start, start + 7, TEXTS[ObamaLexer.IMPORT]);
+		}
+
+		int type = c < SINGLE_TYPES.length ? SINGLE_TYPES[c] : 0;
+
+		// Invalid character
+		if (type == 0) {
+			return this.fallback(start);
+		}
+
+		int next = i < n ? data[i] : -1;
+
+		switch (c) {
+			case '/':
+				if (next == '*') {
+					return this.comment(start);
+				}
+
+				break;
+			case '@':
+				if (next == '"') {
+					return this.string(start);
+				}
+
+				break;
+			case '\'':
+				if (FastLexer.isAlphanumeric(next)) {
+					if (i + 1 < n && data[i + 1] == '\'') {
+						return this.emit(ObamaLexer.CHAR_LITERAL, start, i + 2, this.intern(start, i + 2));
+					}
+
+					// Left to the lookahead of the generated lexer
+					return this.fallback(start);
+				}
+
+				break;
+			case '&':
+				type = next == '&' ? ObamaLexer.L_AND : type;
+				break;
+			case '|':
+				type = next == '|' ? ObamaLexer.L_OR : type;
+				break;
+			case '=':
+				type = next == '=' ? ObamaLexer.EQ : type;
+				break;
+			case '!':
+				type = next == '=' ? ObamaLexer.NEQ : type;
+				break;
+			case '>':
+				type = next == '=' ? ObamaLexer.GTEQ : type;
+				break;
+			case '<':
+				type = next == '=' ? ObamaLexer.LTEQ : type;
+				break;
+		}
+
+		String text = TEXTS[type];
+		return this.emit(type, start, start + text.length(), text);
+	}
+
+	/**
+	 * Scan white space, which goes to the hidden channel
+	 */
+	private Token whitespace(int start) {
+		char[] data = this.data;
+		int line = this.line;
+		int lineStart = this.lineStart;
+		int i = start;
+
+		CommonToken token = this.createToken(ObamaLexer.WS, null, start, start);
+
+		for (; i < this.n; i++) {
+			char c = data[i];
+
+			if (c == '\n') {
+				line++;
+				lineStart = i + 1;
+			} else if (c != ' ' && c != '\t' && c != '\f' && c != '\r') {
+				break;
+			}
+		}
+
+		token.setStopIndex(i - 1);
+		token.setChannel(Token.HIDDEN_CHANNEL);
+
+		this.p = i;
+		this.line = line;
+		this.lineStart = lineStart;
+
+		return token;
+	}
+
+	/**
+	 * Scan a comment, which goes to the hidden channel. Unterminated comments
+	 * are left to the generated lexer.
+	 */
+	private Token comment(int start) {
+		char[] data = this.data;
+		int line = this.line;
+		int lineStart = this.lineStart;
+
+		for (int i = start + 2; i + 1 < this.n; i++) {
+			char c = data[i];
+
+			if (c == '*' && data[i + 1] == '/') {
+				CommonToken token = this.createToken(ObamaLexer.COMMENT, null, start, i + 1);
+				token.setChannel(Token.HIDDEN_CHANNEL);
+
+				this.p = i + 2;
+				this.line = line;
+				this.lineStart = lineStart;
+
+				return token;
+			} else if (c == '\n') {
+				line++;
+				lineStart = i + 1;
+			}
+		}
+
+		return this.fallback(start);
+	}
+
+	/**
+	 * Scan a string literal. String literals end on the same line, others
+	 * are left to the generated lexer.
+	 */
+	private Token string(int start) {
+		char[] data = this.data;
+
+		for (int i = start + 2; i < this.n; i++) {
+			char c = data[i];
+
+			if (c == '"') {
+				return this.emit(ObamaLexer.STRING_LITERAL, start, i + 1, null);
+			} else if (c == '\n' || c == '\r') {
+				break;
+			}
+		}
+
+		return this.fallback(start);
+	}
+
+	/**
+	 * Return an identifier or keyword token
+	 *
+	 * @param start Index of the first character
+	 * @param end Index after the last character
+	 * @param hash String hash of the characters
+	 */
+	private Token identifier(int start, int end, int hash) {
+		int length = end - start;
+		int keyword = FastLexer.hash(this.data[start], this.data[end - 1], length);
+
+		if (KEYWORDS[keyword] != null && KEYWORDS[keyword].length() == length && this.matches(start, KEYWORDS[keyword])) {
+			return this.emit(KEYWORD_TYPES[keyword], start, end, KEYWORDS[keyword]);
+		}
+
+		String[] table = this.identifiers;
+		int mask = table.length - 1;
+		int slot = hash & mask;
+
+		for (String name = table[slot]; name != null; name = table[slot = (slot + 1) & mask]) {
+			if (name.hashCode() == hash && name.length() == length && this.matches(start, name)) {
+				return this.emit(ObamaLexer.IDENTIFIER, start, end, name);
+			}
+		}
+
+		String name = new String(this.data, start, length);
+
+		if (this.symbols != null) {
+			name = this.symbols.intern(name);
+		}
+
+		table[slot] = name;
+
+		if (++this.identifierCount * 2 > table.length) {
+			this.growIdentifiers();
+		}
+
+		return this.emit(ObamaLexer.IDENTIFIER, start, end, name);
+	}
+
+	private void growIdentifiers() {
+		String[] table = new String[this.identifiers.length * 2];
+		int mask = table.length - 1;
+
+		for (String name : this.identifiers) {
+			if (name != null) {
+				int slot = name.hashCode() & mask;
+
+				while (table[slot] != null) {
+					slot = (slot + 1) & mask;
+				}
+
+				table[slot] = name;
+			}
+		}
+
+		this.identifiers = table;
+	}
+
+	/**
+	 * Return the pooled text of the characters from start to end, or null
+	 * without a pool
+	 */
+	private String intern(int start, int end) {
+		return this.symbols != null ? this.symbols.intern(new String(this.data, start, end - start)) : null;
+	}
+
+	/**
+	 * Return whether the characters at an index equal a string
+	 */
+	private boolean matches(int start, String value) {
+		if (start + value.length() > this.n) {
+			return false;
+		}
+
+		for (int i = 0; i < value.length(); i++) {
+			if (this.data[start + i] != value.charAt(i)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Return a default channel token on a single line and move past it
+	 *
+	 * @param end Index after the last character
+	 */
+	private Token emit(int type, int start, int end, String text) {
+		CommonToken token = this.createToken(type, text, start, end - 1);
+		this.p = end;
+
+		return token;
+	}
+
+	/**
+	 * Create a token that starts at the next character
+	 *
+	 * @param text Text of the token, or null to take it from the input
+	 */
+	private CommonToken createToken(int type, String text, int start, int stop) {
+		CommonToken token = new CommonToken(this.input, type, Token.DEFAULT_CHANNEL, start, stop);
+		token.setLine(this.line);
+		token.setCharPositionInLine(start - this.lineStart);
+
+		if (text != null) {
+			token.setText(text);
+		}
+
+		return token;
+	}
+
+	/**
+	 * Let the generated lexer scan the token at an index, then continue after
+	 * it. The generated lexer skips invalid characters and reports them, so
+	 * its token may start later.
+	 */
+	private Token fallback(int start) {
+		if (this.fallback == null) {
+			this.fallback = new ObamaLexer(this.input);
+			this.fallback.setDiagnostics(this.diagnostics);
+			this.fallback.setSymbolPool(this.symbols);
+		}
+
+		ANTLRStringStream input = this.input;
+		input.seek(start);
+		input.setLine(this.line);
+		input.setCharPositionInLine(start - this.lineStart);
+
+		Token token = this.fallback.nextToken();
+
+		this.p = input.index();
+		this.line = input.getLine();
+		this.lineStart = this.p - input.getCharPositionInLine();
+
+		return token;
+	}
+
+	private static boolean isLetter(int c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+	}
+
+	private static boolean isAlphanumeric(int c) {
+		return FastLexer.isLetter(c) || (c >= '0' && c <= '9');
+	}
+}
@@ -53,6 +53,56 @@ tokens {
 
 @header{
 	package vb.obama.antlr;
+	
+	import java.util.List;
+	
+	import vb.obama.compiler.Diagnostic;
+	import vb.obama.compiler.SymbolPool;
+}
+
+@members {
+	/**
+	 * Collects errors instead of printing them, if set
+	 */
+	private List<Diagnostic> diagnostics = null;
+	
+	/**
+	 * Pool to intern token texts in, if set
+	 */
+	private SymbolPool symbols = null;
+	
+	public void setDiagnostics(List<Diagnostic> diagnostics) {
+		this.diagnostics = diagnostics;
+	}
+	
+	public void setSymbolPool(SymbolPool symbols) {
+		this.symbols = symbols;
+	}
+	
+	/**
+	 * Give tokens their pooled text. Tokens without text would otherwise copy
+	 * it from the input on every call to getText. String literals are rarely
+	 * repeated, so they are left out.
+	 */
+	@Override
+	public Token emit() {
+		Token token = super.emit();
+		
+		if (this.symbols != null && token.getChannel() == DEFAULT_TOKEN_CHANNEL && token.getType() != STRING_LITERAL) {
+			token.setText(this.symbols.intern(token.getText()));
+		}
+		
+		return token;
+	}
+	
+	@Override
+	public void displayRecognitionError(String[] tokenNames, RecognitionException e) {
+		if (this.diagnostics == null) {
+			super.displayRecognitionError(tokenNames, e);
+		} else {
+			this.diagnostics.add(new Diagnostic(Diagnostic.Phase.LEXER, e.line, e.charPositionInLine, this.getErrorMessage(e, tokenNames)));
+		}
+	}
 }
 
 // Interpunction
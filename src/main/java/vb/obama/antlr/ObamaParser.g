@@ -15,8 +15,11 @@ options {
     import org.apache.logging.log4j.Logger;
 	
 	import vb.obama.antlr.tree.*;
+	import vb.obama.compiler.Diagnostic;
+	import vb.obama.compiler.SymbolPool;
 	import vb.obama.util.*;
 	import java.lang.reflect.*;
+	import java.util.List;
 	
 	import static com.google.common.base.Preconditions.*;
 }
@@ -28,14 +31,43 @@ options {
 	private static final Logger logger = LogManager.getLogger(ObamaParser.class.getName());
 	
 	/**
-	 * Only allow wild import of package names in import statements
+	 * Prevent return statements in right hand side
 	 */
-	private boolean isImport = false;
+	private boolean isAssignment = false;
 	
 	/**
-	 * Prevent return statements in right hand side
+	 * Collects errors instead of printing them, if set
 	 */
-	private boolean isAssignment = false;
+	private List<Diagnostic> diagnostics = null;
+	
+	/**
+	 * Pool to intern package paths and types in, if set
+	 */
+	private SymbolPool symbols = null;
+	
+	public void setDiagnostics(List<Diagnostic> diagnostics) {
+		this.diagnostics = diagnostics;
+	}
+	
+	public void setSymbolPool(SymbolPool symbols) {
+		this.symbols = symbols;
+	}
+	
+	/**
+	 * Return the pooled copy of a text, or the text itself without pool
+	 */
+	private String intern(String text) {
+		return this.symbols != null ? this.symbols.intern(text) : text;
+	}
+	
+	@Override
+	public void displayRecognitionError(String[] tokenNames, RecognitionException e) {
+		if (this.diagnostics == null) {
+			super.displayRecognitionError(tokenNames, e);
+		} else {
+			this.diagnostics.add(new Diagnostic(Diagnostic.Phase.PARSER, e.line, e.charPositionInLine, this.getErrorMessage(e, tokenNames)));
+		}
+	}
 }
 
 // Start
@@ -43,10 +75,16 @@ program
 	:	imports* contents* EOF -> ^(PROGRAM imports* contents*)
 	;
 
+// Part of a program, used to parse top level declarations in parallel. Returns
+// the declarations as a flat list.
+program_chunk
+	:	imports* contents* EOF -> imports* contents*
+	;
+
 // Imports
 imports
-	:	{isImport = true;} IMPORT LT node=package_path GT {isImport = false;}
-		-> ^(IMPORT PACKAGE[$node.path])
+	:	IMPORT LT node=import_path GT
+		-> ^(IMPORT PACKAGE[$node.start, $node.path])
 	;
 
 // Rest of file
@@ -130,8 +168,14 @@ method_contents
 	|	SEMICOLON!
 	;
 
+// Declarations and expressions can both start with a package path. The
+// decision scans the path and looks at the token after it, which is an
+// identifier or bracket for declarations only.
 method_command
-	:	(type IDENTIFIER) => var_declaration -> var_declaration
+options {
+	k = *;
+}
+	:	var_declaration
 	|	expression
 	|	RETURN expression -> ^(RETURN expression)
 	;
@@ -141,10 +185,15 @@ method_call
 		-> ^(METHOD_CALL field method_call_inner+)
 	;
 	
+// An identifier followed by a colon is always a named parameter, never a
+// parameter without value followed by an unnamed one
 method_call_inner
-	:	(IDENTIFIER COLON) => IDENTIFIER COLON expression -> ^(PARAMETER_NAMED IDENTIFIER expression)
+	:	IDENTIFIER (
+			options { greedy = true; } :
+			COLON expression -> ^(PARAMETER_NAMED IDENTIFIER expression)
+		|	-> ^(PARAMETER_NONE IDENTIFIER)
+		)
 	|	COLON expression -> ^(PARAMETER_UNNAMED expression)
-	|	IDENTIFIER -> ^(PARAMETER_NONE IDENTIFIER)
 	;
 
 // Var declaration
@@ -167,8 +216,8 @@ statement_call
 	;
 
 if_statement
-	:	if_statement_if ((ELSE IF) => if_statement_else_if)* if_statement_else?
-		-> ^(IF_ELSE_IF_ELSE if_statement_if if_statement_else_if* if_statement_else?)
+	:	if_statement_if if_statement_else?
+		-> ^(IF_ELSE_IF_ELSE if_statement_if if_statement_else?)
 	;
 
 if_statement_if
@@ -176,14 +225,14 @@ if_statement_if
 		-> ^(IF expression statements_end)
 	;
 
-if_statement_else_if
-	:	ELSE IF LPAREN expression RPAREN statements_end
-		-> ^(ELSE_IF expression statements_end)
-	;
-
+// Returns the else if branches and the else branch as a flat list
 if_statement_else
-	:	ELSE statements_end 
-		-> ^(ELSE statements_end)
+	:	ELSE (
+			IF LPAREN expression RPAREN statements_end if_statement_else?
+			-> ^(ELSE_IF expression statements_end) if_statement_else?
+		|	statements_end 
+			-> ^(ELSE statements_end)
+		)
 	;
 
 while_statement
@@ -203,7 +252,7 @@ switch_statement
 
 switch_statement_case
 	:	CASE literal COLON method_contents* BREAK SEMICOLON 
-		-> ^(CASE[$literal.text] ^(SCOPE method_contents*))
+		-> ^(CASE[$literal.start, $literal.tree.getText()] ^(SCOPE method_contents*))
 	;
 
 switch_statement_default
@@ -226,11 +275,10 @@ assign_expression
 	;
 	
 inline_if_expression
-	:	(logical_or_expression QUESTION) => (
-			logical_or_expression QUESTION logical_or_expression COLON logical_or_expression
-			-> ^(IF_INLINE logical_or_expression logical_or_expression logical_or_expression)
-		)
-	|	logical_or_expression
+	:	(condition=logical_or_expression -> $condition) (
+			QUESTION a=logical_or_expression COLON b=logical_or_expression
+			-> ^(IF_INLINE $condition $a $b)
+		)?
 	;
 
 logical_or_expression
@@ -254,10 +302,7 @@ relational_expression
 	;
 
 low_arithmetic_expression
-	:	high_arithmetic_expression (
-			(PLUS) => (PLUS^ high_arithmetic_expression) |
-			(MIN) => (MIN^ high_arithmetic_expression)
-		)*
+	:	high_arithmetic_expression ((PLUS^ | MIN^) high_arithmetic_expression)*
 	;
 
 high_arithmetic_expression
@@ -280,7 +325,7 @@ field
 	:	BUILTIN
 	|	THIS
 	|	GLOBAL
-	|	node=package_path -> FIELD[$node.path]
+	|	node=package_path -> FIELD[$node.start, $node.path]
 	;
 
 literal
@@ -295,27 +340,43 @@ literal
 
 // Package names and paths
 package_path returns [String path = ""]
-	:	IDENTIFIER 
+@after {
+	$path = this.intern($path);
+}
+	:	first=IDENTIFIER 
 		{ 
-			$path = $IDENTIFIER.text; 
+			$path = $first.text; 
 		} 
 		(
-			PERIOD part=package_name
+			PERIOD next=IDENTIFIER
 			{ 
-				$path = $path + "." + $part.path;
+				$path = $path + "." + $next.text;
 			}
-		)?
+		)*
 	;
 
-package_name returns [String path = ""]
-	:	{isImport}? MULT 
-		{ 
-			$path = "*"; 
-		}
-	|	part=package_path
+// Like a package path, but may end with a wildcard
+import_path returns [String path = ""]
+@init {
+	boolean wildcard = false;
+}
+	:	first=IDENTIFIER 
 		{ 
-			$path = $part.path;
-		}
+			$path = $first.text; 
+		} 
+		(
+			PERIOD {!wildcard}? (
+				next=IDENTIFIER
+				{ 
+					$path = $path + "." + $next.text;
+				}
+			|	MULT
+				{
+					$path = $path + ".*";
+					wildcard = true;
+				}
+			)
+		)*
 	;
 
 // Types
@@ -327,10 +388,10 @@ type returns [String type = ""]
 		(
 			array_declare
 			{
-				$type = $node.type + "+";
+				$type = this.intern($node.type + "+");
 			}
 		)*
-		-> ^(TYPE[$type])
+		-> ^(TYPE[$node.start, $type])
 	;
 	
 sub_type returns [String type]
@@ -0,0 +1,428 @@
+package vb.obama.antlr.stream;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.antlr.runtime.CharStream;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Character stream over UTF-8 encoded bytes. Characters are decoded one at a
+ * time as the lexer advances, so the source is never copied to the heap. Use
+ * it with a memory-mapped file to start lexing large sources immediately.
+ *
+ * Indexes are byte offsets rather than character offsets. ANTLR only uses
+ * them to mark token boundaries and to pass them back to substring, so tokens
+ * get the same text as with ANTLRStringStream. Characters outside the Basic
+ * Multilingual Plane are returned as two surrogates, like in a Java string.
+ * Malformed bytes are decoded as U+FFFD, one byte at a time.
+ *
+ * @version 1.0
+ */
+public class ByteBufferCharStream implements CharStream {
+	/**
+	 * Character returned for malformed input
+	 */
+	private static final int REPLACEMENT = 0xFFFD;
+
+	/**
+	 * Source bytes, starting at index zero
+	 */
+	private final ByteBuffer buffer;
+
+	/**
+	 * Number of source bytes
+	 */
+	private final int n;
+
+	/**
+	 * Name of the source, e.g. a file name
+	 */
+	private final String name;
+
+	/**
+	 * Byte offset of the next character
+	 */
+	private int p = 0;
+
+	/**
+	 * Line number of the next character, starting at 1
+	 */
+	private int line = 1;
+
+	/**
+	 * Position of the next character in its line, starting at 0
+	 */
+	private int charPositionInLine = 0;
+
+	/**
+	 * Saved offset, line and position in line, indexed by marker minus one.
+	 * Entries are reused.
+	 */
+	private final List<int[]> markers = Lists.newArrayList();
+
+	/**
+	 * Number of active markers
+	 */
+	private int markDepth = 0;
+
+	/**
+	 * Marker of the last call to mark
+	 */
+	private int lastMarker;
+
+	/**
+	 * Construct a stream over the remaining bytes of a buffer. The position of
+	 * the buffer is not changed.
+	 *
+	 * @param buffer UTF-8 encoded source
+	 * @param name Name of the source, may be null
+	 * @requires buffer != null
+	 */
+	public ByteBufferCharStream(ByteBuffer buffer, String name) {
+		this.buffer = checkNotNull(buffer).slice();
+		this.n = this.buffer.remaining();
+		this.name = name;
+	}
+
+	/**
+	 * Map a file into memory read-only. The mapping stays valid after the
+	 * file is closed.
+	 *
+	 * @param file Input file
+	 * @return Mapped file content
+	 * @throws IOException If the file cannot be opened or mapped
+	 * @requires file != null
+	 */
+	public static MappedByteBuffer map(File file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void consume() {
+		if (this.p < this.n) {
+			int b = this.buffer.get(this.p);
+
+			if (b == '\n') {
+				this.line++;
+				this.charPositionInLine = 0;
+			} else {
+				this.charPositionInLine++;
+			}
+
+			this.p += this.width(this.p);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int LA(int i) {
+		if (i == 0) {
+			return 0;
+		}
+
+		int offset = this.p;
+
+		if (i > 0) {
+			for (int j = 1; j < i && offset < this.n; j++) {
+				offset += this.width(offset);
+			}
+		} else {
+			for (int j = 0; j > i; j--) {
+				if (offset == 0) {
+					return CharStream.EOF;
+				}
+
+				offset = this.previous(offset);
+			}
+		}
+
+		if (offset >= this.n) {
+			return CharStream.EOF;
+		}
+
+		return this.decode(offset);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int LT(int i) {
+		return this.LA(i);
+	}
+
+	/**
+	 * Return the byte offset of the next character
+	 */
+	@Override
+	public int index() {
+		return this.p;
+	}
+
+	/**
+	 * Return the number of bytes
+	 */
+	@Override
+	public int size() {
+		return this.n;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int mark() {
+		if (this.markDepth >= this.markers.size()) {
+			this.markers.add(new int[3]);
+		}
+
+		int[] state = this.markers.get(this.markDepth);
+		state[0] = this.p;
+		state[1] = this.line;
+		state[2] = this.charPositionInLine;
+
+		this.markDepth++;
+		this.lastMarker = this.markDepth;
+
+		return this.markDepth;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void rewind(int marker) {
+		int[] state = this.markers.get(marker - 1);
+
+		this.seek(state[0]);
+		this.line = state[1];
+		this.charPositionInLine = state[2];
+		this.release(marker);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void rewind() {
+		this.rewind(this.lastMarker);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void release(int marker) {
+		this.markDepth = marker - 1;
+	}
+
+	/**
+	 * Move to a byte offset. Moving backwards does not restore the line
+	 * number; only rewind does.
+	 */
+	@Override
+	public void seek(int index) {
+		if (index <= this.p) {
+			this.p = index;
+			return;
+		}
+
+		while (this.p < index) {
+			this.consume();
+		}
+	}
+
+	/**
+	 * Decode the bytes from start to stop, both inclusive
+	 */
+	@Override
+	public String substring(int start, int stop) {
+		int length = Math.min(stop, this.n - 1) - start + 1;
+
+		if (length <= 0) {
+			return "";
+		}
+
+		byte[] bytes = new byte[length];
+
+		for (int i = 0; i < length; i++) {
+			bytes[i] = this.buffer.get(start + i);
+		}
+
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getLine() {
+		return this.line;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setLine(int line) {
+		this.line = line;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getCharPositionInLine() {
+		return this.charPositionInLine;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void setCharPositionInLine(int pos) {
+		this.charPositionInLine = pos;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getSourceName() {
+		return this.name;
+	}
+
+	/**
+	 * Return the number of bytes of the UTF-8 sequence at an offset, or 1 if
+	 * the sequence is malformed
+	 */
+	private int sequence(int offset) {
+		int b = this.buffer.get(offset) & 0xFF;
+		int length;
+
+		if (b < 0x80) {
+			return 1;
+		} else if (b >= 0xC2 && b < 0xE0) {
+			length = 2;
+		} else if (b >= 0xE0 && b < 0xF0) {
+			length = 3;
+		} else if (b >= 0xF0 && b < 0xF5) {
+			length = 4;
+		} else {
+			return 1;
+		}
+
+		if (offset + length > this.n) {
+			return 1;
+		}
+
+		for (int i = 1; i < length; i++) {
+			if (!this.isContinuation(offset + i)) {
+				return 1;
+			}
+		}
+
+		return length;
+	}
+
+	/**
+	 * Return the number of bytes of the character at an offset. Characters
+	 * outside the Basic Multilingual Plane are split in two surrogates of two
+	 * bytes each, like a Java string does.
+	 */
+	private int width(int offset) {
+		if (this.isLowSurrogate(offset)) {
+			return 2;
+		}
+
+		int length = this.sequence(offset);
+
+		return length == 4 ? 2 : length;
+	}
+
+	/**
+	 * Decode the character at an offset
+	 */
+	private int decode(int offset) {
+		int b = this.buffer.get(offset);
+
+		// Fast path for ASCII
+		if (b >= 0) {
+			return b;
+		}
+
+		if (this.isLowSurrogate(offset)) {
+			return Character.lowSurrogate(this.codePoint(offset - 2, 4));
+		}
+
+		int length = this.sequence(offset);
+
+		if (length == 1) {
+			return REPLACEMENT;
+		} else if (length == 4) {
+			return Character.highSurrogate(this.codePoint(offset, 4));
+		}
+
+		return this.codePoint(offset, length);
+	}
+
+	/**
+	 * Decode a well-formed sequence
+	 */
+	private int codePoint(int offset, int length) {
+		int result = this.buffer.get(offset) & (0xFF >> (length + 1));
+
+		for (int i = 1; i < length; i++) {
+			result = (result << 6) | (this.buffer.get(offset + i) & 0x3F);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Return the offset of the character before an offset. Longer sequences
+	 * are tried first, so a continuation byte is only a character on its own
+	 * if it is not part of a well-formed sequence.
+	 * @requires offset > 0
+	 */
+	private int previous(int offset) {
+		for (int length = 3; length > 1; length--) {
+			int start = offset - length;
+
+			if (start >= 0 && this.width(start) == length && (!this.isContinuation(start) || this.isLowSurrogate(start))) {
+				return start;
+			}
+		}
+
+		return offset - 1;
+	}
+
+	private boolean isContinuation(int offset) {
+		return (this.buffer.get(offset) & 0xC0) == 0x80;
+	}
+
+	/**
+	 * Return whether an offset is the third byte of a four byte sequence,
+	 * where the low surrogate starts
+	 */
+	private boolean isLowSurrogate(int offset) {
+		return offset >= 2 && this.isContinuation(offset) && this.sequence(offset - 2) == 4;
+	}
+}
@@ -0,0 +1,352 @@
+package vb.obama.antlr.stream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.NoSuchElementException;
+
+import org.antlr.runtime.Token;
+import org.antlr.runtime.TokenSource;
+import org.antlr.runtime.TokenStream;
+
+import com.google.common.primitives.Ints;
+
+/**
+ * Token stream that only buffers the tokens the parser can still look at.
+ * Tokens are pulled from the lexer on demand and kept in a ring buffer, which
+ * only grows while a syntactic predicate holds a marker. Off-channel tokens,
+ * like white space and comments, are dropped right away.
+ *
+ * Unlike CommonTokenStream, memory use does not grow with the size of the
+ * source. Token indexes count on-channel tokens only, and tokens that were
+ * dropped from the buffer can no longer be retrieved or printed.
+ *
+ * @version 1.0
+ */
+public class StreamingTokenStream implements TokenStream {
+	/**
+	 * Initial capacity of the buffer, a power of two
+	 */
+	private static final int CAPACITY = 64;
+
+	/**
+	 * Number of consumed tokens kept for error reporting, which looks at the
+	 * previous token
+	 */
+	private static final int LOOK_BEHIND = 2;
+
+	/**
+	 * Source of the tokens
+	 */
+	private final TokenSource source;
+
+	/**
+	 * Channel of the tokens to keep
+	 */
+	private final int channel;
+
+	/**
+	 * Ring buffer of tokens, indexed by token index modulo its length
+	 */
+	private Token[] buffer = new Token[CAPACITY];
+
+	/**
+	 * Index of the oldest buffered token
+	 */
+	private int start = 0;
+
+	/**
+	 * Index after the newest buffered token
+	 */
+	private int end = 0;
+
+	/**
+	 * Index of the current token
+	 */
+	private int p = 0;
+
+	/**
+	 * True once the EOF token is buffered
+	 */
+	private boolean eof = false;
+
+	/**
+	 * Indexes saved by mark, indexed by marker minus one
+	 */
+	private int[] markers = new int[8];
+
+	/**
+	 * Number of active markers
+	 */
+	private int markDepth = 0;
+
+	/**
+	 * Marker of the last call to mark
+	 */
+	private int lastMarker;
+
+	/**
+	 * Construct a stream of the tokens on the default channel
+	 *
+	 * @param source Token source, usually a lexer
+	 * @requires source != null
+	 */
+	public StreamingTokenStream(TokenSource source) {
+		this(source, Token.DEFAULT_CHANNEL);
+	}
+
+	/**
+	 * Construct a stream of the tokens on a channel
+	 *
+	 * @param source Token source, usually a lexer
+	 * @param channel Channel of the tokens to keep
+	 * @requires source != null
+	 */
+	public StreamingTokenStream(TokenSource source, int channel) {
+		this.source = checkNotNull(source);
+		this.channel = channel;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public Token LT(int k) {
+		if (k == 0) {
+			return null;
+		} else if (k < 0) {
+			int index = this.p + k;
+			return index >= this.start ? this.buffer[index & (this.buffer.length - 1)] : null;
+		}
+
+		int index = this.p + k - 1;
+		this.fill(index);
+
+		// Past the end, keep returning EOF
+		if (index >= this.end) {
+			index = this.end - 1;
+		}
+
+		return this.buffer[index & (this.buffer.length - 1)];
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int LA(int i) {
+		Token token = this.LT(i);
+		return token != null ? token.getType() : Token.INVALID_TOKEN_TYPE;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void consume() {
+		if (this.LA(1) != Token.EOF) {
+			this.p++;
+		}
+	}
+
+	/**
+	 * Return a buffered token
+	 *
+	 * @throws NoSuchElementException If the token was dropped or not read yet
+	 */
+	@Override
+	public Token get(int i) {
+		if (i < this.start || i >= this.end) {
+			throw new NoSuchElementException(String.format("Token %d is not buffered", i));
+		}
+
+		return this.buffer[i & (this.buffer.length - 1)];
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int index() {
+		return this.p;
+	}
+
+	/**
+	 * Return the number of tokens read so far
+	 */
+	@Override
+	public int size() {
+		return this.end;
+	}
+
+	/**
+	 * Return the index of the last token read so far
+	 */
+	@Override
+	public int range() {
+		return this.end - 1;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int mark() {
+		if (this.markDepth == this.markers.length) {
+			this.markers = Ints.ensureCapacity(this.markers, this.markDepth + 1, this.markDepth);
+		}
+
+		this.markers[this.markDepth++] = this.p;
+		this.lastMarker = this.markDepth;
+
+		return this.markDepth;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void rewind(int marker) {
+		this.seek(this.markers[marker - 1]);
+		this.release(marker);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void rewind() {
+		this.rewind(this.lastMarker);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void release(int marker) {
+		this.markDepth = marker - 1;
+	}
+
+	/**
+	 * Move to a token index. Only buffered tokens and tokens ahead can be
+	 * moved to.
+	 */
+	@Override
+	public void seek(int index) {
+		checkArgument(index >= this.start, "Token %s is no longer buffered", index);
+
+		this.fill(index);
+		this.p = Math.min(index, this.end - 1);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public TokenSource getTokenSource() {
+		return this.source;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String getSourceName() {
+		return this.source.getSourceName();
+	}
+
+	/**
+	 * Return the text of the buffered tokens between two indexes, both
+	 * inclusive. Tokens that were dropped are left out.
+	 */
+	@Override
+	public String toString(int start, int stop) {
+		StringBuilder result = new StringBuilder();
+
+		for (int i = Math.max(start, this.start); i <= stop && i < this.end; i++) {
+			Token token = this.buffer[i & (this.buffer.length - 1)];
+
+			if (token.getType() != Token.EOF) {
+				result.append(token.getText());
+			}
+		}
+
+		return result.toString();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString(Token start, Token stop) {
+		if (start == null || stop == null) {
+			return null;
+		}
+
+		return this.toString(start.getTokenIndex(), stop.getTokenIndex());
+	}
+
+	/**
+	 * Return the number of on-channel tokens read so far, including EOF
+	 * @return Number of tokens
+	 */
+	public int getNumberOfOnChannelTokens() {
+		return this.end;
+	}
+
+	/**
+	 * Return the number of tokens the buffer can hold before it grows
+	 * @return Buffer capacity
+	 */
+	public int getCapacity() {
+		return this.buffer.length;
+	}
+
+	/**
+	 * Read tokens from the source until a token index is buffered, or the
+	 * source is exhausted
+	 */
+	private void fill(int index) {
+		while (index >= this.end && !this.eof) {
+			Token token = this.source.nextToken();
+
+			if (token.getType() != Token.EOF && token.getChannel() != this.channel) {
+				continue;
+			}
+
+			this.eof = token.getType() == Token.EOF;
+			this.add(token);
+		}
+	}
+
+	/**
+	 * Add a token to the buffer. Drops tokens the parser can no longer look
+	 * at first, and grows the buffer only if it is still full.
+	 */
+	private void add(Token token) {
+		int keep = this.p - LOOK_BEHIND;
+
+		if (this.markDepth > 0) {
+			keep = Math.min(keep, this.markers[0]);
+		}
+
+		while (this.start < keep) {
+			this.buffer[this.start & (this.buffer.length - 1)] = null;
+			this.start++;
+		}
+
+		if (this.end - this.start == this.buffer.length) {
+			Token[] buffer = new Token[this.buffer.length * 2];
+
+			for (int i = this.start; i < this.end; i++) {
+				buffer[i & (buffer.length - 1)] = this.buffer[i & (this.buffer.length - 1)];
+			}
+
+			this.buffer = buffer;
+		}
+
+		token.setTokenIndex(this.end);
+		this.buffer[this.end & (this.buffer.length - 1)] = token;
+		this.end++;
+	}
+}
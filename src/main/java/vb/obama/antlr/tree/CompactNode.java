@@ -0,0 +1,321 @@
+package vb.obama.antlr.tree;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+
+import org.antlr.runtime.CommonToken;
+import org.antlr.runtime.Token;
+import org.antlr.runtime.tree.Tree;
+
+import vb.obama.antlr.tree.info.Info;
+
+import com.google.common.collect.Lists;
+
+/**
+ * View of a node of a compact tree. All methods read from and write to the
+ * tree, so two views of the same node are equal and interchangeable. Methods
+ * that change the structure of the tree are not supported.
+ *
+ * @version 1.0
+ * @see vb.obama.antlr.tree.CompactTree
+ */
+public class CompactNode extends TypedNode {
+	/**
+	 * Tree of this node
+	 */
+	private final CompactTree tree;
+
+	/**
+	 * Index of this node in the tree
+	 */
+	private final int index;
+
+	/**
+	 * Construct a view of a node
+	 */
+	CompactNode(CompactTree tree, int index) {
+		this.tree = tree;
+		this.index = index;
+	}
+
+	/**
+	 * Return the tree of this node
+	 */
+	public CompactTree getTree() {
+		return this.tree;
+	}
+
+	/**
+	 * Return the index of this node in its tree
+	 */
+	public int getIndex() {
+		return this.index;
+	}
+
+	/**
+	 * Return a copy of the token of this node, or null for a nil node
+	 */
+	@Override
+	public Token getToken() {
+		if (!this.tree.hasToken(this.index)) {
+			return null;
+		}
+
+		CommonToken result = new CommonToken(this.tree.getType(this.index), this.tree.getText(this.index));
+		result.setLine(this.tree.getLine(this.index));
+		result.setCharPositionInLine(this.tree.getColumn(this.index));
+		result.setTokenIndex(this.tree.getTokenIndex(this.index));
+
+		return result;
+	}
+
+	/**
+	 * Return a TypedNode with the same token, node type, return type and
+	 * info, but without children
+	 */
+	@Override
+	public Tree dupNode() {
+		TypedNode result = new TypedNode(this.getToken());
+
+		if (this.getNodeType() != null) {
+			result.setNodeType(this.getNodeType());
+		}
+
+		result.setReturnType(this.getReturnType());
+		result.setInfo(this.getInfo());
+		result.setTokenStartIndex(this.getTokenStartIndex());
+		result.setTokenStopIndex(this.getTokenStopIndex());
+
+		return result;
+	}
+
+	@Override
+	public boolean isNil() {
+		return !this.tree.hasToken(this.index);
+	}
+
+	@Override
+	public int getType() {
+		return this.tree.getType(this.index);
+	}
+
+	@Override
+	public String getText() {
+		return this.tree.getText(this.index);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Like CommonTree, nodes without a line take the line of their first
+	 * child.
+	 */
+	@Override
+	public int getLine() {
+		int line = this.tree.getLine(this.index);
+
+		if (line == 0 && this.getChildCount() > 0) {
+			return this.getChild(0).getLine();
+		}
+
+		return line;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * Like CommonTree, nodes without a line take the position of their first
+	 * child, or zero.
+	 */
+	@Override
+	public int getCharPositionInLine() {
+		if (this.tree.getLine(this.index) == 0) {
+			return this.getChildCount() > 0 ? this.getChild(0).getCharPositionInLine() : 0;
+		}
+
+		return this.tree.getColumn(this.index);
+	}
+
+	@Override
+	public int getTokenStartIndex() {
+		return this.tree.getTokenIndex(this.index);
+	}
+
+	@Override
+	public int getTokenStopIndex() {
+		return this.tree.getTokenIndex(this.index);
+	}
+
+	@Override
+	public Tree getChild(int i) {
+		if (i < 0 || i >= this.getChildCount()) {
+			return null;
+		}
+
+		return new CompactNode(this.tree, this.tree.getChild(this.index, i));
+	}
+
+	@Override
+	public int getChildCount() {
+		return this.tree.getChildCount(this.index);
+	}
+
+	/**
+	 * Return views of the children, or null without children
+	 */
+	@Override
+	public List<? extends Object> getChildren() {
+		int count = this.getChildCount();
+
+		if (count == 0) {
+			return null;
+		}
+
+		List<TypedNode> result = Lists.newArrayListWithCapacity(count);
+
+		for (int i = 0; i < count; i++) {
+			result.add(new CompactNode(this.tree, this.tree.getChild(this.index, i)));
+		}
+
+		return result;
+	}
+
+	@Override
+	public Tree getFirstChildWithType(int type) {
+		for (int i = 0; i < this.getChildCount(); i++) {
+			Tree child = this.getChild(i);
+
+			if (child.getType() == type) {
+				return child;
+			}
+		}
+
+		return null;
+	}
+
+	@Override
+	public Tree getParent() {
+		int parent = this.tree.getParent(this.index);
+		return parent != CompactTree.NO_PARENT ? new CompactNode(this.tree, parent) : null;
+	}
+
+	@Override
+	public int getChildIndex() {
+		return this.tree.getChildIndex(this.index);
+	}
+
+	@Override
+	public NodeType getNodeType() {
+		return this.tree.getNodeType(this.index);
+	}
+
+	@Override
+	public void setNodeType(NodeType nodeType) {
+		this.tree.setNodeType(this.index, checkNotNull(nodeType));
+	}
+
+	@Override
+	public Class<?> getReturnType() {
+		return this.tree.getReturnType(this.index);
+	}
+
+	@Override
+	public void setReturnType(Class<?> returnType) {
+		this.tree.setReturnType(this.index, returnType);
+	}
+
+	@Override
+	public Info getInfo() {
+		return this.tree.getInfo(this.index);
+	}
+
+	@Override
+	public void setInfo(Info info) {
+		this.tree.setInfo(this.index, info);
+	}
+
+	@Override
+	public String toString() {
+		return this.isNil() ? "nil" : this.getText();
+	}
+
+	@Override
+	public String toStringTree() {
+		int count = this.getChildCount();
+
+		if (count == 0) {
+			return this.toString();
+		}
+
+		StringBuilder result = new StringBuilder();
+
+		if (!this.isNil()) {
+			result.append('(').append(this.toString()).append(' ');
+		}
+
+		for (int i = 0; i < count; i++) {
+			if (i > 0) {
+				result.append(' ');
+			}
+
+			result.append(this.getChild(i).toStringTree());
+		}
+
+		if (!this.isNil()) {
+			result.append(')');
+		}
+
+		return result.toString();
+	}
+
+	@Override
+	public boolean equals(Object other) {
+		if (!(other instanceof CompactNode)) {
+			return false;
+		}
+
+		CompactNode node = (CompactNode) other;
+		return this.tree == node.tree && this.index == node.index;
+	}
+
+	@Override
+	public int hashCode() {
+		return System.identityHashCode(this.tree) * 31 + this.index;
+	}
+
+	@Override
+	public void addChild(Tree t) {
+		throw new UnsupportedOperationException("Compact trees are read-only");
+	}
+
+	@Override
+	public void setChild(int i, Tree t) {
+		throw new UnsupportedOperationException("Compact trees are read-only");
+	}
+
+	@Override
+	public void insertChild(int i, Object t) {
+		throw new UnsupportedOperationException("Compact trees are read-only");
+	}
+
+	@Override
+	public Object deleteChild(int i) {
+		throw new UnsupportedOperationException("Compact trees are read-only");
+	}
+
+	@Override
+	public void replaceChildren(int startChildIndex, int stopChildIndex, Object t) {
+		throw new UnsupportedOperationException("Compact trees are read-only");
+	}
+
+	@Override
+	public void setParent(Tree t) {
+		throw new UnsupportedOperationException("Compact trees are read-only");
+	}
+
+	@Override
+	public void setChildIndex(int index) {
+		throw new UnsupportedOperationException("Compact trees are read-only");
+	}
+}
@@ -0,0 +1,469 @@
+package vb.obama.antlr.tree;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Map;
+
+import org.antlr.runtime.Token;
+
+import vb.obama.antlr.tree.info.Info;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Flattened, read-only copy of a tree. Every node is an index into parallel
+ * arrays of primitives, which hold its token type, text, position, links and
+ * return type. Nodes are numbered breadth first, so the children of a node
+ * are numbered consecutively: a node only stores its first child and number
+ * of children, and its next sibling is the next number. Texts and return
+ * types are stored once in tables, and info objects in a side table, as only
+ * few nodes have them.
+ *
+ * The checker and codegen work on TypedNode, so they get a CompactNode view
+ * of a node. Views are created on demand and keep no state of their own, so
+ * setting the node type, return type or info of a view updates the tree.
+ * The structure of the tree cannot be changed.
+ *
+ * A TypedNode costs a token, a child list and their strings; a node here
+ * costs about forty bytes. Checked trees can be written to disk and read back
+ * with TreeCodec.
+ *
+ * @version 1.1
+ * @see vb.obama.antlr.tree.CompactNode
+ */
+public class CompactTree {
+	/**
+	 * Text of nodes without a token
+	 */
+	static final int NO_TEXT = -1;
+
+	/**
+	 * Parent of the root
+	 */
+	static final int NO_PARENT = -1;
+
+	/**
+	 * Node types, indexed by ordinal
+	 */
+	private static final NodeType[] NODE_TYPES = NodeType.values();
+
+	/**
+	 * Number of nodes
+	 */
+	private final int size;
+
+	/**
+	 * Token types
+	 */
+	private final int[] types;
+
+	/**
+	 * Indexes of the texts in the text table, or NO_TEXT
+	 */
+	private final int[] texts;
+
+	/**
+	 * Token lines
+	 */
+	private final int[] lines;
+
+	/**
+	 * Token positions in their line
+	 */
+	private final int[] columns;
+
+	/**
+	 * Token indexes in the token stream
+	 */
+	private final int[] tokenIndexes;
+
+	/**
+	 * Parents, or NO_PARENT for the root
+	 */
+	private final int[] parents;
+
+	/**
+	 * First children, only valid if there are children
+	 */
+	private final int[] firstChildren;
+
+	/**
+	 * Numbers of children
+	 */
+	private final int[] childCounts;
+
+	/**
+	 * Node type ordinals plus one, zero if not set
+	 */
+	private final byte[] nodeTypes;
+
+	/**
+	 * Indexes of the return types in the type table plus one, zero if not set
+	 */
+	private final int[] returnTypes;
+
+	/**
+	 * Distinct texts, shared by all nodes with an equal text
+	 */
+	private final String[] strings;
+
+	/**
+	 * Distinct return types
+	 */
+	private final List<Class<?>> classes = Lists.newArrayList();
+
+	/**
+	 * Indexes of the return types in the type table
+	 */
+	private final Map<Class<?>, Integer> classIndexes = Maps.newHashMap();
+
+	/**
+	 * Info of the nodes that have it
+	 */
+	private final Map<Integer, Info> infos = Maps.newHashMap();
+
+	/**
+	 * Construct a tree of a given size, filled by copy
+	 */
+	private CompactTree(int size, String[] strings) {
+		this.size = size;
+		this.strings = strings;
+		this.types = new int[size];
+		this.texts = new int[size];
+		this.lines = new int[size];
+		this.columns = new int[size];
+		this.tokenIndexes = new int[size];
+		this.parents = new int[size];
+		this.firstChildren = new int[size];
+		this.childCounts = new int[size];
+		this.nodeTypes = new byte[size];
+		this.returnTypes = new int[size];
+	}
+
+	/**
+	 * Copy a tree, including the node types, return types and info that are
+	 * already set
+	 *
+	 * @param root Root of the tree
+	 * @return Compact copy
+	 * @requires root != null
+	 */
+	public static CompactTree copyOf(TypedNode root) {
+		checkNotNull(root);
+
+		// Number the nodes breadth first, so siblings are consecutive
+		List<TypedNode> nodes = Lists.newArrayList(root);
+		Map<String, Integer> indexes = Maps.newHashMap();
+		List<String> strings = Lists.newArrayList();
+
+		for (int i = 0; i < nodes.size(); i++) {
+			TypedNode node = nodes.get(i);
+
+			for (int j = 0; j < node.getChildCount(); j++) {
+				nodes.add((TypedNode) node.getChild(j));
+			}
+
+			String text = node.getToken() != null ? node.getToken().getText() : null;
+
+			if (text != null && !indexes.containsKey(text)) {
+				indexes.put(text, strings.size());
+				strings.add(text);
+			}
+		}
+
+		CompactTree result = new CompactTree(nodes.size(), strings.toArray(new String[strings.size()]));
+		int next = 1;
+
+		for (int i = 0; i < nodes.size(); i++) {
+			TypedNode node = nodes.get(i);
+			Token token = node.getToken();
+
+			if (token != null) {
+				result.types[i] = token.getType();
+				result.texts[i] = token.getText() != null ? indexes.get(token.getText()) : NO_TEXT;
+				result.lines[i] = token.getLine();
+				result.columns[i] = token.getCharPositionInLine();
+				result.tokenIndexes[i] = token.getTokenIndex();
+			} else {
+				result.types[i] = Token.INVALID_TOKEN_TYPE;
+				result.texts[i] = NO_TEXT;
+				result.tokenIndexes[i] = -1;
+			}
+
+			if (i == 0) {
+				result.parents[i] = NO_PARENT;
+			}
+
+			result.firstChildren[i] = next;
+			result.childCounts[i] = node.getChildCount();
+
+			for (int j = 0; j < node.getChildCount(); j++) {
+				result.parents[next++] = i;
+			}
+
+			if (node.getNodeType() != null) {
+				result.setNodeType(i, node.getNodeType());
+			}
+
+			result.setReturnType(i, node.getReturnType());
+			result.setInfo(i, node.getInfo());
+		}
+
+		return result;
+	}
+
+	/**
+	 * Write the arrays, tables and info of this tree
+	 *
+	 * @see vb.obama.antlr.tree.TreeCodec
+	 */
+	void write(DataOutputStream out) throws IOException {
+		out.writeInt(this.size);
+		out.writeInt(this.strings.length);
+
+		for (String string : this.strings) {
+			TreeCodec.writeString(string, out);
+		}
+
+		out.writeInt(this.classes.size());
+
+		for (Class<?> type : this.classes) {
+			TreeCodec.writeType(type, out);
+		}
+
+		for (int[] array : this.arrays()) {
+			for (int value : array) {
+				out.writeInt(value);
+			}
+		}
+
+		out.write(this.nodeTypes);
+
+		// Nodes share info objects, e.g. all uses of a variable share the
+		// info of its declaration, so every object is written once
+		Map<Info, Integer> ids = Maps.newIdentityHashMap();
+		List<Info> distinct = Lists.newArrayList();
+
+		for (Info info : this.infos.values()) {
+			if (!ids.containsKey(info)) {
+				ids.put(info, distinct.size());
+				distinct.add(info);
+			}
+		}
+
+		out.writeInt(distinct.size());
+
+		for (Info info : distinct) {
+			TreeCodec.writeInfo(info, out);
+		}
+
+		out.writeInt(this.infos.size());
+
+		for (Map.Entry<Integer, Info> entry : this.infos.entrySet()) {
+			out.writeInt(entry.getKey());
+			out.writeInt(ids.get(entry.getValue()));
+		}
+	}
+
+	/**
+	 * Read a tree written by write
+	 *
+	 * @see vb.obama.antlr.tree.TreeCodec
+	 */
+	static CompactTree read(ByteBuffer in) throws IOException {
+		int size = in.getInt();
+
+		// Every node takes 37 bytes, so larger sizes are damage
+		checkArgument(size > 0 && size <= in.remaining() / 37, "Invalid size %s", size);
+		String[] strings = new String[in.getInt()];
+
+		for (int i = 0; i < strings.length; i++) {
+			strings[i] = TreeCodec.readString(in);
+		}
+
+		CompactTree result = new CompactTree(size, strings);
+
+		for (int i = in.getInt(); i > 0; i--) {
+			Class<?> type = TreeCodec.readType(in);
+
+			result.classIndexes.put(type, result.classes.size());
+			result.classes.add(type);
+		}
+
+		// Bulk copy, which is fast on a mapped buffer
+		for (int[] array : result.arrays()) {
+			in.asIntBuffer().get(array);
+			in.position(in.position() + array.length * 4);
+		}
+
+		in.get(result.nodeTypes);
+		Info[] distinct = new Info[in.getInt()];
+
+		for (int i = 0; i < distinct.length; i++) {
+			distinct[i] = TreeCodec.readInfo(in, result);
+		}
+
+		for (int i = in.getInt(); i > 0; i--) {
+			int index = in.getInt();
+			int id = in.getInt();
+
+			checkElementIndex(index, size);
+			checkElementIndex(id, distinct.length);
+			result.infos.put(index, distinct[id]);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Return the int arrays, in the order they are written
+	 */
+	private int[][] arrays() {
+		return new int[][] {
+			this.types,
+			this.texts,
+			this.lines,
+			this.columns,
+			this.tokenIndexes,
+			this.parents,
+			this.firstChildren,
+			this.childCounts,
+			this.returnTypes
+		};
+	}
+
+	/**
+	 * Return a view of the root
+	 */
+	public CompactNode getRoot() {
+		return new CompactNode(this, 0);
+	}
+
+	/**
+	 * Return a view of a node
+	 *
+	 * @param index Index of the node, breadth first
+	 * @return View of the node
+	 * @requires index >= 0 && index < this.size()
+	 */
+	public CompactNode getNode(int index) {
+		checkElementIndex(index, this.size);
+		return new CompactNode(this, index);
+	}
+
+	/**
+	 * Return the number of nodes
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Return the number of distinct texts
+	 */
+	public int getNumberOfTexts() {
+		return this.strings.length;
+	}
+
+	int getType(int index) {
+		return this.types[index];
+	}
+
+	/**
+	 * Return the text of a node, or null if it has no token
+	 */
+	String getText(int index) {
+		int text = this.texts[index];
+		return text != NO_TEXT ? this.strings[text] : null;
+	}
+
+	/**
+	 * Return whether a node has a token, i.e. is not a nil node
+	 */
+	boolean hasToken(int index) {
+		return this.types[index] != Token.INVALID_TOKEN_TYPE || this.texts[index] != NO_TEXT;
+	}
+
+	int getLine(int index) {
+		return this.lines[index];
+	}
+
+	int getColumn(int index) {
+		return this.columns[index];
+	}
+
+	int getTokenIndex(int index) {
+		return this.tokenIndexes[index];
+	}
+
+	int getParent(int index) {
+		return this.parents[index];
+	}
+
+	int getChildCount(int index) {
+		return this.childCounts[index];
+	}
+
+	/**
+	 * Return a child of a node
+	 * @requires child >= 0 && child < this.getChildCount(index)
+	 */
+	int getChild(int index, int child) {
+		return this.firstChildren[index] + child;
+	}
+
+	int getChildIndex(int index) {
+		int parent = this.parents[index];
+		return parent != NO_PARENT ? index - this.firstChildren[parent] : 0;
+	}
+
+	NodeType getNodeType(int index) {
+		int nodeType = this.nodeTypes[index];
+		return nodeType != 0 ? NODE_TYPES[nodeType - 1] : null;
+	}
+
+	void setNodeType(int index, NodeType nodeType) {
+		this.nodeTypes[index] = (byte) (nodeType.ordinal() + 1);
+	}
+
+	Class<?> getReturnType(int index) {
+		int returnType = this.returnTypes[index];
+		return returnType != 0 ? this.classes.get(returnType - 1) : null;
+	}
+
+	void setReturnType(int index, Class<?> returnType) {
+		if (returnType == null) {
+			this.returnTypes[index] = 0;
+			return;
+		}
+
+		Integer result = this.classIndexes.get(returnType);
+
+		if (result == null) {
+			result = this.classes.size();
+			this.classes.add(returnType);
+			this.classIndexes.put(returnType, result);
+		}
+
+		this.returnTypes[index] = result + 1;
+	}
+
+	Info getInfo(int index) {
+		return this.infos.get(index);
+	}
+
+	void setInfo(int index, Info info) {
+		if (info == null) {
+			this.infos.remove(index);
+		} else {
+			this.infos.put(index, info);
+		}
+	}
+}
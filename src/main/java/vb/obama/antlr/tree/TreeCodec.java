@@ -0,0 +1,341 @@
+package vb.obama.antlr.tree;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.objectweb.asm.Type;
+
+import vb.obama.antlr.tree.info.ClassInfo;
+import vb.obama.antlr.tree.info.FieldInfo;
+import vb.obama.antlr.tree.info.ForLoopInfo;
+import vb.obama.antlr.tree.info.IfElseIfElseInfo;
+import vb.obama.antlr.tree.info.Info;
+import vb.obama.antlr.tree.info.InlineIfInfo;
+import vb.obama.antlr.tree.info.MethodCallInfo;
+import vb.obama.antlr.tree.info.MethodInfo;
+import vb.obama.antlr.tree.info.ParameterInfo;
+import vb.obama.antlr.tree.info.SwitchCaseInfo;
+import vb.obama.antlr.tree.info.SwitchInfo;
+import vb.obama.antlr.tree.info.VariableInfo;
+import vb.obama.antlr.tree.info.WhileInfo;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Binary encoding of checked compact trees. Next to the arrays of the tree,
+ * it writes every info object once, so nodes that share an info still share
+ * it after reading. Types are written as descriptors and
+ * loaded again by name. Labels, class writers and generators are state of
+ * the code generator, so they are not written.
+ *
+ * Integers are big endian, strings are a length followed by UTF-8 bytes and
+ * arrays are a length followed by their elements. Reading works on a buffer,
+ * so a memory-mapped file is decoded without copying it first.
+ *
+ * @version 1.0
+ * @see vb.obama.antlr.tree.CompactTree
+ */
+public class TreeCodec {
+	/**
+	 * Info classes, indexed by tag. Never reorder, only append.
+	 */
+	private static final List<Class<? extends Info>> TAGS = Lists.<Class<? extends Info>>newArrayList(
+		Info.class,
+		ClassInfo.class,
+		FieldInfo.class,
+		ForLoopInfo.class,
+		IfElseIfElseInfo.class,
+		InlineIfInfo.class,
+		MethodCallInfo.class,
+		MethodInfo.class,
+		ParameterInfo.class,
+		SwitchCaseInfo.class,
+		SwitchInfo.class,
+		VariableInfo.class,
+		WhileInfo.class
+	);
+
+	/**
+	 * Write a tree
+	 *
+	 * @param tree Tree to write
+	 * @param out Output
+	 * @throws IOException If writing fails, or a node has info of an unknown
+	 * class
+	 */
+	public static void write(CompactTree tree, DataOutputStream out) throws IOException {
+		tree.write(out);
+	}
+
+	/**
+	 * Read a tree. Types are loaded with the context class loader.
+	 *
+	 * @param in Input, positioned at the tree
+	 * @return Tree
+	 * @throws IOException If the input is damaged, or a type cannot be loaded
+	 */
+	public static CompactTree read(ByteBuffer in) throws IOException {
+		try {
+			return CompactTree.read(in);
+		} catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException | NegativeArraySizeException | NullPointerException exception) {
+			throw new IOException("Damaged tree", exception);
+		}
+	}
+
+	/**
+	 * Write the info of a node
+	 */
+	static void writeInfo(Info info, DataOutputStream out) throws IOException {
+		int tag = TAGS.indexOf(info.getClass());
+
+		if (tag < 0) {
+			throw new IOException(String.format("Cannot write info '%s'", info.getClass().getName()));
+		}
+
+		out.writeByte(tag);
+
+		if (info instanceof ClassInfo) {
+			ClassInfo classInfo = (ClassInfo) info;
+
+			TreeCodec.writeString(classInfo.name, out);
+			TreeCodec.writeString(classInfo.file, out);
+			out.writeInt(classInfo.modifiers);
+			TreeCodec.writeType(classInfo.extending, out);
+			TreeCodec.writeTypes(classInfo.implementing, out);
+		} else if (info instanceof FieldInfo) {
+			FieldInfo fieldInfo = (FieldInfo) info;
+
+			TreeCodec.writeType(fieldInfo.owner, out);
+			TreeCodec.writeType(fieldInfo.type, out);
+			TreeCodec.writeString(fieldInfo.name, out);
+		} else if (info instanceof MethodCallInfo) {
+			MethodCallInfo callInfo = (MethodCallInfo) info;
+
+			TreeCodec.writeString(callInfo.method, out);
+			TreeCodec.writeType(callInfo.returnType, out);
+			TreeCodec.writeType(callInfo.owner, out);
+			TreeCodec.writeTypes(callInfo.parameters, out);
+			out.writeInt(callInfo.parameterNodes.size());
+
+			for (TypedNode node : callInfo.parameterNodes) {
+				if (!(node instanceof CompactNode)) {
+					throw new IOException("Cannot write a reference to a node outside the tree");
+				}
+
+				out.writeInt(((CompactNode) node).getIndex());
+			}
+		} else if (info instanceof MethodInfo) {
+			MethodInfo methodInfo = (MethodInfo) info;
+
+			TreeCodec.writeString(methodInfo.name, out);
+			out.writeInt(methodInfo.modifiers);
+			out.writeBoolean(methodInfo.isConstructor);
+			TreeCodec.writeType(methodInfo.returnType, out);
+			TreeCodec.writeType(methodInfo.throwing, out);
+			TreeCodec.writeTypes(methodInfo.parameters, out);
+		} else if (info instanceof ParameterInfo) {
+			ParameterInfo parameterInfo = (ParameterInfo) info;
+
+			TreeCodec.writeString(parameterInfo.name, out);
+			TreeCodec.writeString(parameterInfo.keyword, out);
+			out.writeInt(parameterInfo.index);
+		} else if (info instanceof SwitchCaseInfo) {
+			out.writeInt(((SwitchCaseInfo) info).value);
+		} else if (info instanceof SwitchInfo) {
+			List<Integer> literals = ((SwitchInfo) info).literals;
+			out.writeInt(literals.size());
+
+			for (int literal : literals) {
+				out.writeInt(literal);
+			}
+		} else if (info instanceof VariableInfo) {
+			out.writeInt(((VariableInfo) info).asmIndex);
+		}
+	}
+
+	/**
+	 * Read the info of a node
+	 */
+	static Info readInfo(ByteBuffer in, CompactTree tree) throws IOException {
+		int tag = in.get();
+
+		if (tag < 0 || tag >= TAGS.size()) {
+			throw new IOException(String.format("Unknown info tag %d", tag));
+		}
+
+		Class<? extends Info> type = TAGS.get(tag);
+
+		if (type == ClassInfo.class) {
+			ClassInfo result = new ClassInfo();
+
+			result.name = TreeCodec.readString(in);
+			result.file = TreeCodec.readString(in);
+			result.modifiers = in.getInt();
+			result.extending = TreeCodec.readType(in);
+			result.implementing = TreeCodec.readTypes(in);
+
+			return result;
+		} else if (type == FieldInfo.class) {
+			FieldInfo result = new FieldInfo();
+
+			result.owner = TreeCodec.readType(in);
+			result.type = TreeCodec.readType(in);
+			result.name = TreeCodec.readString(in);
+
+			return result;
+		} else if (type == MethodCallInfo.class) {
+			MethodCallInfo result = new MethodCallInfo();
+
+			result.method = TreeCodec.readString(in);
+			result.returnType = TreeCodec.readType(in);
+			result.owner = TreeCodec.readType(in);
+			result.parameters = TreeCodec.readTypes(in);
+
+			for (int i = in.getInt(); i > 0; i--) {
+				result.parameterNodes.add(tree.getNode(in.getInt()));
+			}
+
+			return result;
+		} else if (type == MethodInfo.class) {
+			String name = TreeCodec.readString(in);
+			int modifiers = in.getInt();
+			boolean isConstructor = in.get() != 0;
+			MethodInfo result = new MethodInfo(name, TreeCodec.readType(in));
+
+			result.modifiers = modifiers;
+			result.isConstructor = isConstructor;
+			result.throwing = TreeCodec.readType(in);
+			result.parameters = TreeCodec.readTypes(in);
+
+			return result;
+		} else if (type == ParameterInfo.class) {
+			String name = TreeCodec.readString(in);
+			String keyword = TreeCodec.readString(in);
+
+			return new ParameterInfo(name, keyword, in.getInt());
+		} else if (type == SwitchCaseInfo.class) {
+			SwitchCaseInfo result = new SwitchCaseInfo();
+			result.value = in.getInt();
+
+			return result;
+		} else if (type == SwitchInfo.class) {
+			SwitchInfo result = new SwitchInfo();
+
+			for (int i = in.getInt(); i > 0; i--) {
+				result.literals.add(in.getInt());
+			}
+
+			return result;
+		} else if (type == VariableInfo.class) {
+			VariableInfo result = new VariableInfo();
+			result.asmIndex = in.getInt();
+
+			return result;
+		}
+
+		// Infos without data
+		try {
+			return type.getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException exception) {
+			throw new IOException(exception);
+		}
+	}
+
+	/**
+	 * Write a string, which may be null
+	 */
+	static void writeString(String value, DataOutputStream out) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+			return;
+		}
+
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Read a string, which may be null
+	 */
+	static String readString(ByteBuffer in) {
+		int length = in.getInt();
+
+		if (length < 0) {
+			return null;
+		}
+
+		checkArgument(length <= in.remaining(), "String longer than input");
+		byte[] bytes = new byte[length];
+		in.get(bytes);
+
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Write a type as descriptor, or null
+	 */
+	static void writeType(Class<?> type, DataOutputStream out) throws IOException {
+		TreeCodec.writeString(type != null ? Type.getDescriptor(type) : null, out);
+	}
+
+	/**
+	 * Read a type and load it
+	 *
+	 * @throws IOException If the type cannot be loaded
+	 */
+	static Class<?> readType(ByteBuffer in) throws IOException {
+		String descriptor = TreeCodec.readString(in);
+
+		if (descriptor == null) {
+			return null;
+		}
+
+		Type type = Type.getType(descriptor);
+
+		switch (type.getSort()) {
+			case Type.VOID: return void.class;
+			case Type.BOOLEAN: return boolean.class;
+			case Type.CHAR: return char.class;
+			case Type.BYTE: return byte.class;
+			case Type.SHORT: return short.class;
+			case Type.INT: return int.class;
+			case Type.FLOAT: return float.class;
+			case Type.LONG: return long.class;
+			case Type.DOUBLE: return double.class;
+		}
+
+		// Class.forName takes array descriptors with dots
+		String name = type.getSort() == Type.ARRAY ? descriptor.replace('/', '.') : type.getClassName();
+
+		try {
+			return Class.forName(name, false, Thread.currentThread().getContextClassLoader());
+		} catch (ClassNotFoundException exception) {
+			throw new IOException(String.format("Type '%s' not found", name), exception);
+		}
+	}
+
+	private static void writeTypes(List<Class<?>> types, DataOutputStream out) throws IOException {
+		out.writeInt(types.size());
+
+		for (Class<?> type : types) {
+			TreeCodec.writeType(type, out);
+		}
+	}
+
+	private static List<Class<?>> readTypes(ByteBuffer in) throws IOException {
+		List<Class<?>> result = Lists.newArrayList();
+
+		for (int i = in.getInt(); i > 0; i--) {
+			result.add(TreeCodec.readType(in));
+		}
+
+		return result;
+	}
+}
@@ -0,0 +1,96 @@
+package vb.obama.compiler;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import vb.obama.antlr.ObamaParser;
+import vb.obama.antlr.tree.TypedNode;
+
+/**
+ * Base of the passes that walk a parsed tree directly. A node that is missing
+ * or of an unexpected type is reported and ends the pass, since the helpers
+ * cannot make sense of the rest of a malformed tree.
+ *
+ * @version 1.2
+ */
+public abstract class AbstractTreeVisitor {
+	/**
+	 * Message logger
+	 */
+	private static final Logger logger = LogManager.getLogger(AbstractTreeVisitor.class.getName());
+
+	/**
+	 * Number of unexpected or missing nodes, at most one
+	 */
+	private int errors = 0;
+
+	/**
+	 * Return the number of unexpected or missing nodes
+	 */
+	public int getNumberOfErrors() {
+		return this.errors;
+	}
+
+	/**
+	 * Add the unexpected or missing nodes that a pass over part of the tree
+	 * found to those of this pass
+	 */
+	protected void count(AbstractTreeVisitor other) {
+		this.errors += other.errors;
+	}
+
+	/**
+	 * Return a child of a node
+	 *
+	 * @return Child, or null if there is none at that index
+	 */
+	protected static TypedNode child(TypedNode node, int i) {
+		return (TypedNode) node.getChild(i);
+	}
+
+	/**
+	 * Check the type of a node
+	 *
+	 * @throws MalformedTreeException If the node is missing or of another type
+	 */
+	protected void expect(TypedNode node, int type) {
+		if (node == null || node.getType() != type) {
+			this.unexpected(node);
+		}
+	}
+
+	/**
+	 * Report a node that is missing or of an unexpected type
+	 *
+	 * @throws MalformedTreeException Always, to end the pass
+	 */
+	protected void unexpected(TypedNode node) {
+		this.errors++;
+
+		if (node == null) {
+			logger.error("Missing node in tree");
+		} else {
+			logger.error(String.format(
+				"%d:%d unexpected node %s '%s' in tree",
+				node.getLine(),
+				node.getCharPositionInLine(),
+				node.getType() >= 0 && node.getType() < ObamaParser.tokenNames.length ? ObamaParser.tokenNames[node.getType()] : node.getType(),
+				node.getText()
+			));
+		}
+
+		throw new MalformedTreeException();
+	}
+
+	/**
+	 * Ends a pass at a malformed node. Passes catch it at the root, so it
+	 * never leaves a visitor.
+	 */
+	protected static class MalformedTreeException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		protected MalformedTreeException() {
+			super(null, null, false, false);
+		}
+	}
+}
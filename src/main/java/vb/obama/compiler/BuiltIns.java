@@ -31,7 +31,7 @@ import com.google.common.collect.Lists;
  * language. Since these methods are not part of the programmers program, this
  * method calls will be generated when needed.
  * 
- * @version 1.0
+ * @version 1.1
  */
 public class BuiltIns {
 	private static final String[] BUILTINS = {"print", "read", "init", "cast"};
@@ -181,11 +181,22 @@ public class BuiltIns {
 		);
 	}
 	
+	/**
+	 * Convert between primitive types, or check a cast between classes. An
+	 * upcast needs no instruction. The checker only accepts these casts.
+	 * 
+	 * @param generator The GeneratorMethod from the surrounding method
+	 * @param info Method call info
+	 */
 	public static void generateCast(GeneratorAdapter generator, MethodCallInfo info) {
 		Class<?> from = info.parameters.get(0);
 		Class<?> to = info.parameters.get(1);
 		
-		generator.cast(Type.getType(from), Type.getType(to));
+		if (from.isPrimitive()) {
+			generator.cast(Type.getType(from), Type.getType(to));
+		} else if (!to.isAssignableFrom(from)) {
+			generator.checkCast(Type.getType(to));
+		}
 	}
 	
 	/**
@@ -6,9 +6,9 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import java.io.File;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 import org.apache.logging.log4j.LogManager;
@@ -33,14 +33,17 @@ import vb.obama.exceptions.CheckerException;
 import vb.obama.exceptions.SymbolTableException;
 import vb.obama.util.ReflectionUtils;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
 /**
- * To minimize the lines of Java in ObamaChecker.g, this class is used to check
+ * To minimize the lines of Java in CheckerVisitor, this class is used to check
  * constraints.
  * 
- * @version 1.2
+ * @version 1.13
  */
 public class CheckerHelper {
 	
@@ -49,6 +52,11 @@ public class CheckerHelper {
 	 */
 	private static final Logger logger = LogManager.getLogger(CheckerHelper.class.getName());
 	
+	/**
+	 * Primitive types that convert into each other by a cast
+	 */
+	private static final Set<Class<?>> NUMBERS = ImmutableSet.<Class<?>>of(byte.class, short.class, char.class, int.class, long.class, float.class, double.class);
+	
 	/**
 	 * Reference to the symbol table
 	 */
@@ -59,11 +67,33 @@ public class CheckerHelper {
 	 */
 	private List<Import> imports = null;
 	
+	/**
+	 * Java types the source depends on. Used for incremental compilation
+	 */
+	private Set<Class<?>> referencedTypes = null;
+	
+	/**
+	 * Types resolved under the current imports, including names that do not
+	 * resolve. Shared with the helpers of method bodies
+	 */
+	private Map<String, TypeCache.Resolution> types = null;
+	
+	/**
+	 * Types resolved by other compilations, or null
+	 */
+	private TypeCache typeCache = null;
+	
 	/**
 	 * List of defined classes. Used to resolve custom types
 	 */
 	private List<String> classes = null;
 	
+	/**
+	 * Lookups of member indexes that were and were not shared
+	 */
+	private int memberIndexHits = 0;
+	private int memberIndexMisses = 0;
+	
 	/**
 	 * Name of the input file
 	 */
@@ -89,13 +119,13 @@ public class CheckerHelper {
 		checkNotNull(inputFile);
 		
 		this.imports = Lists.newArrayList();
+		this.referencedTypes = Sets.newLinkedHashSet();
+		this.types = Maps.newConcurrentMap();
 		this.classes = Lists.newArrayList();
 		this.table = table;
 		this.fileName = inputFile;
 		
-		this.className = new File(inputFile).getName();
-		if (this.className.indexOf('.') > 0)
-			this.className = this.className.substring(0, this.className.indexOf('.'));
+		this.className = CheckerHelper.toClassName(inputFile);
 		
 		// Check class name
 		boolean valid = Pattern.matches("[a-zA-Z$_][a-zA-Z$_0-9]*", this.className);
@@ -107,6 +137,108 @@ public class CheckerHelper {
 		}
 	}
 	
+	/**
+	 * Construct a helper that checks a method body in a symbol table of its
+	 * own. It reads the imports of the helper that checked the declarations
+	 * and the classes declared before the method, but keeps the types it
+	 * references to itself. The declarations must not change while it is in
+	 * use.
+	 * 
+	 * @param declarations Helper of the declarations
+	 * @param table Symbol table of the method body
+	 * @param classes Number of classes declared before the method
+	 * @requires declarations != null && table != null
+	 * @requires 0 <= classes && classes <= declarations.getNumberOfClasses()
+	 */
+	CheckerHelper(CheckerHelper declarations, SymbolTable table, int classes) {
+		this.imports = declarations.imports;
+		this.referencedTypes = Sets.newLinkedHashSet();
+		this.types = declarations.types;
+		this.typeCache = declarations.typeCache;
+		this.classes = declarations.classes.subList(0, classes);
+		this.table = checkNotNull(table);
+		this.fileName = declarations.fileName;
+		this.className = declarations.className;
+	}
+	
+	/**
+	 * Return the name of the main class of a source: its file name without
+	 * extension
+	 * 
+	 * @param inputFile Source file
+	 * @return Class name, which may be invalid
+	 * @requires inputFile != null
+	 */
+	public static String toClassName(String inputFile) {
+		String result = new File(inputFile).getName();
+		
+		if (result.indexOf('.') > 0) {
+			result = result.substring(0, result.indexOf('.'));
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Return the imports of the source, in order of declaration
+	 * @return List of imports
+	 */
+	public List<Import> getImports() {
+		return ImmutableList.copyOf(this.imports);
+	}
+	
+	/**
+	 * Return the Java types the source depends on. Array types are reduced to
+	 * their component type and primitives are left out.
+	 * 
+	 * @return Set of referenced types
+	 */
+	public Set<Class<?>> getReferencedTypes() {
+		return ImmutableSet.copyOf(this.referencedTypes);
+	}
+	
+	/**
+	 * Resolve types through a cache shared with other compilations. Names are
+	 * resolved once per compilation either way
+	 * @param typeCache Cache of resolved types, or null for none
+	 */
+	public void setTypeCache(TypeCache typeCache) {
+		this.typeCache = typeCache;
+	}
+	
+	/**
+	 * Return the number of member index lookups of types that were indexed
+	 * before, possibly by another compilation
+	 */
+	public int getMemberIndexHits() {
+		return this.memberIndexHits;
+	}
+	
+	/**
+	 * Return the number of types this helper indexed
+	 */
+	public int getMemberIndexMisses() {
+		return this.memberIndexMisses;
+	}
+	
+	/**
+	 * Add the Java types and member index lookups of another helper to those
+	 * of this one
+	 * @param other Helper of a method body
+	 */
+	void merge(CheckerHelper other) {
+		this.referencedTypes.addAll(other.referencedTypes);
+		this.memberIndexHits += other.memberIndexHits;
+		this.memberIndexMisses += other.memberIndexMisses;
+	}
+	
+	/**
+	 * Return the number of classes declared so far
+	 */
+	int getNumberOfClasses() {
+		return this.classes.size();
+	}
+	
 	public void openScope() {
 		this.table.openScope();
 		logger.debug(String.format("Ascended scope: level=%d", this.table.getCurrentLevel()));
@@ -145,6 +277,7 @@ public class CheckerHelper {
 		
 		String name = node.getChild(0).getText();
 		this.imports.add(new Import(name));
+		this.types.clear();
 		
 		logger.debug(String.format("Package import: path='%s'", name));
 	}
@@ -362,58 +495,37 @@ public class CheckerHelper {
 		
 		// Check if method is callable
 		if (field.getNodeType() == NodeType.FIELD || field.getNodeType() == NodeType.FIELD_STATIC || field.getNodeType() == NodeType.VARIABLE) {
-			Class<?> type = field.getReturnType();
-			boolean found = false;
+			MemberIndex index = this.index(field.getReturnType());
 			
-			List<Method> candidates = Lists.newArrayList();
+			// Can only call static methods on a static object
+			boolean statics = field.getNodeType() == NodeType.FIELD_STATIC;
 			
-			for (Method m : type.getMethods()) {
-				if (!m.getName().equals(name)) continue;
-				if (!Modifier.isPublic(m.getModifiers())) continue; 
-	
-				// Can only call static fields on a static object
-				if (field.getNodeType() == NodeType.FIELD_STATIC)
-					if (!Modifier.isStatic(m.getModifiers())) continue;
-				
-				candidates.add(m);
-			}
+			// A method that takes the arguments, preferably as they are
+			Method m = index.getMethod(name, parameterTypes, statics);
 			
-			// Loop all candidates and find the best one
-			for (int i = 0; i < candidates.size(); i++) {
-				Method m = candidates.get(i);
-				
-				boolean condition = m.isVarArgs() ? 
-					parameterTypes.size() >= m.getParameterTypes().length :
-					parameterTypes.size() == m.getParameterTypes().length;
-					
-				if (condition) {
-					node.setReturnType(m.getReturnType());
-					found = true;
-					break;
-				} else {
-					// No correct match found
-					if (i == candidates.size() - 1) {
-						throw new CheckerException(String.format(
-							"Method '%s' parameters do not match", 
-							method.getChild(0).getText()
-						));
-					}
+			if (m == null) {
+				if (index.hasMethods(name, statics)) {
+					throw new CheckerException(String.format(
+						"Method '%s' parameters do not match", 
+						method.getChild(0).getText()
+					));
 				}
-			}
-			
-			// No matching method found
-			if (found == false) {	
+				
+				// No matching method found
 				throw new CheckerException(String.format(
 					"Static field '%s' has no callable methods", 
 					field.getText()
 				));
 			}
 			
+			node.setReturnType(m.getReturnType());
+			
 			// No errors up here
 			info.parameters = parameterTypes;
 			info.method = name;
 			info.returnType = node.getReturnType();
 			info.owner = field.getReturnType();
+			this.reference(info.owner);
 			
 			node.setNodeType(NodeType.METHOD_CALL_STATIC);
 		} else if (field.getNodeType() == NodeType.FIELD_GLOBAL) {
@@ -468,6 +580,10 @@ public class CheckerHelper {
 		} else if (field.getNodeType() == NodeType.FIELD_BUILTIN) {
 			BuiltIns.checkBuiltIn(name, node, info, parameterTypes, parameterNodes);
 			
+			if (name.equals("cast")) {
+				this.checkCast(parameterTypes.get(0), parameterTypes.get(1));
+			}
+			
 			// Check method name
 			info.parameters = parameterTypes;
 			info.parameterNodes = parameterNodes;
@@ -773,21 +889,18 @@ public class CheckerHelper {
         if (dot > 0) {
 	        String owner = identifier.substring(0, dot);
 	        String field = identifier.substring(dot + 1);
-	        Class<?> haystack = null;
-	        
-	        try {
-	        	haystack = this.findType(owner);
-	        } catch (Exception exception) { }
+	        Class<?> haystack = this.findTypeOrNull(owner);
 	        
 	        if (haystack != null) {
-		        try {
-		            Field result = haystack.getField(field);
-		            
+		        Field result = this.index(haystack).getField(field, false);
+		        
+		        if (result != null) {
 		            // Construct info object
 		            FieldInfo info = new FieldInfo();
 		            info.name = field;
 		            info.type = result.getType();
 		            info.owner = haystack;
+		            this.reference(info.type);
 		            
 		            // Set parameters
 		            node.setReturnType(result.getType());
@@ -796,7 +909,7 @@ public class CheckerHelper {
 		            
 		            // Done
 		            return;
-		        } catch (NoSuchFieldException exception) {
+		        } else {
 		            throw new CheckerException(String.format(
 		                "Field '%s' does not exist in '%s'",
 		                field,
@@ -808,11 +921,7 @@ public class CheckerHelper {
         
         // Second, assume it is a static class
         String owner = identifier;
-        Class<?> result = null;
-        
-        try {
-        	result = this.findType(owner);
-        } catch (Exception exception) { }
+        Class<?> result = this.findTypeOrNull(owner);
         
         if (result != null) {
         	// Construct info object
@@ -1085,6 +1194,32 @@ public class CheckerHelper {
 	 * CLASS HELPERS
 	 */
 	
+	/**
+	 * Check if a value of one type can be cast to another type. Numbers and
+	 * characters convert into each other, and classes into classes. A
+	 * boolean only casts to itself.
+	 * 
+	 * @param from Type of the value
+	 * @param to Type to cast to
+	 * @throws CheckerException If the value cannot be cast
+	 * @requires from != null && to != null
+	 */
+	private void checkCast(Class<?> from, Class<?> to) throws CheckerException {
+		checkNotNull(from);
+		checkNotNull(to);
+		
+		boolean numbers = NUMBERS.contains(from) && NUMBERS.contains(to);
+		boolean classes = !from.isPrimitive() && !to.isPrimitive();
+		
+		if (from != to && !numbers && !classes) {
+			throw new CheckerException(String.format(
+				"Cannot cast from '%s' to '%s'",
+				from.getName(),
+				to.getName()
+			));
+		}
+	}
+	
 	/**
 	 * Check if a type is a primitive type
 	 * 
@@ -1202,13 +1337,85 @@ public class CheckerHelper {
 	 * @throws CheckerException
 	 */
 	private Class<?> findType(String identifier) throws CheckerException {
-		// Find the class via reflection
-		try {
-			return ReflectionUtils.findType(identifier, this.imports);
-		} catch (IllegalArgumentException exception) {
-			throw new CheckerException(exception.getMessage());
-		} catch (ClassNotFoundException exception) {
-			throw new CheckerException(exception.getMessage());
+		TypeCache.Resolution resolution = this.resolveType(identifier);
+		
+		if (resolution.getType() == null) {
+			throw new CheckerException(resolution.getError());
+		}
+		
+		this.reference(resolution.getType());
+		return resolution.getType();
+	}
+	
+	/**
+	 * Try to resolve an identifier to a type, like findType
+	 * 
+	 * @param identifier Name of the type
+	 * @return Type corresponding to the identifier, or null if there is none
+	 */
+	private Class<?> findTypeOrNull(String identifier) {
+		Class<?> result = this.resolveType(identifier).getType();
+		
+		if (result != null) {
+			this.reference(result);
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Resolve an identifier under the current imports, once per compilation.
+	 * Fields and variables are resolved as types too, so most names do not
+	 * resolve and are worth remembering
+	 * 
+	 * @param identifier Name of the type
+	 * @return Resolution of the identifier
+	 */
+	private TypeCache.Resolution resolveType(String identifier) {
+		TypeCache.Resolution result = this.types.get(identifier);
+		
+		if (result == null) {
+			if (this.typeCache != null) {
+				result = this.typeCache.resolve(identifier, this.imports);
+			} else {
+				result = TypeCache.resolveUncached(identifier, this.imports, null);
+			}
+			
+			this.types.put(identifier, result);
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Look up the members of a Java type, counting whether it was indexed
+	 * before
+	 * @param type Type to look up
+	 * @return Shared index of the type
+	 */
+	private MemberIndex index(Class<?> type) {
+		MemberIndex result = MemberIndex.of(type);
+		
+		if (result.isUsed()) {
+			this.memberIndexHits++;
+		} else {
+			this.memberIndexMisses++;
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * Record a dependency on a Java type
+	 * @param type Referenced type
+	 */
+	private void reference(Class<?> type) {
+		while (type.isArray()) {
+			type = type.getComponentType();
+		}
+		
+		if (!type.isPrimitive()) {
+			this.referencedTypes.add(type);
 		}
 	}
 }
@@ -0,0 +1,802 @@
+package vb.obama.compiler;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import vb.obama.antlr.ObamaParser;
+import vb.obama.antlr.tree.TypedNode;
+import vb.obama.exceptions.CheckerException;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Checker pass over a parsed tree. Walks the nodes directly and calls the
+ * checker helper for every construct, so it does not buffer the tree in a
+ * node stream or build an output tree that nobody reads.
+ *
+ * A checker exception without a node gets the node of the construct that was
+ * visited.
+ *
+ * With an executor, the checker runs in two phases. The first visits
+ * everything but the method bodies: imports, classes, variables, constants
+ * and method signatures. The bodies are then checked in parallel, each in a
+ * symbol table of its own, built on a snapshot of the declarations up to its
+ * method. A body sees what it would have seen in a single pass, and the
+ * error that comes first in the source is reported, whichever phase found
+ * it. The types the bodies reference follow those of the declarations, in
+ * source order.
+ *
+ * @version 1.2
+ * @see vb.obama.compiler.CheckerHelper
+ */
+public class CheckerVisitor extends AbstractTreeVisitor {
+	/**
+	 * Number of groups of method bodies per thread, to even out bodies of
+	 * different size
+	 */
+	private static final int GROUPS_PER_THREAD = 4;
+
+	/**
+	 * Helper that checks the constraints
+	 */
+	private final CheckerHelper helper;
+
+	/**
+	 * Symbol table to declare the symbols in
+	 */
+	private final SymbolTable table;
+
+	/**
+	 * Executor to check method bodies on, or null to check them in one pass
+	 */
+	private final ExecutorService executor;
+
+	/**
+	 * Number of threads of the executor
+	 */
+	private final int parallelism;
+
+	/**
+	 * Method bodies left for the second phase, or null
+	 */
+	private final List<Body> bodies;
+
+	/**
+	 * Number of identifiers entered in the symbol tables of method bodies
+	 */
+	private int symbols = 0;
+
+	/**
+	 * Construct a checker pass
+	 *
+	 * @param table Symbol table to declare the symbols in
+	 * @param inputFile Name of the source
+	 * @requires table != null && inputFile != null
+	 */
+	public CheckerVisitor(SymbolTable table, String inputFile) throws CheckerException {
+		this(table, inputFile, null, 1);
+	}
+
+	/**
+	 * Construct a checker pass that checks method bodies in parallel
+	 *
+	 * @param table Symbol table to declare the symbols in
+	 * @param inputFile Name of the source
+	 * @param executor Executor to check method bodies on, or null to check
+	 * them in one pass
+	 * @param parallelism Number of threads of the executor
+	 * @requires table != null && inputFile != null && parallelism > 0
+	 */
+	public CheckerVisitor(SymbolTable table, String inputFile, ExecutorService executor, int parallelism) throws CheckerException {
+		checkArgument(parallelism > 0);
+
+		this.helper = new CheckerHelper(table, inputFile);
+		this.table = table;
+		this.executor = executor;
+		this.parallelism = parallelism;
+		this.bodies = executor != null ? Lists.<Body>newArrayList() : null;
+	}
+
+	/**
+	 * Construct a checker pass over a method body
+	 */
+	private CheckerVisitor(CheckerHelper helper, SymbolTable table) {
+		this.helper = helper;
+		this.table = table;
+		this.executor = null;
+		this.parallelism = 1;
+		this.bodies = null;
+	}
+
+	public CheckerHelper getHelper() {
+		return this.helper;
+	}
+
+	/**
+	 * Return the number of identifiers entered in the symbol tables, including
+	 * those of closed scopes
+	 */
+	public int getNumberOfSymbols() {
+		return this.table.getEntryCount() + this.symbols;
+	}
+
+	/**
+	 * Check a program
+	 *
+	 * @param node Root of the parsed tree
+	 * @throws CheckerException If a constraint is violated
+	 * @requires node != null
+	 */
+	public void program(TypedNode node) throws CheckerException {
+		try {
+			try {
+				this.expect(node, ObamaParser.PROGRAM);
+
+				// An empty program has no main class
+				if (node.getChildCount() > 0) {
+					this.contents(node);
+				}
+			} finally {
+				// The bodies come before any error of the declarations, so
+				// their errors take its place
+				if (this.bodies != null) {
+					this.checkBodies();
+				}
+			}
+		} catch (MalformedTreeException exception) {
+			// Reported and counted
+		}
+	}
+
+	private void contents(TypedNode node) throws CheckerException {
+
+		try {
+			int i = 0;
+
+			for (; i < node.getChildCount() && node.getChild(i).getType() == ObamaParser.IMPORT; i++) {
+				this.helper.visitImport(child(node, i));
+			}
+
+			this.helper.visitContentStart(node);
+			this.helper.openScope();
+
+			for (; i < node.getChildCount(); i++) {
+				TypedNode content = child(node, i);
+
+				switch (content.getType()) {
+					case ObamaParser.CLASS:
+						this.classDeclaration(content);
+						break;
+					case ObamaParser.METHOD:
+						this.methodDeclaration(content);
+						break;
+					default:
+						this.fieldDeclaration(content);
+				}
+			}
+
+			this.freeze();
+			this.helper.closeScope();
+			this.helper.visitContentEnd(node);
+		} catch (CheckerException exception) {
+			throw CheckerVisitor.locate(exception, node);
+		}
+	}
+
+	private void classDeclaration(TypedNode node) throws CheckerException {
+		try {
+			this.helper.visitClass(node);
+			this.helper.openScope();
+
+			for (int i = 1; i < node.getChildCount(); i++) {
+				TypedNode content = child(node, i);
+
+				if (content.getType() == ObamaParser.METHOD) {
+					this.methodDeclaration(content);
+				} else {
+					this.fieldDeclaration(content);
+				}
+			}
+
+			this.freeze();
+			this.helper.closeScope();
+		} catch (CheckerException exception) {
+			throw CheckerVisitor.locate(exception, node);
+		}
+	}
+
+	/**
+	 * Visit a variable or a constant of a program or class
+	 */
+	private void fieldDeclaration(TypedNode node) throws CheckerException {
+		if (node.getType() == ObamaParser.VAR) {
+			this.varDeclaration(node);
+		} else if (node.getType() == ObamaParser.CONST) {
+			this.constDeclaration(node);
+		} else {
+			this.unexpected(node);
+		}
+	}
+
+	private void methodDeclaration(TypedNode node) throws CheckerException {
+		try {
+			this.type(child(node, 1));
+
+			TypedNode parameters = child(node, 3);
+
+			this.expect(parameters, ObamaParser.PARAMETERS);
+
+			for (int i = 0; i < parameters.getChildCount(); i++) {
+				TypedNode parameter = child(parameters, i);
+
+				if (parameter.getType() == ObamaParser.PARAMETER_UNNAMED) {
+					this.type(child(parameter, 1));
+					this.helper.visitMethodParameterUnnamed(parameter);
+				} else if (parameter.getType() == ObamaParser.PARAMETER_NAMED && i > 0) {
+					this.type(child(parameter, 1));
+					this.helper.visitMethodParameterNamed(parameter);
+				} else {
+					this.unexpected(parameter);
+				}
+			}
+
+			this.helper.visitMethodDeclaration(node);
+
+			if (this.bodies != null) {
+				// The method is the last identifier entered
+				this.bodies.add(new Body(node, this.table.retrieve(child(node, 2).getText()), this.helper.getNumberOfClasses()));
+			} else {
+				this.methodBody(node);
+			}
+		} catch (CheckerException exception) {
+			throw CheckerVisitor.locate(exception, node);
+		}
+	}
+
+	private void methodBody(TypedNode node) throws CheckerException {
+		this.helper.visitMethodContentStart(node);
+
+		// The parameters share the scope of the body
+		TypedNode body = child(node, 4);
+
+		this.expect(body, ObamaParser.SCOPE);
+
+		for (int i = 0; i < body.getChildCount(); i++) {
+			this.methodContents(child(body, i));
+		}
+
+		this.helper.visitMethodContentEnd(node);
+	}
+
+	/**
+	 * Give the method bodies of the current scope a snapshot of the
+	 * declarations up to their method
+	 */
+	private void freeze() {
+		if (this.bodies == null) {
+			return;
+		}
+
+		SymbolTable.Snapshot snapshot = null;
+
+		// Bodies of enclosed scopes were given one when their scope closed
+		for (int i = this.bodies.size() - 1; i >= 0 && this.bodies.get(i).scope == null; i--) {
+			Body body = this.bodies.get(i);
+
+			if (snapshot == null) {
+				snapshot = this.table.snapshot();
+			}
+
+			body.scope = snapshot.upTo(body.entry);
+		}
+	}
+
+	/**
+	 * Check the method bodies left by the first phase in parallel, and report
+	 * the first error in source order
+	 *
+	 * @throws CheckerException If a method body violates a constraint
+	 */
+	private void checkBodies() throws CheckerException {
+		// After an error, the scopes of the error were never closed
+		this.freeze();
+
+		int groups = Math.min(this.bodies.size(), this.parallelism * GROUPS_PER_THREAD);
+		List<Future<?>> futures = Lists.newArrayList();
+		int start = 0;
+
+		for (int i = 0; i < groups; i++) {
+			final List<Body> group = this.bodies.subList(start, (int) ((long) this.bodies.size() * (i + 1) / groups));
+
+			futures.add(this.executor.submit(new Runnable() {
+				@Override
+				public void run() {
+					// Later bodies of a group cannot come first
+					for (Body body : group) {
+						if (!CheckerVisitor.this.check(body)) {
+							break;
+						}
+					}
+				}
+			}));
+
+			start += group.size();
+		}
+
+		for (Future<?> future : futures) {
+			try {
+				future.get();
+			} catch (ExecutionException exception) {
+				// Bodies keep their exceptions, so this is a bug
+				throw new IllegalStateException(exception.getCause());
+			} catch (InterruptedException exception) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Checking interrupted", exception);
+			}
+		}
+
+		// Merge in source order, up to the first error
+		for (Body body : this.bodies) {
+			this.helper.merge(body.visitor.helper);
+			this.symbols += body.visitor.table.getEntryCount();
+			this.count(body.visitor);
+
+			if (body.failure != null) {
+				throw body.failure;
+			} else if (body.crash != null) {
+				throw body.crash;
+			} else if (body.visitor.getNumberOfErrors() > 0) {
+				throw new MalformedTreeException();
+			}
+		}
+	}
+
+	/**
+	 * Check a method body in a symbol table of its own
+	 *
+	 * @return True if the body is correct
+	 */
+	private boolean check(Body body) {
+		SymbolTable table = new SymbolTable(body.scope);
+		body.visitor = new CheckerVisitor(new CheckerHelper(this.helper, table, body.classes), table);
+
+		try {
+			body.visitor.methodBody(body.node);
+			return true;
+		} catch (CheckerException exception) {
+			body.failure = CheckerVisitor.locate(exception, body.node);
+		} catch (MalformedTreeException exception) {
+			// Reported and counted
+		} catch (RuntimeException exception) {
+			body.crash = exception;
+		}
+
+		return false;
+	}
+
+	private void varDeclaration(TypedNode node) throws CheckerException {
+		try {
+			this.type(child(node, 0));
+
+			// Initializers are separate assignments
+			if (node.getChildCount() > 2) {
+				this.unexpected(child(node, 2));
+			}
+
+			this.helper.visitVarDeclaration(node);
+		} catch (CheckerException exception) {
+			throw CheckerVisitor.locate(exception, node);
+		}
+	}
+
+	private void constDeclaration(TypedNode node) throws CheckerException {
+		try {
+			this.type(child(node, 0));
+			this.literal(child(node, 2));
+			this.helper.visitConstDeclaration(node);
+		} catch (CheckerException exception) {
+			throw CheckerVisitor.locate(exception, node);
+		}
+	}
+
+	private void methodContents(TypedNode node) throws CheckerException {
+		switch (node.getType()) {
+			case ObamaParser.VAR:
+				this.varDeclaration(node);
+				break;
+			case ObamaParser.RETURN:
+				this.returnStatement(node);
+				break;
+			case ObamaParser.IF_ELSE_IF_ELSE:
+				this.ifStatement(node);
+				break;
+			case ObamaParser.WHILE:
+				this.whileStatement(node);
+				break;
+			case ObamaParser.FOR:
+				this.forStatement(node);
+				break;
+			case ObamaParser.SWITCH:
+				this.switchStatement(node);
+				break;
+			default:
+				this.expression(node);
+		}
+	}
+
+	private void returnStatement(TypedNode node) throws CheckerException {
+		try {
+			this.expression(child(node, 0));
+			this.helper.visitMethodReturn(node);
+		} catch (CheckerException exception) {
+			throw CheckerVisitor.locate(exception, node);
+		}
+	}
+
+	private void ifStatement(TypedNode node) throws CheckerException {
+		try {
+			for (int i = 0; i < node.getChildCount(); i++) {
+				TypedNode branch = child(node, i);
+
+				if (i == 0 ? branch.getType() == ObamaParser.IF : branch.getType() == ObamaParser.ELSE_IF || branch.getType() == ObamaParser.ELSE) {
+					this.ifBranch(branch);
+				} else {
+					this.unexpected(branch);
+				}
+			}
+
+			this.helper.visitIfStatement(node);
+		} catch (CheckerException exception) {
+			throw CheckerVisitor.locate(exception, node);
+		}
+	}
+
+	private void ifBranch(TypedNode node) throws CheckerException {
+		try {
+			if (node.getType() == ObamaParser.ELSE) {
+				this.helper.visitIfStatementElse(node);
+				this.scope(child(node, 0));
+				return;
+			}
+
+			this.expression(child(node, 0));
+
+			if (node.getType() == ObamaParser.IF) {
+				this.helper.visitIfStatementIf(node);
+			} else {
+				this.helper.visitIfStatementElseIf(node);
+			}
+
+			this.scope(child(node, 1));
+		} catch (CheckerException exception) {
+			throw CheckerVisitor.locate(exception, node);
+		}
+	}
+
+	private void whileStatement(TypedNode node) throws CheckerException {
+		try {
+			this.expression(child(node, 0));
+			this.helper.visitWhileStatement(node);
+			this.scope(child(node, 1));
+		} catch (CheckerException exception) {
+			throw CheckerVisitor.locate(exception, node);
+		}
+	}
+
+	private void forStatement(TypedNode node) throws CheckerException {
+		try {
+			this.expression(child(node, 0));
+			this.expression(child(node, 1));
+			this.expression(child(node, 2));
+			this.helper.visitForStatement(node);
+			this.scope(child(node, 3));
+		} catch (CheckerException exception) {
+			throw CheckerVisitor.locate(exception, node);
+		}
+	}
+
+	private void switchStatement(TypedNode node) throws CheckerException {
+		try {
+			this.expression(child(node, 0));
+			this.helper.visitSwitchStatementSwitch(node);
+
+			for (int i = 1; i < node.getChildCount(); i++) {
+				this.switchCase(child(node, i));
+			}
+		} catch (CheckerException exception) {
+			throw CheckerVisitor.locate(exception, node);
+		}
+	}
+
+	private void switchCase(TypedNode node) throws CheckerException {
+		try {
+			if (node.getType() == ObamaParser.CASE) {
+				this.helper.visitSwitchStatementCase(node);
+			} else if (node.getType() == ObamaParser.DEFAULT) {
+				this.helper.visitSwitchStatementDefault(node);
+			} else {
+				this.unexpected(node);
+			}
+
+			this.scope(child(node, 0));
+		} catch (CheckerException exception) {
+			throw CheckerVisitor.locate(exception, node);
+		}
+	}
+
+	/**
+	 * Visit the statements of a block in a scope of their own
+	 */
+	private void scope(TypedNode node) throws CheckerException {
+		this.expect(node, ObamaParser.SCOPE);
+
+		this.helper.openScope();
+
+		for (int i = 0; i < node.getChildCount(); i++) {
+			this.methodContents(child(node, i));
+		}
+
+		this.helper.closeScope();
+	}
+
+	private void expression(TypedNode node) throws CheckerException {
+		if (node == null) {
+			this.unexpected(node);
+		}
+
+		try {
+			switch (node.getType()) {
+				case ObamaParser.ASSIGN:
+					this.operands(node, 2);
+					this.helper.visitAssignExpression(node);
+					break;
+				case ObamaParser.IF_INLINE:
+					this.operands(node, 3);
+					this.helper.visitInlineIf(node);
+					break;
+				case ObamaParser.L_OR:
+					this.operands(node, 2);
+					this.helper.visitLogicalOrExpression(node);
+					break;
+				case ObamaParser.L_AND:
+					this.operands(node, 2);
+					this.helper.visitLogicalAndExpression(node);
+					break;
+				case ObamaParser.B_OR:
+					this.operands(node, 2);
+					this.helper.visitBitwiseOrExpression(node);
+					break;
+				case ObamaParser.B_AND:
+					this.operands(node, 2);
+					this.helper.visitBitwiseAndExpression(node);
+					break;
+				case ObamaParser.GT:
+					this.operands(node, 2);
+					this.helper.visitGTExpression(node);
+					break;
+				case ObamaParser.LT:
+					this.operands(node, 2);
+					this.helper.visitLTExpression(node);
+					break;
+				case ObamaParser.GTEQ:
+					this.operands(node, 2);
+					this.helper.visitGTEQExpression(node);
+					break;
+				case ObamaParser.LTEQ:
+					this.operands(node, 2);
+					this.helper.visitLTEQExpression(node);
+					break;
+				case ObamaParser.EQ:
+					this.operands(node, 2);
+					this.helper.visitEQExpression(node);
+					break;
+				case ObamaParser.NEQ:
+					this.operands(node, 2);
+					this.helper.visitNEQExpression(node);
+					break;
+				case ObamaParser.PLUS:
+					this.operands(node, 2);
+					this.helper.visitPlusExpression(node);
+					break;
+				case ObamaParser.MIN:
+					this.operands(node, 2);
+					this.helper.visitMinExpression(node);
+					break;
+				case ObamaParser.MULT:
+					this.operands(node, 2);
+					this.helper.visitMultExpression(node);
+					break;
+				case ObamaParser.DIV:
+					this.operands(node, 2);
+					this.helper.visitDivExpression(node);
+					break;
+				case ObamaParser.MOD:
+					this.operands(node, 2);
+					this.helper.visitModExpression(node);
+					break;
+				case ObamaParser.NOT:
+					this.operands(node, 1);
+					this.helper.visitNotExpression(node);
+					break;
+				case ObamaParser.NEW:
+					this.field(child(node, 0));
+					this.helper.visitNewExpression(node);
+					break;
+				case ObamaParser.PAREN:
+					this.operands(node, 1);
+					this.helper.visitParenExpression(node);
+					break;
+				case ObamaParser.METHOD_CALL:
+					this.methodCall(node);
+					break;
+				case ObamaParser.BUILTIN:
+				case ObamaParser.THIS:
+				case ObamaParser.GLOBAL:
+				case ObamaParser.FIELD:
+					this.field(node);
+					break;
+				default:
+					this.literal(node);
+			}
+		} catch (CheckerException exception) {
+			throw CheckerVisitor.locate(exception, node);
+		}
+	}
+
+	/**
+	 * Visit the operands of an expression, which are all expressions
+	 */
+	private void operands(TypedNode node, int count) throws CheckerException {
+		for (int i = 0; i < count; i++) {
+			this.expression(child(node, i));
+		}
+	}
+
+	private void methodCall(TypedNode node) throws CheckerException {
+		this.field(child(node, 0));
+
+		// A call has at least one part of its selector
+		if (node.getChildCount() < 2) {
+			this.unexpected(node);
+		}
+
+		for (int i = 1; i < node.getChildCount(); i++) {
+			TypedNode parameter = child(node, i);
+
+			try {
+				switch (parameter.getType()) {
+					case ObamaParser.PARAMETER_NAMED:
+						this.expression(child(parameter, 1));
+						this.helper.visitMethodCallParameterNamed(parameter);
+						break;
+					case ObamaParser.PARAMETER_UNNAMED:
+						this.expression(child(parameter, 0));
+						this.helper.visitMethodCallParameterUnnamed(parameter);
+						break;
+					case ObamaParser.PARAMETER_NONE:
+						this.helper.visitMethodCallNoParameters(parameter);
+						break;
+					default:
+						this.unexpected(parameter);
+				}
+			} catch (CheckerException exception) {
+				throw CheckerVisitor.locate(exception, parameter);
+			}
+		}
+
+		this.helper.visitMethodCall(node);
+	}
+
+	private void field(TypedNode node) throws CheckerException {
+		if (node == null) {
+			this.unexpected(node);
+		}
+
+		try {
+			switch (node.getType()) {
+				case ObamaParser.BUILTIN:
+					this.helper.visitBuiltin(node);
+					break;
+				case ObamaParser.THIS:
+					this.helper.visitThis(node);
+					break;
+				case ObamaParser.GLOBAL:
+					this.helper.visitGlobal(node);
+					break;
+				case ObamaParser.FIELD:
+					this.helper.visitField(node);
+					break;
+				default:
+					this.unexpected(node);
+			}
+		} catch (CheckerException exception) {
+			throw CheckerVisitor.locate(exception, node);
+		}
+	}
+
+	private void literal(TypedNode node) {
+		if (node == null) {
+			this.unexpected(node);
+		}
+
+		switch (node.getType()) {
+			case ObamaParser.INT_LITERAL:
+				this.helper.visitLiteral(node, int.class);
+				break;
+			case ObamaParser.STRING_LITERAL:
+				this.helper.visitLiteral(node, String.class);
+				break;
+			case ObamaParser.CHAR_LITERAL:
+				this.helper.visitLiteral(node, char.class);
+				break;
+			case ObamaParser.YES:
+			case ObamaParser.NO:
+				this.helper.visitLiteral(node, boolean.class);
+				break;
+			default:
+				this.unexpected(node);
+		}
+	}
+
+	private void type(TypedNode node) throws CheckerException {
+		this.expect(node, ObamaParser.TYPE);
+
+		try {
+			this.helper.visitType(node);
+		} catch (CheckerException exception) {
+			throw CheckerVisitor.locate(exception, node);
+		}
+	}
+
+	/**
+	 * Method body that is checked in the second phase
+	 */
+	private static class Body {
+		private final TypedNode node;
+
+		/**
+		 * Symbol table entry of the method
+		 */
+		private final IdEntry entry;
+
+		/**
+		 * Number of classes declared before the method
+		 */
+		private final int classes;
+
+		/**
+		 * Declarations up to the method
+		 */
+		private SymbolTable.Snapshot scope;
+
+		/**
+		 * Pass over the body, once it is checked
+		 */
+		private CheckerVisitor visitor;
+
+		private CheckerException failure;
+
+		private RuntimeException crash;
+
+		private Body(TypedNode node, IdEntry entry, int classes) {
+			this.node = node;
+			this.entry = entry;
+			this.classes = classes;
+		}
+	}
+
+	/**
+	 * Give an exception the node it was thrown for, unless it has one
+	 */
+	private static CheckerException locate(CheckerException exception, TypedNode node) {
+		if (exception.getTree() == null) {
+			exception.setTree(node);
+		}
+
+		return exception;
+	}
+}
@@ -0,0 +1,629 @@
+package vb.obama.compiler;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import vb.obama.antlr.stream.ByteBufferCharStream;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Names of the classes of the JDK and the class path, by package. Resolving a
+ * type under a wildcard import probes every import with Class.forName; with
+ * an index, probes for classes that do not exist are skipped.
+ *
+ * The index only rules classes out. A package it does not know is probed as
+ * usual, and it is only consulted for the system class loader, which loads
+ * the class path it was built from.
+ *
+ * The classes of the JDK module image and of jars, including those named by
+ * the manifests of jars, are stored in a file together with the modification
+ * time and size of every source. When one of them changed, or the class path
+ * or JDK is another one, the index is built again. Checking this only takes a
+ * stat per source. The file is memory-mapped and the names of a package are
+ * only decoded when the package is looked up, so opening an index costs
+ * little more than the imports it serves. Directories on the class path
+ * change too often to store; they are asked for the class file instead.
+ *
+ * Instances are thread safe.
+ *
+ * @version 1.0
+ */
+public class ClassIndex {
+	/**
+	 * First bytes of an index file, 'OCLX'
+	 */
+	private static final int MAGIC = 0x4F434C58;
+
+	/**
+	 * Version of the file layout
+	 */
+	private static final int FORMAT = 1;
+
+	/**
+	 * Separator of the names of a package. Class names never contain it.
+	 */
+	private static final char SEPARATOR = '/';
+
+	/**
+	 * Message logger
+	 */
+	private static final Logger logger = LogManager.getLogger(ClassIndex.class.getName());
+
+	/**
+	 * Encoded index
+	 */
+	private final ByteBuffer data;
+
+	/**
+	 * Slot of every stored package
+	 */
+	private final ImmutableMap<String, Integer> packages;
+
+	/**
+	 * Position and length of the names of every slot in the data
+	 */
+	private final int[] offsets;
+	private final int[] lengths;
+
+	/**
+	 * Decoded names of every slot, or null if not decoded yet
+	 */
+	private final AtomicReferenceArray<Set<String>> names;
+
+	/**
+	 * Directories of the class path
+	 */
+	private final ImmutableList<File> directories;
+
+	/**
+	 * True if the stored classes were read from disk
+	 */
+	private final boolean loaded;
+
+	/**
+	 * Construct an index from its encoding
+	 *
+	 * @param in Encoded index, at the start
+	 * @param loaded True if the encoding was read from disk
+	 * @throws IOException In case the encoding is damaged
+	 */
+	private ClassIndex(ByteBuffer in, boolean loaded) throws IOException {
+		Sources sources = ClassIndex.readHeader(in);
+		ImmutableMap.Builder<String, Integer> packages = ImmutableMap.builder();
+		int count = in.getInt();
+
+		this.offsets = new int[count];
+		this.lengths = new int[count];
+
+		for (int i = 0; i < count; i++) {
+			packages.put(ClassIndex.readString(in), i);
+			this.lengths[i] = in.getInt();
+			this.offsets[i] = in.position();
+			in.position(in.position() + this.lengths[i]);
+		}
+
+		this.data = in;
+		this.packages = packages.build();
+		this.names = new AtomicReferenceArray<Set<String>>(count);
+		this.directories = sources.getDirectories();
+		this.loaded = loaded;
+	}
+
+	/**
+	 * Build the index of the running JDK and class path
+	 *
+	 * @return Index
+	 * @throws IOException In case the JDK or a jar cannot be read
+	 */
+	public static ClassIndex build() throws IOException {
+		return new ClassIndex(ByteBuffer.wrap(ClassIndex.encode(Sources.current())), false);
+	}
+
+	/**
+	 * Read the index of the running JDK and class path from a file, or build
+	 * and store it if the file is missing, damaged or out of date. Failing to
+	 * store it is logged, since the index is only an optimization.
+	 *
+	 * @param file Index file
+	 * @return Index
+	 * @throws IOException In case the JDK or a jar cannot be read
+	 * @requires file != null
+	 */
+	public static ClassIndex open(File file) throws IOException {
+		checkNotNull(file);
+
+		if (file.isFile()) {
+			try {
+				ByteBuffer in = ByteBufferCharStream.map(file);
+
+				if (ClassIndex.readHeader(in.duplicate()).isCurrent()) {
+					return new ClassIndex(in, true);
+				}
+
+				logger.debug(String.format("Class index '%s' is out of date", file));
+			} catch (IOException | RuntimeException exception) {
+				logger.warn(String.format("Ignoring class index '%s': %s", file, exception.getMessage()));
+			}
+		}
+
+		byte[] data = ClassIndex.encode(Sources.current());
+		ClassIndex.write(file, data);
+
+		return new ClassIndex(ByteBuffer.wrap(data), false);
+	}
+
+	/**
+	 * Return whether a class may exist. Nested classes are named like
+	 * Class.forName expects them, e.g. 'java.util.Map$Entry'.
+	 *
+	 * @param className Fully qualified name of the class
+	 * @return False if the class does not exist in a known package
+	 * @requires className != null
+	 */
+	public boolean mayContain(String className) {
+		int dot = className.lastIndexOf('.');
+		String packageName = dot < 0 ? "" : className.substring(0, dot);
+		String name = className.substring(dot + 1);
+		Set<String> stored = this.getStored(packageName);
+
+		if (stored != null && stored.contains(name)) {
+			return true;
+		}
+
+		String path = packageName.replace('.', File.separatorChar);
+		boolean known = stored != null;
+
+		for (File directory : this.directories) {
+			File folder = new File(directory, path);
+
+			if (folder.isDirectory()) {
+				if (new File(folder, name + ".class").isFile()) {
+					return true;
+				}
+
+				known = true;
+			}
+		}
+
+		return !known;
+	}
+
+	/**
+	 * Return whether the index knows a package. Classes of other packages are
+	 * never ruled out.
+	 *
+	 * @param name Package name, empty for the unnamed package
+	 * @requires name != null
+	 */
+	public boolean containsPackage(String name) {
+		if (this.packages.containsKey(checkNotNull(name))) {
+			return true;
+		}
+
+		for (File directory : this.directories) {
+			if (new File(directory, name.replace('.', File.separatorChar)).isDirectory()) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Return the number of classes of the JDK and jars. This decodes all
+	 * packages.
+	 */
+	public int size() {
+		int result = 0;
+
+		for (String name : this.packages.keySet()) {
+			result += this.getStored(name).size();
+		}
+
+		return result;
+	}
+
+	/**
+	 * Return whether the classes of the JDK and jars were read from disk,
+	 * instead of being built
+	 */
+	public boolean isLoaded() {
+		return this.loaded;
+	}
+
+	/**
+	 * Return the stored names of a package, decoding them on first use
+	 *
+	 * @return Simple names, or null if the package is not stored
+	 */
+	private Set<String> getStored(String packageName) {
+		Integer slot = this.packages.get(packageName);
+
+		if (slot == null) {
+			return null;
+		}
+
+		Set<String> result = this.names.get(slot);
+
+		if (result == null) {
+			byte[] bytes = new byte[this.lengths[slot]];
+			ByteBuffer in = this.data.duplicate();
+			in.position(this.offsets[slot]);
+			in.get(bytes);
+
+			// Decoding twice in a race gives the same set
+			result = ImmutableSet.copyOf(Splitter.on(SEPARATOR).split(new String(bytes, StandardCharsets.UTF_8)));
+			this.names.set(slot, result);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Read the header of an encoded index
+	 *
+	 * @param in Encoded index, at the start
+	 * @return Sources the index was built from
+	 * @throws IOException In case it is no index
+	 */
+	private static Sources readHeader(ByteBuffer in) throws IOException {
+		if (in.getInt() != MAGIC || in.getInt() != FORMAT) {
+			throw new IOException("Not a class index");
+		}
+
+		return Sources.read(in);
+	}
+
+	/**
+	 * Encode the classes of the module image and jars
+	 */
+	private static byte[] encode(Sources sources) throws IOException {
+		SortedMap<String, SortedSet<String>> packages = Maps.newTreeMap();
+		sources.scanStored(packages);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024 * 1024);
+
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT);
+			sources.write(out);
+			out.writeInt(packages.size());
+
+			for (Map.Entry<String, SortedSet<String>> entry : packages.entrySet()) {
+				byte[] names = Joiner.on(SEPARATOR).join(entry.getValue()).getBytes(StandardCharsets.UTF_8);
+
+				out.writeUTF(entry.getKey());
+				out.writeInt(names.length);
+				out.write(names);
+			}
+		}
+
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Store an encoded index. The file is replaced atomically, so a
+	 * concurrent open never sees half an index.
+	 */
+	private static void write(File file, byte[] data) {
+		File directory = file.getAbsoluteFile().getParentFile();
+		Path temp = null;
+
+		try {
+			directory.mkdirs();
+			temp = Files.createTempFile(directory.toPath(), file.getName(), ".tmp");
+			Files.write(temp, data);
+			Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException exception) {
+			logger.warn(String.format("Unable to write class index '%s': %s", file, exception.getMessage()));
+
+			try {
+				if (temp != null) {
+					Files.deleteIfExists(temp);
+				}
+			} catch (IOException ignored) {
+				// Left behind
+			}
+		}
+	}
+
+	/**
+	 * Add a class file to the index
+	 *
+	 * @param path Path of the class file, relative to its root
+	 */
+	private static void add(Map<String, SortedSet<String>> packages, String path) {
+		if (!path.endsWith(".class")) {
+			return;
+		}
+
+		// Classes of multi-release jars
+		if (path.startsWith("META-INF/versions/")) {
+			int slash = path.indexOf('/', "META-INF/versions/".length());
+
+			if (slash < 0) {
+				return;
+			}
+
+			path = path.substring(slash + 1);
+		}
+
+		int slash = path.lastIndexOf('/');
+		String name = path.substring(slash + 1, path.length() - ".class".length());
+
+		if (name.equals("module-info") || name.equals("package-info")) {
+			return;
+		}
+
+		String packageName = slash < 0 ? "" : path.substring(0, slash).replace('/', '.');
+		SortedSet<String> names = packages.get(packageName);
+
+		if (names == null) {
+			names = Sets.newTreeSet();
+			packages.put(packageName, names);
+		}
+
+		names.add(name);
+	}
+
+	private static String readString(ByteBuffer in) {
+		byte[] bytes = new byte[in.getShort() & 0xFFFF];
+		in.get(bytes);
+
+		// Modified UTF-8 equals UTF-8 for names without NUL or supplementary characters
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Files the index is built from: the JDK module image, the jars of the
+	 * class path including those named by their manifests, and the
+	 * directories of the class path
+	 */
+	private static class Sources {
+		/**
+		 * Version and location of the JDK
+		 */
+		private final String runtime;
+
+		private final String classPath;
+
+		/**
+		 * Module image and jars, with their modification time and size
+		 */
+		private final List<String> stored;
+		private final List<Long> stamps;
+
+		private final List<String> directories;
+
+		private Sources(String runtime, String classPath, List<String> stored, List<Long> stamps, List<String> directories) {
+			this.runtime = runtime;
+			this.classPath = classPath;
+			this.stored = stored;
+			this.stamps = stamps;
+			this.directories = directories;
+		}
+
+		/**
+		 * Find the sources of the running JVM. This reads the manifests of
+		 * all jars.
+		 */
+		private static Sources current() throws IOException {
+			String classPath = Sources.getClassPath();
+			List<String> stored = Lists.newArrayList();
+			List<Long> stamps = Lists.newArrayList();
+			List<String> directories = Lists.newArrayList();
+			Set<File> seen = Sets.newHashSet();
+
+			// The module image, read through the jrt file system
+			File modules = Sources.getModules();
+			stored.add(modules.getPath());
+			stamps.add(modules.lastModified());
+			stamps.add(modules.length());
+
+			for (String entry : Splitter.on(File.pathSeparatorChar).omitEmptyStrings().split(classPath)) {
+				Sources.addClassPath(new File(entry), stored, stamps, directories, seen);
+			}
+
+			return new Sources(Sources.getRuntime(), classPath, stored, stamps, directories);
+		}
+
+		/**
+		 * Return whether these are the sources of the running JVM, and none
+		 * of the stored ones changed
+		 */
+		private boolean isCurrent() {
+			if (!this.runtime.equals(Sources.getRuntime()) || !this.classPath.equals(Sources.getClassPath())) {
+				return false;
+			}
+
+			for (int i = 0; i < this.stored.size(); i++) {
+				File file = new File(this.stored.get(i));
+
+				if (file.lastModified() != this.stamps.get(2 * i) || file.length() != this.stamps.get(2 * i + 1)) {
+					return false;
+				}
+			}
+
+			return true;
+		}
+
+		private static String getRuntime() {
+			return Runtime.version() + " " + System.getProperty("java.home");
+		}
+
+		private static String getClassPath() {
+			return System.getProperty("java.class.path", "");
+		}
+
+		private static File getModules() {
+			return new File(System.getProperty("java.home"), "lib" + File.separator + "modules").getAbsoluteFile();
+		}
+
+		private static void addClassPath(File file, List<String> stored, List<Long> stamps, List<String> directories, Set<File> seen) throws IOException {
+			file = file.getAbsoluteFile();
+
+			if (!seen.add(file)) {
+				return;
+			}
+
+			if (file.isDirectory()) {
+				directories.add(file.getPath());
+			} else if (file.isFile()) {
+				stored.add(file.getPath());
+				stamps.add(file.lastModified());
+				stamps.add(file.length());
+
+				// Manifest-only jars, like those of test runners
+				try (JarFile jar = new JarFile(file)) {
+					Manifest manifest = jar.getManifest();
+					String entries = manifest != null ? manifest.getMainAttributes().getValue(Attributes.Name.CLASS_PATH) : null;
+
+					if (!Strings.isNullOrEmpty(entries)) {
+						for (String entry : Splitter.on(' ').omitEmptyStrings().split(entries)) {
+							File next;
+
+							try {
+								URI uri = file.getParentFile().toURI().resolve(entry);
+								next = "file".equals(uri.getScheme()) ? new File(uri) : null;
+							} catch (IllegalArgumentException exception) {
+								next = null;
+							}
+
+							if (next != null) {
+								Sources.addClassPath(next, stored, stamps, directories, seen);
+							}
+						}
+					}
+				}
+			}
+		}
+
+		/**
+		 * Add the classes of the module image and jars
+		 */
+		private void scanStored(Map<String, SortedSet<String>> packages) throws IOException {
+			FileSystem jrt;
+
+			try {
+				jrt = FileSystems.getFileSystem(URI.create("jrt:/"));
+			} catch (FileSystemNotFoundException exception) {
+				throw new IOException("The JDK has no module image", exception);
+			}
+
+			try (Stream<Path> modules = Files.list(jrt.getPath("/modules"))) {
+				Iterator<Path> iterator = modules.iterator();
+
+				while (iterator.hasNext()) {
+					Sources.scanDirectory(iterator.next(), packages);
+				}
+			}
+
+			for (String path : this.stored.subList(1, this.stored.size())) {
+				try (JarFile jar = new JarFile(path)) {
+					Enumeration<JarEntry> entries = jar.entries();
+
+					while (entries.hasMoreElements()) {
+						ClassIndex.add(packages, entries.nextElement().getName());
+					}
+				}
+			}
+		}
+
+		private ImmutableList<File> getDirectories() {
+			ImmutableList.Builder<File> result = ImmutableList.builder();
+
+			for (String directory : this.directories) {
+				result.add(new File(directory));
+			}
+
+			return result.build();
+		}
+
+		private static void scanDirectory(Path root, Map<String, SortedSet<String>> packages) throws IOException {
+			try (Stream<Path> files = Files.walk(root)) {
+				Iterator<Path> iterator = files.iterator();
+				String separator = root.getFileSystem().getSeparator();
+
+				while (iterator.hasNext()) {
+					ClassIndex.add(packages, root.relativize(iterator.next()).toString().replace(separator, "/"));
+				}
+			}
+		}
+
+		private void write(DataOutputStream out) throws IOException {
+			out.writeUTF(this.runtime);
+			out.writeUTF(this.classPath);
+			out.writeInt(this.stored.size());
+
+			for (int i = 0; i < this.stored.size(); i++) {
+				out.writeUTF(this.stored.get(i));
+				out.writeLong(this.stamps.get(2 * i));
+				out.writeLong(this.stamps.get(2 * i + 1));
+			}
+
+			out.writeInt(this.directories.size());
+
+			for (String path : this.directories) {
+				out.writeUTF(path);
+			}
+		}
+
+		private static Sources read(ByteBuffer in) {
+			String runtime = ClassIndex.readString(in);
+			String classPath = ClassIndex.readString(in);
+			List<String> stored = Lists.newArrayList();
+			List<Long> stamps = Lists.newArrayList();
+			List<String> directories = Lists.newArrayList();
+
+			for (int i = in.getInt(); i > 0; i--) {
+				stored.add(ClassIndex.readString(in));
+				stamps.add(in.getLong());
+				stamps.add(in.getLong());
+			}
+
+			for (int i = in.getInt(); i > 0; i--) {
+				directories.add(ClassIndex.readString(in));
+			}
+
+			return new Sources(runtime, classPath, stored, stamps, directories);
+		}
+	}
+}
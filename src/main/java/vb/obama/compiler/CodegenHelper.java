@@ -3,10 +3,20 @@ package vb.obama.compiler;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.List;
+import java.util.Map;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.CRC32;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -35,10 +45,11 @@ import vb.obama.exceptions.CodegenException;
 import vb.obama.util.ReflectionUtils;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 
 /**
  * 
- * @verion 1.3
+ * @verion 1.5
  */
 public class CodegenHelper {
 	/**
@@ -46,6 +57,12 @@ public class CodegenHelper {
 	 */
 	private static final Logger logger = LogManager.getLogger(CodegenHelper.class.getName());
 	
+	/**
+	 * Size of the write buffer of JAR files, so small class files are
+	 * written in large sequential chunks
+	 */
+	private static final int JAR_BUFFER_SIZE = 64 * 1024;
+	
 	/**
 	 * Holds all generated classes
 	 */
@@ -95,7 +112,7 @@ public class CodegenHelper {
 			info.classWriter
 		);
 		generator.visitCode();
-		generator.visitLineNumber(node.token.getLine(), generator.mark());
+		generator.visitLineNumber(node.getToken().getLine(), generator.mark());
 		
 		// Save instance to add statics
 		info.generator = generator;
@@ -110,7 +127,7 @@ public class CodegenHelper {
 			info.classWriter
 		);
 		generator.visitCode();
-		generator.visitLineNumber(node.token.getLine(), generator.mark());
+		generator.visitLineNumber(node.getToken().getLine(), generator.mark());
 		 
 		generator.loadThis();
 		generator.invokeConstructor(Type.getType(Object.class), constructor);
@@ -152,7 +169,7 @@ public class CodegenHelper {
 		
 		// Open a method
 		generator.visitCode();
-		generator.visitLineNumber(node.token.getLine(), generator.mark());
+		generator.visitLineNumber(node.getToken().getLine(), generator.mark());
 	}
 	
 	public void visitMethodContentEnd(TypedNode node) throws CodegenException {
@@ -810,6 +827,21 @@ public class CodegenHelper {
 		return (MethodInfo) current.getInfo();
 	}
 	
+	/**
+	 * Generates the byte code of all classes defined in the source.
+	 * 
+	 * @return Map of class name to byte code, in order of definition
+	 */
+	public Map<String, byte[]> toByteArrays() {
+		Map<String, byte[]> result = Maps.newLinkedHashMap();
+		
+		for (ClassInfo info : this.classes) {
+			result.put(info.name, info.classWriter.toByteArray());
+		}
+		
+		return result;
+	}
+	
 	/**
 	 * Generates all files that can be generated from the source. Overwrites 
 	 * existing files.
@@ -819,18 +851,29 @@ public class CodegenHelper {
 	 * @requires path != null
 	 */
 	public List<File> toClasses(String path) throws IOException {
+		return CodegenHelper.toClasses(this.toByteArrays(), path);
+	}
+	
+	/**
+	 * Writes generated classes to disk, one file per class. Overwrites
+	 * existing files.
+	 * 
+	 * @param classes Map of class name to byte code
+	 * @param path Output path
+	 * @throws IOException
+	 * @requires classes != null && path != null
+	 */
+	public static List<File> toClasses(Map<String, byte[]> classes, String path) throws IOException {
+		checkNotNull(classes);
 		checkNotNull(path);
 		
 		// Generate result list
 		List<File> result = Lists.newArrayList();
 		
 		// Walk throuh all defined classes
-		for (ClassInfo info : this.classes) {
-			ClassWriter classWriter = info.classWriter;
-
-			// Generate byte code
-			byte[] content = classWriter.toByteArray();
-			File file = new File(path, info.name + ".class");
+		for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+			byte[] content = entry.getValue();
+			File file = new File(path, entry.getKey() + ".class");
 			
 			// Remove old files
 			if (file.exists()) {
@@ -858,4 +901,65 @@ public class CodegenHelper {
 		logger.debug("Class export completed");
 		return result;
 	}
+	
+	/**
+	 * Writes generated classes into a single JAR file, in one sequential
+	 * stream. The manifest names the main class, so the JAR can be run with
+	 * 'java -jar'. The JAR is written next to its final path and then moved
+	 * there atomically, replacing an existing file, so a failed write never
+	 * leaves a truncated JAR. Missing parent directories are created.
+	 * 
+	 * @param classes Map of class name to byte code
+	 * @param mainClass Name of the class with the main method, or null
+	 * @param jar Output file
+	 * @param stored Store the classes uncompressed, which is faster to write
+	 * @throws IOException
+	 * @requires classes != null && jar != null
+	 */
+	public static void toJar(Map<String, byte[]> classes, String mainClass, File jar, boolean stored) throws IOException {
+		checkNotNull(classes);
+		checkNotNull(jar);
+		
+		Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		
+		if (mainClass != null) {
+			manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, mainClass);
+		}
+		
+		File directory = jar.getAbsoluteFile().getParentFile();
+		directory.mkdirs();
+		
+		Path temp = Files.createTempFile(directory.toPath(), jar.getName(), ".tmp");
+		
+		try {
+			try (JarOutputStream stream = new JarOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), JAR_BUFFER_SIZE), manifest)) {
+				for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+					byte[] content = entry.getValue();
+					JarEntry file = new JarEntry(entry.getKey().replace('.', '/') + ".class");
+					
+					// Stored entries need their size and checksum up front
+					if (stored) {
+						CRC32 crc = new CRC32();
+						crc.update(content);
+						
+						file.setMethod(JarEntry.STORED);
+						file.setSize(content.length);
+						file.setCompressedSize(content.length);
+						file.setCrc(crc.getValue());
+					}
+					
+					stream.putNextEntry(file);
+					stream.write(content);
+					stream.closeEntry();
+				}
+			}
+			
+			Files.move(temp, jar.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+		
+		logger.info(String.format("Written %d class(es) to '%s' (%d bytes)", classes.size(), jar, jar.length()));
+	}
 }
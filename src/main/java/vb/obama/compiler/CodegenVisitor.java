@@ -0,0 +1,415 @@
+package vb.obama.compiler;
+
+import vb.obama.antlr.ObamaParser;
+import vb.obama.antlr.tree.TypedNode;
+import vb.obama.exceptions.CodegenException;
+
+/**
+ * Codegen pass over a checked tree. Walks the nodes directly and calls the
+ * codegen helper for every construct, so it does not buffer the tree in a
+ * node stream or build an output tree that nobody reads.
+ *
+ * @version 1.1
+ * @see vb.obama.compiler.CodegenHelper
+ */
+public class CodegenVisitor extends AbstractTreeVisitor {
+	/**
+	 * Helper that generates the classes
+	 */
+	private final CodegenHelper helper = new CodegenHelper();
+
+	public CodegenHelper getHelper() {
+		return this.helper;
+	}
+
+	/**
+	 * Generate the classes of a program
+	 *
+	 * @param node Root of the checked tree
+	 * @throws CodegenException If code cannot be generated
+	 * @requires node != null
+	 */
+	public void program(TypedNode node) throws CodegenException {
+		try {
+			this.expect(node, ObamaParser.PROGRAM);
+
+			// An empty program has no main class
+			if (node.getChildCount() > 0) {
+				this.contents(node);
+			}
+		} catch (MalformedTreeException exception) {
+			// Reported and counted
+		}
+	}
+
+	private void contents(TypedNode node) throws CodegenException {
+
+		int i = 0;
+
+		// Imports only matter to the checker
+		while (i < node.getChildCount() && node.getChild(i).getType() == ObamaParser.IMPORT) {
+			i++;
+		}
+
+		this.helper.visitContentStart(node);
+
+		for (; i < node.getChildCount(); i++) {
+			TypedNode content = child(node, i);
+
+			switch (content.getType()) {
+				case ObamaParser.CLASS:
+					this.classDeclaration(content);
+					break;
+				case ObamaParser.METHOD:
+					this.methodDeclaration(content);
+					break;
+				default:
+					this.fieldDeclaration(content);
+			}
+		}
+
+		this.helper.visitContentEnd(node);
+	}
+
+	private void classDeclaration(TypedNode node) throws CodegenException {
+		this.helper.visitClassStart(node);
+
+		for (int i = 1; i < node.getChildCount(); i++) {
+			TypedNode content = child(node, i);
+
+			if (content.getType() == ObamaParser.METHOD) {
+				this.methodDeclaration(content);
+			} else {
+				this.fieldDeclaration(content);
+			}
+		}
+
+		this.helper.visitClassEnd(node);
+	}
+
+	/**
+	 * Visit a variable or a constant of a program or class
+	 */
+	private void fieldDeclaration(TypedNode node) throws CodegenException {
+		if (node.getType() == ObamaParser.VAR) {
+			this.varDeclaration(node);
+		} else if (node.getType() == ObamaParser.CONST) {
+			this.constDeclaration(node);
+		} else {
+			this.unexpected(node);
+		}
+	}
+
+	private void methodDeclaration(TypedNode node) throws CodegenException {
+		// Types and parameters are resolved by the checker
+		this.helper.visitMethodDeclaration(node);
+		this.helper.visitMethodContentStart(node);
+		this.scope(child(node, 4));
+		this.helper.visitMethodContentEnd(node);
+	}
+
+	private void varDeclaration(TypedNode node) throws CodegenException {
+		if (node.getChildCount() > 2) {
+			this.expression(child(node, 2));
+		}
+
+		this.helper.visitVarDeclaration(node);
+	}
+
+	private void constDeclaration(TypedNode node) throws CodegenException {
+		this.literal(child(node, 2));
+		this.helper.visitConstDeclaration(node);
+	}
+
+	private void methodContents(TypedNode node) throws CodegenException {
+		switch (node.getType()) {
+			case ObamaParser.VAR:
+				this.varDeclaration(node);
+				break;
+			case ObamaParser.RETURN:
+				this.expression(child(node, 0));
+				this.helper.visitMethodReturn(node);
+				break;
+			case ObamaParser.IF_ELSE_IF_ELSE:
+				this.ifStatement(node);
+				break;
+			case ObamaParser.WHILE:
+				this.whileStatement(node);
+				break;
+			case ObamaParser.FOR:
+				this.forStatement(node);
+				break;
+			case ObamaParser.SWITCH:
+				this.switchStatement(node);
+				break;
+			default:
+				this.expression(node);
+		}
+	}
+
+	private void ifStatement(TypedNode node) throws CodegenException {
+		this.helper.visitIfStatementStart(node);
+
+		for (int i = 0; i < node.getChildCount(); i++) {
+			TypedNode branch = child(node, i);
+
+			if (i == 0 && branch.getType() == ObamaParser.IF) {
+				this.expression(child(branch, 0));
+				this.helper.visitIfStatementIfStart(branch);
+				this.scope(child(branch, 1));
+				this.helper.visitIfStatementIfEnd(branch);
+			} else if (i > 0 && branch.getType() == ObamaParser.ELSE_IF) {
+				this.helper.visitIfStatementElseIf(branch);
+				this.expression(child(branch, 0));
+				this.helper.visitIfStatementElseIfStart(branch);
+				this.scope(child(branch, 1));
+				this.helper.visitIfStatementElseIfEnd(branch);
+			} else if (i > 0 && branch.getType() == ObamaParser.ELSE) {
+				this.helper.visitIfStatementElse(branch);
+				this.scope(child(branch, 0));
+			} else {
+				this.unexpected(branch);
+			}
+		}
+
+		this.helper.visitIfStatementEnd(node);
+	}
+
+	private void whileStatement(TypedNode node) throws CodegenException {
+		this.helper.visitWhileStatement(node);
+		this.expression(child(node, 0));
+		this.helper.visitWhileStatementStart(node);
+		this.scope(child(node, 1));
+		this.helper.visitWhileStatementEnd(node);
+	}
+
+	private void forStatement(TypedNode node) throws CodegenException {
+		this.expression(child(node, 0));
+		this.helper.visitForStatementStart(node);
+		this.expression(child(node, 1));
+		this.helper.visitForStatementCompare(node);
+		this.expression(child(node, 2));
+		this.helper.visitForStatementIncrement(node);
+		this.scope(child(node, 3));
+		this.helper.visitForStatementEnd(node);
+	}
+
+	private void switchStatement(TypedNode node) throws CodegenException {
+		this.expression(child(node, 0));
+		this.helper.visitSwitchStatementSwitchStart(node);
+
+		for (int i = 1; i < node.getChildCount(); i++) {
+			TypedNode branch = child(node, i);
+
+			if (branch.getType() == ObamaParser.CASE) {
+				this.helper.visitSwitchStatementCaseStart(branch);
+				this.scope(child(branch, 0));
+				this.helper.visitSwitchStatementCaseEnd(branch);
+			} else if (branch.getType() == ObamaParser.DEFAULT) {
+				this.helper.visitSwitchStatementDefault(branch);
+				this.scope(child(branch, 0));
+			} else {
+				this.unexpected(branch);
+			}
+		}
+
+		this.helper.visitSwitchStatementSwitchEnd(node);
+	}
+
+	/**
+	 * Visit the statements of a block
+	 */
+	private void scope(TypedNode node) throws CodegenException {
+		this.expect(node, ObamaParser.SCOPE);
+
+		for (int i = 0; i < node.getChildCount(); i++) {
+			this.methodContents(child(node, i));
+		}
+	}
+
+	private void expression(TypedNode node) throws CodegenException {
+		if (node == null) {
+			this.unexpected(node);
+		}
+
+		switch (node.getType()) {
+			case ObamaParser.ASSIGN:
+				this.operands(node, 2);
+				this.helper.visitAssignExpression(node);
+				break;
+			case ObamaParser.IF_INLINE:
+				this.expression(child(node, 0));
+				this.helper.visitInlineIfStart(node);
+				this.expression(child(node, 1));
+				this.helper.visitInlineIfOther(node);
+				this.expression(child(node, 2));
+				this.helper.visitInlineIfEnd(node);
+				break;
+			case ObamaParser.L_OR:
+				this.operands(node, 2);
+				this.helper.visitLogicalOrExpression(node);
+				break;
+			case ObamaParser.L_AND:
+				this.operands(node, 2);
+				this.helper.visitLogicalAndExpression(node);
+				break;
+			case ObamaParser.B_OR:
+				this.operands(node, 2);
+				this.helper.visitBitwiseOrExpression(node);
+				break;
+			case ObamaParser.B_AND:
+				this.operands(node, 2);
+				this.helper.visitBitwiseAndExpression(node);
+				break;
+			case ObamaParser.GT:
+				this.operands(node, 2);
+				this.helper.visitGTExpression(node);
+				break;
+			case ObamaParser.LT:
+				this.operands(node, 2);
+				this.helper.visitLTExpression(node);
+				break;
+			case ObamaParser.GTEQ:
+				this.operands(node, 2);
+				this.helper.visitGTEQExpression(node);
+				break;
+			case ObamaParser.LTEQ:
+				this.operands(node, 2);
+				this.helper.visitLTEQExpression(node);
+				break;
+			case ObamaParser.EQ:
+				this.operands(node, 2);
+				this.helper.visitEQExpression(node);
+				break;
+			case ObamaParser.NEQ:
+				this.operands(node, 2);
+				this.helper.visitNEQExpression(node);
+				break;
+			case ObamaParser.PLUS:
+				this.operands(node, 2);
+				this.helper.visitPlusExpression(node);
+				break;
+			case ObamaParser.MIN:
+				this.operands(node, 2);
+				this.helper.visitMinExpression(node);
+				break;
+			case ObamaParser.MULT:
+				this.operands(node, 2);
+				this.helper.visitMultExpression(node);
+				break;
+			case ObamaParser.DIV:
+				this.operands(node, 2);
+				this.helper.visitDivExpression(node);
+				break;
+			case ObamaParser.MOD:
+				this.operands(node, 2);
+				this.helper.visitModExpression(node);
+				break;
+			case ObamaParser.NOT:
+				this.operands(node, 1);
+				this.helper.visitNotExpression(node);
+				break;
+			case ObamaParser.NEW:
+				this.field(child(node, 0));
+				this.helper.visitNewExpression(node);
+				break;
+			case ObamaParser.PAREN:
+				// Parentheses only group
+				this.operands(node, 1);
+				break;
+			case ObamaParser.METHOD_CALL:
+				this.methodCall(node);
+				break;
+			case ObamaParser.BUILTIN:
+			case ObamaParser.THIS:
+			case ObamaParser.GLOBAL:
+			case ObamaParser.FIELD:
+				this.field(node);
+				break;
+			default:
+				this.literal(node);
+		}
+	}
+
+	/**
+	 * Visit the operands of an expression, which are all expressions
+	 */
+	private void operands(TypedNode node, int count) throws CodegenException {
+		for (int i = 0; i < count; i++) {
+			this.expression(child(node, i));
+		}
+	}
+
+	private void methodCall(TypedNode node) throws CodegenException {
+		this.field(child(node, 0));
+
+		// A call has at least one part of its selector
+		if (node.getChildCount() < 2) {
+			this.unexpected(node);
+		}
+
+		for (int i = 1; i < node.getChildCount(); i++) {
+			TypedNode parameter = child(node, i);
+
+			switch (parameter.getType()) {
+				case ObamaParser.PARAMETER_NAMED:
+					this.expression(child(parameter, 1));
+					break;
+				case ObamaParser.PARAMETER_UNNAMED:
+					this.expression(child(parameter, 0));
+					break;
+				case ObamaParser.PARAMETER_NONE:
+					break;
+				default:
+					this.unexpected(parameter);
+			}
+		}
+
+		this.helper.visitMethodCall(node);
+	}
+
+	private void field(TypedNode node) throws CodegenException {
+		if (node == null) {
+			this.unexpected(node);
+		}
+
+		switch (node.getType()) {
+			case ObamaParser.BUILTIN:
+				this.helper.visitBuiltin(node);
+				break;
+			case ObamaParser.THIS:
+				this.helper.visitThis(node);
+				break;
+			case ObamaParser.GLOBAL:
+				this.helper.visitGlobal(node);
+				break;
+			case ObamaParser.FIELD:
+				this.helper.visitField(node);
+				break;
+			default:
+				this.unexpected(node);
+		}
+	}
+
+	private void literal(TypedNode node) throws CodegenException {
+		if (node == null) {
+			this.unexpected(node);
+		}
+
+		switch (node.getType()) {
+			case ObamaParser.INT_LITERAL:
+			case ObamaParser.STRING_LITERAL:
+			case ObamaParser.CHAR_LITERAL:
+				this.helper.visitLiteral(node, node.getText());
+				break;
+			case ObamaParser.YES:
+				this.helper.visitLiteral(node, Boolean.TRUE);
+				break;
+			case ObamaParser.NO:
+				this.helper.visitLiteral(node, Boolean.FALSE);
+				break;
+			default:
+				this.unexpected(node);
+		}
+	}
+}
@@ -0,0 +1,205 @@
+package vb.obama.compiler;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import vb.obama.antlr.tree.TypedNode;
+import vb.obama.util.ExitCodes;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Result of compiling one source with the ObamaCompiler. Holds the byte code
+ * of every generated class and the diagnostics, if compilation failed.
+ *
+ * @version 1.3
+ * @see vb.obama.compiler.ObamaCompiler
+ */
+public class CompilationResult {
+	/**
+	 * Name of the source, as given to the compiler
+	 */
+	private final String fileName;
+
+	/**
+	 * Generated classes, in order of definition
+	 */
+	private final Map<String, byte[]> classes;
+
+	/**
+	 * Errors found during compilation
+	 */
+	private final List<Diagnostic> diagnostics;
+
+	/**
+	 * Annotated tree, or null if parsing failed
+	 */
+	private final TypedNode tree;
+
+	/**
+	 * Imports declared in the source
+	 */
+	private final List<String> imports;
+
+	/**
+	 * Names of the Java types the source depends on
+	 */
+	private final Set<String> referencedTypes;
+
+	/**
+	 * Time and memory spent per phase
+	 */
+	private final CompilationStats stats;
+
+	/**
+	 * Construct a new result
+	 *
+	 * @param fileName Name of the source
+	 * @param classes Generated classes, empty on failure
+	 * @param diagnostics Errors found during compilation
+	 * @param tree Annotated tree, or null
+	 * @param imports Imports declared in the source
+	 * @param referencedTypes Names of the Java types the source depends on
+	 * @param stats Statistics of the compilation
+	 * @requires fileName != null && classes != null && diagnostics != null
+	 * @requires imports != null && referencedTypes != null && stats != null
+	 */
+	public CompilationResult(String fileName, Map<String, byte[]> classes, List<Diagnostic> diagnostics, TypedNode tree, List<String> imports, Set<String> referencedTypes, CompilationStats stats) {
+		this.fileName = checkNotNull(fileName);
+		this.classes = ImmutableMap.copyOf(classes);
+		this.diagnostics = ImmutableList.copyOf(diagnostics);
+		this.tree = tree;
+		this.imports = ImmutableList.copyOf(imports);
+		this.referencedTypes = ImmutableSet.copyOf(referencedTypes);
+		this.stats = checkNotNull(stats);
+	}
+
+	public String getFileName() {
+		return this.fileName;
+	}
+
+	/**
+	 * Return the generated classes. The byte arrays are not copied, so they
+	 * should not be modified.
+	 *
+	 * @return Map of class name to byte code
+	 */
+	public Map<String, byte[]> getClasses() {
+		return this.classes;
+	}
+
+	public List<Diagnostic> getDiagnostics() {
+		return this.diagnostics;
+	}
+
+	public TypedNode getTree() {
+		return this.tree;
+	}
+
+	public List<String> getImports() {
+		return this.imports;
+	}
+
+	/**
+	 * Return the Java types the source depends on, as found by the checker.
+	 * Types defined in the source itself are not included.
+	 *
+	 * @return Set of binary class names
+	 */
+	public Set<String> getReferencedTypes() {
+		return this.referencedTypes;
+	}
+
+	/**
+	 * Return the name of the class with the main method, which is named after
+	 * the source
+	 *
+	 * @return Class name
+	 */
+	public String getMainClass() {
+		return CheckerHelper.toClassName(this.fileName);
+	}
+
+	/**
+	 * Return the statistics of the compilation. Writing the classes with
+	 * toClasses or toJar adds to the statistics of the write phase.
+	 *
+	 * @return Statistics
+	 */
+	public CompilationStats getStats() {
+		return this.stats;
+	}
+
+	/**
+	 * Check if the compilation succeeded
+	 * @return True if there are no diagnostics
+	 */
+	public boolean isSuccess() {
+		return this.diagnostics.isEmpty();
+	}
+
+	/**
+	 * Return the exit code the command line compiler uses for this result
+	 *
+	 * @return Exit code
+	 * @see vb.obama.util.ExitCodes
+	 */
+	public int getExitCode() {
+		if (this.isSuccess()) {
+			return ExitCodes.SUCCESS;
+		}
+
+		switch (this.diagnostics.get(0).getPhase()) {
+			case CHECKER:
+				return ExitCodes.CHECKER_FAILED;
+			case CODEGEN:
+				return ExitCodes.CODEGEN_FAILED;
+			default:
+				return ExitCodes.PARSER_FAILED;
+		}
+	}
+
+	/**
+	 * Write all generated classes to disk. Overwrites existing files.
+	 *
+	 * @param path Output path
+	 * @return List of written files
+	 * @throws IOException
+	 * @requires path != null
+	 */
+	public List<File> toClasses(String path) throws IOException {
+		CompilationStats.Probe probe = this.stats.start(CompilationStats.Phase.WRITE);
+
+		try {
+			return CodegenHelper.toClasses(this.classes, path);
+		} finally {
+			probe.stop();
+		}
+	}
+
+	/**
+	 * Write all generated classes into a runnable JAR file. Overwrites an
+	 * existing file.
+	 *
+	 * @param jar Output file
+	 * @param stored Store the classes uncompressed
+	 * @throws IOException
+	 * @requires jar != null
+	 */
+	public void toJar(File jar, boolean stored) throws IOException {
+		CompilationStats.Probe probe = this.stats.start(CompilationStats.Phase.WRITE);
+
+		try {
+			CodegenHelper.toJar(this.classes, this.getMainClass(), jar, stored);
+		} finally {
+			probe.stop();
+		}
+	}
+}
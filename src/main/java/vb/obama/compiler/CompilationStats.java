@@ -0,0 +1,348 @@
+package vb.obama.compiler;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.Locale;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+
+/**
+ * Time and memory spent per compiler phase, and the size of what was
+ * compiled. Times are measured on the compiling thread, so statistics of one
+ * compilation are only meaningful if it ran on a single thread.
+ *
+ * CPU time and allocated bytes are -1 if the JVM does not support measuring
+ * them.
+ *
+ * Member index hits and misses count the lookups of Java types whose methods
+ * and fields were and were not indexed before, by any compilation in the JVM.
+ *
+ * @version 1.1
+ */
+public class CompilationStats {
+	/**
+	 * Measured phases, in order of execution
+	 */
+	public enum Phase {
+		LEXER,
+		PARSER,
+		CHECKER,
+		CODEGEN,
+		WRITE,
+	}
+
+	/**
+	 * Thread management bean of the JVM
+	 */
+	private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+	/**
+	 * Number of compiled files
+	 */
+	private int files;
+
+	/**
+	 * Measurements per phase, indexed by ordinal
+	 */
+	private final long[] wall = new long[Phase.values().length];
+	private final long[] cpu = new long[Phase.values().length];
+	private final long[] allocated = new long[Phase.values().length];
+
+	/**
+	 * Counts
+	 */
+	private int tokens;
+	private int nodes;
+	private int symbols;
+	private int methods;
+	private long bytecodeBytes;
+	private int memberIndexHits;
+	private int memberIndexMisses;
+
+	/**
+	 * Construct empty statistics for a single file
+	 */
+	public CompilationStats() {
+		this.files = 1;
+	}
+
+	/**
+	 * Sum the statistics of many files
+	 *
+	 * @param stats Statistics per file
+	 * @return Summed statistics
+	 * @requires stats != null
+	 */
+	public static CompilationStats sum(List<CompilationStats> stats) {
+		CompilationStats result = new CompilationStats();
+		result.files = 0;
+
+		for (CompilationStats item : stats) {
+			result.files += item.files;
+
+			for (int i = 0; i < result.wall.length; i++) {
+				result.wall[i] += item.wall[i];
+				result.cpu[i] = CompilationStats.add(result.cpu[i], item.cpu[i]);
+				result.allocated[i] = CompilationStats.add(result.allocated[i], item.allocated[i]);
+			}
+
+			result.tokens += item.tokens;
+			result.nodes += item.nodes;
+			result.symbols += item.symbols;
+			result.methods += item.methods;
+			result.bytecodeBytes += item.bytecodeBytes;
+			result.memberIndexHits += item.memberIndexHits;
+			result.memberIndexMisses += item.memberIndexMisses;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Start measuring a phase on the current thread. Stop the returned probe
+	 * when the phase is done.
+	 *
+	 * @param phase Phase to measure
+	 * @return Running probe
+	 * @requires phase != null
+	 */
+	public Probe start(Phase phase) {
+		return new Probe(checkNotNull(phase));
+	}
+
+	public int getFiles() {
+		return this.files;
+	}
+
+	public long getWallNanos(Phase phase) {
+		return this.wall[phase.ordinal()];
+	}
+
+	public long getCpuNanos(Phase phase) {
+		return this.cpu[phase.ordinal()];
+	}
+
+	public long getAllocatedBytes(Phase phase) {
+		return this.allocated[phase.ordinal()];
+	}
+
+	public int getTokens() {
+		return this.tokens;
+	}
+
+	public void setTokens(int tokens) {
+		this.tokens = tokens;
+	}
+
+	public int getNodes() {
+		return this.nodes;
+	}
+
+	public void setNodes(int nodes) {
+		this.nodes = nodes;
+	}
+
+	public int getSymbols() {
+		return this.symbols;
+	}
+
+	public void setSymbols(int symbols) {
+		this.symbols = symbols;
+	}
+
+	public int getMethods() {
+		return this.methods;
+	}
+
+	public void setMethods(int methods) {
+		this.methods = methods;
+	}
+
+	public long getBytecodeBytes() {
+		return this.bytecodeBytes;
+	}
+
+	public void setBytecodeBytes(long bytecodeBytes) {
+		this.bytecodeBytes = bytecodeBytes;
+	}
+
+	public int getMemberIndexHits() {
+		return this.memberIndexHits;
+	}
+
+	public void setMemberIndexHits(int memberIndexHits) {
+		this.memberIndexHits = memberIndexHits;
+	}
+
+	public int getMemberIndexMisses() {
+		return this.memberIndexMisses;
+	}
+
+	public void setMemberIndexMisses(int memberIndexMisses) {
+		this.memberIndexMisses = memberIndexMisses;
+	}
+
+	/**
+	 * Return the statistics as a table
+	 * @return Human readable statistics
+	 */
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder();
+		String format = "%-8s %12s %12s %16s%n";
+		long wall = 0L, cpu = 0L, allocated = 0L;
+
+		result.append(String.format(format, "Phase", "Wall (ms)", "CPU (ms)", "Allocated (KB)"));
+
+		for (Phase phase : Phase.values()) {
+			int i = phase.ordinal();
+
+			wall += this.wall[i];
+			cpu = CompilationStats.add(cpu, this.cpu[i]);
+			allocated = CompilationStats.add(allocated, this.allocated[i]);
+
+			result.append(String.format(
+				format,
+				phase.toString().toLowerCase(Locale.ROOT),
+				CompilationStats.millis(this.wall[i]),
+				CompilationStats.millis(this.cpu[i]),
+				CompilationStats.kilobytes(this.allocated[i])
+			));
+		}
+
+		result.append(String.format(
+			format,
+			"total",
+			CompilationStats.millis(wall),
+			CompilationStats.millis(cpu),
+			CompilationStats.kilobytes(allocated)
+		));
+
+		result.append(String.format(
+			"Files: %d, tokens: %d, AST nodes: %d, symbol table entries: %d, methods: %d, bytecode bytes: %d%n",
+			this.files,
+			this.tokens,
+			this.nodes,
+			this.symbols,
+			this.methods,
+			this.bytecodeBytes
+		));
+
+		result.append(String.format(
+			"Member index hits: %d, misses: %d",
+			this.memberIndexHits,
+			this.memberIndexMisses
+		));
+
+		return result.toString();
+	}
+
+	/**
+	 * Return the statistics as a single line JSON object
+	 * @return JSON statistics
+	 */
+	public String toJson() {
+		List<String> phases = Lists.newArrayList();
+
+		for (Phase phase : Phase.values()) {
+			int i = phase.ordinal();
+
+			phases.add(String.format(
+				"\"%s\":{\"wallNanos\":%d,\"cpuNanos\":%d,\"allocatedBytes\":%d}",
+				phase.toString().toLowerCase(Locale.ROOT),
+				this.wall[i],
+				this.cpu[i],
+				this.allocated[i]
+			));
+		}
+
+		return String.format(
+			"{\"files\":%d,\"phases\":{%s},\"tokens\":%d,\"nodes\":%d,\"symbols\":%d,\"methods\":%d,\"bytecodeBytes\":%d,\"memberIndexHits\":%d,\"memberIndexMisses\":%d}",
+			this.files,
+			Joiner.on(',').join(phases),
+			this.tokens,
+			this.nodes,
+			this.symbols,
+			this.methods,
+			this.bytecodeBytes,
+			this.memberIndexHits,
+			this.memberIndexMisses
+		);
+	}
+
+	/**
+	 * Add two measurements, keeping -1 if either is unsupported
+	 */
+	private static long add(long a, long b) {
+		return a < 0 || b < 0 ? -1L : a + b;
+	}
+
+	private static String millis(long nanos) {
+		return nanos < 0 ? "n/a" : String.format(Locale.ROOT, "%.3f", nanos / 1000000.0);
+	}
+
+	private static String kilobytes(long bytes) {
+		return bytes < 0 ? "n/a" : String.valueOf(bytes / 1024L);
+	}
+
+	/**
+	 * Return the CPU time of the current thread, or -1 if unsupported
+	 */
+	private static long cpuTime() {
+		return threads.isCurrentThreadCpuTimeSupported() ? threads.getCurrentThreadCpuTime() : -1L;
+	}
+
+	/**
+	 * Return the bytes allocated by the current thread, or -1 if unsupported
+	 */
+	@SuppressWarnings("restriction")
+	private static long allocatedBytes() {
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threads;
+
+			if (bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()) {
+				return bean.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+
+		return -1L;
+	}
+
+	/**
+	 * Measurement of one phase in progress
+	 */
+	public class Probe {
+		private final Phase phase;
+
+		private final long wall;
+
+		private final long cpu;
+
+		private final long allocated;
+
+		private Probe(Phase phase) {
+			this.phase = phase;
+			this.allocated = CompilationStats.allocatedBytes();
+			this.cpu = CompilationStats.cpuTime();
+			this.wall = System.nanoTime();
+		}
+
+		/**
+		 * Stop measuring and add the measurement to the phase
+		 */
+		public void stop() {
+			long wall = System.nanoTime();
+			long cpu = CompilationStats.cpuTime();
+			long allocated = CompilationStats.allocatedBytes();
+			int i = this.phase.ordinal();
+
+			CompilationStats.this.wall[i] += wall - this.wall;
+			CompilationStats.this.cpu[i] = CompilationStats.add(CompilationStats.this.cpu[i], cpu < 0 ? -1L : cpu - this.cpu);
+			CompilationStats.this.allocated[i] = CompilationStats.add(CompilationStats.this.allocated[i], allocated < 0 ? -1L : allocated - this.allocated);
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package vb.obama.compiler;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Describes an error found during compilation.
+ * @version 1.0
+ */
+public class Diagnostic {
+	/**
+	 * Compiler phase that reported a diagnostic
+	 */
+	public enum Phase {
+		LEXER,
+		PARSER,
+		CHECKER,
+		CODEGEN,
+	}
+	
+	/**
+	 * Phase that reported this diagnostic
+	 */
+	private final Phase phase;
+	
+	/**
+	 * Line number, starting at one, or zero if unknown
+	 */
+	private final int line;
+	
+	/**
+	 * Character position in the line, starting at zero
+	 */
+	private final int column;
+	
+	/**
+	 * Error message
+	 */
+	private final String message;
+	
+	/**
+	 * Construct a new diagnostic
+	 * 
+	 * @param phase Compiler phase
+	 * @param line Line number, or zero if unknown
+	 * @param column Character position in the line
+	 * @param message Error message
+	 * @requires phase != null && message != null
+	 */
+	public Diagnostic(Phase phase, int line, int column, String message) {
+		this.phase = checkNotNull(phase);
+		this.line = line;
+		this.column = column;
+		this.message = checkNotNull(message);
+	}
+	
+	public Phase getPhase() {
+		return this.phase;
+	}
+	
+	public int getLine() {
+		return this.line;
+	}
+	
+	public int getColumn() {
+		return this.column;
+	}
+	
+	public String getMessage() {
+		return this.message;
+	}
+	
+	/**
+	 * Return the diagnostic as 'phase line:column message'
+	 * @return String representation
+	 */
+	@Override
+	public String toString() {
+		if (this.line > 0) {
+			return String.format("%s %d:%d %s", this.phase, this.line, this.column, this.message);
+		} else {
+			return String.format("%s %s", this.phase, this.message);
+		}
+	}
+}
@@ -6,11 +6,16 @@ import static com.google.common.base.Preconditions.*;
 
 /**
  * Describes an identifier.
- * @version 1.1
+ * @version 1.2
  */
 public class IdEntry {
     private int level = -1;
     
+    /**
+     * Position among the declarations of the symbol table
+     */
+    private int ordinal = -1;
+    
     /**
      * Reference to node
      */
@@ -47,4 +52,21 @@ public class IdEntry {
     public void setLevel(int level) { 
     	this.level = level;   
     }   
+    
+    /**
+     * Get the position of this entry among the declarations of its symbol
+     * table, counting those of the snapshot it was built on
+     * @return ordinal of entry
+     */
+    public int getOrdinal() {
+    	return ordinal;
+    }
+    
+    /**
+     * Set the position of this entry among the declarations
+     * @param ordinal
+     */
+    public void setOrdinal(int ordinal) {
+    	this.ordinal = ordinal;
+    }
 }
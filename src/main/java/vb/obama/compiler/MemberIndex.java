@@ -0,0 +1,257 @@
+package vb.obama.compiler;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Public methods and fields of a Java type, by name. Class.getMethods copies
+ * all methods on every call, and the checker looked up the callable ones for
+ * every method call; here they are collected once per type.
+ *
+ * Indexes are kept in a ClassValue, so they are shared by all compilations
+ * and threads in the JVM, and are dropped together with their type. The
+ * first lookup of a type is counted as a miss by whoever makes it.
+ *
+ * Methods of a name are kept in the order of Class.getMethods. A call
+ * resolves to the method whose parameter types equal the argument types, or
+ * otherwise to the first one that takes that many arguments, like the checker
+ * always did.
+ *
+ * @version 1.4
+ */
+public class MemberIndex {
+	/**
+	 * Index of every type that was looked up
+	 */
+	private static final ClassValue<MemberIndex> INDEXES = new ClassValue<MemberIndex>() {
+		@Override
+		protected MemberIndex computeValue(Class<?> type) {
+			return new MemberIndex(type);
+		}
+	};
+
+	/**
+	 * Callable methods by name, for instances and for the type
+	 */
+	private final ImmutableMap<String, Overloads> methods;
+	private final ImmutableMap<String, Overloads> staticMethods;
+
+	/**
+	 * Public fields by name, for instances and for the type
+	 */
+	private final ImmutableMap<String, Field> fields;
+	private final ImmutableMap<String, Field> staticFields;
+
+	/**
+	 * True once the index has been looked up
+	 */
+	private final AtomicBoolean used = new AtomicBoolean();
+
+	private MemberIndex(Class<?> type) {
+		Map<String, List<Method>> methods = Maps.newLinkedHashMap();
+		Map<String, List<Method>> staticMethods = Maps.newLinkedHashMap();
+
+		for (Method method : type.getMethods()) {
+			if (!Modifier.isPublic(method.getModifiers())) continue;
+
+			MemberIndex.add(methods, method);
+
+			if (Modifier.isStatic(method.getModifiers())) {
+				MemberIndex.add(staticMethods, method);
+			}
+		}
+
+		this.methods = MemberIndex.toOverloads(methods);
+		this.staticMethods = MemberIndex.toOverloads(staticMethods);
+
+		// Fields of the type itself come first, like Class.getField finds them
+		Map<String, Field> fields = Maps.newHashMap();
+		Map<String, Field> staticFields = Maps.newHashMap();
+
+		for (Field field : type.getFields()) {
+			if (!fields.containsKey(field.getName())) {
+				fields.put(field.getName(), field);
+			}
+
+			if (Modifier.isStatic(field.getModifiers()) && !staticFields.containsKey(field.getName())) {
+				staticFields.put(field.getName(), field);
+			}
+		}
+
+		this.fields = ImmutableMap.copyOf(fields);
+		this.staticFields = ImmutableMap.copyOf(staticFields);
+	}
+
+	/**
+	 * Return the index of a type
+	 *
+	 * @param type Type to index
+	 * @return Shared index
+	 * @requires type != null
+	 */
+	public static MemberIndex of(Class<?> type) {
+		return INDEXES.get(checkNotNull(type));
+	}
+
+	/**
+	 * Return whether the index was looked up before. Only the first caller
+	 * gets false.
+	 */
+	boolean isUsed() {
+		return this.used.get() || !this.used.compareAndSet(false, true);
+	}
+
+	/**
+	 * Find the first callable method of a name that takes a number of
+	 * arguments
+	 *
+	 * @param name Name of the method
+	 * @param arguments Number of arguments
+	 * @param statics True to only find static methods
+	 * @return Method, or null if none takes that many arguments
+	 * @requires name != null && arguments >= 0
+	 */
+	public Method getMethod(String name, int arguments, boolean statics) {
+		checkArgument(arguments >= 0);
+		Overloads overloads = (statics ? this.staticMethods : this.methods).get(checkNotNull(name));
+
+		return overloads != null ? overloads.get(arguments) : null;
+	}
+
+	/**
+	 * Find the callable method of a name for a list of arguments, preferably
+	 * the one whose parameter types equal their types
+	 *
+	 * @param name Name of the method
+	 * @param arguments Types of the arguments
+	 * @param statics True to only find static methods
+	 * @return Method, or null if none takes that many arguments
+	 * @requires name != null && arguments != null
+	 */
+	public Method getMethod(String name, List<Class<?>> arguments, boolean statics) {
+		Overloads overloads = (statics ? this.staticMethods : this.methods).get(checkNotNull(name));
+
+		return overloads != null ? overloads.get(arguments) : null;
+	}
+
+	/**
+	 * Return whether there are callable methods of a name
+	 *
+	 * @param name Name of the method
+	 * @param statics True to only count static methods
+	 * @requires name != null
+	 */
+	public boolean hasMethods(String name, boolean statics) {
+		return (statics ? this.staticMethods : this.methods).containsKey(checkNotNull(name));
+	}
+
+	/**
+	 * Find a public field
+	 *
+	 * @param name Name of the field
+	 * @param statics True to only find static fields
+	 * @return Field, or null if there is none
+	 * @requires name != null
+	 */
+	public Field getField(String name, boolean statics) {
+		return (statics ? this.staticFields : this.fields).get(checkNotNull(name));
+	}
+
+	private static void add(Map<String, List<Method>> methods, Method method) {
+		List<Method> overloads = methods.get(method.getName());
+
+		if (overloads == null) {
+			overloads = Lists.newArrayList();
+			methods.put(method.getName(), overloads);
+		}
+
+		overloads.add(method);
+	}
+
+	private static ImmutableMap<String, Overloads> toOverloads(Map<String, List<Method>> methods) {
+		ImmutableMap.Builder<String, Overloads> result = ImmutableMap.builder();
+
+		for (Map.Entry<String, List<Method>> entry : methods.entrySet()) {
+			result.put(entry.getKey(), new Overloads(entry.getValue()));
+		}
+
+		return result.build();
+	}
+
+	/**
+	 * Methods of one name, by number of arguments
+	 */
+	private static class Overloads {
+		/**
+		 * All methods, in order of Class.getMethods
+		 */
+		private final List<Method> methods;
+
+		/**
+		 * First method that takes as many arguments as the index
+		 */
+		private final Method[] byArguments;
+
+		/**
+		 * First variable arity method, which takes any number of arguments
+		 * beyond those of the array
+		 */
+		private final Method varArgs;
+
+		private Overloads(List<Method> methods) {
+			int most = 0;
+			Method varArgs = null;
+
+			for (Method method : methods) {
+				most = Math.max(most, method.getParameterTypes().length);
+
+				if (varArgs == null && method.isVarArgs()) {
+					varArgs = method;
+				}
+			}
+
+			this.methods = methods;
+			this.byArguments = new Method[most + 1];
+			this.varArgs = varArgs;
+
+			for (int i = 0; i <= most; i++) {
+				for (Method method : methods) {
+					int count = method.getParameterTypes().length;
+
+					if (method.isVarArgs() ? i >= count : i == count) {
+						this.byArguments[i] = method;
+						break;
+					}
+				}
+			}
+		}
+
+		private Method get(int arguments) {
+			return arguments < this.byArguments.length ? this.byArguments[arguments] : this.varArgs;
+		}
+
+		private Method get(List<Class<?>> arguments) {
+			Class<?>[] types = arguments.toArray(new Class<?>[arguments.size()]);
+
+			for (Method method : this.methods) {
+				if (Arrays.equals(method.getParameterTypes(), types)) {
+					return method;
+				}
+			}
+
+			return this.get(types.length);
+		}
+	}
+}
@@ -0,0 +1,626 @@
+package vb.obama.compiler;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import org.antlr.runtime.ANTLRReaderStream;
+import org.antlr.runtime.ANTLRStringStream;
+import org.antlr.runtime.CharStream;
+import org.antlr.runtime.CommonTokenStream;
+import org.antlr.runtime.RecognitionException;
+import org.antlr.runtime.TokenStream;
+import org.antlr.runtime.tree.Tree;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import vb.obama.antlr.FastLexer;
+import vb.obama.antlr.ObamaLexer;
+import vb.obama.antlr.ObamaParser;
+import vb.obama.antlr.stream.ByteBufferCharStream;
+import vb.obama.antlr.stream.StreamingTokenStream;
+import vb.obama.antlr.tree.CompactNode;
+import vb.obama.antlr.tree.CompactTree;
+import vb.obama.antlr.tree.NodeType;
+import vb.obama.antlr.tree.TypedNode;
+import vb.obama.antlr.tree.TypedNodeAdapter;
+import vb.obama.exceptions.CheckerException;
+import vb.obama.exceptions.CodegenException;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Embeddable compiler. Compiles a single source in memory and returns the
+ * generated byte code and diagnostics. Nothing is written to disk and the JVM
+ * is never terminated, so one instance can be shared between threads.
+ *
+ * The file name of a source determines the name of its main class, like it
+ * does on the command line.
+ *
+ * Sources larger than STREAMING_THRESHOLD are lexed on demand while parsing,
+ * so only a small window of tokens is kept in memory. Their lexer time is
+ * part of the parser phase in the statistics. Only files of that size are
+ * mapped into memory; smaller files are read onto the heap, since tokens keep
+ * their source alive as long as the tree, and a mapped file may be truncated
+ * or, on Windows, cannot be replaced by an editor meanwhile.
+ *
+ * Other strings and UTF-8 buffers are lexed up front by FastLexer, which
+ * produces the same tokens as the generated lexer. Readers, character
+ * streams and malformed UTF-8 use the generated lexer.
+ *
+ * The checker and codegen walk the tree directly with CheckerVisitor and
+ * CodegenVisitor.
+ *
+ * With parallel parsing, tokens are always buffered and the top level
+ * declarations are parsed on the common fork/join pool. The parser time in the statistics is
+ * then wall time, while its CPU time only covers the calling thread.
+ *
+ * With parallel checking, the checker visits the declarations first and then
+ * checks the method bodies on the common fork/join pool. Like parallel
+ * parsing, the checker time is then wall time. A compact tree keeps the
+ * annotations of all nodes in shared tables, so with parallel checking the
+ * tree is only flattened after the checker.
+ *
+ * Identifiers, package paths and types are interned in a symbol pool per
+ * compilation, so equal names share one string in the tree.
+ *
+ * With compact trees, the tree is flattened into a CompactTree after parsing,
+ * and the checker and codegen work on views of its nodes. This takes a
+ * fraction of the memory while the tree is kept, at the cost of creating a
+ * view for every visit of a node.
+ *
+ * With a tree cache, checked trees of strings and buffers are stored on disk.
+ * When the same source is compiled again, the tree is read back and only
+ * codegen runs. Reading the tree counts as the parser phase. Trees are
+ * always compact when a cache is used. The cache is bypassed while the
+ * context class loader is not the system class loader.
+ *
+ * Java types are resolved by name once per compilation, and by default
+ * through a type cache shared by all compilers in the JVM.
+ *
+ * @version 1.16
+ */
+public class ObamaCompiler {
+	/**
+	 * Message logger
+	 */
+	private static final Logger logger = LogManager.getLogger(ObamaCompiler.class.getName());
+
+	/**
+	 * Size of a source, in characters or bytes, above which tokens are
+	 * streamed instead of buffered
+	 */
+	public static final int STREAMING_THRESHOLD = 1024 * 1024;
+
+	/**
+	 * Parser of top level declarations in parallel, or null
+	 */
+	private final ParallelParser parallelParser;
+
+	/**
+	 * True to check method bodies in parallel
+	 */
+	private final boolean parallelChecking;
+
+	/**
+	 * True to check and generate code from a compact tree
+	 */
+	private final boolean compactTrees;
+
+	/**
+	 * Cache of checked trees, or null
+	 */
+	private final TreeCache cache;
+
+	/**
+	 * Cache of resolved Java types, or null
+	 */
+	private final TypeCache types;
+
+	/**
+	 * Construct a compiler with the default options
+	 */
+	public ObamaCompiler() {
+		this(new Options());
+	}
+
+	/**
+	 * Construct a compiler. Later changes to the options are not seen.
+	 *
+	 * @param options Options of the compiler
+	 * @requires options != null
+	 */
+	public ObamaCompiler(Options options) {
+		checkNotNull(options);
+
+		this.types = options.types;
+		this.compactTrees = options.compactTrees || options.cache != null;
+		this.cache = options.cache;
+		this.parallelChecking = options.parallelChecking;
+
+		if (options.parallelParsing) {
+			ForkJoinPool pool = ForkJoinPool.commonPool();
+			this.parallelParser = new ParallelParser(pool, pool.getParallelism());
+		} else {
+			this.parallelParser = null;
+		}
+	}
+
+	/**
+	 * Compile a source string
+	 *
+	 * @param source Source code
+	 * @param fileName Name of the source, e.g. 'Hello.obama'
+	 * @return Compilation result
+	 * @requires source != null && fileName != null
+	 */
+	public CompilationResult compile(String source, String fileName) {
+		checkNotNull(source);
+		checkNotNull(fileName);
+
+		String key = this.cache != null ? TreeCache.key(ByteBuffer.wrap(source.getBytes(StandardCharsets.UTF_8)), fileName) : null;
+		char[] chars = source.toCharArray();
+
+		return this.compile(new ANTLRStringStream(chars, chars.length), CharBuffer.wrap(chars), fileName, key);
+	}
+
+	/**
+	 * Compile a source read from a reader. The reader is not closed.
+	 *
+	 * @param reader Source code
+	 * @param fileName Name of the source
+	 * @return Compilation result
+	 * @throws IOException If the reader fails
+	 * @requires reader != null && fileName != null
+	 */
+	public CompilationResult compile(Reader reader, String fileName) throws IOException {
+		checkNotNull(reader);
+		return this.compile(new ANTLRReaderStream(reader), fileName);
+	}
+
+	/**
+	 * Compile UTF-8 encoded source bytes. Only the remaining bytes are used
+	 * and the position of the buffer is not changed. Sources that are
+	 * streamed are decoded while lexing, so a memory-mapped file is never
+	 * copied to the heap.
+	 *
+	 * @param buffer Source code
+	 * @param fileName Name of the source
+	 * @return Compilation result
+	 * @requires buffer != null && fileName != null
+	 */
+	public CompilationResult compile(ByteBuffer buffer, String fileName) {
+		checkNotNull(buffer);
+		checkNotNull(fileName);
+
+		String key = this.cache != null ? TreeCache.key(buffer, fileName) : null;
+		CharBuffer chars = null;
+
+		if (!this.isStreaming(buffer.remaining())) {
+			try {
+				chars = StandardCharsets.UTF_8.newDecoder().decode(buffer.duplicate());
+			} catch (CharacterCodingException exception) {
+				// The stream replaces malformed input, like it always did
+				logger.debug(String.format("Source '%s' is not valid UTF-8", fileName));
+			}
+		}
+
+		return this.compile(new ByteBufferCharStream(buffer, fileName), chars, fileName, key);
+	}
+
+	/**
+	 * Compile a UTF-8 encoded source file
+	 *
+	 * @param file Input file
+	 * @return Compilation result
+	 * @throws IOException If the file cannot be read
+	 * @requires file != null
+	 * @see #read(File)
+	 */
+	public CompilationResult compile(File file) throws IOException {
+		return this.compile(ObamaCompiler.read(file), file.getAbsolutePath());
+	}
+
+	/**
+	 * Read a source file. Files larger than STREAMING_THRESHOLD bytes are
+	 * mapped into memory, smaller files are read onto the heap.
+	 *
+	 * @param file Input file
+	 * @return File content
+	 * @throws IOException If the file cannot be read
+	 * @requires file != null
+	 */
+	public static ByteBuffer read(File file) throws IOException {
+		if (checkNotNull(file).length() > STREAMING_THRESHOLD) {
+			return ByteBufferCharStream.map(file);
+		}
+
+		return ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+	}
+
+	/**
+	 * Compile a character stream through the lexer, parser, checker and
+	 * codegen. Stops after the first phase that reports an error.
+	 *
+	 * @param stream Source code
+	 * @param fileName Name of the source
+	 * @return Compilation result
+	 * @requires stream != null && fileName != null
+	 */
+	public CompilationResult compile(CharStream stream, String fileName) {
+		return this.compile(stream, null, fileName, null);
+	}
+
+	/**
+	 * Compile a character stream, or its tree from the cache
+	 *
+	 * @param stream Source code
+	 * @param chars Characters of the stream, to lex with FastLexer, or null
+	 * @param fileName Name of the source
+	 * @param key Cache key of the source, or null to bypass the cache
+	 * @return Compilation result
+	 * @requires stream != null && fileName != null
+	 * @requires chars == null || chars.hasArray()
+	 */
+	private CompilationResult compile(CharStream stream, CharBuffer chars, String fileName, String key) {
+		checkNotNull(stream);
+		checkNotNull(fileName);
+
+		if (key != null) {
+			CompilationResult result = this.compileCached(key, fileName);
+
+			if (result != null) {
+				return result;
+			}
+		}
+
+		List<Diagnostic> diagnostics = Lists.newArrayList();
+		Map<String, byte[]> classes = Maps.newLinkedHashMap();
+		List<String> imports = Lists.newArrayList();
+		Set<String> referencedTypes = Sets.newLinkedHashSet();
+		CompilationStats stats = new CompilationStats();
+		CompilationStats.Probe probe = null;
+		SymbolPool symbols = new SymbolPool();
+		TypedNode tree = null;
+
+		// Lexer. Fill the token buffer of small sources up front, so lexing
+		// is measured apart from parsing.
+		probe = stats.start(CompilationStats.Phase.LEXER);
+		CommonTokenStream buffered = null;
+		StreamingTokenStream streaming = null;
+		TokenStream tokens;
+
+		if (this.isStreaming(stream.size())) {
+			ObamaLexer lexer = new ObamaLexer(stream);
+			lexer.setDiagnostics(diagnostics);
+			lexer.setSymbolPool(symbols);
+			tokens = streaming = new StreamingTokenStream(lexer);
+		} else if (chars != null) {
+			FastLexer lexer = new FastLexer(chars.array(), chars.limit(), fileName);
+			lexer.setDiagnostics(diagnostics);
+			lexer.setSymbolPool(symbols);
+			tokens = buffered = new CommonTokenStream(lexer);
+			buffered.fill();
+		} else {
+			ObamaLexer lexer = new ObamaLexer(stream);
+			lexer.setDiagnostics(diagnostics);
+			lexer.setSymbolPool(symbols);
+			tokens = buffered = new CommonTokenStream(lexer);
+			buffered.fill();
+		}
+
+		probe.stop();
+
+		// Parser
+		probe = stats.start(CompilationStats.Phase.PARSER);
+
+		try {
+			if (this.parallelParser != null) {
+				tree = this.parallelParser.parse(buffered.getTokens(), diagnostics, symbols);
+			}
+
+			// Sources that cannot be split are parsed serially
+			if (tree == null) {
+				ObamaParser parser = new ObamaParser(tokens);
+				parser.setDiagnostics(diagnostics);
+				parser.setSymbolPool(symbols);
+				parser.setTreeAdaptor(new TypedNodeAdapter());
+				tree = (TypedNode) parser.program().getTree();
+			}
+		} catch (RecognitionException exception) {
+			diagnostics.add(ObamaCompiler.toDiagnostic(Diagnostic.Phase.PARSER, exception));
+		} finally {
+			probe.stop();
+		}
+
+		stats.setTokens(buffered != null ? buffered.getNumberOfOnChannelTokens() : streaming.getNumberOfOnChannelTokens());
+
+		if (!diagnostics.isEmpty()) {
+			return new CompilationResult(fileName, classes, diagnostics, tree, imports, referencedTypes, stats);
+		}
+
+		// Flatten the tree, so the tokens and nodes of the parser can be freed
+		if (this.compactTrees && !this.parallelChecking) {
+			probe = stats.start(CompilationStats.Phase.PARSER);
+			tree = CompactTree.copyOf(tree).getRoot();
+			tokens = buffered = null;
+			streaming = null;
+			probe.stop();
+		}
+
+		// Checker
+		CheckerVisitor checker = null;
+		probe = stats.start(CompilationStats.Phase.CHECKER);
+
+		try {
+			if (this.parallelChecking) {
+				ForkJoinPool pool = ForkJoinPool.commonPool();
+				checker = new CheckerVisitor(new SymbolTable(), fileName, pool, pool.getParallelism());
+			} else {
+				checker = new CheckerVisitor(new SymbolTable(), fileName);
+			}
+
+			checker.getHelper().setTypeCache(this.types);
+			checker.program(tree);
+
+			// Dependencies, for incremental compilation
+			for (Import imp : checker.getHelper().getImports()) {
+				imports.add(imp.toString());
+			}
+
+			for (Class<?> type : checker.getHelper().getReferencedTypes()) {
+				referencedTypes.add(type.getName());
+			}
+
+			if (checker.getNumberOfErrors() > 0) {
+				diagnostics.add(new Diagnostic(Diagnostic.Phase.CHECKER, 0, 0, String.format(
+					"%d error(s) in tree",
+					checker.getNumberOfErrors()
+				)));
+			}
+		} catch (CheckerException exception) {
+			diagnostics.add(ObamaCompiler.toDiagnostic(exception));
+		} finally {
+			probe.stop();
+		}
+
+		if (checker != null) {
+			stats.setSymbols(checker.getNumberOfSymbols());
+			stats.setMemberIndexHits(checker.getHelper().getMemberIndexHits());
+			stats.setMemberIndexMisses(checker.getHelper().getMemberIndexMisses());
+		}
+
+		ObamaCompiler.countNodes(tree, stats);
+
+		if (!diagnostics.isEmpty()) {
+			return new CompilationResult(fileName, classes, diagnostics, tree, imports, referencedTypes, stats);
+		}
+
+		if (this.compactTrees && this.parallelChecking) {
+			probe = stats.start(CompilationStats.Phase.CHECKER);
+			tree = CompactTree.copyOf(tree).getRoot();
+			probe.stop();
+		}
+
+		if (key != null) {
+			this.cache.store(key, new TreeCache.Entry(((CompactNode) tree).getTree(), imports, referencedTypes, stats.getTokens(), stats.getSymbols()));
+		}
+
+		return ObamaCompiler.generate(fileName, tree, imports, referencedTypes, stats);
+	}
+
+	/**
+	 * Generate code from the tree in the cache
+	 *
+	 * @param key Cache key of the source
+	 * @param fileName Name of the source
+	 * @return Compilation result, or null if the tree is not in the cache
+	 */
+	private CompilationResult compileCached(String key, String fileName) {
+		CompilationStats stats = new CompilationStats();
+		CompilationStats.Probe probe = stats.start(CompilationStats.Phase.PARSER);
+		TreeCache.Entry entry = this.cache.load(key);
+		probe.stop();
+
+		if (entry == null) {
+			return null;
+		}
+
+		TypedNode tree = entry.getTree().getRoot();
+
+		stats.setTokens(entry.getTokens());
+		stats.setSymbols(entry.getSymbols());
+		ObamaCompiler.countNodes(tree, stats);
+
+		return ObamaCompiler.generate(fileName, tree, Lists.newArrayList(entry.getImports()), Sets.newLinkedHashSet(entry.getReferencedTypes()), stats);
+	}
+
+	/**
+	 * Generate code from a checked tree
+	 *
+	 * @param fileName Name of the source
+	 * @param tree Checked tree
+	 * @param imports Imports of the source
+	 * @param referencedTypes Java types the source uses
+	 * @param stats Statistics to update
+	 * @return Compilation result
+	 */
+	private static CompilationResult generate(String fileName, TypedNode tree, List<String> imports, Set<String> referencedTypes, CompilationStats stats) {
+		List<Diagnostic> diagnostics = Lists.newArrayList();
+		Map<String, byte[]> classes = Maps.newLinkedHashMap();
+		CompilationStats.Probe probe = stats.start(CompilationStats.Phase.CODEGEN);
+
+		try {
+			CodegenVisitor codegen = new CodegenVisitor();
+			codegen.program(tree);
+
+			if (codegen.getNumberOfErrors() > 0) {
+				diagnostics.add(new Diagnostic(Diagnostic.Phase.CODEGEN, 0, 0, String.format(
+					"%d error(s) in tree",
+					codegen.getNumberOfErrors()
+				)));
+			}
+
+			classes.putAll(codegen.getHelper().toByteArrays());
+		} catch (CodegenException exception) {
+			diagnostics.add(ObamaCompiler.toDiagnostic(Diagnostic.Phase.CODEGEN, exception));
+		} catch (RuntimeException exception) {
+			// ASM reports broken stack frames as runtime exceptions
+			logger.debug("Codegen failed", exception);
+			diagnostics.add(new Diagnostic(Diagnostic.Phase.CODEGEN, 0, 0, exception.toString()));
+		} finally {
+			probe.stop();
+		}
+
+		if (!diagnostics.isEmpty()) {
+			classes.clear();
+		}
+
+		for (byte[] content : classes.values()) {
+			stats.setBytecodeBytes(stats.getBytecodeBytes() + content.length);
+		}
+
+		return new CompilationResult(fileName, classes, diagnostics, tree, imports, referencedTypes, stats);
+	}
+
+	/**
+	 * Return whether a source of a given size, in characters or bytes, is
+	 * lexed on demand
+	 */
+	private boolean isStreaming(int size) {
+		return size > STREAMING_THRESHOLD && this.parallelParser == null;
+	}
+
+	/**
+	 * Count the nodes and method declarations of a tree
+	 *
+	 * @param tree Checked tree
+	 * @param stats Statistics to update
+	 */
+	private static void countNodes(TypedNode tree, CompilationStats stats) {
+		List<TypedNode> stack = Lists.newArrayList(tree);
+		int nodes = 0;
+		int methods = 0;
+
+		while (!stack.isEmpty()) {
+			TypedNode node = stack.remove(stack.size() - 1);
+
+			nodes++;
+
+			if (node.getNodeType() == NodeType.METHOD) {
+				methods++;
+			}
+
+			for (int i = 0; i < node.getChildCount(); i++) {
+				stack.add((TypedNode) node.getChild(i));
+			}
+		}
+
+		stats.setNodes(nodes);
+		stats.setMethods(methods);
+	}
+
+	/**
+	 * Convert a recognition exception to a diagnostic
+	 *
+	 * @param phase Phase that threw the exception
+	 * @param exception Exception
+	 * @return Diagnostic
+	 */
+	static Diagnostic toDiagnostic(Diagnostic.Phase phase, RecognitionException exception) {
+		return new Diagnostic(phase, exception.line, exception.charPositionInLine, exception.toString());
+	}
+
+	/**
+	 * Convert a checker exception to a diagnostic, using the location of the
+	 * node that failed.
+	 *
+	 * @param exception Exception
+	 * @return Diagnostic
+	 */
+	private static Diagnostic toDiagnostic(CheckerException exception) {
+		Tree tree = exception.getTree();
+
+		// Imaginary nodes have no position, so use the first child that has
+		while (tree != null && tree.getLine() == 0 && tree.getChildCount() > 0) {
+			tree = tree.getChild(0);
+		}
+
+		if (tree == null) {
+			return new Diagnostic(Diagnostic.Phase.CHECKER, 0, 0, exception.toString());
+		}
+
+		return new Diagnostic(Diagnostic.Phase.CHECKER, tree.getLine(), tree.getCharPositionInLine(), exception.toString());
+	}
+
+	/**
+	 * Options of a compiler. By default it parses and checks serially, keeps
+	 * the tree as parsed, caches no trees and resolves Java types through the
+	 * shared type cache.
+	 */
+	public static class Options {
+		private boolean parallelParsing = false;
+
+		private boolean compactTrees = false;
+
+		private TreeCache cache = null;
+
+		private boolean parallelChecking = false;
+
+		private TypeCache types = TypeCache.getShared();
+
+		/**
+		 * Set whether top level declarations are parsed in parallel
+		 */
+		public Options setParallelParsing(boolean parallelParsing) {
+			this.parallelParsing = parallelParsing;
+			return this;
+		}
+
+		/**
+		 * Set whether the tree is flattened after parsing
+		 */
+		public Options setCompactTrees(boolean compactTrees) {
+			this.compactTrees = compactTrees;
+			return this;
+		}
+
+		/**
+		 * Set the cache of checked trees, or null for none
+		 */
+		public Options setCache(TreeCache cache) {
+			this.cache = cache;
+			return this;
+		}
+
+		/**
+		 * Set whether method bodies are checked in parallel
+		 */
+		public Options setParallelChecking(boolean parallelChecking) {
+			this.parallelChecking = parallelChecking;
+			return this;
+		}
+
+		/**
+		 * Set the cache of resolved Java types, or null to resolve them once
+		 * per compilation
+		 */
+		public Options setTypes(TypeCache types) {
+			this.types = types;
+			return this;
+		}
+	}
+}
@@ -0,0 +1,321 @@
+package vb.obama.compiler;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.AbstractList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.antlr.runtime.CommonToken;
+import org.antlr.runtime.CommonTokenStream;
+import org.antlr.runtime.RecognitionException;
+import org.antlr.runtime.Token;
+import org.antlr.runtime.TokenSource;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import vb.obama.antlr.ObamaParser;
+import vb.obama.antlr.tree.TypedNode;
+import vb.obama.antlr.tree.TypedNodeAdapter;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Parses the top level declarations of a source in parallel. The tokens are
+ * split where a declaration ends: at a closing brace or semicolon outside of
+ * braces, or at the end of an import. Groups of declarations are parsed on
+ * separate threads and their trees are joined under one PROGRAM node. Tokens
+ * keep their position and their index, so the tree has the same lines,
+ * columns and token boundaries as a tree of the serial parser.
+ *
+ * A source that cannot be split safely, e.g. because its braces do not match
+ * or an import follows a declaration, is left to the serial parser, so it
+ * gets the same syntax errors.
+ *
+ * @version 1.2
+ */
+public class ParallelParser {
+	/**
+	 * Message logger
+	 */
+	private static final Logger logger = LogManager.getLogger(ParallelParser.class.getName());
+
+	/**
+	 * Number of groups per thread, to even out declarations of different size
+	 */
+	private static final int GROUPS_PER_THREAD = 4;
+
+	/**
+	 * Executor to parse on
+	 */
+	private final ExecutorService executor;
+
+	/**
+	 * Number of threads of the executor
+	 */
+	private final int parallelism;
+
+	/**
+	 * Construct a new parallel parser
+	 *
+	 * @param executor Executor to parse on
+	 * @param parallelism Number of threads of the executor
+	 * @requires executor != null && parallelism > 0
+	 */
+	public ParallelParser(ExecutorService executor, int parallelism) {
+		checkArgument(parallelism > 0);
+
+		this.executor = checkNotNull(executor);
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Parse a list of tokens. Off-channel tokens are ignored.
+	 *
+	 * @param tokens All tokens of the source, ending with EOF
+	 * @param diagnostics List to add syntax errors to
+	 * @return Program tree, or null if the tokens cannot be split and should
+	 * be parsed serially
+	 * @requires tokens != null && diagnostics != null
+	 */
+	public TypedNode parse(List<? extends Token> tokens, List<Diagnostic> diagnostics) {
+		return this.parse(tokens, diagnostics, null);
+	}
+
+	/**
+	 * Parse a list of tokens, interning package paths and types in a pool.
+	 * Off-channel tokens are ignored.
+	 *
+	 * @param tokens All tokens of the source, ending with EOF, as buffered by
+	 *        a CommonTokenStream, so the index of a token is its position
+	 * @param diagnostics List to add syntax errors to
+	 * @param symbols Pool shared by all threads, or null
+	 * @return Program tree, or null if the tokens cannot be split and should
+	 * be parsed serially
+	 * @requires tokens != null && diagnostics != null
+	 */
+	public TypedNode parse(List<? extends Token> tokens, List<Diagnostic> diagnostics, SymbolPool symbols) {
+		checkNotNull(tokens);
+		checkNotNull(diagnostics);
+
+		List<Token> all = Collections.unmodifiableList(tokens);
+		List<Token> visible = Lists.newArrayList();
+		List<Integer> positions = Lists.newArrayList();
+
+		for (int i = 0; i < all.size(); i++) {
+			Token token = all.get(i);
+
+			if (token.getChannel() == Token.DEFAULT_CHANNEL && token.getType() != Token.EOF) {
+				visible.add(token);
+				positions.add(i);
+			}
+		}
+
+		List<Integer> ends = ParallelParser.split(visible);
+
+		if (ends == null || ends.size() < 2) {
+			return null;
+		}
+
+		// Group consecutive declarations, so each task has enough work
+		int groups = Math.min(ends.size(), this.parallelism * GROUPS_PER_THREAD);
+		List<Future<Chunk>> futures = Lists.newArrayList();
+		int start = 0;
+
+		for (int i = 0; i < groups; i++) {
+			int end = ends.get((int) ((long) ends.size() * (i + 1) / groups - 1));
+
+			futures.add(this.executor.submit(new Chunk(all, positions.get(start), positions.get(end - 1) + 1, symbols)));
+			start = end;
+		}
+
+		logger.debug(String.format("Parsing %d declaration(s) in %d group(s)", ends.size(), groups));
+
+		// Join the trees in source order
+		TypedNodeAdapter adaptor = new TypedNodeAdapter();
+		TypedNode result = (TypedNode) adaptor.create(ObamaParser.PROGRAM, "PROGRAM");
+
+		for (Future<Chunk> future : futures) {
+			Chunk chunk;
+
+			try {
+				chunk = future.get();
+			} catch (ExecutionException exception) {
+				// Parsers report their errors, so this is a bug
+				throw new IllegalStateException(exception.getCause());
+			} catch (InterruptedException exception) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Parsing interrupted", exception);
+			}
+
+			diagnostics.addAll(chunk.diagnostics);
+
+			if (chunk.tree != null) {
+				adaptor.addChild(result, chunk.tree);
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Find where the top level declarations end
+	 *
+	 * @param tokens On-channel tokens, without EOF
+	 * @return Exclusive end index of every declaration, or null if the tokens
+	 * cannot be split safely
+	 */
+	static List<Integer> split(List<Token> tokens) {
+		List<Integer> result = Lists.newArrayList();
+		boolean declarations = false;
+		int depth = 0;
+		int start = 0;
+
+		for (int i = 0; i < tokens.size(); i++) {
+			int type = tokens.get(i).getType();
+			boolean end = false;
+
+			if (type == ObamaParser.LBRACKET) {
+				depth++;
+			} else if (type == ObamaParser.RBRACKET) {
+				if (--depth < 0) {
+					return null;
+				}
+
+				end = depth == 0;
+			} else if (depth == 0) {
+				if (tokens.get(start).getType() == ObamaParser.IMPORT) {
+					// Imports must come before all declarations
+					if (declarations) {
+						return null;
+					}
+
+					end = type == ObamaParser.GT;
+				} else {
+					end = type == ObamaParser.SEMICOLON;
+				}
+			}
+
+			if (end) {
+				declarations |= tokens.get(start).getType() != ObamaParser.IMPORT;
+				result.add(i + 1);
+				start = i + 1;
+			}
+		}
+
+		// Trailing tokens are an incomplete declaration
+		return start == tokens.size() ? result : null;
+	}
+
+	/**
+	 * Parses a group of declarations
+	 */
+	private static class Chunk implements Callable<Chunk> {
+		private final List<Token> tokens;
+
+		/**
+		 * Index of the first token, and the exclusive index of the last one
+		 */
+		private final int start;
+		private final int end;
+
+		private final SymbolPool symbols;
+
+		private final List<Diagnostic> diagnostics = Lists.newArrayList();
+
+		private TypedNode tree;
+
+		private Chunk(List<Token> tokens, int start, int end, SymbolPool symbols) {
+			this.tokens = tokens;
+			this.start = start;
+			this.end = end;
+			this.symbols = symbols;
+		}
+
+		@Override
+		public Chunk call() {
+			ObamaParser parser = new ObamaParser(new RangeTokenStream(this.tokens, this.start, this.end));
+			parser.setDiagnostics(this.diagnostics);
+			parser.setSymbolPool(this.symbols);
+			parser.setTreeAdaptor(new TypedNodeAdapter());
+
+			try {
+				this.tree = (TypedNode) parser.program_chunk().getTree();
+			} catch (RecognitionException exception) {
+				this.diagnostics.add(ObamaCompiler.toDiagnostic(Diagnostic.Phase.PARSER, exception));
+			}
+
+			return this;
+		}
+	}
+
+	/**
+	 * Token stream over a range of buffered tokens, followed by EOF. Positions
+	 * in the stream are positions in the buffer, so tokens are not renumbered
+	 * like they would be by a CommonTokenStream of their own. Only the EOF
+	 * tokens are added.
+	 */
+	private static class RangeTokenStream extends CommonTokenStream {
+		private final int start;
+
+		private RangeTokenStream(final List<Token> tokens, int start, final int end) {
+			super(new EofTokenSource(tokens.get(end - 1)));
+
+			this.start = start;
+			this.tokens = new AbstractList<Token>() {
+				private final List<Token> eofs = Lists.newArrayList();
+
+				@Override
+				public Token get(int index) {
+					return index < end ? tokens.get(index) : this.eofs.get(index - end);
+				}
+
+				@Override
+				public int size() {
+					return end + this.eofs.size();
+				}
+
+				@Override
+				public boolean add(Token token) {
+					return this.eofs.add(token);
+				}
+			};
+		}
+
+		@Override
+		protected void setup() {
+			this.p = this.skipOffTokenChannels(this.start);
+		}
+	}
+
+	/**
+	 * Hands out EOF tokens, placed right after the last token of a range for
+	 * error messages
+	 */
+	private static class EofTokenSource implements TokenSource {
+		private final Token last;
+
+		private EofTokenSource(Token last) {
+			this.last = last;
+		}
+
+		@Override
+		public Token nextToken() {
+			CommonToken eof = new CommonToken(Token.EOF, "<EOF>");
+			eof.setLine(this.last.getLine());
+			eof.setCharPositionInLine(this.last.getCharPositionInLine() + this.last.getText().length());
+
+			return eof;
+		}
+
+		@Override
+		public String getSourceName() {
+			return "chunk";
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package vb.obama.compiler;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Pool of the identifier texts of one compilation. The lexer interns the
+ * text of every token except string literals, and the parser every package
+ * path and type, so all nodes that name the same symbol share one string.
+ * Lookups in the symbol table and the type caches then hit the reference
+ * check of String.equals and the cached hash code, instead of comparing and
+ * hashing a fresh copy every time.
+ *
+ * The pool is safe to use from several threads, e.g. when parsing in
+ * parallel. It is not shared between compilations, so a long running
+ * compiler does not keep the names of old sources alive.
+ *
+ * @version 1.1
+ */
+public class SymbolPool {
+	/**
+	 * Interned texts, mapped to themselves
+	 */
+	private final ConcurrentMap<String, String> symbols = Maps.newConcurrentMap();
+
+	/**
+	 * Return the pooled copy of a text, adding it if it is new
+	 *
+	 * @param text Token text, package path or type
+	 * @return Equal string, the same instance for equal texts
+	 * @requires text != null
+	 */
+	public String intern(String text) {
+		checkNotNull(text);
+
+		// Most texts are repeated, so look up without locking first
+		String result = this.symbols.get(text);
+
+		if (result == null) {
+			result = this.symbols.putIfAbsent(text, text);
+		}
+
+		return result != null ? result : text;
+	}
+
+	/**
+	 * Return the number of distinct texts in the pool
+	 */
+	public int size() {
+		return this.symbols.size();
+	}
+}
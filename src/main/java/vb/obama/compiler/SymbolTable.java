@@ -1,132 +1,335 @@
 package vb.obama.compiler;
 
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Arrays;
 import java.util.Map;
 
 import vb.obama.exceptions.SymbolTableException;
 
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
-
 import static com.google.common.base.Preconditions.*;
 
 /**
  * Holds the information about the identifiers for a program.
- * @version 1.1
+ *
+ * Only the innermost declaration of every identifier is in the map. Every
+ * declaration is also pushed on an undo log, together with the declaration it
+ * hides. Closing a scope pops the declarations of that scope and puts back
+ * what they hid, so its cost only depends on the identifiers declared in it.
+ *
+ * A snapshot freezes the visible identifiers in an immutable chain of maps. A
+ * table built on a snapshot looks up what it does not declare itself in that
+ * chain and never changes it, so several threads can check method bodies
+ * against one snapshot of the globals, each in a table of its own. Tables
+ * are not thread safe themselves.
+ *
+ * Entries are numbered in order of declaration. A view of a snapshot up to an
+ * entry hides everything declared after it, so a method body that is checked
+ * later sees the identifiers as they were when its method was declared.
+ * Snapshots keep every scope in a map of its own, so the view still finds
+ * what a later declaration hid.
+ *
+ * @version 1.5
  */
 public class SymbolTable {
-	private static final Logger logger = LogManager.getLogger(SymbolTable.class.getName());
-	
 	/**
 	 * Current identifier level
 	 */
 	private int level;
-	
+
+	/**
+	 * Identifiers this table was built on, or null
+	 */
+	private final Snapshot base;
+
+	/**
+	 * Innermost entry of every identifier
+	 */
+	private Map<String, IdEntry> table;
+
+	/**
+	 * Identifiers in order of declaration, for closing scopes
+	 */
+	private ArrayList<String> declared;
+
+	/**
+	 * Entries hidden by the declarations, null for identifiers that were not
+	 * declared before
+	 */
+	private ArrayList<IdEntry> hidden;
+
+	/**
+	 * Declared entries, in the same order
+	 */
+	private ArrayList<IdEntry> entered;
+
+	/**
+	 * Size of the undo log when each open scope was opened, by level
+	 */
+	private int[] starts;
+
+	/**
+	 * Number of identifiers entered since construction
+	 */
+	private int entries;
+
 	/**
-	 * Holds the identifier for a specific level
+	 * Ordinal of the first identifier entered in this table
 	 */
-	private Map<String, ArrayList<IdEntry>> table;
-	
-    /** 
+	private final int first;
+
+    /**
      * Construct a new symbol table
-     * @ensures  this.getCurrentLevel() == -1 
+     * @ensures  this.getCurrentLevel() == -1
+     */
+    public SymbolTable() {
+        this(null);
+    }
+
+    /**
+     * Construct a symbol table on a snapshot. The scope of the snapshot is
+     * the outermost scope of the table and cannot be closed.
+     *
+     * @param base Snapshot to look up undeclared identifiers in, or null
+     * @ensures this.getCurrentLevel() == (base != null ? base.getLevel() : -1)
      */
-    public SymbolTable() { 
-        this.level = -1;
+    public SymbolTable(Snapshot base) {
+        this.base = base;
+        this.level = base != null ? base.getLevel() : -1;
         this.table = Maps.newHashMap();
+        this.declared = Lists.newArrayList();
+        this.hidden = Lists.newArrayList();
+        this.entered = Lists.newArrayList();
+        this.first = base != null ? base.ordinals : 0;
+        this.starts = new int[Math.max(16, this.level + 2)];
     }
 
-    /** 
-     * Opens a new scope. 
+    /**
+     * Opens a new scope.
      * @ensures this.getCurrentLevel() == old.getCurrentLevel() + 1;
      */
     public void openScope()  {
         this.level++;
+
+        if (this.level == this.starts.length) {
+        	this.starts = Arrays.copyOf(this.starts, this.starts.length * 2);
+        }
+
+        this.starts[this.level] = this.declared.size();
     }
 
-    /** 
-     * Closes the current scope. All identifiers in the current scope will be 
+    /**
+     * Closes the current scope. All identifiers in the current scope will be
      * removed from the SymbolTable.
-     * 
+     *
      * @requires this.getCurrentLevel() > -1;
      * @ensures this.getCurrentLevel() == old.getCurrentLevel()-1;
      */
     public void closeScope() {
-    	this.level--;
-    	
-    	for (ArrayList<IdEntry> value : this.table.values()) {
-    		Iterator<IdEntry> iterator = value.iterator();
-    		
-    		while (iterator.hasNext()) {
-    			IdEntry entry = iterator.next();
-    			
-    			if (entry.getLevel() > this.level) 
-    				iterator.remove();
+    	checkState(this.level > (this.base != null ? this.base.getLevel() : -1), "No scope to close");
+
+    	int start = this.starts[this.level];
+
+    	for (int i = this.declared.size() - 1; i >= start; i--) {
+    		String id = this.declared.remove(i);
+    		IdEntry entry = this.hidden.remove(i);
+    		this.entered.remove(i);
+
+    		if (entry == null) {
+    			this.table.remove(id);
+    		} else {
+    			this.table.put(id, entry);
     		}
     	}
+
+    	this.level--;
     }
 
-    /** 
+    /**
      * Returns the current scope level.
      */
     public int getCurrentLevel() {
         return level;
-    }    
+    }
 
-    /** 
-     * Enters an id together with an entry into this SymbolTable using the 
-     * current scope level. The entry's level is set to currentLevel().
-     * 
+    /**
+     * Enters an id together with an entry into this SymbolTable using the
+     * current scope level. The entry's level is set to currentLevel() and its
+     * ordinal to the number of identifiers entered before it.
+     *
      * @requires id != null && id.length() > 0 && entry != null;
      * @ensures this.retrieve(id).getLevel() == currentLevel();
      * @throws SymbolTableException when there is no valid current scope level,
-     * or when the id is already declared on the current level. 
+     * or when the id is already declared on the current level.
      */
     public void enter(String id, IdEntry entry) throws SymbolTableException {
     	checkNotNull(id);
     	checkArgument(id.length() > 0);
     	checkNotNull(entry);
-    	
+
     	if (this.level == -1) throw new SymbolTableException(String.format("Invalid scope level %d", this.level));
     	entry.setLevel(this.level);
-    	
-    	if (!this.table.containsKey(id)) {
-    		this.table.put(id, new ArrayList<IdEntry>());
-    	}
-    	
-    	for (IdEntry e : this.table.get(id)) {
-    		if(e.getLevel() == entry.getLevel()) {
-    			throw new SymbolTableException(String.format("Duplicate identifier '%s' on level %d", id, this.level));
+
+    	// Only the innermost entry can be on the current level
+    	IdEntry previous = this.table.put(id, entry);
+    	IdEntry innermost = previous != null || this.base == null ? previous : this.base.retrieve(id);
+
+    	if (innermost != null && innermost.getLevel() == this.level) {
+    		if (previous != null) {
+    			this.table.put(id, previous);
+    		} else {
+    			this.table.remove(id);
     		}
+
+    		throw new SymbolTableException(String.format("Duplicate identifier '%s' on level %d", id, this.level));
     	}
-    	
-    	this.table.get(id).add(entry);
+
+    	entry.setOrdinal(this.first + this.entries);
+    	this.declared.add(id);
+    	this.hidden.add(previous);
+    	this.entered.add(entry);
+    	this.entries++;
     }
 
-    /** 
-     * Get the Entry corresponding with id whose level is the highest; in other 
+    /**
+     * Returns the number of identifiers entered since construction, including
+     * those of closed scopes.
+     */
+    public int getEntryCount() {
+    	return this.entries;
+    }
+
+    /**
+     * Get the Entry corresponding with id whose level is the highest; in other
      * words, that is defined last.
-     * 
-     * @return  Entry of this id on the highest level null if this SymbolTable 
+     *
+     * @return  Entry of this id on the highest level null if this SymbolTable
      * does not contain id.
-     * @requires id != null 
+     * @requires id != null
      */
     public IdEntry retrieve(String id) {
-    	checkNotNull(id);
-    	
-    	// Check if identifier exists
-    	if (table.get(id) == null) {
-    		return null;
+    	IdEntry entry = this.table.get(checkNotNull(id));
+
+    	if (entry == null && this.base != null) {
+    		return this.base.retrieve(id);
+    	}
+
+    	return entry;
+    }
+
+    /**
+     * Freeze the identifiers that are visible now. Entries must not be
+     * changed once they are in a snapshot.
+     *
+     * @return Snapshot on the current level
+     * @requires this.getCurrentLevel() > -1
+     */
+    public Snapshot snapshot() {
+    	checkState(this.level > -1, "No scope to take a snapshot of");
+
+    	// Share the base if nothing was declared on it
+    	if (this.declared.isEmpty() && this.base != null && this.base.getLevel() == this.level) {
+    		return this.base;
+    	}
+
+    	// One map per scope that declared something, and one for the current scope
+    	Snapshot result = this.base;
+    	int ordinals = this.first + this.entries;
+
+    	for (int level = this.base != null ? this.base.getLevel() : 0; level <= this.level; level++) {
+    		int start = this.starts[level];
+    		int end = level < this.level ? this.starts[level + 1] : this.declared.size();
+
+    		if (start == end && level < this.level) {
+    			continue;
+    		}
+
+    		ImmutableMap.Builder<String, IdEntry> entries = ImmutableMap.builder();
+
+    		for (int i = start; i < end; i++) {
+    			entries.put(this.declared.get(i), this.entered.get(i));
+    		}
+
+    		result = new Snapshot(result, entries.build(), level, ordinals, Integer.MAX_VALUE);
     	}
-    	
-    	// Try to fetch the last addition
-    	try {
-    		return table.get(id).get(table.get(id).size() - 1);
-    	} catch (IndexOutOfBoundsException e) {
+
+    	return result;
+    }
+
+    /**
+     * Immutable set of visible identifiers. Identifiers of a snapshot hide
+     * those of the snapshots it was built on, which are shared and not
+     * copied.
+     */
+    public static final class Snapshot {
+    	private final Snapshot parent;
+
+    	private final ImmutableMap<String, IdEntry> entries;
+
+    	private final int level;
+
+    	/**
+    	 * Number of identifiers entered before the snapshot was taken
+    	 */
+    	private final int ordinals;
+
+    	/**
+    	 * Ordinal of the last visible entry
+    	 */
+    	private final int limit;
+
+    	private Snapshot(Snapshot parent, ImmutableMap<String, IdEntry> entries, int level, int ordinals, int limit) {
+    		this.parent = parent;
+    		this.entries = entries;
+    		this.level = level;
+    		this.ordinals = ordinals;
+    		this.limit = limit;
+    	}
+
+    	/**
+    	 * Return the level of the innermost scope of the snapshot
+    	 */
+    	public int getLevel() {
+    		return this.level;
+    	}
+
+    	/**
+    	 * Get the innermost entry of an identifier
+    	 *
+    	 * @return Entry, or null if the identifier is not visible
+    	 * @requires id != null
+    	 */
+    	public IdEntry retrieve(String id) {
+    		int limit = Integer.MAX_VALUE;
+
+    		for (Snapshot snapshot = this; snapshot != null; snapshot = snapshot.parent) {
+    			IdEntry entry = snapshot.entries.get(id);
+    			limit = Math.min(limit, snapshot.limit);
+
+    			if (entry != null && entry.getOrdinal() <= limit) {
+    				return entry;
+    			}
+    		}
+
     		return null;
     	}
+
+    	/**
+    	 * Return a view of this snapshot without the identifiers that were
+    	 * entered after an entry
+    	 *
+    	 * @param entry Last visible entry
+    	 * @return Snapshot on the same level
+    	 * @requires entry != null && entry was entered in the table of this
+    	 * snapshot or in a table it was built on
+    	 */
+    	public Snapshot upTo(IdEntry entry) {
+    		checkArgument(entry.getOrdinal() >= 0, "Entry was never entered");
+
+    		return new Snapshot(this.parent, this.entries, this.level, this.ordinals, Math.min(this.limit, entry.getOrdinal()));
+    	}
     }
 }
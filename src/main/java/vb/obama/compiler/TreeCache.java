@@ -0,0 +1,325 @@
+package vb.obama.compiler;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import vb.obama.Obama;
+import vb.obama.antlr.stream.ByteBufferCharStream;
+import vb.obama.antlr.tree.CompactTree;
+import vb.obama.antlr.tree.TreeCodec;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.io.BaseEncoding;
+import com.google.common.primitives.Ints;
+
+/**
+ * Cache of checked trees on disk, so a source that did not change skips the
+ * lexer, parser and checker and goes straight to codegen.
+ *
+ * Every entry is one file, named after a hash of the compiler version, the
+ * class path, the file name and the content of the source. A changed source
+ * or compiler therefore never finds an old entry. Entries are memory-mapped
+ * and decoded in one pass. A damaged entry counts as a miss.
+ *
+ * The name of an entry starts with a hash of the file name alone, and storing
+ * an entry deletes the other entries of the same file name. The cache thus
+ * holds one tree per source, however often it is edited.
+ *
+ * Types are loaded again by name, so a changed class file on the same class
+ * path is not detected. Clear the cache after changing libraries in place.
+ * Types resolve through the context class loader, but only the class path of
+ * the system class loader is known. Sources compiled with another context
+ * class loader therefore have no key and bypass the cache.
+ *
+ * Instances are thread safe, so one cache can be shared by a batch.
+ *
+ * @version 1.2
+ */
+public class TreeCache {
+	/**
+	 * Extension of cache entries
+	 */
+	public static final String EXTENSION = ".ast";
+
+	/**
+	 * First bytes of an entry, 'OAST'
+	 */
+	private static final int MAGIC = 0x4F415354;
+
+	/**
+	 * Version of the entry layout
+	 */
+	private static final int FORMAT = 1;
+
+	/**
+	 * Number of bytes of the hash of the file name in a key
+	 */
+	private static final int SOURCE_BYTES = 8;
+
+	/**
+	 * Message logger
+	 */
+	private static final Logger logger = LogManager.getLogger(TreeCache.class.getName());
+
+	/**
+	 * Directory of the entries
+	 */
+	private final File directory;
+
+	/**
+	 * Construct a cache. The directory is created when the first entry is
+	 * stored.
+	 *
+	 * @param directory Directory of the entries
+	 * @requires directory != null
+	 */
+	public TreeCache(File directory) {
+		this.directory = checkNotNull(directory);
+	}
+
+	/**
+	 * Return the directory of the entries
+	 */
+	public File getDirectory() {
+		return this.directory;
+	}
+
+	/**
+	 * Compute the key of a source. The position of the buffer is not
+	 * changed.
+	 *
+	 * @param content Source content
+	 * @param fileName Name of the source, which ends up in the class files
+	 * @return Hex encoded hash of the file name, a dash and a hex encoded
+	 * SHA-256 hash of the file name and content, or null if the context class
+	 * loader is not the system class loader
+	 * @requires content != null && fileName != null
+	 */
+	public static String key(ByteBuffer content, String fileName) {
+		if (Thread.currentThread().getContextClassLoader() != ClassLoader.getSystemClassLoader()) {
+			return null;
+		}
+
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			String source = BaseEncoding.base16().lowerCase().encode(digest.digest(fileName.getBytes(StandardCharsets.UTF_8)), 0, SOURCE_BYTES);
+			String context = Joiner.on('\0').join(
+				Joiner.on('.').join(Ints.asList(Obama.VERSION)),
+				FORMAT,
+				Runtime.version(),
+				System.getProperty("java.class.path", ""),
+				fileName
+			);
+
+			digest.update(context.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+			digest.update(content.duplicate());
+
+			return source + "-" + BaseEncoding.base16().lowerCase().encode(digest.digest());
+		} catch (NoSuchAlgorithmException exception) {
+			// Every JVM supports SHA-256
+			throw new IllegalStateException(exception);
+		}
+	}
+
+	/**
+	 * Load an entry
+	 *
+	 * @param key Key of the source
+	 * @return Entry, or null if there is none or it cannot be read
+	 * @requires key != null
+	 */
+	public Entry load(String key) {
+		File file = this.getFile(key);
+
+		if (!file.isFile()) {
+			return null;
+		}
+
+		try {
+			ByteBuffer in = ByteBufferCharStream.map(file);
+
+			if (in.getInt() != MAGIC || in.getInt() != FORMAT) {
+				throw new IOException("Not a tree cache entry");
+			}
+
+			int tokens = in.getInt();
+			int symbols = in.getInt();
+			List<String> imports = TreeCache.readStrings(in);
+			List<String> referencedTypes = TreeCache.readStrings(in);
+			CompactTree tree = TreeCodec.read(in);
+
+			return new Entry(tree, imports, Sets.newLinkedHashSet(referencedTypes), tokens, symbols);
+		} catch (IOException | RuntimeException exception) {
+			logger.warn(String.format("Ignoring tree cache entry '%s': %s", file, exception.getMessage()));
+			return null;
+		}
+	}
+
+	/**
+	 * Store an entry, and delete the other entries of the same file name. The
+	 * file is replaced atomically, so a concurrent load never sees half an
+	 * entry. Failures are logged, since the cache is only an optimization.
+	 *
+	 * @param key Key of the source
+	 * @param entry Checked tree and its dependencies
+	 * @requires key != null && entry != null
+	 */
+	public void store(String key, Entry entry) {
+		checkNotNull(entry);
+
+		File file = this.getFile(key);
+		Path temp = null;
+
+		try {
+			this.directory.mkdirs();
+			temp = Files.createTempFile(this.directory.toPath(), key, ".tmp");
+
+			try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp), 64 * 1024))) {
+				out.writeInt(MAGIC);
+				out.writeInt(FORMAT);
+				out.writeInt(entry.tokens);
+				out.writeInt(entry.symbols);
+				TreeCache.writeStrings(entry.imports, out);
+				TreeCache.writeStrings(entry.referencedTypes, out);
+				TreeCodec.write(entry.tree, out);
+			}
+
+			Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			this.prune(key);
+		} catch (IOException exception) {
+			logger.warn(String.format("Unable to write tree cache entry '%s': %s", file, exception.getMessage()));
+
+			try {
+				if (temp != null) {
+					Files.deleteIfExists(temp);
+				}
+			} catch (IOException ignored) {
+				// Left behind
+			}
+		}
+	}
+
+	/**
+	 * Delete the entries of the same file name as a key, except its own.
+	 * Entries that cannot be deleted, e.g. because they are in use, are left
+	 * for a later store.
+	 *
+	 * @param key Key of the entry to keep
+	 */
+	private void prune(String key) {
+		String source = key.substring(0, key.indexOf('-') + 1);
+
+		try (DirectoryStream<Path> entries = Files.newDirectoryStream(this.directory.toPath(), source + "*" + EXTENSION)) {
+			for (Path entry : entries) {
+				if (!entry.getFileName().toString().equals(key + EXTENSION)) {
+					Files.deleteIfExists(entry);
+					logger.debug(String.format("Deleted old tree cache entry '%s'", entry));
+				}
+			}
+		} catch (IOException exception) {
+			logger.debug(String.format("Unable to delete old tree cache entries of '%s': %s", key, exception.getMessage()));
+		}
+	}
+
+	private File getFile(String key) {
+		return new File(this.directory, checkNotNull(key) + EXTENSION);
+	}
+
+	private static void writeStrings(Iterable<String> values, DataOutputStream out) throws IOException {
+		List<String> list = Lists.newArrayList(values);
+		out.writeInt(list.size());
+
+		for (String value : list) {
+			out.writeUTF(value);
+		}
+	}
+
+	private static List<String> readStrings(ByteBuffer in) {
+		List<String> result = Lists.newArrayList();
+
+		for (int i = in.getInt(); i > 0; i--) {
+			byte[] bytes = new byte[in.getShort() & 0xFFFF];
+			in.get(bytes);
+
+			// Modified UTF-8 equals UTF-8 for names without NUL or supplementary characters
+			result.add(new String(bytes, StandardCharsets.UTF_8));
+		}
+
+		return result;
+	}
+
+	/**
+	 * Checked tree of a source, with what the compiler reports about it
+	 */
+	public static class Entry {
+		private final CompactTree tree;
+
+		private final List<String> imports;
+
+		private final Set<String> referencedTypes;
+
+		private final int tokens;
+
+		private final int symbols;
+
+		/**
+		 * Construct an entry
+		 *
+		 * @param tree Checked tree
+		 * @param imports Imports of the source
+		 * @param referencedTypes Java types the source uses
+		 * @param tokens Number of tokens
+		 * @param symbols Number of symbol table entries
+		 * @requires tree != null && imports != null && referencedTypes != null
+		 */
+		public Entry(CompactTree tree, List<String> imports, Set<String> referencedTypes, int tokens, int symbols) {
+			this.tree = checkNotNull(tree);
+			this.imports = ImmutableList.copyOf(imports);
+			this.referencedTypes = ImmutableSet.copyOf(referencedTypes);
+			this.tokens = tokens;
+			this.symbols = symbols;
+		}
+
+		public CompactTree getTree() {
+			return this.tree;
+		}
+
+		public List<String> getImports() {
+			return this.imports;
+		}
+
+		public Set<String> getReferencedTypes() {
+			return this.referencedTypes;
+		}
+
+		public int getTokens() {
+			return this.tokens;
+		}
+
+		public int getSymbols() {
+			return this.symbols;
+		}
+	}
+}
@@ -0,0 +1,197 @@
+package vb.obama.compiler;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+
+import vb.obama.util.ReflectionUtils;
+
+import com.google.common.base.Joiner;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Java types resolved by name, shared by compilations. A name resolves
+ * differently under other imports or another class loader, so both are part
+ * of the key. Names that do not resolve are kept too, with their error, as
+ * finding out costs a Class.forName and an exception per import.
+ *
+ * The cache holds a bounded number of names and evicts those that were not
+ * used for the longest time. It keeps the class loaders of its entries
+ * reachable until they are evicted.
+ *
+ * With a class index, names are only probed under the imports that may
+ * contain them. The index does not change the result of a resolution.
+ *
+ * @version 1.1
+ */
+public class TypeCache {
+	/**
+	 * Number of names the shared cache holds
+	 */
+	public static final int DEFAULT_SIZE = 10000;
+
+	/**
+	 * Cache of the compilers that do not have one of their own
+	 */
+	private static final TypeCache SHARED = new TypeCache(DEFAULT_SIZE);
+
+	/**
+	 * Resolutions by name, imports and class loader
+	 */
+	private final Cache<Key, Resolution> resolutions;
+
+	/**
+	 * Classes of the class path, or null
+	 */
+	private final ClassIndex index;
+
+	/**
+	 * Construct an empty cache
+	 *
+	 * @param size Number of names to hold
+	 * @requires size > 0
+	 */
+	public TypeCache(int size) {
+		this(size, null);
+	}
+
+	/**
+	 * Construct an empty cache that resolves names with the help of an index
+	 *
+	 * @param size Number of names to hold
+	 * @param index Classes of the class path, or null
+	 * @requires size > 0
+	 */
+	public TypeCache(int size, ClassIndex index) {
+		checkArgument(size > 0);
+		this.resolutions = CacheBuilder.newBuilder().maximumSize(size).build();
+		this.index = index;
+	}
+
+	/**
+	 * Return the cache shared by the whole JVM
+	 */
+	public static TypeCache getShared() {
+		return SHARED;
+	}
+
+	/**
+	 * Resolve a name with the class loader of the current thread, like
+	 * ReflectionUtils.findType
+	 *
+	 * @param identifier Name of the type
+	 * @param imports Imports of the source
+	 * @return Resolution of the name
+	 * @requires identifier != null && imports != null
+	 */
+	public Resolution resolve(final String identifier, final List<Import> imports) {
+		Key key = new Key(identifier, imports, Thread.currentThread().getContextClassLoader());
+
+		try {
+			return this.resolutions.get(key, new Callable<Resolution>() {
+				@Override
+				public Resolution call() {
+					return TypeCache.resolveUncached(identifier, imports, TypeCache.this.index);
+				}
+			});
+		} catch (ExecutionException exception) {
+			// Resolving reports failures in the result
+			throw new IllegalStateException(exception.getCause());
+		}
+	}
+
+	/**
+	 * Return the number of names in the cache
+	 */
+	public long size() {
+		return this.resolutions.size();
+	}
+
+	/**
+	 * Resolve a name without a cache
+	 *
+	 * @param identifier Name of the type
+	 * @param imports Imports of the source
+	 * @param index Classes of the class path, or null
+	 * @return Resolution of the name
+	 * @requires identifier != null && imports != null
+	 */
+	static Resolution resolveUncached(String identifier, List<Import> imports, ClassIndex index) {
+		try {
+			return new Resolution(ReflectionUtils.findType(identifier, imports, index), null);
+		} catch (IllegalArgumentException exception) {
+			return new Resolution(null, exception.getMessage());
+		} catch (ClassNotFoundException exception) {
+			return new Resolution(null, exception.getMessage());
+		}
+	}
+
+	/**
+	 * Type a name resolves to, or why it does not resolve
+	 */
+	public static final class Resolution {
+		private final Class<?> type;
+
+		private final String error;
+
+		private Resolution(Class<?> type, String error) {
+			this.type = type;
+			this.error = error;
+		}
+
+		/**
+		 * Return the type, or null if the name does not resolve
+		 */
+		public Class<?> getType() {
+			return this.type;
+		}
+
+		/**
+		 * Return why the name does not resolve, or null if it does
+		 */
+		public String getError() {
+			return this.error;
+		}
+	}
+
+	/**
+	 * Name with its imports and class loader
+	 */
+	private static final class Key {
+		private final String identifier;
+
+		/**
+		 * Imports, which have no equality of their own
+		 */
+		private final String imports;
+
+		private final ClassLoader loader;
+
+		private Key(String identifier, List<Import> imports, ClassLoader loader) {
+			this.identifier = checkNotNull(identifier);
+			this.imports = Joiner.on(',').join(imports);
+			this.loader = loader;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Key)) {
+				return false;
+			}
+
+			Key key = (Key) other;
+
+			return this.identifier.equals(key.identifier) && this.imports.equals(key.imports) && this.loader == key.loader;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(this.identifier, this.imports, System.identityHashCode(this.loader));
+		}
+	}
+}
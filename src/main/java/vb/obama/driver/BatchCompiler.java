@@ -0,0 +1,438 @@
+package vb.obama.driver;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import org.antlr.runtime.Token;
+import org.antlr.runtime.TokenSource;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import vb.obama.antlr.FastLexer;
+import vb.obama.antlr.ObamaLexer;
+import vb.obama.compiler.CheckerHelper;
+import vb.obama.compiler.ObamaCompiler;
+import vb.obama.util.ExitCodes;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Futures;
+
+/**
+ * Compiles many input files in one JVM. Every file is compiled by its own
+ * CompileTask on a work-stealing pool, so a failing file does not stop the
+ * others.
+ *
+ * All files write to the same output directory, where a class file is named
+ * after its class. Before compiling, the class names of every file are found
+ * from its tokens, and files that declare the same class as another file of
+ * the batch fail instead of overwriting each other's class files.
+ *
+ * @version 1.4
+ */
+public class BatchCompiler {
+	/**
+	 * Extension of Obama source files, used when expanding directories
+	 */
+	public static final String EXTENSION = ".obama";
+
+	/**
+	 * Message logger
+	 */
+	private static final Logger logger = LogManager.getLogger(BatchCompiler.class.getName());
+
+	/**
+	 * Directory to write the generated classes to
+	 */
+	private final File outputDirectory;
+
+	/**
+	 * Number of parallel compile jobs
+	 */
+	private final int jobs;
+
+	/**
+	 * State of incremental builds, or null to compile every file
+	 */
+	private final BuildState state;
+
+	/**
+	 * Compiler shared by all tasks
+	 */
+	private final ObamaCompiler compiler;
+
+	/**
+	 * Construct a new batch compiler
+	 *
+	 * @param outputDirectory Directory for the generated classes
+	 * @param jobs Number of parallel compile jobs
+	 * @requires outputDirectory != null && jobs > 0
+	 */
+	public BatchCompiler(File outputDirectory, int jobs) {
+		this(outputDirectory, jobs, null);
+	}
+
+	/**
+	 * Construct a new batch compiler that only compiles stale files
+	 *
+	 * @param outputDirectory Directory for the generated classes
+	 * @param jobs Number of parallel compile jobs
+	 * @param state State of incremental builds, or null
+	 * @requires outputDirectory != null && jobs > 0
+	 */
+	public BatchCompiler(File outputDirectory, int jobs, BuildState state) {
+		this(outputDirectory, jobs, state, new ObamaCompiler());
+	}
+
+	/**
+	 * Construct a new batch compiler with a configured compiler
+	 *
+	 * @param outputDirectory Directory for the generated classes
+	 * @param jobs Number of parallel compile jobs
+	 * @param state State of incremental builds, or null
+	 * @param compiler Compiler shared by all tasks
+	 * @requires outputDirectory != null && jobs > 0 && compiler != null
+	 */
+	public BatchCompiler(File outputDirectory, int jobs, BuildState state, ObamaCompiler compiler) {
+		checkArgument(jobs > 0);
+
+		this.outputDirectory = checkNotNull(outputDirectory);
+		this.jobs = jobs;
+		this.state = state;
+		this.compiler = checkNotNull(compiler);
+	}
+
+	/**
+	 * Expand a list of files, directories and glob patterns to a list of input
+	 * files. Directories are searched recursively for Obama sources. Patterns
+	 * that do not match anything are kept as is, so they are reported as
+	 * missing files.
+	 *
+	 * @param patterns Files, directories or glob patterns
+	 * @return Ordered list of unique input files
+	 * @throws IOException If a directory cannot be read
+	 */
+	public static List<File> expand(List<String> patterns) throws IOException {
+		Set<File> result = Sets.newLinkedHashSet();
+
+		for (String pattern : patterns) {
+			List<File> matches = Lists.newArrayList();
+			File file = new File(pattern);
+
+			if (file.isDirectory()) {
+				matches.addAll(BatchCompiler.walk(file.toPath(), null));
+			} else if (!file.exists() && BatchCompiler.isGlob(pattern)) {
+				matches.addAll(BatchCompiler.glob(pattern));
+			}
+
+			if (matches.isEmpty()) {
+				matches.add(file);
+			}
+
+			for (File match : matches) {
+				result.add(match.getAbsoluteFile());
+			}
+		}
+
+		return Lists.newArrayList(result);
+	}
+
+	/**
+	 * Compile all files and print the status of every file in input order.
+	 *
+	 * @param files Input files
+	 * @param out Stream to print the per-file status to
+	 * @return Exit code of the whole batch
+	 * @requires files != null && out != null
+	 */
+	public int compile(List<File> files, PrintStream out) {
+		return BatchCompiler.report(this.compile(files), out);
+	}
+
+	/**
+	 * Print the status of every file in input order, followed by a summary.
+	 *
+	 * @param results Results of a batch
+	 * @param out Stream to print the per-file status to
+	 * @return Exit code of the whole batch
+	 * @requires results != null && out != null
+	 */
+	public static int report(List<CompileTask.Result> results, PrintStream out) {
+		checkNotNull(results);
+		checkNotNull(out);
+
+		int failed = 0;
+		int skipped = 0;
+
+		for (CompileTask.Result result : results) {
+			if (!result.isSuccess()) {
+				failed++;
+			} else if (result.isUpToDate()) {
+				skipped++;
+				continue;
+			}
+
+			out.println(String.format(
+				"%s %s (%d ms): %s",
+				result.isSuccess() ? "OK  " : "FAIL",
+				result.getFile(),
+				result.getElapsedMillis(),
+				result.getMessage()
+			));
+		}
+
+		out.println(String.format(
+			"Compiled %d file(s): %d succeeded, %d failed, %d up to date",
+			results.size() - skipped,
+			results.size() - skipped - failed,
+			failed,
+			skipped
+		));
+
+		return failed == 0 ? ExitCodes.SUCCESS : ExitCodes.BATCH_FAILED;
+	}
+
+	/**
+	 * Compile all files in parallel.
+	 *
+	 * @param files Input files
+	 * @return Results, in the same order as the input files
+	 * @requires files != null
+	 */
+	public List<CompileTask.Result> compile(List<File> files) {
+		checkNotNull(files);
+
+		if (!this.outputDirectory.isDirectory()) {
+			this.outputDirectory.mkdirs();
+		}
+
+		// Worker threads resolve types through the context class loader, so
+		// give them the same one as the caller
+		final ClassLoader loader = Thread.currentThread().getContextClassLoader();
+		ForkJoinPool pool = new ForkJoinPool(this.jobs, new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+			@Override
+			public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+				ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+				thread.setContextClassLoader(loader);
+				return thread;
+			}
+		}, null, false);
+
+		logger.debug(String.format("Compiling %d file(s) using %d job(s)", files.size(), this.jobs));
+
+		try {
+			Map<File, String> clashes = BatchCompiler.findClashes(files);
+			List<Future<CompileTask.Result>> futures = Lists.newArrayList();
+
+			for (File file : files) {
+				if (clashes.containsKey(file)) {
+					futures.add(Futures.immediateFuture(CompileTask.Result.failed(file, ExitCodes.CHECKER_FAILED, clashes.get(file))));
+				} else {
+					futures.add(pool.submit(new CompileTask(file, this.outputDirectory, this.state, this.compiler)));
+				}
+			}
+
+			List<CompileTask.Result> results = Lists.newArrayList();
+
+			for (Future<CompileTask.Result> future : futures) {
+				try {
+					results.add(future.get());
+				} catch (ExecutionException exception) {
+					// Tasks catch their own failures, so this is a bug
+					throw new IllegalStateException(exception.getCause());
+				} catch (InterruptedException exception) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException("Batch compilation interrupted", exception);
+				}
+			}
+
+			return results;
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Find the files that declare the same class as another file. The main
+	 * class of a file is named after the file, other classes are found from
+	 * the tokens, without parsing. Files that cannot be read are left to
+	 * their compile task.
+	 *
+	 * @param files Input files
+	 * @return Message of the conflict, by file
+	 */
+	private static Map<File, String> findClashes(List<File> files) {
+		Map<String, List<File>> owners = Maps.newHashMap();
+		Map<File, String> result = Maps.newHashMap();
+
+		for (File file : files) {
+			for (String name : BatchCompiler.getClassNames(file)) {
+				List<File> list = owners.get(name);
+
+				if (list == null) {
+					list = Lists.newArrayList();
+					owners.put(name, list);
+				}
+
+				list.add(file);
+			}
+		}
+
+		for (Map.Entry<String, List<File>> entry : owners.entrySet()) {
+			if (entry.getValue().size() < 2) continue;
+
+			for (File file : entry.getValue()) {
+				if (!result.containsKey(file)) {
+					result.put(file, String.format("Class '%s' is also declared by %s", entry.getKey(), Joiner.on(", ").join(BatchCompiler.others(entry.getValue(), file))));
+				}
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Return the names of the classes a file declares, including its main
+	 * class
+	 *
+	 * @param file Input file
+	 * @return Class names, or an empty set if the file cannot be read
+	 */
+	private static Set<String> getClassNames(File file) {
+		Set<String> result = Sets.newLinkedHashSet();
+
+		if (!file.isFile()) {
+			return result;
+		}
+
+		result.add(CheckerHelper.toClassName(file.getName()));
+
+		try {
+			TokenSource lexer = new FastLexer(StandardCharsets.UTF_8.decode(ObamaCompiler.read(file)).toString());
+			boolean declaration = false;
+
+			for (Token token = lexer.nextToken(); token.getType() != Token.EOF; token = lexer.nextToken()) {
+				if (token.getChannel() != Token.DEFAULT_CHANNEL) continue;
+
+				if (declaration && token.getType() == ObamaLexer.IDENTIFIER) {
+					result.add(token.getText());
+				}
+
+				declaration = token.getType() == ObamaLexer.CLASS;
+			}
+		} catch (IOException exception) {
+			logger.debug(String.format("Unable to read '%s' for its class names: %s", file, exception.getMessage()));
+		}
+
+		return result;
+	}
+
+	private static List<String> others(List<File> files, File file) {
+		List<String> result = Lists.newArrayList();
+
+		for (File other : files) {
+			if (other != file) {
+				result.add(other.getPath());
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Check if a pattern contains glob meta characters
+	 *
+	 * @param pattern Input pattern
+	 * @return True if the pattern is a glob
+	 */
+	private static boolean isGlob(String pattern) {
+		return pattern.indexOf('*') >= 0 || pattern.indexOf('?') >= 0 ||
+			pattern.indexOf('[') >= 0 || pattern.indexOf('{') >= 0;
+	}
+
+	/**
+	 * Expand a glob pattern, relative to the longest leading part of the
+	 * pattern that does not contain meta characters.
+	 *
+	 * @param pattern Glob pattern
+	 * @return Matching files
+	 * @throws IOException If the base directory cannot be read
+	 */
+	private static List<File> glob(String pattern) throws IOException {
+		String normalized = pattern.replace(File.separatorChar, '/');
+		String base = "";
+		int index = 0;
+
+		// Find the base directory
+		while (true) {
+			int next = normalized.indexOf('/', index);
+
+			if (next < 0 || BatchCompiler.isGlob(normalized.substring(index, next))) {
+				break;
+			}
+
+			base = normalized.substring(0, next + 1);
+			index = next + 1;
+		}
+
+		Path directory = Paths.get(base.isEmpty() ? "." : base);
+
+		if (!Files.isDirectory(directory)) {
+			return Lists.newArrayList();
+		}
+
+		PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + normalized.substring(index));
+		return BatchCompiler.walk(directory, matcher);
+	}
+
+	/**
+	 * Recursively list regular files in a directory. Without a matcher, only
+	 * Obama sources are listed.
+	 *
+	 * @param directory Directory to search
+	 * @param matcher Matcher for the path relative to directory, or null
+	 * @return Sorted list of files
+	 * @throws IOException If the directory cannot be read
+	 */
+	static List<File> walk(Path directory, PathMatcher matcher) throws IOException {
+		List<File> result = Lists.newArrayList();
+
+		try (Stream<Path> paths = Files.walk(directory)) {
+			for (Path path : (Iterable<Path>) paths.sorted()::iterator) {
+				if (!Files.isRegularFile(path)) {
+					continue;
+				}
+
+				boolean match = matcher != null ?
+					matcher.matches(directory.relativize(path)) :
+					path.getFileName().toString().endsWith(EXTENSION);
+
+				if (match) {
+					result.add(path.toFile());
+				}
+			}
+		}
+
+		return result;
+	}
+}
@@ -0,0 +1,572 @@
+package vb.obama.driver;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import vb.obama.Obama;
+import vb.obama.compiler.CompilationResult;
+import vb.obama.compiler.Import;
+
+import com.google.common.base.Joiner;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.BaseEncoding;
+import com.google.common.primitives.Ints;
+
+/**
+ * Persistent state of incremental builds. For every source it records the
+ * hash of its content, its imports, the Java types it depends on, where it
+ * was compiled to and the class files written for it. A source is up to date
+ * if none of these changed since it was last compiled.
+ *
+ * The target is the output directory, or the JAR file when classes were
+ * written into one. Compiling to another target is never up to date.
+ *
+ * Java types are fingerprinted by the location they are loaded from and the
+ * modification time of that location, so a changed class path invalidates the
+ * sources that depend on it.
+ *
+ * A class added to a package of a wildcard import can change what a name
+ * resolves to. Wildcard imports are therefore fingerprinted by the locations
+ * the class loader lists for their package, and the modification times of
+ * those directories or archives, together with the Java version. Direct
+ * imports are fingerprinted like types.
+ *
+ * The state is stored as a tab separated text file, one record per line:
+ *
+ * <pre>
+ * SOURCE &lt;path&gt; &lt;sha-256&gt; &lt;target&gt;
+ * IMPORT &lt;import&gt; &lt;fingerprint&gt;
+ * TYPE &lt;class name&gt; &lt;fingerprint&gt;
+ * OUTPUT &lt;path&gt; &lt;length&gt; &lt;modification time&gt;
+ * </pre>
+ *
+ * Instances are thread safe, so one state can be shared by a batch.
+ *
+ * @version 1.4
+ */
+public class BuildState {
+	/**
+	 * Default name of the state file, in the output directory
+	 */
+	public static final String FILE_NAME = ".obama-build-state";
+
+	/**
+	 * Record keywords
+	 */
+	private static final String HEADER = "OBAMA-BUILD-STATE";
+	private static final String SOURCE = "SOURCE";
+	private static final String IMPORT = "IMPORT";
+	private static final String TYPE = "TYPE";
+	private static final String OUTPUT = "OUTPUT";
+
+	/**
+	 * Version of the file layout
+	 */
+	private static final int FORMAT = 3;
+
+	/**
+	 * Message logger
+	 */
+	private static final Logger logger = LogManager.getLogger(BuildState.class.getName());
+
+	/**
+	 * Location of the state file
+	 */
+	private final File file;
+
+	/**
+	 * Entry per absolute source path
+	 */
+	private final ConcurrentMap<String, Entry> entries = Maps.newConcurrentMap();
+
+	/**
+	 * Fingerprints of Java types, computed at most once per run
+	 */
+	private final ConcurrentMap<String, String> fingerprints = Maps.newConcurrentMap();
+
+	/**
+	 * Fingerprints of packages, computed at most once per run
+	 */
+	private final ConcurrentMap<String, String> packages = Maps.newConcurrentMap();
+
+	/**
+	 * Construct an empty state
+	 *
+	 * @param file Location of the state file
+	 * @requires file != null
+	 */
+	public BuildState(File file) {
+		this.file = checkNotNull(file);
+	}
+
+	/**
+	 * Load a state file. A missing file results in an empty state. A file
+	 * written by another compiler version, or one that cannot be parsed, is
+	 * ignored, so everything is compiled again.
+	 *
+	 * @param file Location of the state file
+	 * @return Loaded state
+	 * @throws IOException If the file exists but cannot be read
+	 * @requires file != null
+	 */
+	public static BuildState load(File file) throws IOException {
+		BuildState result = new BuildState(file);
+
+		if (!file.isFile()) {
+			return result;
+		}
+
+		try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+			String line = reader.readLine();
+
+			if (line == null || !line.equals(BuildState.header())) {
+				logger.info(String.format("Ignoring build state '%s' of another compiler version or format", file));
+				return result;
+			}
+
+			Builder builder = null;
+
+			while ((line = reader.readLine()) != null) {
+				List<String> parts = Splitter.on('\t').splitToList(line);
+				String keyword = parts.get(0);
+
+				if (keyword.equals(SOURCE) && parts.size() == 4) {
+					if (builder != null) {
+						builder.build(result);
+					}
+
+					builder = new Builder(parts.get(1), parts.get(2), parts.get(3));
+				} else if (builder == null) {
+					throw new IllegalArgumentException(line);
+				} else if (keyword.equals(IMPORT) && parts.size() == 3) {
+					builder.imports.put(parts.get(1), parts.get(2));
+				} else if (keyword.equals(TYPE) && parts.size() == 3) {
+					builder.types.put(parts.get(1), parts.get(2));
+				} else if (keyword.equals(OUTPUT) && parts.size() == 4) {
+					builder.outputs.put(parts.get(1), parts.get(2) + "\t" + parts.get(3));
+				} else {
+					throw new IllegalArgumentException(line);
+				}
+			}
+
+			if (builder != null) {
+				builder.build(result);
+			}
+		} catch (IllegalArgumentException exception) {
+			logger.warn(String.format("Ignoring corrupt build state '%s': invalid line '%s'", file, exception.getMessage()));
+			result.entries.clear();
+		}
+
+		logger.debug(String.format("Loaded build state '%s' with %d source(s)", file, result.entries.size()));
+		return result;
+	}
+
+	/**
+	 * Write the state to its file. The file is replaced atomically, so an
+	 * interrupted build never leaves a truncated state behind.
+	 *
+	 * @throws IOException If the file cannot be written
+	 */
+	public void save() throws IOException {
+		File directory = this.file.getAbsoluteFile().getParentFile();
+		File temp = new File(directory, this.file.getName() + ".tmp");
+
+		directory.mkdirs();
+
+		try (BufferedWriter writer = Files.newBufferedWriter(temp.toPath(), StandardCharsets.UTF_8)) {
+			writer.write(BuildState.header());
+			writer.newLine();
+
+			for (Map.Entry<String, Entry> item : ImmutableSortedMap.copyOf(this.entries).entrySet()) {
+				Entry entry = item.getValue();
+
+				BuildState.writeRecord(writer, SOURCE, item.getKey(), entry.hash, entry.target);
+
+				for (Map.Entry<String, String> imp : entry.imports.entrySet()) {
+					BuildState.writeRecord(writer, IMPORT, imp.getKey(), imp.getValue());
+				}
+
+				for (Map.Entry<String, String> type : entry.types.entrySet()) {
+					BuildState.writeRecord(writer, TYPE, type.getKey(), type.getValue());
+				}
+
+				for (Map.Entry<String, String> output : entry.outputs.entrySet()) {
+					BuildState.writeRecord(writer, OUTPUT, output.getKey(), output.getValue());
+				}
+			}
+		}
+
+		Files.move(temp.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	public File getFile() {
+		return this.file;
+	}
+
+	/**
+	 * Check if a source needs no compilation. This is the case when its hash
+	 * is unchanged, it was compiled to the same target, all its imports and
+	 * the types it depends on have the same fingerprint and all its outputs
+	 * still exist unmodified.
+	 *
+	 * @param source Source file
+	 * @param hash Hash of the current content
+	 * @param target Output directory or JAR file
+	 * @return True if the source is up to date
+	 * @requires source != null && hash != null && target != null
+	 */
+	public boolean isUpToDate(File source, String hash, File target) {
+		Entry entry = this.entries.get(source.getAbsolutePath());
+
+		if (entry == null || !entry.hash.equals(hash)) {
+			return false;
+		}
+
+		if (!entry.target.equals(target.getAbsolutePath())) {
+			logger.debug(String.format("Source '%s' is stale: compiled to '%s' before", source, entry.target));
+			return false;
+		}
+
+		for (Map.Entry<String, String> imp : entry.imports.entrySet()) {
+			if (!this.fingerprint(new Import(imp.getKey())).equals(imp.getValue())) {
+				logger.debug(String.format("Source '%s' is stale: import '%s' changed", source, imp.getKey()));
+				return false;
+			}
+		}
+
+		for (Map.Entry<String, String> type : entry.types.entrySet()) {
+			if (!this.fingerprint(type.getKey()).equals(type.getValue())) {
+				logger.debug(String.format("Source '%s' is stale: type '%s' changed", source, type.getKey()));
+				return false;
+			}
+		}
+
+		for (Map.Entry<String, String> output : entry.outputs.entrySet()) {
+			if (!BuildState.stat(new File(output.getKey())).equals(output.getValue())) {
+				logger.debug(String.format("Source '%s' is stale: output '%s' changed", source, output.getKey()));
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Return the outputs recorded for a source
+	 *
+	 * @param source Source file
+	 * @return List of class files, empty if the source is unknown
+	 */
+	public List<File> getOutputs(File source) {
+		Entry entry = this.entries.get(source.getAbsolutePath());
+		List<File> result = Lists.newArrayList();
+
+		if (entry != null) {
+			for (String output : entry.outputs.keySet()) {
+				result.add(new File(output));
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Record a successful compilation. Outputs of the previous compilation to
+	 * the same target that were not written again, e.g. of a removed class,
+	 * are deleted. A class may have moved to another source of the same
+	 * batch, so an output is kept while another source records it, or when
+	 * it changed since this source wrote it.
+	 *
+	 * @param source Source file
+	 * @param hash Hash of the compiled content
+	 * @param result Compilation result
+	 * @param target Output directory or JAR file
+	 * @param outputs Written class files or JAR file
+	 * @requires source != null && hash != null && result != null && target != null && outputs != null
+	 */
+	public synchronized void update(File source, String hash, CompilationResult result, File target, List<File> outputs) {
+		Builder builder = new Builder(source.getAbsolutePath(), hash, target.getAbsolutePath());
+
+		for (String imp : result.getImports()) {
+			builder.imports.put(imp, this.fingerprint(new Import(imp)));
+		}
+
+		for (String type : result.getReferencedTypes()) {
+			builder.types.put(type, this.fingerprint(type));
+		}
+
+		for (File output : outputs) {
+			builder.outputs.put(output.getAbsolutePath(), BuildState.stat(output));
+		}
+
+		Entry previous = this.entries.get(source.getAbsolutePath());
+		builder.build(this);
+
+		if (previous != null && previous.target.equals(builder.target)) {
+			for (Map.Entry<String, String> output : previous.outputs.entrySet()) {
+				File file = new File(output.getKey());
+
+				if (builder.outputs.containsKey(output.getKey()) || this.isRecorded(output.getKey())) continue;
+				if (!output.getValue().equals(BuildState.stat(file))) continue;
+
+				if (file.delete()) {
+					logger.debug(String.format("Deleted stale output '%s'", file));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Return whether any source currently records an output
+	 *
+	 * @param output Absolute path of the output
+	 */
+	private boolean isRecorded(String output) {
+		for (Entry entry : this.entries.values()) {
+			if (entry.outputs.containsKey(output)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Forget a source, so it is compiled again on the next run
+	 * @param source Source file
+	 */
+	public void remove(File source) {
+		this.entries.remove(source.getAbsolutePath());
+	}
+
+	/**
+	 * Compute the hash of a source
+	 *
+	 * @param content Source content
+	 * @return Hex encoded SHA-256 hash
+	 */
+	public static String hash(byte[] content) {
+		return BuildState.hash(ByteBuffer.wrap(content));
+	}
+
+	/**
+	 * Compute the hash of the remaining bytes of a source. The position of
+	 * the buffer is not changed.
+	 *
+	 * @param content Source content
+	 * @return Hex encoded SHA-256 hash
+	 */
+	public static String hash(ByteBuffer content) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(content.duplicate());
+
+			return BaseEncoding.base16().lowerCase().encode(digest.digest());
+		} catch (NoSuchAlgorithmException exception) {
+			// Every JVM supports SHA-256
+			throw new IllegalStateException(exception);
+		}
+	}
+
+	/**
+	 * Return the fingerprint of a Java type: the location of its class file
+	 * and the modification time of that file or its archive. Types of the
+	 * runtime image change with the Java version only.
+	 *
+	 * @param name Binary class name
+	 * @return Fingerprint
+	 */
+	private String fingerprint(String name) {
+		String result = this.fingerprints.get(name);
+
+		if (result == null) {
+			ClassLoader loader = Thread.currentThread().getContextClassLoader();
+			URL url = loader.getResource(name.replace('.', '/') + ".class");
+
+			if (url == null) {
+				result = "missing";
+			} else if (url.getProtocol().equals("jrt")) {
+				result = "jrt:" + Runtime.version();
+			} else {
+				result = url + "@" + BuildState.lastModified(url);
+			}
+
+			this.fingerprints.put(name, result);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Return the fingerprint of an import. A direct import is fingerprinted
+	 * like the type it imports. A wildcard import is fingerprinted by the Java
+	 * version and by every location of its package on the class path, with
+	 * the modification time of that directory or archive, which changes when a
+	 * class is added or removed.
+	 *
+	 * @param imp Import
+	 * @return Fingerprint
+	 */
+	private String fingerprint(Import imp) {
+		if (!imp.isWildImport()) {
+			return this.fingerprint(imp.getPackage());
+		}
+
+		String name = imp.getPackage();
+		String result = this.packages.get(name);
+
+		if (result == null) {
+			ClassLoader loader = Thread.currentThread().getContextClassLoader();
+			List<String> parts = Lists.newArrayList("jrt:" + Runtime.version());
+
+			try {
+				for (URL url : Collections.list(loader.getResources(name.replace('.', '/')))) {
+					parts.add(url + "@" + BuildState.lastModified(url));
+				}
+			} catch (IOException exception) {
+				parts.add("unknown");
+			}
+
+			result = Joiner.on(' ').join(parts);
+			this.packages.put(name, result);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Return the modification time of a class file, or of the archive that
+	 * contains it
+	 *
+	 * @param url Location of the class file
+	 * @return Modification time, or zero if unknown
+	 */
+	private static long lastModified(URL url) {
+		String location = url.toString();
+
+		if (url.getProtocol().equals("jar")) {
+			location = location.substring("jar:".length(), location.indexOf("!/"));
+		}
+
+		try {
+			return location.startsWith("file:") ? new File(new URL(location).toURI()).lastModified() : 0L;
+		} catch (IOException | URISyntaxException exception) {
+			return 0L;
+		}
+	}
+
+	/**
+	 * Return the length and modification time of an output, or 'missing'
+	 *
+	 * @param file Output file
+	 * @return Tab separated length and modification time
+	 */
+	private static String stat(File file) {
+		if (!file.isFile()) {
+			return "missing";
+		}
+
+		return file.length() + "\t" + file.lastModified();
+	}
+
+	/**
+	 * Return the first line of a state file. It contains the compiler
+	 * version, since another version may generate other byte code, and the
+	 * version of the file layout.
+	 *
+	 * @return Header line
+	 */
+	private static String header() {
+		return HEADER + "\t" + Joiner.on('.').join(Ints.asList(Obama.VERSION)) + "\t" + FORMAT;
+	}
+
+	private static void writeRecord(BufferedWriter writer, String... parts) throws IOException {
+		writer.write(Joiner.on('\t').join(parts));
+		writer.newLine();
+	}
+
+	/**
+	 * Recorded state of one source
+	 */
+	private static class Entry {
+		private final String hash;
+
+		/**
+		 * Output directory or JAR file
+		 */
+		private final String target;
+
+		/**
+		 * Fingerprint per import
+		 */
+		private final Map<String, String> imports;
+
+		/**
+		 * Fingerprint per referenced type
+		 */
+		private final Map<String, String> types;
+
+		/**
+		 * Length and modification time per output
+		 */
+		private final Map<String, String> outputs;
+
+		private Entry(String hash, String target, Map<String, String> imports, Map<String, String> types, Map<String, String> outputs) {
+			this.hash = hash;
+			this.target = target;
+			this.imports = ImmutableMap.copyOf(imports);
+			this.types = ImmutableMap.copyOf(types);
+			this.outputs = ImmutableMap.copyOf(outputs);
+		}
+	}
+
+	/**
+	 * Collects the records of one source
+	 */
+	private static class Builder {
+		private final String source;
+
+		private final String hash;
+
+		private final String target;
+
+		private final Map<String, String> imports = Maps.newLinkedHashMap();
+
+		private final Map<String, String> types = Maps.newLinkedHashMap();
+
+		private final Map<String, String> outputs = Maps.newLinkedHashMap();
+
+		private Builder(String source, String hash, String target) {
+			this.source = source;
+			this.hash = hash;
+			this.target = target;
+		}
+
+		private void build(BuildState state) {
+			state.entries.put(this.source, new Entry(this.hash, this.target, this.imports, this.types, this.outputs));
+		}
+	}
+}
@@ -0,0 +1,246 @@
+package vb.obama.driver;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import vb.obama.compiler.CompilationResult;
+import vb.obama.compiler.CompilationStats;
+import vb.obama.compiler.ObamaCompiler;
+import vb.obama.util.ExitCodes;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Compiles a single input file through the lexer, parser, checker and codegen.
+ * Unlike the command line entry point, failures are returned as a result
+ * instead of terminating the JVM, so many tasks can share one process.
+ *
+ * @version 1.9
+ */
+public class CompileTask implements Callable<CompileTask.Result> {
+	/**
+	 * Compiler with the default options, which is stateless
+	 */
+	private static final ObamaCompiler DEFAULT_COMPILER = new ObamaCompiler();
+
+	/**
+	 * Compiler to compile the file with
+	 */
+	private final ObamaCompiler compiler;
+
+	/**
+	 * Input file
+	 */
+	private final File file;
+
+	/**
+	 * Directory to write the generated classes to
+	 */
+	private final File outputDirectory;
+
+	/**
+	 * State of incremental builds, or null to always compile
+	 */
+	private final BuildState state;
+
+	/**
+	 * Construct a new compile task
+	 *
+	 * @param file Input file
+	 * @param outputDirectory Directory for the generated classes
+	 * @requires file != null && outputDirectory != null
+	 */
+	public CompileTask(File file, File outputDirectory) {
+		this(file, outputDirectory, null);
+	}
+
+	/**
+	 * Construct a new compile task that skips the file if it is up to date
+	 *
+	 * @param file Input file
+	 * @param outputDirectory Directory for the generated classes
+	 * @param state State of incremental builds, or null
+	 * @requires file != null && outputDirectory != null
+	 */
+	public CompileTask(File file, File outputDirectory, BuildState state) {
+		this(file, outputDirectory, state, DEFAULT_COMPILER);
+	}
+
+	/**
+	 * Construct a new compile task with a configured compiler
+	 *
+	 * @param file Input file
+	 * @param outputDirectory Directory for the generated classes
+	 * @param state State of incremental builds, or null
+	 * @param compiler Compiler to compile the file with
+	 * @requires file != null && outputDirectory != null && compiler != null
+	 */
+	public CompileTask(File file, File outputDirectory, BuildState state, ObamaCompiler compiler) {
+		this.compiler = checkNotNull(compiler);
+		this.file = checkNotNull(file);
+		this.outputDirectory = checkNotNull(outputDirectory);
+		this.state = state;
+	}
+
+	/**
+	 * Run the complete pipeline for the input file.
+	 *
+	 * @return Result of the compilation, never null
+	 */
+	@Override
+	public Result call() {
+		long start = System.nanoTime();
+
+		if (!this.file.isFile()) {
+			return new Result(this.file, ExitCodes.NO_INPUT_FILE, "Input file not found", null, null, false, start);
+		}
+
+		try {
+			ByteBuffer content = ObamaCompiler.read(this.file);
+			String hash = null;
+
+			if (this.state != null) {
+				hash = BuildState.hash(content);
+
+				if (this.state.isUpToDate(this.file, hash, this.outputDirectory)) {
+					return new Result(this.file, ExitCodes.SUCCESS, Result.UP_TO_DATE, this.state.getOutputs(this.file), null, true, start);
+				}
+			}
+
+			CompilationResult result = this.compiler.compile(content, this.file.getAbsolutePath());
+
+			if (!result.isSuccess()) {
+				if (this.state != null) {
+					this.state.remove(this.file);
+				}
+
+				return new Result(this.file, result.getExitCode(), Joiner.on("; ").join(result.getDiagnostics()), null, result.getStats(), false, start);
+			}
+
+			if (!this.outputDirectory.isDirectory()) {
+				this.outputDirectory.mkdirs();
+			}
+
+			List<File> files = result.toClasses(this.outputDirectory.getAbsolutePath());
+
+			if (this.state != null) {
+				this.state.update(this.file, hash, result, this.outputDirectory, files);
+			}
+
+			return new Result(this.file, ExitCodes.SUCCESS, "Compiling successful", files, result.getStats(), false, start);
+		} catch (IOException exception) {
+			return new Result(this.file, ExitCodes.FILE_EXCEPTION, "Unable to read or write file: " + exception.getMessage(), null, null, false, start);
+		}
+	}
+
+	/**
+	 * Outcome of a single compile task
+	 */
+	public static class Result {
+		/**
+		 * Message of a file that was skipped by an incremental build
+		 */
+		public static final String UP_TO_DATE = "Up to date";
+
+		/**
+		 * Input file
+		 */
+		private final File file;
+
+		/**
+		 * Exit code, as if the file was compiled on its own
+		 * @see vb.obama.util.ExitCodes
+		 */
+		private final int exitCode;
+
+		/**
+		 * Human readable status message
+		 */
+		private final String message;
+
+		/**
+		 * Generated files, empty on failure
+		 */
+		private final List<File> files;
+
+		/**
+		 * Time spent on this file, in nanoseconds
+		 */
+		private final long elapsed;
+
+		/**
+		 * Statistics of the compilation, or null if the file was not compiled
+		 */
+		private final CompilationStats stats;
+
+		/**
+		 * True if the file was skipped by an incremental build
+		 */
+		private final boolean upToDate;
+
+		/**
+		 * Return the result of a file that failed before it was compiled
+		 *
+		 * @param file Input file
+		 * @param exitCode Exit code
+		 * @param message Reason of the failure
+		 */
+		static Result failed(File file, int exitCode, String message) {
+			return new Result(file, exitCode, message, null, null, false, System.nanoTime());
+		}
+
+		private Result(File file, int exitCode, String message, List<File> files, CompilationStats stats, boolean upToDate, long start) {
+			this.file = file;
+			this.exitCode = exitCode;
+			this.message = message;
+			this.files = files != null ? ImmutableList.copyOf(files) : ImmutableList.<File>of();
+			this.stats = stats;
+			this.upToDate = upToDate;
+			this.elapsed = System.nanoTime() - start;
+		}
+
+		public File getFile() {
+			return this.file;
+		}
+
+		public int getExitCode() {
+			return this.exitCode;
+		}
+
+		public boolean isSuccess() {
+			return this.exitCode == ExitCodes.SUCCESS;
+		}
+
+		/**
+		 * @return True if the file was skipped, because it was up to date
+		 */
+		public boolean isUpToDate() {
+			return this.upToDate;
+		}
+
+		public String getMessage() {
+			return this.message;
+		}
+
+		public List<File> getFiles() {
+			return this.files;
+		}
+
+		public CompilationStats getStats() {
+			return this.stats;
+		}
+
+		/**
+		 * @return Time spent on this file, in milliseconds
+		 */
+		public long getElapsedMillis() {
+			return this.elapsed / 1000000L;
+		}
+	}
+}
@@ -0,0 +1,233 @@
+package vb.obama.driver;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.List;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+/**
+ * Thin client for a CompilerDaemon running on the same machine. Every request
+ * carries the token of the daemon.
+ *
+ * @version 1.1
+ * @see vb.obama.driver.CompilerDaemon
+ */
+public class CompilerClient implements Closeable {
+	/**
+	 * Connection to the daemon
+	 */
+	private final Socket socket;
+
+	private final BufferedReader in;
+
+	private final PrintWriter out;
+
+	/**
+	 * Token of the daemon
+	 */
+	private final String token;
+
+	/**
+	 * Connect to a daemon on the loopback interface
+	 *
+	 * @param port Port of the daemon
+	 * @param tokenFile Token file the daemon wrote at startup
+	 * @throws IOException If the token file cannot be read or the daemon is
+	 *         not reachable
+	 * @requires tokenFile != null
+	 */
+	public CompilerClient(int port, File tokenFile) throws IOException {
+		this(port, CompilerClient.readToken(tokenFile));
+	}
+
+	/**
+	 * Connect to a daemon on the loopback interface
+	 *
+	 * @param port Port of the daemon
+	 * @param token Token of the daemon
+	 * @throws IOException If the daemon is not reachable
+	 * @requires token != null
+	 */
+	public CompilerClient(int port, String token) throws IOException {
+		this.token = checkNotNull(token);
+		this.socket = new Socket(InetAddress.getLoopbackAddress(), port);
+		this.socket.setTcpNoDelay(true);
+		this.in = new BufferedReader(new InputStreamReader(this.socket.getInputStream(), StandardCharsets.UTF_8));
+		this.out = new PrintWriter(new OutputStreamWriter(this.socket.getOutputStream(), StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Ask the daemon to compile a file. Paths are made absolute, since the
+	 * daemon may run in another working directory.
+	 *
+	 * @param file Input file
+	 * @param outputDirectory Directory for the generated classes
+	 * @return Response of the daemon
+	 * @throws IOException If the connection fails
+	 * @requires file != null && outputDirectory != null
+	 */
+	public Response compile(File file, File outputDirectory) throws IOException {
+		checkNotNull(file);
+		checkNotNull(outputDirectory);
+
+		return this.request(String.format(
+			"%s\t%s\t%s\t%s",
+			this.token,
+			CompilerDaemon.COMPILE,
+			file.getAbsolutePath(),
+			outputDirectory.getAbsolutePath()
+		));
+	}
+
+	/**
+	 * Check if the daemon is alive
+	 *
+	 * @return Response of the daemon
+	 * @throws IOException If the connection fails
+	 */
+	public Response ping() throws IOException {
+		return this.request(this.token + "\t" + CompilerDaemon.PING);
+	}
+
+	/**
+	 * Ask the daemon to stop
+	 *
+	 * @return Response of the daemon
+	 * @throws IOException If the connection fails
+	 */
+	public Response shutdown() throws IOException {
+		return this.request(this.token + "\t" + CompilerDaemon.SHUTDOWN);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void close() throws IOException {
+		this.socket.close();
+	}
+
+	/**
+	 * Read the token of a daemon
+	 *
+	 * @param tokenFile Token file
+	 * @return Token
+	 * @throws IOException If the file cannot be read
+	 */
+	private static String readToken(File tokenFile) throws IOException {
+		try {
+			return new String(Files.readAllBytes(tokenFile.toPath()), StandardCharsets.UTF_8).trim();
+		} catch (NoSuchFileException exception) {
+			throw new IOException(String.format("No token file '%s', is the daemon running?", tokenFile));
+		}
+	}
+
+	/**
+	 * Send one request and read the response up to and including the status
+	 * line.
+	 *
+	 * @param request Request line
+	 * @return Response of the daemon
+	 * @throws IOException If the connection fails or the response is invalid
+	 */
+	private Response request(String request) throws IOException {
+		long start = System.nanoTime();
+		List<File> files = Lists.newArrayList();
+
+		this.out.println(request);
+		this.out.flush();
+
+		while (true) {
+			String line = this.in.readLine();
+
+			if (line == null) {
+				throw new IOException("Connection closed by daemon");
+			}
+
+			List<String> parts = Splitter.on('\t').limit(4).splitToList(line);
+
+			if (parts.get(0).equals(CompilerDaemon.FILE) && parts.size() == 2) {
+				files.add(new File(parts.get(1)));
+			} else if (parts.get(0).equals(CompilerDaemon.STATUS) && parts.size() == 4) {
+				try {
+					return new Response(
+						Integer.parseInt(parts.get(1)),
+						Long.parseLong(parts.get(2)),
+						(System.nanoTime() - start) / 1000L,
+						parts.get(3),
+						files
+					);
+				} catch (NumberFormatException exception) {
+					throw new IOException(String.format("Invalid status line '%s'", line));
+				}
+			} else {
+				throw new IOException(String.format("Invalid response line '%s'", line));
+			}
+		}
+	}
+
+	/**
+	 * Response to a single request
+	 */
+	public static class Response {
+		private final int exitCode;
+
+		/**
+		 * Time the daemon spent on the request, in microseconds
+		 */
+		private final long serverMicros;
+
+		/**
+		 * Time between sending the request and receiving the status, in
+		 * microseconds
+		 */
+		private final long roundTripMicros;
+
+		private final String message;
+
+		private final List<File> files;
+
+		private Response(int exitCode, long serverMicros, long roundTripMicros, String message, List<File> files) {
+			this.exitCode = exitCode;
+			this.serverMicros = serverMicros;
+			this.roundTripMicros = roundTripMicros;
+			this.message = message;
+			this.files = ImmutableList.copyOf(files);
+		}
+
+		public int getExitCode() {
+			return this.exitCode;
+		}
+
+		public long getServerMicros() {
+			return this.serverMicros;
+		}
+
+		public long getRoundTripMicros() {
+			return this.roundTripMicros;
+		}
+
+		public String getMessage() {
+			return this.message;
+		}
+
+		public List<File> getFiles() {
+			return this.files;
+		}
+	}
+}
@@ -0,0 +1,372 @@
+package vb.obama.driver;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import vb.obama.compiler.ObamaCompiler;
+
+import com.google.common.base.Splitter;
+import com.google.common.io.BaseEncoding;
+
+/**
+ * Long-lived compiler process. Listens on a loopback TCP port and compiles the
+ * files sent by a CompilerClient, so the JVM, the loaded classes and the JIT
+ * stay warm between compilations.
+ *
+ * Any local user can connect to a loopback port, so the daemon only serves
+ * clients that know a random token. It is created at startup and written to
+ * a token file that only the owner of the daemon can read, and removed when
+ * the daemon stops.
+ *
+ * The protocol is line based and tab separated. A client sends one of:
+ *
+ * <pre>
+ * &lt;token&gt; COMPILE &lt;input file&gt; &lt;output directory&gt;
+ * &lt;token&gt; PING
+ * &lt;token&gt; SHUTDOWN
+ * </pre>
+ *
+ * For every generated class the daemon answers with a FILE line, followed by
+ * a STATUS line with the exit code, the compile latency in microseconds and a
+ * message. A request with a wrong token is answered with a STATUS line, after
+ * which the connection is closed.
+ *
+ * @version 1.2
+ */
+public class CompilerDaemon {
+	/**
+	 * Default port to listen on
+	 */
+	public static final int DEFAULT_PORT = 7654;
+
+	/**
+	 * Request and response keywords
+	 */
+	public static final String COMPILE = "COMPILE";
+	public static final String PING = "PING";
+	public static final String SHUTDOWN = "SHUTDOWN";
+	public static final String FILE = "FILE";
+	public static final String STATUS = "STATUS";
+
+	/**
+	 * Number of random bytes in a token
+	 */
+	private static final int TOKEN_BYTES = 32;
+
+	/**
+	 * Permissions of the token file, where the file system supports them
+	 */
+	private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rw-------");
+
+	/**
+	 * Message logger
+	 */
+	private static final Logger logger = LogManager.getLogger(CompilerDaemon.class.getName());
+
+	/**
+	 * Port to listen on
+	 */
+	private final int port;
+
+	/**
+	 * File to write the token to
+	 */
+	private final File tokenFile;
+
+	/**
+	 * Token that clients must send, while running
+	 */
+	private volatile byte[] token;
+
+	/**
+	 * Compiler shared by all requests
+	 */
+	private final ObamaCompiler compiler;
+
+	/**
+	 * Threads that serve the client connections
+	 */
+	private final ExecutorService workers;
+
+	/**
+	 * Number of compile requests served so far
+	 */
+	private final AtomicLong requests = new AtomicLong();
+
+	/**
+	 * Listening socket, while running
+	 */
+	private volatile ServerSocket server;
+
+	/**
+	 * Construct a new daemon
+	 *
+	 * @param port Loopback port to listen on
+	 * @param jobs Number of connections served in parallel
+	 * @param tokenFile File to write the token to, which is replaced
+	 * @requires port >= 0 && jobs > 0 && tokenFile != null
+	 */
+	public CompilerDaemon(int port, int jobs, File tokenFile) {
+		this(port, jobs, tokenFile, new ObamaCompiler());
+	}
+
+	/**
+	 * Construct a new daemon with a configured compiler
+	 *
+	 * @param port Loopback port to listen on
+	 * @param jobs Number of connections served in parallel
+	 * @param tokenFile File to write the token to, which is replaced
+	 * @param compiler Compiler shared by all requests
+	 * @requires port >= 0 && jobs > 0 && tokenFile != null && compiler != null
+	 */
+	public CompilerDaemon(int port, int jobs, File tokenFile, ObamaCompiler compiler) {
+		checkArgument(port >= 0);
+		checkArgument(jobs > 0);
+
+		this.port = port;
+		this.tokenFile = checkNotNull(tokenFile);
+		this.compiler = checkNotNull(compiler);
+		this.workers = Executors.newFixedThreadPool(jobs);
+	}
+
+	/**
+	 * Return the default token file of a daemon, in the home directory of the
+	 * user
+	 *
+	 * @param port Port of the daemon
+	 * @return Token file
+	 */
+	public static File getTokenFile(int port) {
+		return new File(System.getProperty("user.home"), ".obama-daemon-" + port);
+	}
+
+	/**
+	 * Accept connections until a client requests a shutdown.
+	 *
+	 * @throws IOException If the port cannot be bound or the token file
+	 *         cannot be written
+	 */
+	public void run() throws IOException {
+		ServerSocket server = new ServerSocket(this.port, 50, InetAddress.getLoopbackAddress());
+
+		try {
+			this.token = this.writeToken();
+		} catch (IOException exception) {
+			server.close();
+			throw exception;
+		}
+
+		this.server = server;
+
+		logger.info(String.format("Compiler daemon listening on %s", this.server.getLocalSocketAddress()));
+
+		try {
+			while (!this.server.isClosed()) {
+				final Socket socket;
+
+				try {
+					socket = this.server.accept();
+				} catch (SocketException exception) {
+					// Closed by a shutdown request
+					break;
+				}
+
+				this.workers.execute(new Runnable() {
+					@Override
+					public void run() {
+						CompilerDaemon.this.serve(socket);
+					}
+				});
+			}
+		} finally {
+			this.workers.shutdown();
+			this.stop();
+			Files.deleteIfExists(this.tokenFile.toPath());
+		}
+
+		logger.info(String.format("Compiler daemon stopped after %d request(s)", this.requests.get()));
+	}
+
+	/**
+	 * Return the port the daemon is listening on, which differs from the
+	 * requested port when the daemon was started on port zero.
+	 *
+	 * @return Local port, or -1 if not running
+	 */
+	public int getLocalPort() {
+		ServerSocket server = this.server;
+		return server != null ? server.getLocalPort() : -1;
+	}
+
+	/**
+	 * Stop accepting new connections
+	 */
+	public void stop() {
+		ServerSocket server = this.server;
+
+		if (server != null) {
+			try {
+				server.close();
+			} catch (IOException exception) {
+				// Ignore
+			}
+		}
+	}
+
+	/**
+	 * Serve all requests of one client connection
+	 *
+	 * @param socket Client connection
+	 */
+	private void serve(Socket socket) {
+		try (
+			Socket client = socket;
+			BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+			PrintWriter out = new PrintWriter(new OutputStreamWriter(client.getOutputStream(), StandardCharsets.UTF_8))
+		) {
+			String line;
+
+			while ((line = in.readLine()) != null) {
+				List<String> request = Splitter.on('\t').splitToList(line);
+
+				if (!this.isAuthorized(request.get(0))) {
+					logger.warn("Rejected a request with a wrong token");
+					out.println(STATUS + "\t1\t0\tNot authorized");
+					out.flush();
+					return;
+				}
+
+				String command = request.size() > 1 ? request.get(1) : "";
+
+				if (command.equals(COMPILE) && request.size() == 4) {
+					this.compile(new File(request.get(2)), new File(request.get(3)), out);
+				} else if (command.equals(PING)) {
+					out.println(STATUS + "\t0\t0\tpong");
+				} else if (command.equals(SHUTDOWN)) {
+					out.println(STATUS + "\t0\t0\tshutting down");
+					out.flush();
+					this.stop();
+					return;
+				} else {
+					out.println(STATUS + "\t1\t0\tInvalid request");
+				}
+
+				out.flush();
+			}
+		} catch (IOException exception) {
+			logger.warn(String.format("Client connection failed: %s", exception.getMessage()));
+		}
+	}
+
+	/**
+	 * Check the token of a request, in constant time
+	 *
+	 * @param token Token sent by the client
+	 * @return True if it is the token of the daemon
+	 */
+	private boolean isAuthorized(String token) {
+		return MessageDigest.isEqual(this.token, token.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Create a random token and write it to the token file. The file is
+	 * created with owner-only permissions before the token is written, and
+	 * then moved into place.
+	 *
+	 * @return Token
+	 * @throws IOException If the file cannot be written
+	 */
+	private byte[] writeToken() throws IOException {
+		byte[] random = new byte[TOKEN_BYTES];
+		new SecureRandom().nextBytes(random);
+		byte[] result = BaseEncoding.base16().lowerCase().encode(random).getBytes(StandardCharsets.UTF_8);
+
+		Path file = this.tokenFile.getAbsoluteFile().toPath();
+		Path directory = file.getParent();
+		Path temp;
+
+		Files.createDirectories(directory);
+
+		if (directory.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+			temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp", PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+		} else {
+			temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+			File created = temp.toFile();
+			created.setReadable(false, false);
+			created.setWritable(false, false);
+			created.setReadable(true, true);
+			created.setWritable(true, true);
+		}
+
+		try {
+			Files.write(temp, result);
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(temp);
+		}
+
+		logger.debug(String.format("Wrote daemon token to '%s'", file));
+		return result;
+	}
+
+	/**
+	 * Compile one file and write the response
+	 *
+	 * @param file Input file
+	 * @param outputDirectory Directory for the generated classes
+	 * @param out Response stream
+	 */
+	private void compile(File file, File outputDirectory, PrintWriter out) {
+		long start = System.nanoTime();
+		CompileTask.Result result = new CompileTask(file, outputDirectory, null, this.compiler).call();
+		long elapsed = (System.nanoTime() - start) / 1000L;
+		long request = this.requests.incrementAndGet();
+
+		for (File generated : result.getFiles()) {
+			out.println(FILE + "\t" + generated.getAbsolutePath());
+		}
+
+		out.println(String.format(
+			"%s\t%d\t%d\t%s",
+			STATUS,
+			result.getExitCode(),
+			elapsed,
+			result.getMessage().replace('\n', ' ')
+		));
+
+		logger.info(String.format(
+			"Request #%d: compiled '%s' in %.3f ms (exit code %d)",
+			request,
+			file,
+			elapsed / 1000.0,
+			result.getExitCode()
+		));
+	}
+}
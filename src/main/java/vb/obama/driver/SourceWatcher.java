@@ -0,0 +1,232 @@
+package vb.obama.driver;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Watches a directory tree and recompiles the Obama sources that change. The
+ * compiler stays loaded between changes, so only the compilation itself is
+ * paid for.
+ *
+ * Editors often write a file in several steps. Events are therefore collected
+ * until none arrived for the debounce interval, and every touched file is
+ * compiled once.
+ *
+ * @version 1.0
+ */
+public class SourceWatcher {
+	/**
+	 * Default time without events before compiling, in milliseconds
+	 */
+	public static final long DEFAULT_DEBOUNCE = 100L;
+
+	/**
+	 * Message logger
+	 */
+	private static final Logger logger = LogManager.getLogger(SourceWatcher.class.getName());
+
+	/**
+	 * Root of the watched directory tree
+	 */
+	private final Path directory;
+
+	/**
+	 * Compiler for the touched files
+	 */
+	private final BatchCompiler compiler;
+
+	/**
+	 * State of incremental builds, saved after every compilation, or null
+	 */
+	private final BuildState state;
+
+	/**
+	 * Time without events before compiling, in milliseconds
+	 */
+	private final long debounce;
+
+	/**
+	 * Watched directories by their key
+	 */
+	private final Map<WatchKey, Path> keys = Maps.newHashMap();
+
+	/**
+	 * Watch service, while running
+	 */
+	private volatile WatchService service;
+
+	/**
+	 * Construct a new watcher
+	 *
+	 * @param directory Directory to watch, including subdirectories
+	 * @param compiler Compiler for the touched files
+	 * @param state State of incremental builds, or null
+	 * @param debounce Time without events before compiling, in milliseconds
+	 * @requires directory != null && compiler != null && debounce >= 0
+	 */
+	public SourceWatcher(File directory, BatchCompiler compiler, BuildState state, long debounce) {
+		checkArgument(debounce >= 0);
+
+		this.directory = checkNotNull(directory).toPath().toAbsolutePath();
+		this.compiler = checkNotNull(compiler);
+		this.state = state;
+		this.debounce = debounce;
+	}
+
+	/**
+	 * Compile all sources once, then recompile touched sources until the
+	 * watcher is stopped.
+	 *
+	 * @param out Stream to print the status of every compilation to
+	 * @throws IOException If the directory cannot be watched
+	 * @requires out != null
+	 */
+	public void run(PrintStream out) throws IOException {
+		checkNotNull(out);
+
+		this.service = FileSystems.getDefault().newWatchService();
+
+		try {
+			this.register(this.directory);
+			this.compile(BatchCompiler.walk(this.directory, null), out);
+
+			out.println(String.format("Watching '%s' for changes", this.directory));
+
+			while (true) {
+				Set<File> touched = Sets.newLinkedHashSet();
+
+				// Wait for the first event, then until the burst is over
+				WatchKey key = this.service.take();
+
+				while (key != null) {
+					this.collect(key, touched);
+					key = this.service.poll(this.debounce, TimeUnit.MILLISECONDS);
+				}
+
+				if (!touched.isEmpty()) {
+					this.compile(Lists.newArrayList(touched), out);
+				}
+			}
+		} catch (ClosedWatchServiceException exception) {
+			// Stopped
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+		} finally {
+			this.stop();
+		}
+	}
+
+	/**
+	 * Stop watching. A running compilation is finished first.
+	 */
+	public void stop() {
+		WatchService service = this.service;
+
+		if (service != null) {
+			try {
+				service.close();
+			} catch (IOException exception) {
+				logger.warn(String.format("Unable to close watch service: %s", exception.getMessage()));
+			}
+		}
+	}
+
+	/**
+	 * Add the touched sources of a key to a set, and watch new directories
+	 */
+	private void collect(WatchKey key, Set<File> touched) throws IOException {
+		Path parent = this.keys.get(key);
+
+		for (WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+				// Events were lost, so everything may have changed
+				logger.debug("Watch events lost, compiling all sources");
+				touched.addAll(BatchCompiler.walk(this.directory, null));
+				continue;
+			}
+
+			if (parent == null) {
+				continue;
+			}
+
+			Path path = parent.resolve((Path) event.context());
+
+			if (Files.isDirectory(path)) {
+				if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE) {
+					this.register(path);
+					touched.addAll(BatchCompiler.walk(path, null));
+				}
+			} else if (path.toString().endsWith(BatchCompiler.EXTENSION) && Files.isRegularFile(path)) {
+				touched.add(path.toFile());
+			}
+		}
+
+		if (!key.reset()) {
+			this.keys.remove(key);
+		}
+	}
+
+	/**
+	 * Watch a directory and all its subdirectories
+	 */
+	private void register(Path root) throws IOException {
+		Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+				WatchKey key = dir.register(
+					SourceWatcher.this.service,
+					StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_MODIFY
+				);
+
+				SourceWatcher.this.keys.put(key, dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/**
+	 * Compile files, print their status and save the build state
+	 */
+	private void compile(List<File> files, PrintStream out) {
+		if (files.isEmpty()) {
+			return;
+		}
+
+		BatchCompiler.report(this.compiler.compile(files), out);
+
+		if (this.state != null) {
+			try {
+				this.state.save();
+			} catch (IOException exception) {
+				logger.warn(String.format("Unable to write build state '%s': %s", this.state.getFile(), exception.getMessage()));
+			}
+		}
+	}
+}
@@ -22,6 +22,14 @@ public class CheckerException extends RecognitionException {
     	this.message = message;
     }
 	
+	public Tree getTree() {
+		return this.tree;
+	}
+	
+	public void setTree(Tree tree) {
+		this.tree = tree;
+	}
+	
 	public String toString() {
 		return this.message;
 	}
@@ -4,7 +4,7 @@ package vb.obama.util;
  * List of exit codes used in this program. Used to clarify the 
  * numbers.
  * 
- * @version 1.1
+ * @version 1.2
  */
 public final class ExitCodes {
 	// General purpose
@@ -21,4 +21,10 @@ public final class ExitCodes {
 	
 	// Codegen related
 	public static final int CODEGEN_FAILED = 4;
+	
+	// Batch related
+	public static final int BATCH_FAILED = 5;
+	
+	// Daemon related
+	public static final int DAEMON_FAILED = 6;
 }
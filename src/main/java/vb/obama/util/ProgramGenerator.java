@@ -0,0 +1,390 @@
+package vb.obama.util;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Generates valid Obama programs of configurable size, for scaling
+ * experiments. The same settings and seed always give the same program.
+ *
+ * Every generated method calls at most one method declared before it, every
+ * loop runs a bounded number of times and only prints outside of loops, so
+ * the programs also run in reasonable time.
+ *
+ * @version 1.0
+ */
+public class ProgramGenerator {
+	/**
+	 * Packages and classes to import, used in turn
+	 */
+	private static final List<String> IMPORTS = ImmutableList.of(
+		"java.util.*",
+		"java.io.*",
+		"java.util.ArrayList",
+		"java.math.*",
+		"java.net.*",
+		"java.util.HashMap",
+		"java.text.*",
+		"java.nio.*",
+		"java.util.concurrent.*",
+		"java.lang.reflect.*"
+	);
+
+	/**
+	 * Number of local variables of every method
+	 */
+	private static final int LOCALS = 4;
+
+	private int methods = 10;
+	private int classes = 0;
+	private int statements = 10;
+	private int depth = 2;
+	private int cases = 3;
+	private int expression = 3;
+	private int imports = 0;
+	private long seed = 0L;
+
+	/**
+	 * Random source of the current program
+	 */
+	private Random random;
+
+	/**
+	 * Output of the current program
+	 */
+	private StringBuilder out;
+
+	/**
+	 * Construct a generator from a specification like
+	 * 'methods=100,classes=5,depth=3'. Unspecified settings keep their
+	 * default value.
+	 *
+	 * @param specification Comma separated list of settings
+	 * @return Configured generator
+	 * @throws IllegalArgumentException If a setting is unknown or invalid
+	 */
+	public static ProgramGenerator parse(String specification) {
+		ProgramGenerator result = new ProgramGenerator();
+
+		if (Strings.isNullOrEmpty(specification)) {
+			return result;
+		}
+
+		Map<String, String> settings = Splitter.on(',').trimResults().omitEmptyStrings().withKeyValueSeparator('=').split(specification);
+
+		for (Map.Entry<String, String> setting : settings.entrySet()) {
+			long value;
+
+			try {
+				value = Long.parseLong(setting.getValue());
+			} catch (NumberFormatException exception) {
+				throw new IllegalArgumentException(String.format("Invalid value '%s' of setting '%s'", setting.getValue(), setting.getKey()));
+			}
+
+			switch (setting.getKey()) {
+				case "methods": result.setMethods((int) value); break;
+				case "classes": result.setClasses((int) value); break;
+				case "statements": result.setStatements((int) value); break;
+				case "depth": result.setDepth((int) value); break;
+				case "cases": result.setCases((int) value); break;
+				case "expression": result.setExpression((int) value); break;
+				case "imports": result.setImports((int) value); break;
+				case "seed": result.setSeed(value); break;
+				default:
+					throw new IllegalArgumentException(String.format("Unknown setting '%s'", setting.getKey()));
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Set the number of global methods, besides main
+	 * @requires methods >= 0
+	 */
+	public ProgramGenerator setMethods(int methods) {
+		checkArgument(methods >= 0, "methods must not be negative");
+		this.methods = methods;
+		return this;
+	}
+
+	/**
+	 * Set the number of classes, each with a public and a private method
+	 * @requires classes >= 0
+	 */
+	public ProgramGenerator setClasses(int classes) {
+		checkArgument(classes >= 0, "classes must not be negative");
+		this.classes = classes;
+		return this;
+	}
+
+	/**
+	 * Set the number of top level statements per method
+	 * @requires statements >= 1
+	 */
+	public ProgramGenerator setStatements(int statements) {
+		checkArgument(statements >= 1, "statements must be at least 1");
+		this.statements = statements;
+		return this;
+	}
+
+	/**
+	 * Set the maximum nesting depth of if, while, for and switch statements
+	 * @requires depth >= 0
+	 */
+	public ProgramGenerator setDepth(int depth) {
+		checkArgument(depth >= 0, "depth must not be negative");
+		this.depth = depth;
+		return this;
+	}
+
+	/**
+	 * Set the number of cases per switch statement, besides the default case
+	 * @requires cases >= 1
+	 */
+	public ProgramGenerator setCases(int cases) {
+		checkArgument(cases >= 1, "cases must be at least 1");
+		this.cases = cases;
+		return this;
+	}
+
+	/**
+	 * Set the number of operands per arithmetic expression
+	 * @requires expression >= 1
+	 */
+	public ProgramGenerator setExpression(int expression) {
+		checkArgument(expression >= 1, "expression must be at least 1");
+		this.expression = expression;
+		return this;
+	}
+
+	/**
+	 * Set the number of imports. Imports are taken from a fixed list of JDK
+	 * packages and classes, which repeats if more are requested.
+	 * @requires imports >= 0
+	 */
+	public ProgramGenerator setImports(int imports) {
+		checkArgument(imports >= 0, "imports must not be negative");
+		this.imports = imports;
+		return this;
+	}
+
+	/**
+	 * Set the seed of the random choices
+	 */
+	public ProgramGenerator setSeed(long seed) {
+		this.seed = seed;
+		return this;
+	}
+
+	/**
+	 * Generate a program
+	 * @return Source code
+	 */
+	public String generate() {
+		this.random = new Random(this.seed);
+		this.out = new StringBuilder();
+
+		for (int i = 0; i < this.imports; i++) {
+			this.line(0, "#import <%s>", IMPORTS.get(i % IMPORTS.size()));
+		}
+
+		if (this.imports > 0) {
+			this.line(0, "");
+		}
+
+		for (int i = 0; i < this.classes; i++) {
+			this.generateClass(i);
+		}
+
+		for (int i = 0; i < this.methods; i++) {
+			this.generateMethod(i);
+		}
+
+		this.generateMain();
+
+		String result = this.out.toString();
+		this.out = null;
+		this.random = null;
+
+		return result;
+	}
+
+	private void generateClass(int index) {
+		this.line(0, "class Generated%d {", index);
+
+		for (String accessor : new String[] { "+", "-" }) {
+			this.line(1, "%s(void)method%s {", accessor, accessor.equals("+") ? "Public" : "Private");
+			this.declareLocals(2);
+			this.generateStatements(2, this.statements, 0, true);
+			this.line(1, "}");
+		}
+
+		this.line(0, "}");
+		this.line(0, "");
+	}
+
+	private void generateMethod(int index) {
+		this.line(0, "(int)method%d:(int)a with:(int)b", index);
+		this.line(0, "{");
+		this.declareLocals(1);
+
+		if (index > 0) {
+			this.line(1, "%s = [global method%d:%s with:%s];", this.variable(), this.random.nextInt(index), this.operand(), this.operand());
+		}
+
+		this.generateStatements(1, this.statements, 0, true);
+		this.line(1, "return %s;", this.expression());
+		this.line(0, "}");
+		this.line(0, "");
+	}
+
+	private void generateMain() {
+		this.line(0, "(void)main:(String[])args");
+		this.line(0, "{");
+		this.line(1, "int total = 0;");
+
+		for (int i = 0; i < this.methods; i++) {
+			this.line(1, "total = total + [global method%d:%d with:%d];", i, i % 10, i % 3);
+		}
+
+		this.line(1, "[System.out println:total];");
+		this.line(0, "}");
+	}
+
+	/**
+	 * Declare the locals of a method: value variables and one loop counter
+	 * per nesting level. Methods of classes have no parameters, so a and b
+	 * are declared as well.
+	 */
+	private void declareLocals(int indent) {
+		if (indent > 1) {
+			this.line(indent, "int a = 1;");
+			this.line(indent, "int b = 2;");
+		}
+
+		for (int i = 0; i < LOCALS; i++) {
+			this.line(indent, "int v%d = %d;", i, i);
+		}
+
+		for (int i = 0; i < this.depth; i++) {
+			this.line(indent, "int i%d;", i);
+		}
+	}
+
+	/**
+	 * Generate a block of statements
+	 *
+	 * @param indent Indentation level
+	 * @param count Number of statements
+	 * @param level Current nesting level
+	 * @param force Start with a compound statement, so the maximum depth is
+	 * always reached
+	 */
+	private void generateStatements(int indent, int count, int level, boolean force) {
+		for (int i = 0; i < count; i++) {
+			boolean compound = level < this.depth && ((force && i == 0) || this.random.nextInt(4) == 0);
+
+			if (compound) {
+				this.generateCompound(indent, level);
+			} else {
+				this.generateSimple(indent, level);
+			}
+		}
+	}
+
+	private void generateSimple(int indent, int level) {
+		if (level == 0 && this.random.nextInt(3) == 0) {
+			this.line(indent, "[System.out println:%s];", this.expression());
+		} else {
+			this.line(indent, "%s = %s;", this.variable(), this.expression());
+		}
+	}
+
+	private void generateCompound(int indent, int level) {
+		String counter = "i" + level;
+
+		switch (this.random.nextInt(4)) {
+			case 0:
+				this.line(indent, "if (%s > %s && %s != %d) {", this.expression(), this.operand(), this.variable(), this.random.nextInt(10));
+				this.generateStatements(indent + 1, 2, level + 1, true);
+				this.line(indent, "} else if (%s < %s) {", this.variable(), this.operand());
+				this.generateStatements(indent + 1, 1, level + 1, false);
+				this.line(indent, "} else {");
+				this.generateStatements(indent + 1, 1, level + 1, false);
+				this.line(indent, "}");
+				break;
+			case 1:
+				this.line(indent, "%s = %d;", counter, 3 + this.random.nextInt(5));
+				this.line(indent, "while (%s > 0) {", counter);
+				this.line(indent + 1, "%s = %s - 1;", counter, counter);
+				this.generateStatements(indent + 1, 2, level + 1, true);
+				this.line(indent, "}");
+				break;
+			case 2:
+				this.line(indent, "for (%s = 0; %s < %d; %s = %s + 1) {", counter, counter, 3 + this.random.nextInt(5), counter, counter);
+				this.generateStatements(indent + 1, 2, level + 1, true);
+				this.line(indent, "}");
+				break;
+			default:
+				this.line(indent, "switch (%s) {", this.variable());
+
+				for (int i = 0; i < this.cases; i++) {
+					this.line(indent + 1, "case %d:", i);
+					this.line(indent + 2, "%s = %s;", this.variable(), this.expression());
+					this.line(indent + 2, "break;");
+				}
+
+				this.line(indent + 1, "default:");
+				this.generateStatements(indent + 2, 1, level + 1, true);
+				this.line(indent, "}");
+		}
+	}
+
+	/**
+	 * Generate an arithmetic expression of the configured length. Division is
+	 * left out, to prevent divisions by zero at run time.
+	 */
+	private String expression() {
+		StringBuilder result = new StringBuilder(this.operand());
+
+		for (int i = 1; i < this.expression; i++) {
+			result.append(" ").append("+-*".charAt(this.random.nextInt(3))).append(" ");
+
+			if (this.random.nextInt(4) == 0 && i + 1 < this.expression) {
+				result.append("(").append(this.operand()).append(" + ").append(this.operand()).append(")");
+				i++;
+			} else {
+				result.append(this.operand());
+			}
+		}
+
+		return result.toString();
+	}
+
+	private String operand() {
+		switch (this.random.nextInt(3)) {
+			case 0:
+				return String.valueOf(this.random.nextInt(100));
+			case 1:
+				return this.random.nextBoolean() ? "a" : "b";
+			default:
+				return this.variable();
+		}
+	}
+
+	private String variable() {
+		return "v" + this.random.nextInt(LOCALS);
+	}
+
+	private void line(int indent, String format, Object... arguments) {
+		this.out.append(Strings.repeat("    ", indent)).append(String.format(format, arguments)).append('\n');
+	}
+}
@@ -7,20 +7,53 @@ import java.util.Map;
 
 import org.objectweb.asm.Type;
 
+import vb.obama.compiler.ClassIndex;
 import vb.obama.compiler.Import;
 
 import com.google.common.base.Function;
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
 
 /**
  * Utility methods for reflecting the JVM, finding classes and and converting 
  * types.
  *  
- * @version 1.2
+ * @version 1.4
  */
 public class ReflectionUtils {
+	/**
+	 * Imports every type is resolved under, before those of the source
+	 */
+	private static final List<Import> DEFAULT_IMPORTS = ImmutableList.of(new Import("*"), new Import("java.lang.*"));
+	
+	/**
+	 * Primitives by identifier
+	 */
+	private static final Map<String, Class<?>> PRIMITIVES = ImmutableMap.<String, Class<?>>of(
+		"int", int.class,
+		"char", char.class,
+		"bool", boolean.class,
+		"void", void.class
+	);
+	
+	/**
+	 * JVM identifiers of primitives
+	 */
+	private static final Map<Class<?>, String> INTERNAL_NAMES = ImmutableMap.<Class<?>, String>builder()
+		.put(boolean.class, "Z")
+		.put(byte.class, "B")
+		.put(char.class, "C")
+		.put(double.class, "D")
+		.put(float.class, "F")
+		.put(int.class, "I")
+		.put(long.class, "J")
+		.put(short.class, "S")
+		.put(void.class, "V")
+		.build();
+	
 	/**
 	 * Search for a given identifier. Constructs primitives and classes. The
 	 * syntax for an array is ClassName+++, where the number of plus signs
@@ -35,6 +68,28 @@ public class ReflectionUtils {
 	 */
 	public static Class<?> findType(String identifier, List<Import> imports)
 			throws IllegalArgumentException, ClassNotFoundException {
+		return findType(identifier, imports, null);
+	}
+	
+	/**
+	 * Search for a given identifier, like findType, but skip the imports
+	 * under which an index rules out the class. The index is only used with
+	 * the system class loader.
+	 * 
+	 * @param identifier Name of the class to load
+	 * @param imports List of extra imports
+	 * @param index Classes of the class path, or null
+	 * @return Class
+	 * @throws IllegalArgumentException In case of a void array
+	 * @throws ClassNotFoundException In case the class cannot be found
+	 */
+	public static Class<?> findType(String identifier, List<Import> imports, ClassIndex index)
+			throws IllegalArgumentException, ClassNotFoundException {
+		ClassLoader loader = Thread.currentThread().getContextClassLoader();
+		
+		if (loader != ClassLoader.getSystemClassLoader()) {
+			index = null;
+		}
 
 		int dimension = identifier.indexOf('+');
 		
@@ -62,12 +117,7 @@ public class ReflectionUtils {
 		}
 		
 		// Search for class, or create an array from a primitive
-		List<Import> scopes = Lists.newArrayList();
-		scopes.add(new Import("*"));
-		scopes.add(new Import("java.lang.*"));
-		scopes.addAll(imports);
-		
-		for (Import imp : scopes) {
+		for (Import imp : Iterables.concat(DEFAULT_IMPORTS, imports)) {
 			String needle = null;
 			
 			// Find package
@@ -77,6 +127,10 @@ public class ReflectionUtils {
 				needle = imp.getPackage();
 			}
 			
+			if (needle != null && index != null && primitive == null && !index.mayContain(needle)) {
+				continue;
+			}
+			
 			if (needle != null) {
 				// Build array notation if required
 				if (dimension > 0) {
@@ -85,7 +139,7 @@ public class ReflectionUtils {
 				}
 			
 				try {
-					return Class.forName(needle, false, Thread.currentThread().getContextClassLoader());
+					return Class.forName(needle, false, loader);
 				} catch (ClassNotFoundException exception) {
 					// Ignore
 				}
@@ -104,14 +158,7 @@ public class ReflectionUtils {
 	 * @return Class of primitive, or null.
 	 */
 	public static Class<?> identifierToPrimitive(String identifier) {
-		Map<String, Class<?>> haystack = Maps.newHashMap();
-		
-		haystack.put("int", int.class);
-		haystack.put("char", char.class);
-		haystack.put("bool", boolean.class);
-		haystack.put("void", void.class);
-		
-		return haystack.get(identifier);
+		return PRIMITIVES.get(identifier);
 	}
 	
 	/**
@@ -121,19 +168,7 @@ public class ReflectionUtils {
 	 * @return Internal representation of class, or null
 	 */
 	public static String primitiveToInternalName(Class<?> primitive) {
-		Map<Class<?>, String> mapping = Maps.newHashMap();
-
-		mapping.put(boolean.class, "Z");
-		mapping.put(byte.class, "B");
-		mapping.put(char.class, "C");
-		mapping.put(double.class, "D");
-		mapping.put(float.class, "F");
-		mapping.put(int.class, "I");
-		mapping.put(long.class, "J");
-		mapping.put(short.class, "S");
-		mapping.put(void.class, "V");
-		
-		return mapping.get(primitive);
+		return INTERNAL_NAMES.get(primitive);
 	}
 	
 	/**
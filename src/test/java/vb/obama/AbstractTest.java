@@ -2,23 +2,32 @@ package vb.obama;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
+import java.util.Map;
 
+import com.google.common.collect.Lists;
 import org.antlr.runtime.*;
-import org.antlr.runtime.tree.CommonTreeNodeStream;
+import org.antlr.runtime.tree.Tree;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.junit.rules.TemporaryFolder;
-import vb.obama.antlr.ObamaChecker;
-import vb.obama.antlr.ObamaCodegen;
 import vb.obama.antlr.ObamaLexer;
 import vb.obama.antlr.ObamaParser;
+import vb.obama.antlr.stream.StreamingTokenStream;
 import vb.obama.antlr.tree.TypedNode;
 import vb.obama.antlr.tree.TypedNodeAdapter;
+import vb.obama.compiler.CheckerVisitor;
+import vb.obama.compiler.CodegenVisitor;
+import vb.obama.compiler.CompilationResult;
 import vb.obama.compiler.SymbolTable;
+import vb.obama.exceptions.CheckerException;
 import vb.obama.util.DebugAppender;
 import vb.obama.util.LoggerSetup;
 import vb.obama.util.ProcessRunner;
 
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
 import org.junit.After;
 import org.junit.Before;
 
@@ -26,7 +35,7 @@ import org.junit.Before;
  * Abstract class for the tests of the code samples. Contains a helper methods
  * which allows us to easily execute a test.
  * 
- * @version 1.0
+ * @version 1.3
  */
 abstract class AbstractTest {
 	
@@ -49,8 +58,6 @@ abstract class AbstractTest {
 	 * Debug the parser if true.
 	 */
 	protected boolean debugParser = false;
-	protected boolean debugChecker = false;
-	protected boolean debugCodegen = false;
 	
 	public AbstractTest() {
 		appender.start();
@@ -97,7 +104,7 @@ abstract class AbstractTest {
 
 			// Lexer
 			ObamaLexer lexer = new ObamaLexer(new ANTLRInputStream(this.getClass().getResourceAsStream(file)));
-			CommonTokenStream tokens = new CommonTokenStream(lexer);
+			StreamingTokenStream tokens = new StreamingTokenStream(lexer);
 
 			// Parser
 			ObamaParser parser = this.debugParser ? new ObamaParser(tokens) : new ObamaParser(tokens);
@@ -109,19 +116,13 @@ abstract class AbstractTest {
 
 			// Checker
 			if (doChecker) {
-				CommonTreeNodeStream nodes = new CommonTreeNodeStream(tree);
-				ObamaChecker checker = this.debugChecker ? new ObamaChecker(nodes) : new ObamaChecker(nodes);
-				checker.setSymbolTable(table);
-				checker.setInputFile(file);
-				checker.setTreeAdaptor(new TypedNodeAdapter());
-				checker.program();
+				CheckerVisitor checker = new CheckerVisitor(table, file);
+				checker.program(tree);
 
 				// Codegen
 				if (doCodegen) {
-					CommonTreeNodeStream codegenNodes = new CommonTreeNodeStream(tree);
-					ObamaCodegen codegen = this.debugCodegen ? new ObamaCodegen(codegenNodes) : new ObamaCodegen(codegenNodes);
-					codegen.setTreeAdaptor(new TypedNodeAdapter());
-					codegen.program();
+					CodegenVisitor codegen = new CodegenVisitor();
+					codegen.program(tree);
 
 					// Generate code
 					codegen.getHelper().toClasses(path);
@@ -166,4 +167,75 @@ abstract class AbstractTest {
 		String[] arguments = {"java", className};
 		return ProcessRunner.runProcess(arguments, this.tempFolder.getRoot());
 	}
+
+	/**
+	 * Parse a program from a string, without checking it.
+	 *
+	 * @param program Source of the program
+	 * @return Parse tree
+	 * @throws RecognitionException
+	 */
+	protected static TypedNode parse(String program) throws RecognitionException {
+		ObamaParser parser = new ObamaParser(new CommonTokenStream(new ObamaLexer(new ANTLRStringStream(program))));
+		parser.setTreeAdaptor(new TypedNodeAdapter());
+
+		return (TypedNode) parser.program().getTree();
+	}
+
+	/**
+	 * Describe a failure with the node it names
+	 */
+	protected static String describe(CheckerException exception) {
+		Tree tree = exception.getTree();
+
+		if (tree == null) {
+			return exception.toString();
+		}
+
+		return String.format("%s at %s %d:%d", exception, tree.getText(), tree.getLine(), tree.getCharPositionInLine());
+	}
+
+	/**
+	 * Describe the annotations of all nodes, in preorder
+	 */
+	protected static List<String> annotations(TypedNode tree) {
+		List<String> result = Lists.newArrayList();
+		AbstractTest.annotations(tree, result);
+
+		return result;
+	}
+
+	private static void annotations(TypedNode node, List<String> result) {
+		result.add(String.format(
+			"%s %s %s %s",
+			node.getText(),
+			node.getNodeType(),
+			node.getReturnType(),
+			node.getInfo() != null ? node.getInfo().getClass().getSimpleName() : null
+		));
+
+		for (int i = 0; i < node.getChildCount(); i++) {
+			AbstractTest.annotations((TypedNode) node.getChild(i), result);
+		}
+	}
+
+	/**
+	 * Assert that two compilations report the same diagnostics and generate
+	 * byte for byte the same classes.
+	 */
+	protected static void assertSameClasses(CompilationResult expected, CompilationResult actual) {
+		assertEquals(expected.getDiagnostics().toString(), actual.getDiagnostics().toString());
+		AbstractTest.assertSameClasses(expected.getClasses(), actual.getClasses());
+	}
+
+	/**
+	 * Assert that two sets of generated classes are byte for byte the same.
+	 */
+	protected static void assertSameClasses(Map<String, byte[]> expected, Map<String, byte[]> actual) {
+		assertEquals(expected.keySet(), actual.keySet());
+
+		for (String name : expected.keySet()) {
+			assertArrayEquals(name, expected.get(name), actual.get(name));
+		}
+	}
 }
@@ -0,0 +1,246 @@
+package vb.obama;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.junit.Test;
+
+import vb.obama.compiler.ObamaCompiler;
+import vb.obama.compiler.TreeCache;
+import vb.obama.driver.BatchCompiler;
+import vb.obama.driver.BuildState;
+import vb.obama.driver.CompileTask;
+import vb.obama.util.ExitCodes;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Tests the batch compilation of multiple files in one JVM.
+ * 
+ * @version 1.5
+ * @see vb.obama.driver.BatchCompiler
+ */
+public class BatchTest extends AbstractTest {
+	/**
+	 * Return the directory of a test resource folder
+	 */
+	private File resourceDirectory(String name) throws URISyntaxException {
+		return new File(this.getClass().getResource(name).toURI());
+	}
+	
+	/**
+	 * Write a source file below the temporary folder
+	 */
+	private File write(String path, String content) throws IOException {
+		File result = new File(this.tempFolder.getRoot(), path);
+		result.getParentFile().mkdirs();
+		Files.write(result.toPath(), content.getBytes(StandardCharsets.UTF_8));
+		
+		return result;
+	}
+	
+	@Test
+	public void testExpandDirectory() throws IOException, URISyntaxException {
+		File directory = this.resourceDirectory("codegen");
+		List<File> files = BatchCompiler.expand(Lists.newArrayList(directory.getPath()));
+		
+		assertEquals(directory.list().length, files.size());
+	}
+	
+	@Test
+	public void testExpandGlob() throws IOException, URISyntaxException {
+		File directory = this.resourceDirectory("codegen");
+		List<File> files = BatchCompiler.expand(Lists.newArrayList(directory.getPath() + "/Single*.obama"));
+		
+		assertEquals(1, files.size());
+		assertEquals("SingleVar.obama", files.get(0).getName());
+	}
+	
+	@Test
+	public void testCompileDirectory() throws IOException, URISyntaxException {
+		File directory = this.resourceDirectory("codegen");
+		List<File> files = BatchCompiler.expand(Lists.newArrayList(directory.getPath()));
+		BatchCompiler compiler = new BatchCompiler(this.tempFolder.getRoot(), 4);
+		
+		for (CompileTask.Result result : compiler.compile(files)) {
+			assertTrue(result.getMessage(), result.isSuccess());
+			assertFalse(result.getFiles().isEmpty());
+		}
+		
+		assertTrue(new File(this.tempFolder.getRoot(), "HelloWorld.class").isFile());
+	}
+	
+	@Test
+	public void testCompilerOptions() throws IOException, URISyntaxException {
+		File cache = this.tempFolder.newFolder("cache");
+		File output = this.tempFolder.newFolder("output");
+		List<File> files = BatchCompiler.expand(Lists.newArrayList(this.resourceDirectory("codegen").getPath()));
+		ObamaCompiler compiler = new ObamaCompiler(new ObamaCompiler.Options().setCache(new TreeCache(cache)));
+		
+		for (CompileTask.Result result : new BatchCompiler(output, 2, null, compiler).compile(files)) {
+			assertTrue(result.getMessage(), result.isSuccess());
+		}
+		
+		// Every file went through the configured compiler
+		assertEquals(files.size(), cache.list().length);
+	}
+	
+	@Test
+	public void testCompileFailuresAreIsolated() throws IOException, URISyntaxException {
+		File directory = this.resourceDirectory("checker");
+		List<File> files = Lists.newArrayList(
+			new File(directory, "AssignmentIncorrect.obama"),
+			new File(directory, "Missing.obama"),
+			new File(this.resourceDirectory("codegen"), "HelloWorld.obama")
+		);
+		
+		List<CompileTask.Result> results = new BatchCompiler(this.tempFolder.getRoot(), 2).compile(files);
+		
+		assertEquals(ExitCodes.CHECKER_FAILED, results.get(0).getExitCode());
+		assertEquals(ExitCodes.NO_INPUT_FILE, results.get(1).getExitCode());
+		assertEquals(ExitCodes.SUCCESS, results.get(2).getExitCode());
+	}
+	
+	@Test
+	public void testClashingClasses() throws IOException {
+		String main = "(void)main:(String[])args { [System.out println:@\"Hi\"]; }";
+		String point = "class Point { +(int)x { return 1; } }\n";
+		File output = this.tempFolder.newFolder("output");
+		List<File> files = Lists.newArrayList(
+			this.write("a/Main.obama", main),
+			this.write("b/Main.obama", main),
+			this.write("Line.obama", point + main),
+			this.write("Shape.obama", "/* class Square */\n" + point + main),
+			this.write("Square.obama", main)
+		);
+		
+		List<CompileTask.Result> results = new BatchCompiler(output, 2).compile(files);
+		
+		// Neither file of a clash writes its classes
+		assertEquals(ExitCodes.CHECKER_FAILED, results.get(0).getExitCode());
+		assertEquals("Class 'Main' is also declared by " + files.get(1).getPath(), results.get(0).getMessage());
+		assertEquals(ExitCodes.CHECKER_FAILED, results.get(1).getExitCode());
+		assertEquals("Class 'Point' is also declared by " + files.get(3).getPath(), results.get(2).getMessage());
+		assertEquals(ExitCodes.CHECKER_FAILED, results.get(3).getExitCode());
+		assertFalse(new File(output, "Main.class").exists());
+		assertFalse(new File(output, "Point.class").exists());
+		
+		// Comments do not declare classes
+		assertTrue(results.get(4).getMessage(), results.get(4).isSuccess());
+	}
+	
+	@Test
+	public void testIncrementalMovedClass() throws IOException {
+		String main = "(void)main:(String[])args { [System.out println:@\"Hi\"]; }";
+		String point = "class Point { +(int)x { return 1; } }\n";
+		File output = this.tempFolder.newFolder("output");
+		BuildState state = BuildState.load(new File(output, BuildState.FILE_NAME));
+		File a = this.write("A.obama", point + main);
+		File b = this.write("B.obama", main);
+		
+		assertTrue(new CompileTask(a, output, state).call().isSuccess());
+		assertTrue(new CompileTask(b, output, state).call().isSuccess());
+		
+		// Point moves from A to B, and B is compiled first
+		this.write("A.obama", main);
+		this.write("B.obama", point + main);
+		
+		assertTrue(new CompileTask(b, output, state).call().isSuccess());
+		assertTrue(new CompileTask(a, output, state).call().isSuccess());
+		assertTrue(new File(output, "Point.class").isFile());
+	}
+	
+	@Test
+	public void testIncremental() throws IOException, URISyntaxException {
+		File sources = this.tempFolder.newFolder("sources");
+		File output = this.tempFolder.newFolder("output");
+		File stateFile = new File(output, BuildState.FILE_NAME);
+		
+		for (String name : Lists.newArrayList("HelloWorld.obama", "SingleVar.obama")) {
+			File source = new File(this.resourceDirectory("codegen"), name);
+			Files.copy(source.toPath(), new File(sources, name).toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		
+		List<File> files = BatchCompiler.expand(Lists.newArrayList(sources.getPath()));
+		
+		// First build compiles everything
+		BuildState state = BuildState.load(stateFile);
+		for (CompileTask.Result result : new BatchCompiler(output, 2, state).compile(files)) {
+			assertTrue(result.getMessage(), result.isSuccess());
+			assertFalse(result.isUpToDate());
+		}
+		state.save();
+		
+		// Second build compiles nothing
+		state = BuildState.load(stateFile);
+		for (CompileTask.Result result : new BatchCompiler(output, 2, state).compile(files)) {
+			assertTrue(result.isUpToDate());
+			assertFalse(result.getFiles().isEmpty());
+		}
+		
+		// Changing a source only recompiles that source
+		Files.write(new File(sources, "SingleVar.obama").toPath(), "\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+		List<CompileTask.Result> results = new BatchCompiler(output, 2, state).compile(files);
+		
+		assertTrue(results.get(0).isUpToDate());
+		assertTrue(results.get(1).isSuccess());
+		assertFalse(results.get(1).isUpToDate());
+		
+		// Deleting an output makes its source stale
+		assertTrue(new File(output, "HelloWorld.class").delete());
+		results = new BatchCompiler(output, 2, state).compile(files);
+		
+		assertFalse(results.get(0).isUpToDate());
+		assertTrue(new File(output, "HelloWorld.class").isFile());
+		
+		// Another output directory gets its own classes
+		File other = this.tempFolder.newFolder("other");
+		results = new BatchCompiler(other, 2, state).compile(files);
+		
+		assertFalse(results.get(0).isUpToDate());
+		assertTrue(new File(other, "HelloWorld.class").isFile());
+		assertTrue(new File(output, "HelloWorld.class").isFile());
+	}
+	
+	@Test
+	public void testIncrementalImports() throws IOException {
+		File library = this.tempFolder.newFolder("library");
+		File utils = new File(library, "utils");
+		File output = this.tempFolder.newFolder("output");
+		File source = this.tempFolder.newFile("Imports.obama");
+		ClassLoader previous = Thread.currentThread().getContextClassLoader();
+		
+		assertTrue(utils.mkdir());
+		Files.write(source.toPath(), "#import <utils.*>\n(void)main:(String[])args { [System.out println:@\"Hi\"]; }\n".getBytes(StandardCharsets.UTF_8));
+		
+		try (URLClassLoader loader = new URLClassLoader(new URL[] { library.toURI().toURL() }, previous)) {
+			Thread.currentThread().setContextClassLoader(loader);
+			
+			BuildState state = new BuildState(new File(output, BuildState.FILE_NAME));
+			assertTrue(new CompileTask(source, output, state).call().isSuccess());
+			assertTrue(new CompileTask(source, output, state).call().isUpToDate());
+			state.save();
+			
+			// A class added to an imported package may shadow a type
+			assertTrue(new File(utils, "String.class").createNewFile());
+			assertTrue(utils.setLastModified(utils.lastModified() + 10000L));
+			
+			state = BuildState.load(new File(output, BuildState.FILE_NAME));
+			assertFalse(new CompileTask(source, output, state).call().isUpToDate());
+		} finally {
+			Thread.currentThread().setContextClassLoader(previous);
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package vb.obama;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.antlr.runtime.ANTLRStringStream;
+import org.antlr.runtime.CharStream;
+import org.antlr.runtime.CommonTokenStream;
+import org.antlr.runtime.Token;
+import org.junit.Test;
+
+import vb.obama.antlr.ObamaLexer;
+import vb.obama.antlr.stream.ByteBufferCharStream;
+import vb.obama.compiler.CompilationResult;
+import vb.obama.compiler.ObamaCompiler;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Tests that the byte buffer stream gives the same tokens as a string stream.
+ *
+ * @version 1.0
+ * @see vb.obama.antlr.stream.ByteBufferCharStream
+ */
+public class CharStreamTest extends AbstractTest {
+	private static final String UNICODE = "(void)main:(String[])args {\n\t[System.out println:@\"héllo € 😀\"];\n\tchar c = 'x';\n}\n";
+
+	@Test
+	public void testResources() throws IOException {
+		int count = 0;
+
+		for (String folder : new String[] { "parser", "checker", "codegen", "requirements" }) {
+			File[] files = new File(this.getClass().getResource(folder).getFile()).listFiles();
+
+			for (File file : files) {
+				if (file.getName().endsWith(".obama")) {
+					String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+
+					assertTokens(file.getName(), new ANTLRStringStream(content), new ByteBufferCharStream(ByteBufferCharStream.map(file), file.getName()));
+					count++;
+				}
+			}
+		}
+
+		assertTrue(count > 0);
+	}
+
+	@Test
+	public void testUnicode() {
+		ByteBuffer buffer = ByteBuffer.wrap(UNICODE.getBytes(StandardCharsets.UTF_8));
+
+		assertTokens("unicode", new ANTLRStringStream(UNICODE), new ByteBufferCharStream(buffer, null));
+		assertEquals(0, buffer.position());
+	}
+
+	@Test
+	public void testLookBehind() {
+		CharStream stream = new ByteBufferCharStream(ByteBuffer.wrap("aé€😀b".getBytes(StandardCharsets.UTF_8)), null);
+		String expected = "aé€😀b";
+
+		for (int i = 0; i < expected.length(); i++) {
+			assertEquals(expected.charAt(i), stream.LA(1));
+			stream.consume();
+		}
+
+		assertEquals(CharStream.EOF, stream.LA(1));
+
+		for (int i = 1; i <= expected.length(); i++) {
+			assertEquals(expected.charAt(expected.length() - i), stream.LA(-i));
+		}
+
+		assertEquals(CharStream.EOF, stream.LA(-expected.length() - 1));
+	}
+
+	@Test
+	public void testMappedFile() throws IOException {
+		File file = this.tempFolder.newFile("Hello.obama");
+		Files.write(file.toPath(), UNICODE.getBytes(StandardCharsets.UTF_8));
+
+		CompilationResult result = new ObamaCompiler().compile(file);
+
+		assertTrue(result.getDiagnostics().toString(), result.isSuccess());
+		assertTrue(result.getClasses().containsKey("Hello"));
+	}
+
+	/**
+	 * Assert that two streams give the same tokens, with the same text and
+	 * positions
+	 */
+	private static void assertTokens(String name, CharStream expected, CharStream actual) {
+		List<Token> expectedTokens = CharStreamTest.tokens(expected);
+		List<Token> actualTokens = CharStreamTest.tokens(actual);
+
+		assertEquals(name, expectedTokens.size(), actualTokens.size());
+
+		for (int i = 0; i < expectedTokens.size(); i++) {
+			Token a = expectedTokens.get(i);
+			Token b = actualTokens.get(i);
+
+			assertEquals(name, a.getType(), b.getType());
+			assertEquals(name, a.getText(), b.getText());
+			assertEquals(name, a.getLine(), b.getLine());
+			assertEquals(name, a.getCharPositionInLine(), b.getCharPositionInLine());
+		}
+	}
+
+	private static List<Token> tokens(CharStream stream) {
+		CommonTokenStream tokens = new CommonTokenStream(new ObamaLexer(stream));
+		tokens.fill();
+
+		return Lists.<Token>newArrayList(tokens.getTokens());
+	}
+}
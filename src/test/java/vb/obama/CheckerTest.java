@@ -1,19 +1,23 @@
 package vb.obama;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 
 import org.antlr.runtime.RecognitionException;
 import org.junit.Test;
 
+import vb.obama.antlr.tree.TypedNode;
+import vb.obama.compiler.CheckerVisitor;
+import vb.obama.compiler.SymbolTable;
 import vb.obama.exceptions.CheckerException;
 
 /**
- * Tests ObamaChecker.g
+ * Tests the checker pass
  * 
- * @version 1.0
- * @see vb/obama/antlr/ObamaChecker.g
+ * @version 1.1
+ * @see vb.obama.compiler.CheckerVisitor
  */
 public class CheckerTest extends AbstractTest {
 	/*
@@ -323,4 +327,17 @@ public class CheckerTest extends AbstractTest {
 	public void testBuiltInPrintIncorrect() throws RecognitionException, IOException {
 		assertEquals(0, this.executeFileChecker("checker/BuiltInPrintIncorrect.obama"));
 	}
+	
+	/*
+	 * Malformed trees
+	 */
+	@Test
+	public void testTreeErrors() throws RecognitionException {
+		// Initializers of globals end up next to their declaration
+		TypedNode tree = AbstractTest.parse("int a = 1;\n(void)main { }");
+		CheckerVisitor checker = new CheckerVisitor(new SymbolTable(), "Test.obama");
+		checker.program(tree);
+		
+		assertTrue(checker.getNumberOfErrors() > 0);
+	}
 }
@@ -0,0 +1,94 @@
+package vb.obama;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import vb.obama.compiler.ClassIndex;
+import vb.obama.compiler.Import;
+import vb.obama.compiler.TypeCache;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Tests the index of classes on the class path.
+ *
+ * @version 1.0
+ * @see vb.obama.compiler.ClassIndex
+ */
+public class ClassIndexTest extends AbstractTest {
+	private static final List<Import> IMPORTS = ImmutableList.of(new Import("java.util.*"), new Import("java.io.*"), new Import("com.google.common.collect.*"), new Import("java.util.regex.Pattern"));
+
+	private static final List<String> NAMES = ImmutableList.of("String", "List", "File", "Pattern", "Lists", "Obama", "vb.obama.Obama", "Map$Entry", "int+", "Missing", "a", "Integer++");
+
+	private static ClassIndex index;
+
+	@BeforeClass
+	public static void buildIndex() throws IOException {
+		ClassIndexTest.index = ClassIndex.build();
+	}
+
+	@Test
+	public void testContains() {
+		assertTrue(index.mayContain("java.util.ArrayList"));
+		assertTrue(index.mayContain("java.util.Map$Entry"));
+		assertFalse(index.mayContain("java.util.Missing"));
+		assertFalse(index.mayContain("java.lang.a"));
+
+		// Packages that are not indexed are never ruled out
+		assertFalse(index.containsPackage("no.such.pkg"));
+		assertTrue(index.mayContain("no.such.pkg.Missing"));
+	}
+
+	@Test
+	public void testClassPath() {
+		// Directories and jars, also those of manifest-only jars
+		assertTrue(index.containsPackage("vb.obama"));
+		assertTrue(index.mayContain("vb.obama.Obama"));
+		assertTrue(index.mayContain("com.google.common.collect.Lists"));
+		assertTrue(index.size() > 10000);
+	}
+
+	@Test
+	public void testResolve() {
+		TypeCache plain = new TypeCache(100);
+		TypeCache indexed = new TypeCache(100, index);
+
+		for (String name : NAMES) {
+			TypeCache.Resolution expected = plain.resolve(name, IMPORTS);
+			TypeCache.Resolution actual = indexed.resolve(name, IMPORTS);
+
+			assertEquals(name, expected.getType(), actual.getType());
+			assertEquals(name, expected.getError(), actual.getError());
+		}
+	}
+
+	@Test
+	public void testOpen() throws IOException {
+		File file = new File(this.tempFolder.getRoot(), "classes.idx");
+		ClassIndex built = ClassIndex.open(file);
+
+		assertFalse(built.isLoaded());
+		assertTrue(file.isFile());
+
+		ClassIndex loaded = ClassIndex.open(file);
+
+		assertTrue(loaded.isLoaded());
+		assertEquals(built.size(), loaded.size());
+		assertEquals(index.size(), loaded.size());
+
+		// A damaged index is built again
+		Files.write(file.toPath(), new byte[] { 1, 2, 3 });
+
+		assertFalse(ClassIndex.open(file).isLoaded());
+		assertTrue(ClassIndex.open(file).isLoaded());
+	}
+}
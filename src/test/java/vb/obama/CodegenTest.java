@@ -8,10 +8,10 @@ import org.antlr.runtime.RecognitionException;
 import org.junit.Test;
 
 /**
- * Tests ObamaCodegen.g
+ * Tests the codegen pass
  * 
- * @version 1.0
- * @see vb/obama/antlr/ObamaCodegen.g
+ * @version 1.1
+ * @see vb.obama.compiler.CodegenVisitor
  */
 public class CodegenTest extends AbstractTest {
 	/**
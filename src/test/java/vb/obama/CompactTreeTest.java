@@ -0,0 +1,112 @@
+package vb.obama;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.antlr.runtime.RecognitionException;
+import org.antlr.runtime.tree.Tree;
+import org.junit.Test;
+
+import vb.obama.antlr.tree.CompactNode;
+import vb.obama.antlr.tree.CompactTree;
+import vb.obama.antlr.tree.NodeType;
+import vb.obama.antlr.tree.TypedNode;
+import vb.obama.compiler.CompilationResult;
+import vb.obama.compiler.ObamaCompiler;
+import vb.obama.util.ProgramGenerator;
+
+import com.google.common.io.Files;
+
+/**
+ * Tests checking and generating code from a compact tree.
+ *
+ * @version 1.1
+ * @see vb.obama.antlr.tree.CompactTree
+ */
+public class CompactTreeTest extends AbstractTest {
+	@Test
+	public void testCopy() throws RecognitionException {
+		TypedNode tree = AbstractTest.parse("(void)main:(String[])args {\n  int a = 1;\n  [System.out println:a];\n}");
+		CompactTree compact = CompactTree.copyOf(tree);
+		CompactNode root = compact.getRoot();
+
+		assertEquals(tree.toStringTree(), root.toStringTree());
+		CompactTreeTest.assertSameTree(tree, root);
+
+		// Links
+		Tree method = root.getChild(0);
+		Tree scope = method.getChild(method.getChildCount() - 1);
+
+		assertEquals(root, method.getParent());
+		assertEquals(method, scope.getParent());
+		assertEquals(method.getChildCount() - 1, scope.getChildIndex());
+		assertNull(root.getParent());
+		assertNull(root.getChild(root.getChildCount()));
+	}
+
+	@Test
+	public void testAnnotations() throws RecognitionException {
+		CompactTree compact = CompactTree.copyOf(AbstractTest.parse("(void)main { }"));
+		TypedNode node = (TypedNode) compact.getRoot().getChild(0);
+
+		node.setNodeType(NodeType.METHOD);
+		node.setReturnType(String.class);
+
+		// Views keep no state
+		TypedNode other = compact.getNode(((CompactNode) node).getIndex());
+
+		assertEquals(NodeType.METHOD, other.getNodeType());
+		assertSame(String.class, other.getReturnType());
+		assertNull(other.getInfo());
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testReadOnly() throws RecognitionException {
+		CompactTree compact = CompactTree.copyOf(AbstractTest.parse("(void)main { }"));
+		compact.getRoot().addChild(compact.getNode(1));
+	}
+
+	@Test
+	public void testSameClasses() {
+		String program = new ProgramGenerator().setMethods(100).setClasses(5).setDepth(3).generate();
+		CompactTreeTest.assertSameClasses(program);
+	}
+
+	@Test
+	public void testRequirements() throws IOException {
+		File[] files = new File("src/test/resources/vb/obama/requirements").listFiles();
+
+		assertTrue(files.length > 0);
+
+		for (File file : files) {
+			if (file.getName().endsWith(".obama")) {
+				CompactTreeTest.assertSameClasses(Files.asCharSource(file, StandardCharsets.UTF_8).read());
+			}
+		}
+	}
+
+	private static void assertSameClasses(String program) {
+		CompilationResult expected = new ObamaCompiler().compile(program, "Test.obama");
+		CompilationResult actual = new ObamaCompiler(new ObamaCompiler.Options().setCompactTrees(true)).compile(program, "Test.obama");
+
+		AbstractTest.assertSameClasses(expected, actual);
+	}
+
+	private static void assertSameTree(Tree expected, Tree actual) {
+		assertEquals(expected.getType(), actual.getType());
+		assertEquals(expected.getText(), actual.getText());
+		assertEquals(expected.getLine(), actual.getLine());
+		assertEquals(expected.getCharPositionInLine(), actual.getCharPositionInLine());
+		assertEquals(expected.getChildCount(), actual.getChildCount());
+
+		for (int i = 0; i < expected.getChildCount(); i++) {
+			CompactTreeTest.assertSameTree(expected.getChild(i), actual.getChild(i));
+		}
+	}
+}
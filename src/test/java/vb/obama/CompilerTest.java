@@ -0,0 +1,259 @@
+package vb.obama;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.antlr.runtime.tree.Tree;
+import org.junit.Test;
+
+import vb.obama.compiler.CompilationResult;
+import vb.obama.compiler.CompilationStats;
+import vb.obama.compiler.Diagnostic;
+import vb.obama.compiler.ObamaCompiler;
+import vb.obama.util.ExitCodes;
+
+import com.google.common.collect.Lists;
+
+/**
+ * Tests the in-memory compiler API.
+ *
+ * @version 1.8
+ * @see vb.obama.compiler.ObamaCompiler
+ */
+public class CompilerTest extends AbstractTest {
+	private static final String HELLO = "(void)main:(String[])args { [System.out println:@\"Hello\"]; }";
+
+	/**
+	 * Defines the classes of a result in a private class loader
+	 */
+	private static class ResultLoader extends ClassLoader {
+		private final CompilationResult result;
+
+		public ResultLoader(CompilationResult result) {
+			super(ResultLoader.class.getClassLoader());
+			this.result = result;
+		}
+
+		@Override
+		protected Class<?> findClass(String name) throws ClassNotFoundException {
+			byte[] content = this.result.getClasses().get(name);
+
+			if (content == null) {
+				throw new ClassNotFoundException(name);
+			}
+
+			return this.defineClass(name, content, 0, content.length);
+		}
+	}
+
+	@Test
+	public void testCompileString() throws Exception {
+		CompilationResult result = new ObamaCompiler().compile(HELLO, "Hello.obama");
+
+		assertTrue(result.getDiagnostics().toString(), result.isSuccess());
+		assertEquals(ExitCodes.SUCCESS, result.getExitCode());
+		assertTrue(result.getClasses().containsKey("Hello"));
+
+		// The generated class must be loadable and have a main method
+		Class<?> hello = new ResultLoader(result).loadClass("Hello");
+		Method main = hello.getMethod("main", String[].class);
+		assertNotNull(main);
+	}
+
+	@Test
+	public void testCompileReaderAndBuffer() throws IOException {
+		ObamaCompiler compiler = new ObamaCompiler();
+		ByteBuffer buffer = ByteBuffer.wrap(HELLO.getBytes(StandardCharsets.UTF_8));
+
+		CompilationResult fromReader = compiler.compile(new StringReader(HELLO), "Hello.obama");
+		CompilationResult fromBuffer = compiler.compile(buffer, "Hello.obama");
+
+		assertTrue(fromReader.isSuccess());
+		assertTrue(fromBuffer.isSuccess());
+		assertEquals(0, buffer.position());
+		assertEquals(fromReader.getClasses().keySet(), fromBuffer.getClasses().keySet());
+	}
+
+	@Test
+	public void testCompileFile() throws IOException {
+		File file = this.tempFolder.newFile("Hello.obama");
+		Files.write(file.toPath(), HELLO.getBytes(StandardCharsets.UTF_8));
+
+		// Small files are not mapped, so they can be replaced while the tree lives
+		assertFalse(ObamaCompiler.read(file) instanceof MappedByteBuffer);
+
+		CompilationResult result = new ObamaCompiler().compile(file);
+		Files.write(file.toPath(), new byte[0]);
+
+		assertTrue(result.isSuccess());
+		assertEquals("Hello", result.getMainClass());
+	}
+
+	@Test
+	public void testParserDiagnostics() {
+		CompilationResult result = new ObamaCompiler().compile("(void)main:(String[])args {\n\tint a\n}", "Broken.obama");
+
+		assertFalse(result.isSuccess());
+		assertEquals(ExitCodes.PARSER_FAILED, result.getExitCode());
+		assertTrue(result.getClasses().isEmpty());
+		assertEquals(Diagnostic.Phase.PARSER, result.getDiagnostics().get(0).getPhase());
+		assertTrue(result.getDiagnostics().get(0).getLine() > 0);
+	}
+
+	@Test
+	public void testCheckerDiagnostics() {
+		CompilationResult result = new ObamaCompiler().compile("(void)main:(String[])args {\n\tint a;\n\t1 = a;\n}", "Broken.obama");
+		Diagnostic diagnostic = result.getDiagnostics().get(0);
+
+		assertEquals(ExitCodes.CHECKER_FAILED, result.getExitCode());
+		assertEquals(Diagnostic.Phase.CHECKER, diagnostic.getPhase());
+		assertEquals(3, diagnostic.getLine());
+	}
+
+	@Test
+	public void testStats() throws IOException {
+		CompilationResult result = new ObamaCompiler().compile(HELLO, "Hello.obama");
+		result.toClasses(this.tempFolder.getRoot().getAbsolutePath());
+		CompilationStats stats = result.getStats();
+
+		assertTrue(stats.getTokens() > 0);
+		assertTrue(stats.getNodes() > 0);
+		assertEquals(1, stats.getMethods());
+		assertEquals(result.getClasses().get("Hello").length, stats.getBytecodeBytes());
+
+		for (CompilationStats.Phase phase : CompilationStats.Phase.values()) {
+			assertTrue(phase.toString(), stats.getWallNanos(phase) > 0);
+		}
+
+		assertTrue(stats.toJson().startsWith("{\"files\":1,"));
+	}
+
+	@Test
+	public void testMemberIndexStats() {
+		new ObamaCompiler().compile(HELLO, "Hello.obama");
+		CompilationStats stats = new ObamaCompiler().compile(HELLO, "Hello.obama").getStats();
+
+		// System and PrintStream were indexed by the first compilation
+		assertEquals(2, stats.getMemberIndexHits());
+		assertEquals(0, stats.getMemberIndexMisses());
+		assertTrue(stats.toJson().endsWith("\"memberIndexHits\":2,\"memberIndexMisses\":0}"));
+	}
+
+	@Test
+	public void testOverloads() throws Exception {
+		String program = "(void)main:(String[])args { [System.out println:[Math max:[System currentTimeMillis] :[System nanoTime]]]; }";
+		CompilationResult result = new ObamaCompiler().compile(program, "Overloads.obama");
+
+		assertTrue(result.getDiagnostics().toString(), result.isSuccess());
+
+		// Math.max(long, long) returns a long, which println(long) takes
+		Class<?> overloads = new ResultLoader(result).loadClass("Overloads");
+		overloads.getMethod("main", String[].class).invoke(null, (Object) new String[0]);
+	}
+
+	@Test
+	public void testCasts() throws Exception {
+		String program = "(void)main:(String[])args {\n"
+			+ "\tObject o = [builtin cast:@\"One\" to:Object];\n"
+			+ "\tString s = [builtin cast:o to:String];\n"
+			+ "\to = [builtin init:new Object];\n"
+			+ "\ts = [builtin cast:o to:String];\n"
+			+ "}";
+		CompilationResult result = new ObamaCompiler().compile(program, "Casts.obama");
+
+		assertTrue(result.getDiagnostics().toString(), result.isSuccess());
+
+		// The last downcast is checked when it runs
+		try {
+			new ResultLoader(result).loadClass("Casts").getMethod("main", String[].class).invoke(null, (Object) new String[0]);
+			fail("Cast of an Object to String succeeded");
+		} catch (InvocationTargetException exception) {
+			assertTrue(exception.getCause() instanceof ClassCastException);
+		}
+	}
+
+	@Test
+	public void testInvalidCasts() {
+		String[] casts = { "[builtin cast:1 to:String]", "[builtin cast:(1 == 1) to:Object]" };
+
+		for (String cast : casts) {
+			CompilationResult result = new ObamaCompiler().compile("(void)main:(String[])args {\n\t" + cast + ";\n}", "Casts.obama");
+
+			assertEquals(cast, ExitCodes.CHECKER_FAILED, result.getExitCode());
+			assertTrue(result.getDiagnostics().toString(), result.getDiagnostics().get(0).getMessage().startsWith("Cannot cast"));
+		}
+	}
+
+	@Test
+	public void testJar() throws IOException {
+		CompilationResult result = new ObamaCompiler().compile("class Point { +(int)x { return 1; } }\n" + HELLO, "Hello.obama");
+
+		File directory = new File(this.tempFolder.getRoot(), "out");
+
+		for (boolean stored : new boolean[] { false, true }) {
+			// The directory is created, and an existing JAR replaced
+			File file = new File(directory, "hello-" + stored + ".jar");
+			result.toJar(file, stored);
+			result.toJar(file, stored);
+
+			try (JarFile jar = new JarFile(file)) {
+				assertEquals("Hello", jar.getManifest().getMainAttributes().getValue(Attributes.Name.MAIN_CLASS));
+
+				for (String name : result.getClasses().keySet()) {
+					JarEntry entry = jar.getJarEntry(name + ".class");
+
+					assertNotNull(name, entry);
+					assertEquals(stored ? JarEntry.STORED : JarEntry.DEFLATED, entry.getMethod());
+					assertEquals(result.getClasses().get(name).length, entry.getSize());
+				}
+			}
+		}
+
+		assertEquals(2, result.getClasses().size());
+		assertEquals(2, directory.list().length);
+	}
+
+	@Test
+	public void testInterning() {
+		CompilationResult result = new ObamaCompiler().compile("(void)main:(String[])args { int count = 1; count = count + 1; }", "Hello.obama");
+		List<String> texts = Lists.newArrayList();
+
+		assertTrue(result.isSuccess());
+		CompilerTest.collect(result.getTree(), "count", texts);
+
+		// Declaration, two assignments and the use, all sharing one string
+		assertEquals(4, texts.size());
+
+		for (String text : texts) {
+			assertSame(texts.get(0), text);
+		}
+	}
+
+	private static void collect(Tree tree, String text, List<String> result) {
+		if (text.equals(tree.getText())) {
+			result.add(tree.getText());
+		}
+
+		for (int i = 0; i < tree.getChildCount(); i++) {
+			CompilerTest.collect(tree.getChild(i), text, result);
+		}
+	}
+}
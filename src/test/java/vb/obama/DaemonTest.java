@@ -0,0 +1,102 @@
+package vb.obama;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import org.junit.Test;
+
+import vb.obama.driver.CompilerClient;
+import vb.obama.driver.CompilerDaemon;
+import vb.obama.util.ExitCodes;
+
+/**
+ * Tests the compiler daemon and its client.
+ * 
+ * @version 1.1
+ * @see vb.obama.driver.CompilerDaemon
+ */
+public class DaemonTest extends AbstractTest {
+	
+	@Test(timeout = 30000)
+	public void testCompileAndShutdown() throws IOException, URISyntaxException, InterruptedException {
+		File tokenFile = new File(this.tempFolder.getRoot(), "token");
+		CompilerDaemon daemon = new CompilerDaemon(0, 2, tokenFile);
+		Thread thread = DaemonTest.start(daemon);
+		File directory = new File(this.getClass().getResource("codegen").toURI());
+		
+		try (CompilerClient client = new CompilerClient(daemon.getLocalPort(), tokenFile)) {
+			assertEquals(ExitCodes.SUCCESS, client.ping().getExitCode());
+			
+			// Compile the same file twice on the same warm daemon
+			for (int i = 0; i < 2; i++) {
+				CompilerClient.Response response = client.compile(new File(directory, "HelloWorld.obama"), this.tempFolder.getRoot());
+				
+				assertEquals(ExitCodes.SUCCESS, response.getExitCode());
+				assertEquals(1, response.getFiles().size());
+				assertTrue(response.getRoundTripMicros() >= response.getServerMicros());
+			}
+			
+			CompilerClient.Response response = client.compile(new File(directory, "Missing.obama"), this.tempFolder.getRoot());
+			assertEquals(ExitCodes.NO_INPUT_FILE, response.getExitCode());
+			
+			client.shutdown();
+		}
+		
+		thread.join();
+		assertTrue(new File(this.tempFolder.getRoot(), "HelloWorld.class").isFile());
+		assertFalse(tokenFile.exists());
+	}
+	
+	@Test(timeout = 30000)
+	public void testToken() throws IOException, InterruptedException {
+		File tokenFile = new File(this.tempFolder.getRoot(), "token");
+		CompilerDaemon daemon = new CompilerDaemon(0, 2, tokenFile);
+		Thread thread = DaemonTest.start(daemon);
+		
+		if (Files.getFileStore(tokenFile.toPath()).supportsFileAttributeView("posix")) {
+			assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(tokenFile.toPath())));
+		}
+		
+		// A wrong token cannot stop the daemon
+		try (CompilerClient client = new CompilerClient(daemon.getLocalPort(), "wrong")) {
+			assertEquals(ExitCodes.NO_CHOICE, client.shutdown().getExitCode());
+		}
+		
+		try (CompilerClient client = new CompilerClient(daemon.getLocalPort(), tokenFile)) {
+			assertEquals(ExitCodes.SUCCESS, client.ping().getExitCode());
+			client.shutdown();
+		}
+		
+		thread.join();
+	}
+	
+	/**
+	 * Run a daemon on its own thread, and wait until it listens
+	 */
+	private static Thread start(final CompilerDaemon daemon) throws InterruptedException {
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					daemon.run();
+				} catch (IOException exception) {
+					// Reported by the assertions of the test
+				}
+			}
+		});
+		thread.start();
+		
+		while (daemon.getLocalPort() <= 0) {
+			Thread.sleep(10);
+		}
+		
+		return thread;
+	}
+}
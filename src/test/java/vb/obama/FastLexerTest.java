@@ -0,0 +1,169 @@
+package vb.obama;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+
+import org.antlr.runtime.ANTLRStringStream;
+import org.antlr.runtime.CommonToken;
+import org.antlr.runtime.Token;
+import org.antlr.runtime.TokenSource;
+import org.junit.Test;
+
+import vb.obama.antlr.FastLexer;
+import vb.obama.antlr.ObamaLexer;
+import vb.obama.antlr.ObamaParser;
+import vb.obama.compiler.Diagnostic;
+import vb.obama.compiler.SymbolPool;
+import vb.obama.util.ProgramGenerator;
+
+import com.google.common.collect.Lists;
+import com.google.common.io.Files;
+
+/**
+ * Differential tests of the hand-written lexer against the generated lexer.
+ * Both must produce the same tokens, including hidden ones, and the same
+ * diagnostics.
+ *
+ * @version 1.0
+ * @see vb.obama.antlr.FastLexer
+ */
+public class FastLexerTest extends AbstractTest {
+	/**
+	 * Fragments of random inputs
+	 */
+	private static final String[] FRAGMENTS = {
+		"a", "Z", "x1", "class", "classy", "self", "YES", "NO", "NOx", "foreach", "for", "if", "ifx",
+		"0", "42", "7a", " ", "\t", "\n", "\r\n", "\f",
+		";", ":", "{", "}", "(", ")", "[", "]", ",", ".", "\"", "'", "\\", "@", "~",
+		"+", "-", "*", "/", "%", "&", "|", "=", "!", ">", "<", "?",
+		"&&", "||", "==", "!=", ">=", "<=",
+		"'a'", "'1'", "'a", "''", "@\"", "@\"text\"", "@\"a b\"", "/*", "*/", "/* c */",
+		"#", "#import", "#imp", "_", "$", "é", "€"
+	};
+
+	@Test
+	public void testRequirements() throws IOException {
+		File[] files = new File("src/test/resources/vb/obama/requirements").listFiles();
+
+		assertTrue(files.length > 0);
+
+		for (File file : files) {
+			if (file.getName().endsWith(".obama")) {
+				FastLexerTest.assertSameTokens(Files.asCharSource(file, StandardCharsets.UTF_8).read());
+			}
+		}
+	}
+
+	@Test
+	public void testGenerated() {
+		FastLexerTest.assertSameTokens(new ProgramGenerator().setMethods(50).setClasses(5).setDepth(3).generate());
+	}
+
+	@Test
+	public void testTokens() {
+		FastLexerTest.assertSameTokens("class self global builtin new break default return if else for foreach while switch case const void int bool char YES NO");
+		FastLexerTest.assertSameTokens("classy selfish YESNO NOT iff fore x1y2 A Z a z");
+		FastLexerTest.assertSameTokens("; : { } ( ) [ ] , . \" ' \\ @ ~ + - * / % & | && || == != > < >= <= = ! ?");
+		FastLexerTest.assertSameTokens("&&& ||| === !== >== <== =! <> />");
+		FastLexerTest.assertSameTokens("'a' 'Z' '0' 'a'b' ''' @\"\" @\"a 'b' /* c */\" @@\"x\"");
+		FastLexerTest.assertSameTokens("0 007 123abc 9x");
+		FastLexerTest.assertSameTokens("#import <java.lang> #importx");
+		FastLexerTest.assertSameTokens("/* one */ /** two **/ /* three\n lines\r\n */ x /*/ y */");
+		FastLexerTest.assertSameTokens(" \t\f\r\n\n  x\n\n");
+		FastLexerTest.assertSameTokens("");
+	}
+
+	@Test
+	public void testErrors() {
+		FastLexerTest.assertSameTokens("a _ b");
+		FastLexerTest.assertSameTokens("a $ b é c");
+		FastLexerTest.assertSameTokens("# #imp #i");
+		FastLexerTest.assertSameTokens("'a b");
+		FastLexerTest.assertSameTokens("'a");
+		FastLexerTest.assertSameTokens("@\"unterminated\nx");
+		FastLexerTest.assertSameTokens("@\"unterminated");
+		FastLexerTest.assertSameTokens("x /* unterminated");
+		FastLexerTest.assertSameTokens("x\n  _\n  y");
+	}
+
+	@Test
+	public void testRandom() {
+		Random random = new Random(42);
+
+		for (int i = 0; i < 2000; i++) {
+			StringBuilder input = new StringBuilder();
+
+			for (int j = random.nextInt(20); j >= 0; j--) {
+				input.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+			}
+
+			FastLexerTest.assertSameTokens(input.toString());
+		}
+	}
+
+	@Test
+	public void testInterning() {
+		SymbolPool pool = new SymbolPool();
+		FastLexer lexer = new FastLexer("value value");
+		lexer.setSymbolPool(pool);
+
+		Token first = lexer.nextToken();
+		lexer.nextToken();
+		Token second = lexer.nextToken();
+
+		assertSame(first.getText(), second.getText());
+		assertSame(pool.intern("value"), first.getText());
+	}
+
+	private static void assertSameTokens(String input) {
+		List<Diagnostic> expectedDiagnostics = Lists.newArrayList();
+		List<Diagnostic> actualDiagnostics = Lists.newArrayList();
+
+		ObamaLexer expected = new ObamaLexer(new ANTLRStringStream(input));
+		expected.setDiagnostics(expectedDiagnostics);
+
+		FastLexer actual = new FastLexer(input);
+		actual.setDiagnostics(actualDiagnostics);
+
+		List<String> expectedTokens = FastLexerTest.lex(expected, input.length());
+		List<String> actualTokens = FastLexerTest.lex(actual, input.length());
+
+		assertEquals(input, expectedTokens, actualTokens);
+		assertEquals(input, expectedDiagnostics.toString(), actualDiagnostics.toString());
+	}
+
+	/**
+	 * Describe all tokens up to and including EOF
+	 */
+	private static List<String> lex(TokenSource source, int length) {
+		List<String> result = Lists.newArrayList();
+
+		for (int i = 0; i <= length; i++) {
+			Token token = source.nextToken();
+
+			result.add(String.format(
+				"%s '%s' %d:%d [%d..%d] channel %d",
+				token.getType() == Token.EOF ? "EOF" : ObamaParser.tokenNames[token.getType()],
+				token.getText(),
+				token.getLine(),
+				token.getCharPositionInLine(),
+				((CommonToken) token).getStartIndex(),
+				((CommonToken) token).getStopIndex(),
+				token.getChannel()
+			));
+
+			if (token.getType() == Token.EOF) {
+				break;
+			}
+		}
+
+		return result;
+	}
+}
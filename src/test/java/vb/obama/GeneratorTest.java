@@ -0,0 +1,103 @@
+package vb.obama;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+
+import org.junit.Test;
+
+import vb.obama.compiler.CompilationResult;
+import vb.obama.compiler.ObamaCompiler;
+import vb.obama.util.ProgramGenerator;
+
+/**
+ * Tests that generated programs compile and run.
+ *
+ * @version 1.0
+ * @see vb.obama.util.ProgramGenerator
+ */
+public class GeneratorTest extends AbstractTest {
+	private static final String[] SPECIFICATIONS = {
+		"",
+		"methods=0",
+		"methods=25,classes=3,imports=12",
+		"methods=5,statements=20,depth=4,cases=8,expression=9,seed=42",
+		"methods=5,depth=0,expression=1",
+	};
+
+	/**
+	 * Defines the classes of a result in a private class loader
+	 */
+	private static class ResultLoader extends ClassLoader {
+		private final CompilationResult result;
+
+		public ResultLoader(CompilationResult result) {
+			super(ResultLoader.class.getClassLoader());
+			this.result = result;
+		}
+
+		@Override
+		protected Class<?> findClass(String name) throws ClassNotFoundException {
+			byte[] content = this.result.getClasses().get(name);
+
+			if (content == null) {
+				throw new ClassNotFoundException(name);
+			}
+
+			return this.defineClass(name, content, 0, content.length);
+		}
+	}
+
+	@Test
+	public void testCompileAndRun() throws Exception {
+		for (String specification : SPECIFICATIONS) {
+			String program = ProgramGenerator.parse(specification).generate();
+			CompilationResult result = new ObamaCompiler().compile(program, "Generated.obama");
+
+			assertTrue(specification + ": " + result.getDiagnostics(), result.isSuccess());
+
+			Method main = new ResultLoader(result).loadClass("Generated").getMethod("main", String[].class);
+			PrintStream out = System.out;
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+			try {
+				System.setOut(new PrintStream(buffer));
+				main.invoke(null, (Object) new String[0]);
+			} finally {
+				System.setOut(out);
+			}
+
+			assertTrue(specification, buffer.size() > 0);
+		}
+	}
+
+	@Test
+	public void testDeterministic() {
+		ProgramGenerator generator = ProgramGenerator.parse("methods=20,classes=2,seed=7");
+
+		assertEquals(generator.generate(), generator.generate());
+		assertNotEquals(generator.generate(), generator.setSeed(8).generate());
+	}
+
+	@Test
+	public void testSize() {
+		String small = new ProgramGenerator().setMethods(10).generate();
+		String large = new ProgramGenerator().setMethods(100).generate();
+
+		assertTrue(large.length() > 5 * small.length());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnknownSetting() {
+		ProgramGenerator.parse("functions=10");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidValue() {
+		ProgramGenerator.parse("methods=-1");
+	}
+}
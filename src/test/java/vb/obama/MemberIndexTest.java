@@ -0,0 +1,105 @@
+package vb.obama;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import vb.obama.compiler.MemberIndex;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Tests resolving methods and fields through the member index.
+ *
+ * @version 1.4
+ * @see vb.obama.compiler.MemberIndex
+ */
+public class MemberIndexTest extends AbstractTest {
+	private static final List<Class<?>> TYPES = ImmutableList.<Class<?>>of(PrintStream.class, String.class, Math.class, Integer.class, List.class);
+
+	@Test
+	public void testMethods() {
+		for (Class<?> type : TYPES) {
+			MemberIndex index = MemberIndex.of(type);
+
+			for (Method method : type.getMethods()) {
+				for (int arguments = 0; arguments < 6; arguments++) {
+					for (boolean statics : new boolean[] { false, true }) {
+						String name = method.getName();
+
+						assertEquals(name, MemberIndexTest.find(type, name, arguments, statics), index.getMethod(name, arguments, statics));
+						assertEquals(name, MemberIndexTest.find(type, name, -1, statics) != null, index.hasMethods(name, statics));
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testOverloads() {
+		MemberIndex index = MemberIndex.of(Math.class);
+		List<Class<?>> ints = ImmutableList.<Class<?>>of(int.class, int.class);
+		List<Class<?>> longs = ImmutableList.<Class<?>>of(long.class, long.class);
+
+		assertSame(int.class, index.getMethod("max", ints, true).getReturnType());
+		assertSame(long.class, index.getMethod("max", longs, true).getReturnType());
+
+		// Otherwise the first one that takes as many arguments
+		List<Class<?>> unknown = ImmutableList.<Class<?>>of(Void.class, Void.class);
+		assertEquals(index.getMethod("max", 2, true), index.getMethod("max", unknown, true));
+
+		for (Method method : PrintStream.class.getMethods()) {
+			if (method.getName().equals("println")) {
+				assertEquals(method, MemberIndex.of(PrintStream.class).getMethod("println", Arrays.asList(method.getParameterTypes()), false));
+			}
+		}
+	}
+
+	@Test
+	public void testFields() throws NoSuchFieldException {
+		MemberIndex index = MemberIndex.of(System.class);
+
+		assertEquals(System.class.getField("out"), index.getField("out", true));
+		assertEquals(Integer.class.getField("MAX_VALUE"), MemberIndex.of(Integer.class).getField("MAX_VALUE", false));
+		assertNull(index.getField("missing", false));
+		assertNull(index.getField("getProperty", false));
+	}
+
+	@Test
+	public void testShared() {
+		assertSame(MemberIndex.of(PrintStream.class), MemberIndex.of(PrintStream.class));
+		assertFalse(MemberIndex.of(PrintStream.class).hasMethods("missing", false));
+		assertTrue(MemberIndex.of(Math.class).hasMethods("max", true));
+	}
+
+	/**
+	 * Find a method like the checker did before it had an index
+	 *
+	 * @param arguments Number of arguments, or -1 for any method of the name
+	 */
+	private static Method find(Class<?> type, String name, int arguments, boolean statics) {
+		for (Method method : type.getMethods()) {
+			if (!method.getName().equals(name)) continue;
+			if (!Modifier.isPublic(method.getModifiers())) continue;
+			if (statics && !Modifier.isStatic(method.getModifiers())) continue;
+
+			int count = method.getParameterTypes().length;
+
+			if (arguments < 0 || (method.isVarArgs() ? arguments >= count : arguments == count)) {
+				return method;
+			}
+		}
+
+		return null;
+	}
+}
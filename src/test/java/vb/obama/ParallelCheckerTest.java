@@ -0,0 +1,134 @@
+package vb.obama;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ForkJoinPool;
+
+import org.antlr.runtime.RecognitionException;
+import org.junit.Test;
+
+import vb.obama.antlr.tree.TypedNode;
+import vb.obama.compiler.CheckerVisitor;
+import vb.obama.compiler.CompilationResult;
+import vb.obama.compiler.ObamaCompiler;
+import vb.obama.compiler.SymbolTable;
+import vb.obama.exceptions.CheckerException;
+import vb.obama.util.ProgramGenerator;
+
+import com.google.common.io.Files;
+
+/**
+ * Tests checking method bodies in parallel against checking them in one pass.
+ *
+ * @version 1.1
+ * @see vb.obama.compiler.CheckerVisitor
+ */
+public class ParallelCheckerTest extends AbstractTest {
+	/**
+	 * Threads to split the bodies for, more than the sandbox may have
+	 */
+	private static final int PARALLELISM = 4;
+
+	@Test
+	public void testRequirements() throws IOException, RecognitionException {
+		ParallelCheckerTest.assertSameResults(new File("src/test/resources/vb/obama/requirements"));
+	}
+
+	@Test
+	public void testChecker() throws IOException, RecognitionException {
+		ParallelCheckerTest.assertSameResults(new File("src/test/resources/vb/obama/checker"));
+	}
+
+	@Test
+	public void testCodegen() throws IOException, RecognitionException {
+		ParallelCheckerTest.assertSameResults(new File("src/test/resources/vb/obama/codegen"));
+	}
+
+	@Test
+	public void testVisibility() throws RecognitionException {
+		// Later methods, classes and class members are not visible yet
+		assertNotNull(ParallelCheckerTest.assertSameResult("(void)a { [global b]; }\n(void)b { }"));
+		assertNotNull(ParallelCheckerTest.assertSameResult("(void)a { B b; }\nclass B { }"));
+		assertNull(ParallelCheckerTest.assertSameResult("int x;\nclass A {\n+(int)f { return x; }\nchar x;\n}"));
+		assertNull(ParallelCheckerTest.assertSameResult("class B { }\n(void)a { B b; [global a]; }"));
+	}
+
+	@Test
+	public void testFirstError() throws RecognitionException {
+		// Both bodies and the declaration after them are incorrect
+		String failure = ParallelCheckerTest.assertSameResult("(void)a { int x; 1 = x; }\n(void)b { [global c]; }\nint a;");
+
+		assertTrue(failure, failure.contains(" 1:"));
+	}
+
+	@Test
+	public void testGenerated() {
+		String program = new ProgramGenerator().setMethods(200).setClasses(5).setDepth(3).generate();
+
+		CompilationResult expected = new ObamaCompiler().compile(program, "Test.obama");
+		CompilationResult actual = new ObamaCompiler(new ObamaCompiler.Options().setCompactTrees(true).setParallelChecking(true)).compile(program, "Test.obama");
+
+		assertTrue(actual.getDiagnostics().toString(), actual.isSuccess());
+		assertEquals(expected.getReferencedTypes(), actual.getReferencedTypes());
+		assertEquals(expected.getStats().getSymbols(), actual.getStats().getSymbols());
+		AbstractTest.assertSameClasses(expected, actual);
+	}
+
+	private static void assertSameResults(File directory) throws IOException, RecognitionException {
+		File[] files = directory.listFiles();
+
+		assertTrue(files.length > 0);
+
+		for (File file : files) {
+			if (file.getName().endsWith(".obama")) {
+				ParallelCheckerTest.assertSameResult(Files.asCharSource(file, StandardCharsets.UTF_8).read());
+			}
+		}
+	}
+
+	/**
+	 * Check a program in one pass and in parallel
+	 *
+	 * @return Description of the failure, or null
+	 */
+	private static String assertSameResult(String program) throws RecognitionException {
+		TypedNode expectedTree = AbstractTest.parse(program);
+		TypedNode actualTree = AbstractTest.parse(program);
+
+		CheckerVisitor expectedChecker = new CheckerVisitor(new SymbolTable(), "Test.obama");
+		String expectedFailure = null;
+
+		try {
+			expectedChecker.program(expectedTree);
+		} catch (CheckerException exception) {
+			expectedFailure = AbstractTest.describe(exception);
+		}
+
+		CheckerVisitor actualChecker = new CheckerVisitor(new SymbolTable(), "Test.obama", ForkJoinPool.commonPool(), PARALLELISM);
+		String actualFailure = null;
+
+		try {
+			actualChecker.program(actualTree);
+		} catch (CheckerException exception) {
+			actualFailure = AbstractTest.describe(exception);
+		}
+
+		assertEquals(program, expectedFailure, actualFailure);
+		assertEquals(program, expectedChecker.getNumberOfErrors(), actualChecker.getNumberOfErrors());
+
+		// Later bodies are checked anyway, so only correct programs match
+		if (expectedFailure == null && expectedChecker.getNumberOfErrors() == 0) {
+			assertEquals(program, AbstractTest.annotations(expectedTree), AbstractTest.annotations(actualTree));
+			assertEquals(program, expectedChecker.getHelper().getReferencedTypes(), actualChecker.getHelper().getReferencedTypes());
+			assertEquals(program, expectedChecker.getNumberOfSymbols(), actualChecker.getNumberOfSymbols());
+		}
+
+		return actualFailure;
+	}
+}
@@ -0,0 +1,159 @@
+package vb.obama;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.antlr.runtime.ANTLRStringStream;
+import org.antlr.runtime.CommonTokenStream;
+import org.antlr.runtime.Token;
+import org.junit.Test;
+
+import vb.obama.antlr.ObamaLexer;
+import vb.obama.antlr.tree.TypedNode;
+import vb.obama.compiler.CompilationResult;
+import vb.obama.compiler.Diagnostic;
+import vb.obama.compiler.ObamaCompiler;
+import vb.obama.compiler.ParallelParser;
+import vb.obama.util.ProgramGenerator;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ * Tests parsing top level declarations in parallel.
+ *
+ * @version 1.2
+ * @see vb.obama.compiler.ParallelParser
+ */
+public class ParallelParserTest extends AbstractTest {
+	private static final String GLOBALS = "int counter;\nconst char letter = 'a';\n";
+
+	@Test
+	public void testSameTree() {
+		String program = new ProgramGenerator().setMethods(100).setClasses(5).setDepth(3).setImports(0).generate();
+
+		CompilationResult expected = new ObamaCompiler().compile(program, "Test.obama");
+		CompilationResult actual = new ObamaCompiler(new ObamaCompiler.Options().setParallelParsing(true)).compile(program, "Test.obama");
+
+		assertTrue(expected.getDiagnostics().toString(), expected.isSuccess());
+		assertTrue(actual.getDiagnostics().toString(), actual.isSuccess());
+		assertEquals(expected.getTree().toStringTree(), actual.getTree().toStringTree());
+		AbstractTest.assertSameClasses(expected, actual);
+	}
+
+	@Test
+	public void testGlobals() {
+		String program = GLOBALS + new ProgramGenerator().setMethods(10).generate();
+
+		CompilationResult expected = new ObamaCompiler().compile(program, "Test.obama");
+		CompilationResult actual = new ObamaCompiler(new ObamaCompiler.Options().setParallelParsing(true)).compile(program, "Test.obama");
+
+		assertEquals(expected.getTree().toStringTree(), actual.getTree().toStringTree());
+	}
+
+	@Test
+	public void testImports() {
+		String program = new ProgramGenerator().setMethods(20).setImports(3).generate();
+
+		CompilationResult expected = new ObamaCompiler().compile(program, "Test.obama");
+		CompilationResult actual = new ObamaCompiler(new ObamaCompiler.Options().setParallelParsing(true)).compile(program, "Test.obama");
+
+		assertTrue(actual.isSuccess());
+		assertEquals(expected.getTree().toStringTree(), actual.getTree().toStringTree());
+		assertEquals(expected.getImports(), actual.getImports());
+	}
+
+	@Test
+	public void testPositions() {
+		String program = "(void)first { }\n\n(void)second {\n  [System.out println:1];\n}\n";
+		CompilationResult result = new ObamaCompiler(new ObamaCompiler.Options().setParallelParsing(true)).compile(program, "Test.obama");
+
+		assertTrue(result.isSuccess());
+		assertEquals(3, result.getTree().getChild(1).getChild(2).getLine());
+	}
+
+	@Test
+	public void testSyntaxError() {
+		String program = "(void)first { }\n(void)second { int a = ; }\n(void)third { }\n";
+
+		CompilationResult expected = new ObamaCompiler().compile(program, "Test.obama");
+		CompilationResult actual = new ObamaCompiler(new ObamaCompiler.Options().setParallelParsing(true)).compile(program, "Test.obama");
+
+		assertFalse(actual.isSuccess());
+		assertEquals(Diagnostic.Phase.PARSER, actual.getDiagnostics().get(0).getPhase());
+		assertEquals(expected.getDiagnostics().toString(), actual.getDiagnostics().toString());
+	}
+
+	@Test
+	public void testTokenIndexes() {
+		String program = new ProgramGenerator().setMethods(20).setClasses(2).setImports(2).generate();
+		List<? extends Token> tokens = ParallelParserTest.lex(program);
+		ParallelParser parser = new ParallelParser(MoreExecutors.newDirectExecutorService(), 2);
+		TypedNode tree = parser.parse(tokens, Lists.<Diagnostic>newArrayList());
+
+		assertNotNull(tree);
+
+		// Tokens keep the index of their position in the buffer
+		for (int i = 0; i < tokens.size(); i++) {
+			assertEquals(i, tokens.get(i).getTokenIndex());
+		}
+
+		// Nodes have the same token boundaries as with the serial parser
+		TypedNode expected = new ObamaCompiler().compile(program, "Test.obama").getTree();
+
+		assertEquals(ParallelParserTest.boundaries(expected), ParallelParserTest.boundaries(tree));
+	}
+
+	@Test
+	public void testSplit() {
+		ParallelParser parser = new ParallelParser(MoreExecutors.newDirectExecutorService(), 2);
+		List<Diagnostic> diagnostics = Lists.newArrayList();
+
+		// Imports after declarations and unbalanced braces are parsed serially
+		assertNull(parser.parse(ParallelParserTest.lex("(void)a { }\n#import <java.util.List>\n(void)b { }"), diagnostics));
+		assertNull(parser.parse(ParallelParserTest.lex("(void)a { }\n(void)b { { }"), diagnostics));
+		assertNull(parser.parse(ParallelParserTest.lex("(void)a { } }\n(void)b { }"), diagnostics));
+		assertNull(parser.parse(ParallelParserTest.lex("(void)a { }\nint b"), diagnostics));
+
+		// A single declaration is not worth splitting
+		assertNull(parser.parse(ParallelParserTest.lex("(void)a { }"), diagnostics));
+
+		assertNotNull(parser.parse(ParallelParserTest.lex("#import <java.util.*>\n(void)a { }\nint b;"), diagnostics));
+		assertTrue(diagnostics.isEmpty());
+	}
+
+	/**
+	 * Return the token index and boundaries of all nodes, in prefix order
+	 */
+	private static List<String> boundaries(TypedNode tree) {
+		List<String> result = Lists.newArrayList();
+		List<TypedNode> stack = Lists.newArrayList(tree);
+
+		while (!stack.isEmpty()) {
+			TypedNode node = stack.remove(stack.size() - 1);
+
+			// The root of the parallel parser is created without token
+			if (node != tree) {
+				result.add(String.format("%s %d %d %d", node.getText(), node.getToken().getTokenIndex(), node.getTokenStartIndex(), node.getTokenStopIndex()));
+			}
+
+			for (int i = node.getChildCount() - 1; i >= 0; i--) {
+				stack.add((TypedNode) node.getChild(i));
+			}
+		}
+
+		return result;
+	}
+
+	private static List<? extends Token> lex(String program) {
+		CommonTokenStream tokens = new CommonTokenStream(new ObamaLexer(new ANTLRStringStream(program)));
+		tokens.fill();
+
+		return tokens.getTokens();
+	}
+}
@@ -4,15 +4,20 @@ import static org.junit.Assert.assertEquals;
 
 import java.io.IOException;
 
+import org.antlr.runtime.ANTLRStringStream;
+import org.antlr.runtime.CommonTokenStream;
 import org.antlr.runtime.RecognitionException;
 import org.junit.Test;
 
+import vb.obama.antlr.ObamaLexer;
+import vb.obama.antlr.ObamaParser;
+import vb.obama.antlr.tree.TypedNodeAdapter;
 import vb.obama.exceptions.CheckerException;
 
 /**
  * Tests ObamaParser.g
  * 
- * @version 1.0
+ * @version 1.1
  * @see vb/obama/antlr/ObamaParser.g
  */
 public class ParserTest extends AbstractTest {
@@ -38,6 +43,13 @@ public class ParserTest extends AbstractTest {
 		assertEquals(2, this.executeFileParser("parser/ImportsIncorrect.obama"));
 	}
 	
+	@Test
+	public void testImportsWildcardIncorrect() throws RecognitionException {
+		assertEquals(0, ParserTest.errors("#import <java.util.*>"));
+		assertEquals(1, ParserTest.errors("#import <java.*.List>"));
+		assertEquals(1, ParserTest.errors("#import <java.util.*.*>"));
+	}
+	
 	/** 
 	 * Methods 
 	 */
@@ -169,6 +181,18 @@ public class ParserTest extends AbstractTest {
 		assertEquals(0, this.executeFileParser("parser/IfElseIfElseStatement.obama"));
 	}
 	
+	@Test
+	public void testIfElseIfChain() throws RecognitionException {
+		assertEquals(
+			"(SCOPE (IF_ELSE_IF_ELSE (if a (SCOPE (= b 1))) (ELSE_IF c (SCOPE (= b 2))) (ELSE_IF d (SCOPE (= b 3))) (ELSE_IF e (SCOPE (= b 4)))))",
+			ParserTest.body("if (a) { b = 1; } else if (c) { b = 2; } else if (d) { b = 3; } else if (e) { b = 4; }")
+		);
+		assertEquals(
+			"(SCOPE (IF_ELSE_IF_ELSE (if a (SCOPE (= b 1))) (ELSE_IF c (SCOPE (= b 2))) (ELSE_IF d (SCOPE (= b 3))) (else (SCOPE (= b 4)))))",
+			ParserTest.body("if (a) { b = 1; } else if (c) { b = 2; } else if (d) { b = 3; } else { b = 4; }")
+		);
+	}
+	
 	/**
 	 * Switch statements
 	 */
@@ -240,4 +264,74 @@ public class ParserTest extends AbstractTest {
 	public void testGlobalsConstsIncorrect() throws RecognitionException, IOException {
 		assertEquals(1, this.executeFileParser("parser/GlobalsConstsIncorrect.obama"));
 	}
-}
\ No newline at end of file
+	
+	/**
+	 * Expressions
+	 */
+	@Test
+	public void testInlineIfNested() throws RecognitionException {
+		assertEquals(
+			"(SCOPE (= a (IF_INLINE b (PAREN (IF_INLINE c 1 2)) (PAREN (IF_INLINE d 3 (PAREN (IF_INLINE e 4 5)))))))",
+			ParserTest.body("a = b ? (c ? 1 : 2) : (d ? 3 : (e ? 4 : 5));")
+		);
+		assertEquals(
+			"(SCOPE (= a (PAREN (PAREN (IF_INLINE b 1 2)))))",
+			ParserTest.body("a = ((b ? 1 : 2));")
+		);
+	}
+	
+	@Test
+	public void testUnarySigns() throws RecognitionException {
+		assertEquals(
+			"(SCOPE (= a (+ (- (+ (- 1 -2) 3) 4) -5)))",
+			ParserTest.body("a = 1 - -2 + +3 - +4 + -5;")
+		);
+		
+		// A sign belongs to an integer literal, so it cannot repeat
+		assertEquals(1, ParserTest.errors("(void)main { a = - -1; }"));
+		assertEquals(1, ParserTest.errors("(void)main { a = b - -c; }"));
+	}
+	
+	/**
+	 * Declarations and expressions that start with a package path
+	 */
+	@Test
+	public void testPackagePaths() throws RecognitionException {
+		assertEquals(
+			"(SCOPE (VAR java.util.List a) (VAR java.util.List+ b) java.lang.System.out (= a java.lang.Math.PI))",
+			ParserTest.body("java.util.List a; java.util.List[] b; java.lang.System.out; a = java.lang.Math.PI;")
+		);
+		assertEquals(
+			"(SCOPE (METHOD_CALL java.lang.System.out (PARAMETER_NAMED println 1)) (VAR java.util.List a) (= a b))",
+			ParserTest.body("[java.lang.System.out println:1]; java.util.List a = b;")
+		);
+	}
+	
+	/**
+	 * Parse a method body and return the tree of its scope
+	 */
+	private static String body(String contents) throws RecognitionException {
+		ObamaParser parser = ParserTest.parser("(void)main { " + contents + " }");
+		String tree = parser.program().getTree().getChild(0).getChild(4).toStringTree();
+		
+		assertEquals(0, parser.getNumberOfSyntaxErrors());
+		return tree;
+	}
+	
+	/**
+	 * Parse a program and return the number of syntax errors
+	 */
+	private static int errors(String program) throws RecognitionException {
+		ObamaParser parser = ParserTest.parser(program);
+		parser.program();
+		
+		return parser.getNumberOfSyntaxErrors();
+	}
+	
+	private static ObamaParser parser(String program) {
+		ObamaParser parser = new ObamaParser(new CommonTokenStream(new ObamaLexer(new ANTLRStringStream(program))));
+		parser.setTreeAdaptor(new TypedNodeAdapter());
+		
+		return parser;
+	}
+}
@@ -0,0 +1,198 @@
+package vb.obama;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import vb.obama.compiler.IdEntry;
+import vb.obama.compiler.SymbolTable;
+import vb.obama.exceptions.SymbolTableException;
+
+/**
+ * Tests declaring, hiding and forgetting identifiers in nested scopes and
+ * snapshots.
+ *
+ * @version 1.2
+ * @see vb.obama.compiler.SymbolTable
+ */
+public class SymbolTableTest extends AbstractTest {
+	@Test
+	public void testScopes() throws SymbolTableException {
+		SymbolTable table = new SymbolTable();
+		IdEntry global = new IdEntry();
+		IdEntry local = new IdEntry();
+		IdEntry inner = new IdEntry();
+
+		table.openScope();
+		table.enter("a", global);
+		table.openScope();
+		table.enter("a", local);
+		table.enter("b", new IdEntry());
+		table.openScope();
+		table.enter("a", inner);
+
+		assertSame(inner, table.retrieve("a"));
+		assertEquals(2, inner.getLevel());
+
+		table.closeScope();
+		assertSame(local, table.retrieve("a"));
+
+		table.closeScope();
+		assertSame(global, table.retrieve("a"));
+		assertNull(table.retrieve("b"));
+
+		table.closeScope();
+		assertNull(table.retrieve("a"));
+		assertEquals(-1, table.getCurrentLevel());
+		assertEquals(4, table.getEntryCount());
+	}
+
+	@Test
+	public void testDuplicate() throws SymbolTableException {
+		SymbolTable table = new SymbolTable();
+		IdEntry first = new IdEntry();
+
+		table.openScope();
+		table.enter("a", first);
+
+		try {
+			table.enter("a", new IdEntry());
+		} catch (SymbolTableException exception) {
+			// The first declaration stays
+			assertSame(first, table.retrieve("a"));
+			assertEquals(1, table.getEntryCount());
+
+			table.closeScope();
+			assertNull(table.retrieve("a"));
+			return;
+		}
+
+		throw new AssertionError("Duplicate identifier accepted");
+	}
+
+	@Test
+	public void testSnapshot() throws SymbolTableException {
+		SymbolTable globals = new SymbolTable();
+		IdEntry global = new IdEntry();
+
+		globals.openScope();
+		globals.enter("a", global);
+
+		SymbolTable.Snapshot snapshot = globals.snapshot();
+
+		// Later changes do not show up in the snapshot
+		globals.enter("b", new IdEntry());
+		globals.closeScope();
+
+		assertSame(global, snapshot.retrieve("a"));
+		assertNull(snapshot.retrieve("b"));
+		assertEquals(0, snapshot.getLevel());
+
+		SymbolTable table = new SymbolTable(snapshot);
+		IdEntry local = new IdEntry();
+
+		assertEquals(0, table.getCurrentLevel());
+		assertSame(global, table.retrieve("a"));
+
+		table.openScope();
+		table.enter("a", local);
+		assertSame(local, table.retrieve("a"));
+
+		table.closeScope();
+		assertSame(global, table.retrieve("a"));
+		assertSame(global, snapshot.retrieve("a"));
+	}
+
+	@Test
+	public void testSnapshotChain() throws SymbolTableException {
+		SymbolTable globals = new SymbolTable();
+		globals.openScope();
+		globals.enter("a", new IdEntry());
+
+		SymbolTable.Snapshot first = globals.snapshot();
+		SymbolTable table = new SymbolTable(first);
+
+		// Nothing declared, so the snapshot is shared
+		assertSame(first, table.snapshot());
+
+		IdEntry inner = new IdEntry();
+		table.openScope();
+		table.enter("a", inner);
+
+		SymbolTable.Snapshot second = table.snapshot();
+
+		assertSame(inner, second.retrieve("a"));
+		assertEquals(1, second.getLevel());
+	}
+
+	@Test
+	public void testSnapshotUpTo() throws SymbolTableException {
+		SymbolTable table = new SymbolTable();
+		IdEntry global = new IdEntry();
+		IdEntry method = new IdEntry();
+		IdEntry member = new IdEntry();
+
+		table.openScope();
+		table.enter("a", global);
+		table.openScope();
+		table.enter("m", method);
+		table.enter("a", member);
+		table.enter("b", new IdEntry());
+
+		SymbolTable.Snapshot view = table.snapshot().upTo(method);
+
+		// Later declarations are hidden, and what they hid is visible again
+		assertSame(method, view.retrieve("m"));
+		assertSame(global, view.retrieve("a"));
+		assertNull(view.retrieve("b"));
+		assertSame(member, table.snapshot().retrieve("a"));
+
+		SymbolTable body = new SymbolTable(view);
+		body.openScope();
+		body.enter("c", new IdEntry());
+
+		assertSame(global, body.snapshot().retrieve("a"));
+		assertNull(body.snapshot().retrieve("b"));
+	}
+
+	@Test(expected = SymbolTableException.class)
+	public void testSnapshotDuplicate() throws SymbolTableException {
+		SymbolTable globals = new SymbolTable();
+		globals.openScope();
+		globals.enter("a", new IdEntry());
+
+		new SymbolTable(globals.snapshot()).enter("a", new IdEntry());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testSnapshotClose() {
+		SymbolTable globals = new SymbolTable();
+		globals.openScope();
+
+		new SymbolTable(globals.snapshot()).closeScope();
+	}
+
+	@Test(expected = SymbolTableException.class)
+	public void testNoScope() throws SymbolTableException {
+		new SymbolTable().enter("a", new IdEntry());
+	}
+
+	@Test
+	public void testReopen() throws SymbolTableException {
+		SymbolTable table = new SymbolTable();
+
+		table.openScope();
+
+		// Siblings may declare the same identifier
+		for (int i = 0; i < 3; i++) {
+			table.openScope();
+			table.enter("i", new IdEntry());
+			table.closeScope();
+		}
+
+		assertNull(table.retrieve("i"));
+		assertEquals(0, table.getCurrentLevel());
+	}
+}
@@ -0,0 +1,72 @@
+package vb.obama;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.antlr.runtime.ANTLRStringStream;
+import org.antlr.runtime.CommonTokenStream;
+import org.antlr.runtime.RecognitionException;
+import org.antlr.runtime.TokenStream;
+import org.junit.Test;
+
+import vb.obama.antlr.ObamaLexer;
+import vb.obama.antlr.ObamaParser;
+import vb.obama.antlr.stream.StreamingTokenStream;
+import vb.obama.antlr.tree.TypedNode;
+import vb.obama.antlr.tree.TypedNodeAdapter;
+import vb.obama.util.ProgramGenerator;
+
+/**
+ * Tests parsing from a bounded token stream.
+ *
+ * @version 1.0
+ * @see vb.obama.antlr.stream.StreamingTokenStream
+ */
+public class TokenStreamTest extends AbstractTest {
+	@Test
+	public void testSameTree() throws RecognitionException {
+		String program = new ProgramGenerator().setMethods(200).setClasses(5).setDepth(3).setImports(3).generate();
+		StreamingTokenStream streaming = new StreamingTokenStream(new ObamaLexer(new ANTLRStringStream(program)));
+		CommonTokenStream buffered = new CommonTokenStream(new ObamaLexer(new ANTLRStringStream(program)));
+
+		TypedNode expected = TokenStreamTest.parse(buffered);
+		TypedNode actual = TokenStreamTest.parse(streaming);
+
+		assertEquals(expected.toStringTree(), actual.toStringTree());
+		assertEquals(buffered.getNumberOfOnChannelTokens(), streaming.getNumberOfOnChannelTokens());
+
+		// The window stays small, although the program has many tokens
+		assertTrue(streaming.getNumberOfOnChannelTokens() > 50000);
+		assertTrue(streaming.getCapacity() <= 256);
+	}
+
+	@Test
+	public void testMarkAndRewind() {
+		StreamingTokenStream tokens = new StreamingTokenStream(new ObamaLexer(new ANTLRStringStream("int a = 1 + 2 ;")));
+		int marker = tokens.mark();
+
+		for (int i = 0; i < 3; i++) {
+			tokens.consume();
+		}
+
+		assertEquals("1", tokens.LT(1).getText());
+		assertEquals("=", tokens.LT(-1).getText());
+
+		tokens.rewind(marker);
+
+		assertEquals(0, tokens.index());
+		assertEquals("int", tokens.LT(1).getText());
+		assertEquals("a=1", tokens.toString(1, 3));
+		assertEquals(ObamaLexer.EOF, tokens.LA(100));
+	}
+
+	private static TypedNode parse(TokenStream tokens) throws RecognitionException {
+		ObamaParser parser = new ObamaParser(tokens);
+		parser.setTreeAdaptor(new TypedNodeAdapter());
+
+		TypedNode result = parser.program().getTree();
+		assertEquals(0, parser.getNumberOfSyntaxErrors());
+
+		return result;
+	}
+}
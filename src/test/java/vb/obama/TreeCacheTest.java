@@ -0,0 +1,152 @@
+package vb.obama;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import vb.obama.antlr.tree.CompactNode;
+import vb.obama.compiler.CompilationResult;
+import vb.obama.compiler.ObamaCompiler;
+import vb.obama.compiler.TreeCache;
+import vb.obama.util.ProgramGenerator;
+
+import com.google.common.io.Files;
+
+/**
+ * Tests generating code from checked trees in the cache.
+ *
+ * @version 1.3
+ * @see vb.obama.compiler.TreeCache
+ */
+public class TreeCacheTest extends AbstractTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testHit() throws IOException {
+		String program = new ProgramGenerator().setMethods(50).setClasses(3).setDepth(3).generate();
+		ObamaCompiler compiler = new ObamaCompiler(new ObamaCompiler.Options().setCache(new TreeCache(this.folder.getRoot())));
+
+		CompilationResult expected = new ObamaCompiler().compile(program, "Test.obama");
+		CompilationResult miss = compiler.compile(program, "Test.obama");
+
+		assertTrue(miss.isSuccess());
+		assertEquals(1, this.folder.getRoot().list().length);
+
+		CompilationResult hit = compiler.compile(program, "Test.obama");
+
+		assertTrue(hit.isSuccess());
+		assertTrue(hit.getTree() instanceof CompactNode);
+		AbstractTest.assertSameClasses(expected, miss);
+		AbstractTest.assertSameClasses(expected, hit);
+
+		// Dependencies and statistics survive the cache
+		assertEquals(expected.getImports(), hit.getImports());
+		assertEquals(expected.getReferencedTypes(), hit.getReferencedTypes());
+		assertEquals(expected.getStats().getTokens(), hit.getStats().getTokens());
+		assertEquals(expected.getStats().getNodes(), hit.getStats().getNodes());
+		assertEquals(expected.getStats().getSymbols(), hit.getStats().getSymbols());
+	}
+
+	@Test
+	public void testRequirements() throws IOException {
+		File[] files = new File("src/test/resources/vb/obama/requirements").listFiles();
+		ObamaCompiler compiler = new ObamaCompiler(new ObamaCompiler.Options().setCache(new TreeCache(this.folder.getRoot())));
+
+		for (File file : files) {
+			if (file.getName().endsWith(".obama")) {
+				ByteBuffer content = ByteBuffer.wrap(Files.toByteArray(file));
+				CompilationResult expected = new ObamaCompiler().compile(content, file.getName());
+
+				// Once to store, once to load
+				compiler.compile(content, file.getName());
+				AbstractTest.assertSameClasses(expected, compiler.compile(content, file.getName()));
+			}
+		}
+	}
+
+	@Test
+	public void testKey() {
+		ByteBuffer content = ByteBuffer.wrap("(void)main { }".getBytes(StandardCharsets.UTF_8));
+		String key = TreeCache.key(content, "Test.obama");
+
+		assertEquals(0, content.position());
+		assertEquals(key, TreeCache.key(content, "Test.obama"));
+		assertNotEquals(key, TreeCache.key(content, "Other.obama"));
+		assertNotEquals(key, TreeCache.key(ByteBuffer.wrap("(void)main { } ".getBytes(StandardCharsets.UTF_8)), "Test.obama"));
+	}
+
+	@Test
+	public void testOtherClassLoader() throws IOException {
+		ObamaCompiler compiler = new ObamaCompiler(new ObamaCompiler.Options().setCache(new TreeCache(this.folder.getRoot())));
+		ClassLoader previous = Thread.currentThread().getContextClassLoader();
+
+		// Types may resolve to other classes than on the class path
+		try (URLClassLoader loader = new URLClassLoader(new URL[] { this.tempFolder.getRoot().toURI().toURL() }, previous)) {
+			Thread.currentThread().setContextClassLoader(loader);
+
+			assertNull(TreeCache.key(ByteBuffer.wrap("(void)main { }".getBytes(StandardCharsets.UTF_8)), "Test.obama"));
+			assertTrue(compiler.compile("(void)main { }", "Test.obama").isSuccess());
+			assertEquals(0, this.folder.getRoot().list().length);
+		} finally {
+			Thread.currentThread().setContextClassLoader(previous);
+		}
+	}
+
+	@Test
+	public void testPrune() {
+		ObamaCompiler compiler = new ObamaCompiler(new ObamaCompiler.Options().setCache(new TreeCache(this.folder.getRoot())));
+
+		// Every edit replaces the entry of the source
+		for (int i = 0; i < 5; i++) {
+			assertTrue(compiler.compile("(void)main { int a = " + i + "; }", "Test.obama").isSuccess());
+			assertEquals(1, this.folder.getRoot().list().length);
+		}
+
+		assertTrue(compiler.compile("(void)main { }", "Other.obama").isSuccess());
+		assertEquals(2, this.folder.getRoot().list().length);
+	}
+
+	@Test
+	public void testDamaged() throws IOException {
+		String program = "(void)main {\n  int a = 1;\n  [System.out println:a];\n}";
+		ObamaCompiler compiler = new ObamaCompiler(new ObamaCompiler.Options().setCache(new TreeCache(this.folder.getRoot())));
+		CompilationResult expected = compiler.compile(program, "Test.obama");
+
+		assertTrue(expected.isSuccess());
+		File entry = this.folder.getRoot().listFiles()[0];
+
+		// Cut the entry in half
+		try (RandomAccessFile file = new RandomAccessFile(entry, "rw")) {
+			file.setLength(file.length() / 2);
+		}
+
+		AbstractTest.assertSameClasses(expected, compiler.compile(program, "Test.obama"));
+
+		// Compiled again, so the entry is whole again
+		AbstractTest.assertSameClasses(expected, compiler.compile(program, "Test.obama"));
+	}
+
+	@Test
+	public void testErrors() {
+		ObamaCompiler compiler = new ObamaCompiler(new ObamaCompiler.Options().setCache(new TreeCache(this.folder.getRoot())));
+		CompilationResult result = compiler.compile("(void)main { int a = \"b\"; }", "Test.obama");
+
+		assertFalse(result.isSuccess());
+		assertEquals(0, this.folder.getRoot().list().length);
+	}
+}
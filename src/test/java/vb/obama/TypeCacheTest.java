@@ -0,0 +1,82 @@
+package vb.obama;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import vb.obama.compiler.CompilationResult;
+import vb.obama.compiler.Import;
+import vb.obama.compiler.ObamaCompiler;
+import vb.obama.compiler.TypeCache;
+
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Tests resolving Java types through the type cache.
+ *
+ * @version 1.1
+ * @see vb.obama.compiler.TypeCache
+ */
+public class TypeCacheTest extends AbstractTest {
+	private static final List<Import> NONE = ImmutableList.of();
+
+	private static final List<Import> UTIL = ImmutableList.of(new Import("java.util.*"));
+
+	@Test
+	public void testResolve() {
+		TypeCache cache = new TypeCache(100);
+
+		assertSame(String.class, cache.resolve("String", NONE).getType());
+		assertSame(int[][].class, cache.resolve("int++", NONE).getType());
+		assertSame(Integer[].class, cache.resolve("Integer+", NONE).getType());
+		assertSame(cache.resolve("String", NONE), cache.resolve("String", NONE));
+		assertEquals(3, cache.size());
+	}
+
+	@Test
+	public void testMissing() {
+		TypeCache cache = new TypeCache(100);
+		TypeCache.Resolution missing = cache.resolve("Missing+", NONE);
+
+		assertNull(missing.getType());
+		assertEquals("Cannot find class 'Missing[]'", missing.getError());
+		assertSame(missing, cache.resolve("Missing+", NONE));
+		assertEquals("Cannot create an void array.", cache.resolve("void+", NONE).getError());
+	}
+
+	@Test
+	public void testImports() {
+		TypeCache cache = new TypeCache(100);
+
+		assertNull(cache.resolve("ArrayList", NONE).getType());
+		assertSame(java.util.ArrayList.class, cache.resolve("ArrayList", UTIL).getType());
+		assertSame(java.util.ArrayList.class, cache.resolve("ArrayList", ImmutableList.of(new Import("java.util.ArrayList"))).getType());
+	}
+
+	@Test
+	public void testBounded() {
+		TypeCache cache = new TypeCache(10);
+
+		for (int i = 0; i < 100; i++) {
+			cache.resolve("Missing" + i, NONE);
+		}
+
+		assertTrue(cache.size() <= 10);
+	}
+
+	@Test
+	public void testCompile() {
+		String source = "#import <java.util.*>\n(void)main:(String[])args { ArrayList list; int max = Integer.SIZE; max = max - 1; [System.out println:max]; }";
+
+		for (TypeCache cache : new TypeCache[] { null, new TypeCache(100) }) {
+			CompilationResult result = new ObamaCompiler(new ObamaCompiler.Options().setTypes(cache)).compile(source, "Hello.obama");
+
+			assertTrue(result.getDiagnostics().toString(), result.isSuccess());
+		}
+	}
+}
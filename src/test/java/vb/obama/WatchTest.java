@@ -0,0 +1,72 @@
+package vb.obama;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+import vb.obama.driver.BatchCompiler;
+import vb.obama.driver.SourceWatcher;
+
+/**
+ * Tests recompiling sources when they change.
+ * 
+ * @version 1.0
+ * @see vb.obama.driver.SourceWatcher
+ */
+public class WatchTest extends AbstractTest {
+	private static final String HELLO = "(void)main:(String[])args { [System.out println:@\"Hello\"]; }";
+	
+	@Test(timeout = 30000)
+	public void testWatch() throws IOException, InterruptedException {
+		File sources = this.tempFolder.newFolder("sources");
+		File output = this.tempFolder.newFolder("output");
+		final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		final SourceWatcher watcher = new SourceWatcher(sources, new BatchCompiler(output, 1), null, 10);
+		
+		Files.write(new File(sources, "First.obama").toPath(), HELLO.getBytes(StandardCharsets.UTF_8));
+		
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					watcher.run(new PrintStream(buffer, true));
+				} catch (IOException exception) {
+					// Reported by the assertions below
+				}
+			}
+		});
+		thread.start();
+		
+		while (!buffer.toString().contains("Watching")) {
+			Thread.sleep(10);
+		}
+		
+		// Existing sources are compiled on start
+		assertTrue(new File(output, "First.class").isFile());
+		
+		// New sources, also in new directories, are compiled when written
+		File nested = new File(sources, "nested");
+		nested.mkdir();
+		Files.write(new File(sources, "Second.obama").toPath(), HELLO.getBytes(StandardCharsets.UTF_8));
+		Files.write(new File(nested, "Third.obama").toPath(), HELLO.getBytes(StandardCharsets.UTF_8));
+		Files.write(new File(sources, "Notes.txt").toPath(), HELLO.getBytes(StandardCharsets.UTF_8));
+		
+		while (!new File(output, "Second.class").isFile() || !new File(output, "Third.class").isFile()) {
+			Thread.sleep(10);
+		}
+		
+		watcher.stop();
+		thread.join();
+		
+		assertFalse(buffer.toString().contains("Notes"));
+		assertFalse(buffer.toString().contains("FAIL"));
+	}
+}